@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark;
+
+import de.syquel.bushytail.BushyTail;
+import de.syquel.bushytail.BushyTailBuilder;
+import de.syquel.bushytail.cache.BushyTailEntityCache;
+import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.exception.BushyTailException;
+import de.syquel.bushytail.factory.OlingoMetadataFactory;
+import de.syquel.bushytail.factory.exception.OlingoMetadataFactoryException;
+import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.serializer.plan.IOlingoEntityCodec;
+import de.syquel.bushytail.service.BushyTailServiceContext;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Creates the JPA entities and BushyTail services the benchmarks operate on.
+ * <p>
+ * All fixtures are created the same way as by {@link BushyTailBuilder}, so that the benchmarks measure the production code paths.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BenchmarkFixtures {
+
+    /**
+     * Utility class.
+     */
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Create a JPA entity whose properties are all populated with values derived from its identifier.
+     *
+     * @param <T> The JPA entity class.
+     * @param entityClass The JPA entity class.
+     * @param id The identifier of the JPA entity.
+     * @return The populated JPA entity.
+     * @throws Exception if the JPA entity cannot be created.
+     */
+    public static <T> T newEntity(final Class<T> entityClass, final long id) throws Exception {
+        final T entity = entityClass.newInstance();
+
+        int index = 0;
+        for (final Field field : entityClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+
+            field.setAccessible(true);
+            field.set(entity, "id".equals(field.getName()) ? Long.valueOf(id) : newValue(field.getType(), id, index++));
+        }
+
+        return entity;
+    }
+
+    /**
+     * Create JPA entities with the identifiers {@code 1} to {@code count}.
+     *
+     * @param <T> The JPA entity class.
+     * @param entityClass The JPA entity class.
+     * @param count The number of JPA entities.
+     * @return The populated JPA entities by their identifier.
+     * @throws Exception if the JPA entities cannot be created.
+     */
+    public static <T> Map<Long, T> newEntities(final Class<T> entityClass, final int count) throws Exception {
+        final Map<Long, T> entities = new LinkedHashMap<Long, T>();
+        for (long id = 1; id <= count; id++) {
+            entities.put(id, newEntity(entityClass, id));
+        }
+
+        return entities;
+    }
+
+    /**
+     * Create the service context of a single JPA entity class without any controller.
+     *
+     * @param entityClass The JPA entity class.
+     * @return The service context.
+     * @throws OlingoMetadataFactoryException if the OData metadata cannot be created.
+     * @throws OlingoSerializerException if the accessor plan cannot be resolved.
+     * @throws OlingoDeserializerException if the entity binder cannot be resolved.
+     */
+    public static BushyTailServiceContext createServiceContext(final Class<?> entityClass)
+            throws OlingoMetadataFactoryException, OlingoSerializerException, OlingoDeserializerException {
+        final FullQualifiedName entityFQN = new FullQualifiedName(ClassUtils.getPackageName(entityClass), entityClass.getSimpleName());
+
+        final OlingoMetadataFactory metadataFactory = new OlingoMetadataFactory();
+        metadataFactory.addEntity(entityClass, entityFQN);
+
+        return new BushyTailServiceContext(metadataFactory.createSchema(""), Collections.<FullQualifiedName, Class<?>>singletonMap(entityFQN, entityClass),
+                Collections.<Class<?>, IBushyTailController<?>>emptyMap(), Collections.<Class<?>, Integer>emptyMap(),
+                Collections.<Class<?>, String>emptyMap(), Collections.<Class<?>, BushyTailEntityCache>emptyMap(),
+                Collections.<Class<?>, IOlingoEntityCodec<?>>emptyMap(), BushyTailBuilder.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Create a BushyTail service of a single JPA entity class, which is served from memory.
+     *
+     * @param <T> The JPA entity class.
+     * @param entityClass The JPA entity class.
+     * @param entityCount The number of JPA entities in the entity set.
+     * @return The BushyTail service.
+     * @throws Exception if the JPA entities or the service cannot be created.
+     */
+    public static <T> BushyTail createBushyTail(final Class<T> entityClass, final int entityCount) throws Exception {
+        final BushyTailBuilder builder = new BushyTailBuilder();
+        builder.addEntity(entityClass, new InMemoryController<T>(newEntities(entityClass, entityCount)));
+
+        try {
+            return builder.build();
+        } catch (BushyTailException e) {
+            throw new IllegalStateException("Cannot build BushyTail service of '" + entityClass.getName() + "'", e);
+        }
+    }
+
+    /**
+     * Render the primitive properties of an Olingo entity as a JSON request body.
+     *
+     * @param olingoEntity The Olingo entity.
+     * @return The JSON object.
+     */
+    public static String toJson(final Entity olingoEntity) {
+        final StringBuilder json = new StringBuilder("{");
+        for (final Property property : olingoEntity.getProperties()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+
+            json.append('"').append(property.getName()).append("\":");
+
+            final Object value = property.getValue();
+            if (value instanceof String) {
+                json.append('"').append(((String) value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            } else {
+                json.append(value);
+            }
+        }
+
+        return json.append('}').toString();
+    }
+
+    /**
+     * Create a property value of a supported type.
+     *
+     * @param type The type of the property.
+     * @param id The identifier of the JPA entity.
+     * @param index The index of the property.
+     * @return The property value.
+     */
+    private static Object newValue(final Class<?> type, final long id, final int index) {
+        if (String.class.equals(type)) {
+            return "Value " + index + " of entity " + id;
+        } else if (Integer.class.equals(type)) {
+            return (int) id * 31 + index;
+        } else if (Long.class.equals(type)) {
+            return id * 1000003L + index;
+        } else if (Double.class.equals(type)) {
+            return id + index / 8.0;
+        } else if (Boolean.class.equals(type)) {
+            return (id + index) % 2 == 0;
+        }
+
+        throw new IllegalArgumentException("Unsupported property type '" + type.getName() + "'");
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the BushyTail benchmarks and reports the allocation rate next to the throughput.
+ * <p>
+ * Accepts the command line options of JMH, e.g. a regular expression of the benchmarks to run
+ * or {@code -rf json} to write the results for comparison with later runs.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailBenchmarks {
+
+    /**
+     * Utility class.
+     */
+    private BushyTailBenchmarks() {
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args The JMH command line options.
+     * @throws CommandLineOptionException if the command line options are invalid.
+     * @throws RunnerException if a benchmark fails.
+     * @throws IOException if the help cannot be printed.
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+
+        // The GC profiler reports the allocated bytes per operation, which are as relevant as the throughput
+        final Runner runner = new Runner(new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build());
+
+        if (commandLineOptions.shouldList()) {
+            runner.list();
+            return;
+        }
+
+        runner.run();
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark;
+
+import de.syquel.bushytail.BushyTail;
+import de.syquel.bushytail.benchmark.servlet.BenchmarkHttpServletRequest;
+import de.syquel.bushytail.benchmark.servlet.BenchmarkHttpServletResponse;
+import de.syquel.bushytail.benchmark.servlet.BenchmarkHttpSession;
+import de.syquel.bushytail.serializer.OlingoSerializer;
+import de.syquel.bushytail.service.BushyTailServiceContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks complete requests through {@link BushyTail#service} against an in-memory controller.
+ * <p>
+ * Each invocation creates a fresh request and response, whose allocations are part of the measurement;
+ * they are negligible compared to the request processing.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BushyTailServiceBenchmark {
+
+    /** The number of entities in the entity set. */
+    private static final int ENTITY_COUNT = 100;
+
+    /** The name of the CSRF token header. */
+    private static final String CSRF_TOKEN_HEADER = "X-CSRF-TOKEN";
+
+    /** The media type of the requests and responses. */
+    private static final String JSON = "application/json";
+
+    /** The empty body of read requests. */
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    /** The width of the JPA entity. */
+    @Param({"NARROW", "MEDIUM", "WIDE"})
+    private EntityWidth width;
+
+    /** The BushyTail service. */
+    private BushyTail bushyTail;
+
+    /** The HTTP session shared by all requests. */
+    private BenchmarkHttpSession session;
+
+    /** The resource path of the entity set. */
+    private String entitySetPath;
+
+    /** The resource path of a single entity. */
+    private String entityPath;
+
+    /** The headers of read requests. */
+    private Map<String, String> readHeaders;
+
+    /** The headers of create requests, including the CSRF token. */
+    private Map<String, String> createHeaders;
+
+    /** The body of create requests. */
+    private byte[] createBody;
+
+    /**
+     * Build the service, fetch a CSRF token and verify that all requests succeed.
+     *
+     * @throws Exception if the service cannot be built or a request fails.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        bushyTail = BenchmarkFixtures.createBushyTail(width.getEntityClass(), ENTITY_COUNT);
+        session = new BenchmarkHttpSession();
+        entitySetPath = "/" + width.getEntitySetName();
+        entityPath = entitySetPath + "(1)";
+
+        readHeaders = Collections.singletonMap("Accept", JSON);
+
+        // Modifying requests are only accepted with the CSRF token of the session, just like from a client
+        final Map<String, String> fetchHeaders = new HashMap<String, String>(readHeaders);
+        fetchHeaders.put(CSRF_TOKEN_HEADER, "FETCH");
+        final BenchmarkHttpServletResponse fetchResponse = service("GET", entityPath, fetchHeaders, EMPTY_BODY);
+
+        createHeaders = new HashMap<String, String>(readHeaders);
+        createHeaders.put("Content-Type", JSON);
+        createHeaders.put(CSRF_TOKEN_HEADER, fetchResponse.getHeader(CSRF_TOKEN_HEADER));
+
+        final BushyTailServiceContext serviceContext = BenchmarkFixtures.createServiceContext(width.getEntityClass());
+        final Object entity = BenchmarkFixtures.newEntity(width.getEntityClass(), ENTITY_COUNT + 1);
+        createBody = BenchmarkFixtures.toJson(OlingoSerializer.serialize(serviceContext.getAccessorPlan(width.getEntityClass()), entity)).getBytes("UTF-8");
+
+        verifyStatus(service("GET", entityPath, readHeaders, EMPTY_BODY), 200);
+        verifyStatus(service("GET", entitySetPath, readHeaders, EMPTY_BODY), 200);
+        verifyStatus(service("POST", entitySetPath, createHeaders, createBody), 201);
+    }
+
+    /**
+     * Read a single entity.
+     *
+     * @return The number of response body bytes.
+     */
+    @Benchmark
+    public long readEntity() {
+        return service("GET", entityPath, readHeaders, EMPTY_BODY).getBodyLength();
+    }
+
+    /**
+     * Read the complete entity set.
+     *
+     * @return The number of response body bytes.
+     */
+    @Benchmark
+    public long readEntityCollection() {
+        return service("GET", entitySetPath, readHeaders, EMPTY_BODY).getBodyLength();
+    }
+
+    /**
+     * Create a single entity.
+     *
+     * @return The number of response body bytes.
+     */
+    @Benchmark
+    public long createEntity() {
+        return service("POST", entitySetPath, createHeaders, createBody).getBodyLength();
+    }
+
+    /**
+     * Serve a request.
+     *
+     * @param method The HTTP method.
+     * @param pathInfo The OData resource path.
+     * @param headers The request headers.
+     * @param body The request body.
+     * @return The response.
+     */
+    private BenchmarkHttpServletResponse service(final String method, final String pathInfo, final Map<String, String> headers, final byte[] body) {
+        final BenchmarkHttpServletResponse response = new BenchmarkHttpServletResponse();
+        bushyTail.service(new BenchmarkHttpServletRequest(method, pathInfo, null, headers, body, session), response);
+
+        return response;
+    }
+
+    /**
+     * Verify the status of a response, so that no error path is measured.
+     *
+     * @param response The response.
+     * @param expectedStatus The expected HTTP status code.
+     * @throws IllegalStateException if the status differs.
+     */
+    private static void verifyStatus(final BenchmarkHttpServletResponse response, final int expectedStatus) {
+        if (response.getStatus() != expectedStatus) {
+            throw new IllegalStateException("Expected status " + expectedStatus + " but got " + response.getStatus());
+        }
+    }
+
+}
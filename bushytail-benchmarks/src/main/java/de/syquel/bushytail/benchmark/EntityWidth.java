@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark;
+
+import de.syquel.bushytail.benchmark.model.MediumEntity;
+import de.syquel.bushytail.benchmark.model.NarrowEntity;
+import de.syquel.bushytail.benchmark.model.WideEntity;
+
+/**
+ * The widths of the JPA entities the serialization benchmarks are parameterized with.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public enum EntityWidth {
+
+    /** {@link NarrowEntity} with 4 properties. */
+    NARROW(NarrowEntity.class, "NarrowEntities"),
+    /** {@link MediumEntity} with 16 properties. */
+    MEDIUM(MediumEntity.class, "MediumEntities"),
+    /** {@link WideEntity} with 64 properties. */
+    WIDE(WideEntity.class, "WideEntities");
+
+    /** The JPA entity class. */
+    private final Class<?> entityClass;
+
+    /** The name of the OData entity set. */
+    private final String entitySetName;
+
+    /**
+     * Constructs {@link EntityWidth}.
+     *
+     * @param entityClass The JPA entity class.
+     * @param entitySetName The name of the OData entity set.
+     */
+    EntityWidth(final Class<?> entityClass, final String entitySetName) {
+        this.entityClass = entityClass;
+        this.entitySetName = entitySetName;
+    }
+
+    /**
+     * @return The JPA entity class.
+     */
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return The name of the OData entity set.
+     */
+    public String getEntitySetName() {
+        return entitySetName;
+    }
+
+}
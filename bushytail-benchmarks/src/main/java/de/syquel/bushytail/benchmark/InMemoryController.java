@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark;
+
+import de.syquel.bushytail.controller.IBushyTailCollectionController;
+import de.syquel.bushytail.controller.IBushyTailCursor;
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link IBushyTailCollectionController} which serves a fixed set of JPA entities from memory.
+ * <p>
+ * Created entities are returned without being stored, so that the data set stays the same over all benchmark invocations
+ * and only BushyTail itself is measured.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> The JPA entity class.
+ */
+public class InMemoryController<T> implements IBushyTailCollectionController<T> {
+
+    /** The JPA entities by their identifier. */
+    private final Map<Long, T> entities;
+
+    /**
+     * Constructs {@link InMemoryController}.
+     *
+     * @param entities The JPA entities by their identifier.
+     */
+    public InMemoryController(final Map<Long, T> entities) {
+        this.entities = Collections.unmodifiableMap(new LinkedHashMap<Long, T>(entities));
+    }
+
+    @Override
+    public T read(final List<UriParameter> keyPredicates) {
+        return entities.get(Long.valueOf(keyPredicates.get(0).getText()));
+    }
+
+    @Override
+    public T create(final T entity) {
+        return entity;
+    }
+
+    @Override
+    public T update(final T entity) {
+        return entity;
+    }
+
+    @Override
+    public boolean delete(final T entity) {
+        return true;
+    }
+
+    @Override
+    public IBushyTailCursor<T> readAll(final int fetchSize) {
+        return new IteratorCursor<T>(entities.values().iterator());
+    }
+
+
+    /**
+     * {@link IBushyTailCursor} over the JPA entities in memory.
+     *
+     * @param <T> The JPA entity class.
+     */
+    private static final class IteratorCursor<T> implements IBushyTailCursor<T> {
+
+        /** The iterator over the JPA entities. */
+        private final Iterator<T> iterator;
+
+        /**
+         * Constructs {@link IteratorCursor}.
+         *
+         * @param iterator The iterator over the JPA entities.
+         */
+        IteratorCursor(final Iterator<T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Entities are read-only");
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark;
+
+import de.syquel.bushytail.factory.OlingoMetadataFactory;
+import de.syquel.bushytail.factory.exception.OlingoMetadataFactoryException;
+import org.apache.olingo.commons.api.edm.provider.CsdlSchema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the creation of the OData schema of synthetic models of different sizes.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ * @see OlingoMetadataFactory
+ * @see SyntheticModel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OlingoMetadataFactoryBenchmark {
+
+    /** The number of JPA entities of the model. */
+    @Param({"10", "100", "500", "2000"})
+    private int entityCount;
+
+    /** The JPA entity classes of the model. */
+    private List<Class<?>> entityClasses;
+
+    /** The executor which creates the entities concurrently. */
+    private ExecutorService executor;
+
+    /**
+     * Generate the model and start the executor.
+     *
+     * @throws Exception if the model cannot be generated.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        entityClasses = SyntheticModel.create(entityCount);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Stop the executor.
+     */
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Create the OData schema sequentially.
+     *
+     * @return The OData schemas.
+     * @throws OlingoMetadataFactoryException if the schema cannot be created.
+     */
+    @Benchmark
+    public List<CsdlSchema> createSchema() throws OlingoMetadataFactoryException {
+        return new OlingoMetadataFactory().addEntity(entityClasses).createSchema("");
+    }
+
+    /**
+     * Create the OData schema with the entities created concurrently.
+     *
+     * @return The OData schemas.
+     * @throws OlingoMetadataFactoryException if the schema cannot be created.
+     */
+    @Benchmark
+    public List<CsdlSchema> createSchemaConcurrently() throws OlingoMetadataFactoryException {
+        return new OlingoMetadataFactory().addEntity(entityClasses).createSchema("", executor);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark;
+
+import de.syquel.bushytail.serializer.OlingoDeserializer;
+import de.syquel.bushytail.serializer.OlingoSerializer;
+import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import de.syquel.bushytail.serializer.plan.OlingoEntityBinder;
+import de.syquel.bushytail.service.BushyTailServiceContext;
+import org.apache.olingo.commons.api.data.Entity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversion between JPA entities and Olingo entities of different widths.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ * @see OlingoSerializer
+ * @see OlingoDeserializer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OlingoSerializerBenchmark {
+
+    /** The width of the JPA entity. */
+    @Param({"NARROW", "MEDIUM", "WIDE"})
+    private EntityWidth width;
+
+    /** The accessor plan of the JPA entity class. */
+    private OlingoEntityAccessorPlan accessorPlan;
+
+    /** The binder of the JPA entity class. */
+    private OlingoEntityBinder<?> entityBinder;
+
+    /** The JPA entity to serialize. */
+    private Object entity;
+
+    /** The Olingo entity to deserialize. */
+    private Entity olingoEntity;
+
+    /**
+     * Resolve the accessor plan and binder and create the entities.
+     *
+     * @throws Exception if the fixtures cannot be created.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        final BushyTailServiceContext serviceContext = BenchmarkFixtures.createServiceContext(width.getEntityClass());
+        accessorPlan = serviceContext.getAccessorPlan(width.getEntityClass());
+        entityBinder = serviceContext.getEntityBinder(width.getEntityClass());
+
+        entity = BenchmarkFixtures.newEntity(width.getEntityClass(), 1);
+        olingoEntity = OlingoSerializer.serialize(accessorPlan, entity);
+    }
+
+    /**
+     * Serialize a JPA entity into an Olingo entity.
+     *
+     * @return The Olingo entity.
+     * @throws OlingoSerializerException if the JPA entity cannot be serialized.
+     */
+    @Benchmark
+    public Entity serialize() throws OlingoSerializerException {
+        return OlingoSerializer.serialize(accessorPlan, entity);
+    }
+
+    /**
+     * Deserialize an Olingo entity into a new JPA entity.
+     *
+     * @return The JPA entity.
+     * @throws OlingoDeserializerException if the Olingo entity cannot be deserialized.
+     */
+    @Benchmark
+    public Object deserialize() throws OlingoDeserializerException {
+        return OlingoDeserializer.deserialize(entityBinder, olingoEntity);
+    }
+
+}
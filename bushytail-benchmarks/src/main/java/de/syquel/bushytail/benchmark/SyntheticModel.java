@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.BooleanMemberValue;
+import javassist.bytecode.annotation.StringMemberValue;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.Table;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Generates synthetic models of JPA entities of arbitrary size.
+ * <p>
+ * Each entity has a few primitive properties and is related to its predecessor and successor, so that both
+ * the properties and the mapping partners are resolved. The classes are defined by a separate class loader per model,
+ * so that repeated trials do not share any reflection caches of the JVM.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class SyntheticModel {
+
+    /** The package of the generated JPA entities. */
+    public static final String PACKAGE_NAME = "de.syquel.bushytail.benchmark.synthetic";
+
+    /** The name of the relationship to the predecessor. */
+    private static final String PARENT_FIELD_NAME = "parent";
+
+    /** The name of the relationship to the successors. */
+    private static final String CHILDREN_FIELD_NAME = "children";
+
+    /**
+     * Utility class.
+     */
+    private SyntheticModel() {
+    }
+
+    /**
+     * Generate and load a model.
+     *
+     * @param entityCount The number of JPA entities.
+     * @return The JPA entity classes.
+     * @throws NotFoundException if a property type cannot be found.
+     * @throws CannotCompileException if a class cannot be generated.
+     * @throws IOException if the bytecode of a class cannot be written.
+     */
+    public static List<Class<?>> create(final int entityCount) throws NotFoundException, CannotCompileException, IOException {
+        final ClassPool classPool = new ClassPool(true);
+        classPool.appendClassPath(new LoaderClassPath(SyntheticModel.class.getClassLoader()));
+
+        final CtClass[] entityCtClasses = new CtClass[entityCount];
+        for (int i = 0; i < entityCount; i++) {
+            entityCtClasses[i] = classPool.makeClass(PACKAGE_NAME + ".SyntheticEntity" + i);
+        }
+
+        final SyntheticClassLoader classLoader = new SyntheticClassLoader(SyntheticModel.class.getClassLoader());
+        final List<Class<?>> entityClasses = new ArrayList<Class<?>>(entityCount);
+        for (int i = 0; i < entityCount; i++) {
+            final CtClass entityCtClass = entityCtClasses[i];
+            final ConstPool constPool = entityCtClass.getClassFile().getConstPool();
+
+            final Annotation table = new Annotation(Table.class.getName(), constPool);
+            table.addMemberValue("name", new StringMemberValue("SyntheticEntities" + i, constPool));
+            entityCtClass.getClassFile().addAttribute(annotations(constPool, new Annotation(Entity.class.getName(), constPool), table));
+
+            final Annotation notNull = new Annotation(Column.class.getName(), constPool);
+            notNull.addMemberValue("nullable", new BooleanMemberValue(false, constPool));
+
+            addField(entityCtClass, classPool.get(Long.class.getName()), "id", null, new Annotation(Id.class.getName(), constPool));
+            addField(entityCtClass, classPool.get(String.class.getName()), "name", null, notNull);
+            addField(entityCtClass, classPool.get(Integer.class.getName()), "quantity", null);
+            addField(entityCtClass, classPool.get(Double.class.getName()), "price", null);
+            addField(entityCtClass, classPool.get(Boolean.class.getName()), "active", null);
+            addField(entityCtClass, classPool.get(Date.class.getName()), "created", null);
+
+            if (i > 0) {
+                addField(entityCtClass, entityCtClasses[i - 1], PARENT_FIELD_NAME, null, new Annotation(ManyToOne.class.getName(), constPool));
+            }
+            if (i < entityCount - 1) {
+                final Annotation oneToMany = new Annotation(OneToMany.class.getName(), constPool);
+                oneToMany.addMemberValue("mappedBy", new StringMemberValue(PARENT_FIELD_NAME, constPool));
+
+                final String childDescriptor = "L" + entityCtClasses[i + 1].getName().replace('.', '/') + ";";
+                addField(entityCtClass, classPool.get(List.class.getName()), CHILDREN_FIELD_NAME, "Ljava/util/List<" + childDescriptor + ">;", oneToMany);
+            }
+
+            entityCtClass.addConstructor(CtNewConstructor.defaultConstructor(entityCtClass));
+
+            entityClasses.add(classLoader.define(entityCtClass.getName(), entityCtClass.toBytecode()));
+        }
+
+        for (final CtClass entityCtClass : entityCtClasses) {
+            entityCtClass.detach();
+        }
+
+        return Collections.unmodifiableList(entityClasses);
+    }
+
+    /**
+     * Add a private field to a generated class.
+     *
+     * @param declaringClass The generated class.
+     * @param type The type of the field.
+     * @param name The name of the field.
+     * @param genericSignature The generic signature of the field or {@code null} if it is not generic.
+     * @param fieldAnnotations The annotations of the field.
+     * @throws CannotCompileException if the field cannot be added.
+     */
+    private static void addField(final CtClass declaringClass, final CtClass type, final String name, final String genericSignature,
+                                 final Annotation... fieldAnnotations) throws CannotCompileException {
+        final CtField field = new CtField(type, name, declaringClass);
+        field.setModifiers(Modifier.PRIVATE);
+        if (genericSignature != null) {
+            field.setGenericSignature(genericSignature);
+        }
+        if (fieldAnnotations.length > 0) {
+            field.getFieldInfo().addAttribute(annotations(declaringClass.getClassFile().getConstPool(), fieldAnnotations));
+        }
+
+        declaringClass.addField(field);
+    }
+
+    /**
+     * Create the attribute of annotations which are visible at runtime.
+     *
+     * @param constPool The constant pool of the generated class.
+     * @param annotations The annotations.
+     * @return The attribute.
+     */
+    private static AnnotationsAttribute annotations(final ConstPool constPool, final Annotation... annotations) {
+        final AnnotationsAttribute attribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+        attribute.setAnnotations(annotations);
+
+        return attribute;
+    }
+
+
+    /**
+     * Class loader which defines the classes of a single model.
+     */
+    private static final class SyntheticClassLoader extends ClassLoader {
+
+        /**
+         * Constructs {@link SyntheticClassLoader}.
+         *
+         * @param parent The class loader of BushyTail and the JPA annotations.
+         */
+        SyntheticClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Define a generated class.
+         *
+         * @param name The binary name of the class.
+         * @param bytecode The bytecode of the class.
+         * @return The class.
+         */
+        Class<?> define(final String name, final byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+
+    }
+
+}
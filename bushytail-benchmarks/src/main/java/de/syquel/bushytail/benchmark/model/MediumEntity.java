@@ -0,0 +1,306 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A medium JPA entity with 16 properties of the primitive types supported by BushyTail.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+@Entity
+@Table(name = "MediumEntities")
+public class MediumEntity {
+
+    /** The identifier. */
+    @Id
+    private Long id;
+
+    /** The text 1. */
+    private String string01;
+
+    /** The 32-bit integer 2. */
+    private Integer integer02;
+
+    /** The 64-bit integer 3. */
+    private Long long03;
+
+    /** The floating point number 4. */
+    private Double double04;
+
+    /** The flag 5. */
+    private Boolean boolean05;
+
+    /** The text 6. */
+    private String string06;
+
+    /** The 32-bit integer 7. */
+    private Integer integer07;
+
+    /** The 64-bit integer 8. */
+    private Long long08;
+
+    /** The floating point number 9. */
+    private Double double09;
+
+    /** The flag 10. */
+    private Boolean boolean10;
+
+    /** The text 11. */
+    private String string11;
+
+    /** The 32-bit integer 12. */
+    private Integer integer12;
+
+    /** The 64-bit integer 13. */
+    private Long long13;
+
+    /** The floating point number 14. */
+    private Double double14;
+
+    /** The flag 15. */
+    private Boolean boolean15;
+
+    /**
+     * @return The identifier.
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @param id The identifier.
+     */
+    public void setId(final Long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return The text 1.
+     */
+    public String getString01() {
+        return string01;
+    }
+
+    /**
+     * @param string01 The text 1.
+     */
+    public void setString01(final String string01) {
+        this.string01 = string01;
+    }
+
+    /**
+     * @return The 32-bit integer 2.
+     */
+    public Integer getInteger02() {
+        return integer02;
+    }
+
+    /**
+     * @param integer02 The 32-bit integer 2.
+     */
+    public void setInteger02(final Integer integer02) {
+        this.integer02 = integer02;
+    }
+
+    /**
+     * @return The 64-bit integer 3.
+     */
+    public Long getLong03() {
+        return long03;
+    }
+
+    /**
+     * @param long03 The 64-bit integer 3.
+     */
+    public void setLong03(final Long long03) {
+        this.long03 = long03;
+    }
+
+    /**
+     * @return The floating point number 4.
+     */
+    public Double getDouble04() {
+        return double04;
+    }
+
+    /**
+     * @param double04 The floating point number 4.
+     */
+    public void setDouble04(final Double double04) {
+        this.double04 = double04;
+    }
+
+    /**
+     * @return The flag 5.
+     */
+    public Boolean getBoolean05() {
+        return boolean05;
+    }
+
+    /**
+     * @param boolean05 The flag 5.
+     */
+    public void setBoolean05(final Boolean boolean05) {
+        this.boolean05 = boolean05;
+    }
+
+    /**
+     * @return The text 6.
+     */
+    public String getString06() {
+        return string06;
+    }
+
+    /**
+     * @param string06 The text 6.
+     */
+    public void setString06(final String string06) {
+        this.string06 = string06;
+    }
+
+    /**
+     * @return The 32-bit integer 7.
+     */
+    public Integer getInteger07() {
+        return integer07;
+    }
+
+    /**
+     * @param integer07 The 32-bit integer 7.
+     */
+    public void setInteger07(final Integer integer07) {
+        this.integer07 = integer07;
+    }
+
+    /**
+     * @return The 64-bit integer 8.
+     */
+    public Long getLong08() {
+        return long08;
+    }
+
+    /**
+     * @param long08 The 64-bit integer 8.
+     */
+    public void setLong08(final Long long08) {
+        this.long08 = long08;
+    }
+
+    /**
+     * @return The floating point number 9.
+     */
+    public Double getDouble09() {
+        return double09;
+    }
+
+    /**
+     * @param double09 The floating point number 9.
+     */
+    public void setDouble09(final Double double09) {
+        this.double09 = double09;
+    }
+
+    /**
+     * @return The flag 10.
+     */
+    public Boolean getBoolean10() {
+        return boolean10;
+    }
+
+    /**
+     * @param boolean10 The flag 10.
+     */
+    public void setBoolean10(final Boolean boolean10) {
+        this.boolean10 = boolean10;
+    }
+
+    /**
+     * @return The text 11.
+     */
+    public String getString11() {
+        return string11;
+    }
+
+    /**
+     * @param string11 The text 11.
+     */
+    public void setString11(final String string11) {
+        this.string11 = string11;
+    }
+
+    /**
+     * @return The 32-bit integer 12.
+     */
+    public Integer getInteger12() {
+        return integer12;
+    }
+
+    /**
+     * @param integer12 The 32-bit integer 12.
+     */
+    public void setInteger12(final Integer integer12) {
+        this.integer12 = integer12;
+    }
+
+    /**
+     * @return The 64-bit integer 13.
+     */
+    public Long getLong13() {
+        return long13;
+    }
+
+    /**
+     * @param long13 The 64-bit integer 13.
+     */
+    public void setLong13(final Long long13) {
+        this.long13 = long13;
+    }
+
+    /**
+     * @return The floating point number 14.
+     */
+    public Double getDouble14() {
+        return double14;
+    }
+
+    /**
+     * @param double14 The floating point number 14.
+     */
+    public void setDouble14(final Double double14) {
+        this.double14 = double14;
+    }
+
+    /**
+     * @return The flag 15.
+     */
+    public Boolean getBoolean15() {
+        return boolean15;
+    }
+
+    /**
+     * @param boolean15 The flag 15.
+     */
+    public void setBoolean15(final Boolean boolean15) {
+        this.boolean15 = boolean15;
+    }
+
+}
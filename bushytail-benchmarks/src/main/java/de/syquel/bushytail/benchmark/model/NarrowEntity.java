@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A narrow JPA entity with 4 properties of the primitive types supported by BushyTail.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+@Entity
+@Table(name = "NarrowEntities")
+public class NarrowEntity {
+
+    /** The identifier. */
+    @Id
+    private Long id;
+
+    /** The text 1. */
+    private String string01;
+
+    /** The 32-bit integer 2. */
+    private Integer integer02;
+
+    /** The 64-bit integer 3. */
+    private Long long03;
+
+    /**
+     * @return The identifier.
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @param id The identifier.
+     */
+    public void setId(final Long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return The text 1.
+     */
+    public String getString01() {
+        return string01;
+    }
+
+    /**
+     * @param string01 The text 1.
+     */
+    public void setString01(final String string01) {
+        this.string01 = string01;
+    }
+
+    /**
+     * @return The 32-bit integer 2.
+     */
+    public Integer getInteger02() {
+        return integer02;
+    }
+
+    /**
+     * @param integer02 The 32-bit integer 2.
+     */
+    public void setInteger02(final Integer integer02) {
+        this.integer02 = integer02;
+    }
+
+    /**
+     * @return The 64-bit integer 3.
+     */
+    public Long getLong03() {
+        return long03;
+    }
+
+    /**
+     * @param long03 The 64-bit integer 3.
+     */
+    public void setLong03(final Long long03) {
+        this.long03 = long03;
+    }
+
+}
@@ -0,0 +1,1122 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A wide JPA entity with 64 properties of the primitive types supported by BushyTail.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+@Entity
+@Table(name = "WideEntities")
+public class WideEntity {
+
+    /** The identifier. */
+    @Id
+    private Long id;
+
+    /** The text 1. */
+    private String string01;
+
+    /** The 32-bit integer 2. */
+    private Integer integer02;
+
+    /** The 64-bit integer 3. */
+    private Long long03;
+
+    /** The floating point number 4. */
+    private Double double04;
+
+    /** The flag 5. */
+    private Boolean boolean05;
+
+    /** The text 6. */
+    private String string06;
+
+    /** The 32-bit integer 7. */
+    private Integer integer07;
+
+    /** The 64-bit integer 8. */
+    private Long long08;
+
+    /** The floating point number 9. */
+    private Double double09;
+
+    /** The flag 10. */
+    private Boolean boolean10;
+
+    /** The text 11. */
+    private String string11;
+
+    /** The 32-bit integer 12. */
+    private Integer integer12;
+
+    /** The 64-bit integer 13. */
+    private Long long13;
+
+    /** The floating point number 14. */
+    private Double double14;
+
+    /** The flag 15. */
+    private Boolean boolean15;
+
+    /** The text 16. */
+    private String string16;
+
+    /** The 32-bit integer 17. */
+    private Integer integer17;
+
+    /** The 64-bit integer 18. */
+    private Long long18;
+
+    /** The floating point number 19. */
+    private Double double19;
+
+    /** The flag 20. */
+    private Boolean boolean20;
+
+    /** The text 21. */
+    private String string21;
+
+    /** The 32-bit integer 22. */
+    private Integer integer22;
+
+    /** The 64-bit integer 23. */
+    private Long long23;
+
+    /** The floating point number 24. */
+    private Double double24;
+
+    /** The flag 25. */
+    private Boolean boolean25;
+
+    /** The text 26. */
+    private String string26;
+
+    /** The 32-bit integer 27. */
+    private Integer integer27;
+
+    /** The 64-bit integer 28. */
+    private Long long28;
+
+    /** The floating point number 29. */
+    private Double double29;
+
+    /** The flag 30. */
+    private Boolean boolean30;
+
+    /** The text 31. */
+    private String string31;
+
+    /** The 32-bit integer 32. */
+    private Integer integer32;
+
+    /** The 64-bit integer 33. */
+    private Long long33;
+
+    /** The floating point number 34. */
+    private Double double34;
+
+    /** The flag 35. */
+    private Boolean boolean35;
+
+    /** The text 36. */
+    private String string36;
+
+    /** The 32-bit integer 37. */
+    private Integer integer37;
+
+    /** The 64-bit integer 38. */
+    private Long long38;
+
+    /** The floating point number 39. */
+    private Double double39;
+
+    /** The flag 40. */
+    private Boolean boolean40;
+
+    /** The text 41. */
+    private String string41;
+
+    /** The 32-bit integer 42. */
+    private Integer integer42;
+
+    /** The 64-bit integer 43. */
+    private Long long43;
+
+    /** The floating point number 44. */
+    private Double double44;
+
+    /** The flag 45. */
+    private Boolean boolean45;
+
+    /** The text 46. */
+    private String string46;
+
+    /** The 32-bit integer 47. */
+    private Integer integer47;
+
+    /** The 64-bit integer 48. */
+    private Long long48;
+
+    /** The floating point number 49. */
+    private Double double49;
+
+    /** The flag 50. */
+    private Boolean boolean50;
+
+    /** The text 51. */
+    private String string51;
+
+    /** The 32-bit integer 52. */
+    private Integer integer52;
+
+    /** The 64-bit integer 53. */
+    private Long long53;
+
+    /** The floating point number 54. */
+    private Double double54;
+
+    /** The flag 55. */
+    private Boolean boolean55;
+
+    /** The text 56. */
+    private String string56;
+
+    /** The 32-bit integer 57. */
+    private Integer integer57;
+
+    /** The 64-bit integer 58. */
+    private Long long58;
+
+    /** The floating point number 59. */
+    private Double double59;
+
+    /** The flag 60. */
+    private Boolean boolean60;
+
+    /** The text 61. */
+    private String string61;
+
+    /** The 32-bit integer 62. */
+    private Integer integer62;
+
+    /** The 64-bit integer 63. */
+    private Long long63;
+
+    /**
+     * @return The identifier.
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @param id The identifier.
+     */
+    public void setId(final Long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return The text 1.
+     */
+    public String getString01() {
+        return string01;
+    }
+
+    /**
+     * @param string01 The text 1.
+     */
+    public void setString01(final String string01) {
+        this.string01 = string01;
+    }
+
+    /**
+     * @return The 32-bit integer 2.
+     */
+    public Integer getInteger02() {
+        return integer02;
+    }
+
+    /**
+     * @param integer02 The 32-bit integer 2.
+     */
+    public void setInteger02(final Integer integer02) {
+        this.integer02 = integer02;
+    }
+
+    /**
+     * @return The 64-bit integer 3.
+     */
+    public Long getLong03() {
+        return long03;
+    }
+
+    /**
+     * @param long03 The 64-bit integer 3.
+     */
+    public void setLong03(final Long long03) {
+        this.long03 = long03;
+    }
+
+    /**
+     * @return The floating point number 4.
+     */
+    public Double getDouble04() {
+        return double04;
+    }
+
+    /**
+     * @param double04 The floating point number 4.
+     */
+    public void setDouble04(final Double double04) {
+        this.double04 = double04;
+    }
+
+    /**
+     * @return The flag 5.
+     */
+    public Boolean getBoolean05() {
+        return boolean05;
+    }
+
+    /**
+     * @param boolean05 The flag 5.
+     */
+    public void setBoolean05(final Boolean boolean05) {
+        this.boolean05 = boolean05;
+    }
+
+    /**
+     * @return The text 6.
+     */
+    public String getString06() {
+        return string06;
+    }
+
+    /**
+     * @param string06 The text 6.
+     */
+    public void setString06(final String string06) {
+        this.string06 = string06;
+    }
+
+    /**
+     * @return The 32-bit integer 7.
+     */
+    public Integer getInteger07() {
+        return integer07;
+    }
+
+    /**
+     * @param integer07 The 32-bit integer 7.
+     */
+    public void setInteger07(final Integer integer07) {
+        this.integer07 = integer07;
+    }
+
+    /**
+     * @return The 64-bit integer 8.
+     */
+    public Long getLong08() {
+        return long08;
+    }
+
+    /**
+     * @param long08 The 64-bit integer 8.
+     */
+    public void setLong08(final Long long08) {
+        this.long08 = long08;
+    }
+
+    /**
+     * @return The floating point number 9.
+     */
+    public Double getDouble09() {
+        return double09;
+    }
+
+    /**
+     * @param double09 The floating point number 9.
+     */
+    public void setDouble09(final Double double09) {
+        this.double09 = double09;
+    }
+
+    /**
+     * @return The flag 10.
+     */
+    public Boolean getBoolean10() {
+        return boolean10;
+    }
+
+    /**
+     * @param boolean10 The flag 10.
+     */
+    public void setBoolean10(final Boolean boolean10) {
+        this.boolean10 = boolean10;
+    }
+
+    /**
+     * @return The text 11.
+     */
+    public String getString11() {
+        return string11;
+    }
+
+    /**
+     * @param string11 The text 11.
+     */
+    public void setString11(final String string11) {
+        this.string11 = string11;
+    }
+
+    /**
+     * @return The 32-bit integer 12.
+     */
+    public Integer getInteger12() {
+        return integer12;
+    }
+
+    /**
+     * @param integer12 The 32-bit integer 12.
+     */
+    public void setInteger12(final Integer integer12) {
+        this.integer12 = integer12;
+    }
+
+    /**
+     * @return The 64-bit integer 13.
+     */
+    public Long getLong13() {
+        return long13;
+    }
+
+    /**
+     * @param long13 The 64-bit integer 13.
+     */
+    public void setLong13(final Long long13) {
+        this.long13 = long13;
+    }
+
+    /**
+     * @return The floating point number 14.
+     */
+    public Double getDouble14() {
+        return double14;
+    }
+
+    /**
+     * @param double14 The floating point number 14.
+     */
+    public void setDouble14(final Double double14) {
+        this.double14 = double14;
+    }
+
+    /**
+     * @return The flag 15.
+     */
+    public Boolean getBoolean15() {
+        return boolean15;
+    }
+
+    /**
+     * @param boolean15 The flag 15.
+     */
+    public void setBoolean15(final Boolean boolean15) {
+        this.boolean15 = boolean15;
+    }
+
+    /**
+     * @return The text 16.
+     */
+    public String getString16() {
+        return string16;
+    }
+
+    /**
+     * @param string16 The text 16.
+     */
+    public void setString16(final String string16) {
+        this.string16 = string16;
+    }
+
+    /**
+     * @return The 32-bit integer 17.
+     */
+    public Integer getInteger17() {
+        return integer17;
+    }
+
+    /**
+     * @param integer17 The 32-bit integer 17.
+     */
+    public void setInteger17(final Integer integer17) {
+        this.integer17 = integer17;
+    }
+
+    /**
+     * @return The 64-bit integer 18.
+     */
+    public Long getLong18() {
+        return long18;
+    }
+
+    /**
+     * @param long18 The 64-bit integer 18.
+     */
+    public void setLong18(final Long long18) {
+        this.long18 = long18;
+    }
+
+    /**
+     * @return The floating point number 19.
+     */
+    public Double getDouble19() {
+        return double19;
+    }
+
+    /**
+     * @param double19 The floating point number 19.
+     */
+    public void setDouble19(final Double double19) {
+        this.double19 = double19;
+    }
+
+    /**
+     * @return The flag 20.
+     */
+    public Boolean getBoolean20() {
+        return boolean20;
+    }
+
+    /**
+     * @param boolean20 The flag 20.
+     */
+    public void setBoolean20(final Boolean boolean20) {
+        this.boolean20 = boolean20;
+    }
+
+    /**
+     * @return The text 21.
+     */
+    public String getString21() {
+        return string21;
+    }
+
+    /**
+     * @param string21 The text 21.
+     */
+    public void setString21(final String string21) {
+        this.string21 = string21;
+    }
+
+    /**
+     * @return The 32-bit integer 22.
+     */
+    public Integer getInteger22() {
+        return integer22;
+    }
+
+    /**
+     * @param integer22 The 32-bit integer 22.
+     */
+    public void setInteger22(final Integer integer22) {
+        this.integer22 = integer22;
+    }
+
+    /**
+     * @return The 64-bit integer 23.
+     */
+    public Long getLong23() {
+        return long23;
+    }
+
+    /**
+     * @param long23 The 64-bit integer 23.
+     */
+    public void setLong23(final Long long23) {
+        this.long23 = long23;
+    }
+
+    /**
+     * @return The floating point number 24.
+     */
+    public Double getDouble24() {
+        return double24;
+    }
+
+    /**
+     * @param double24 The floating point number 24.
+     */
+    public void setDouble24(final Double double24) {
+        this.double24 = double24;
+    }
+
+    /**
+     * @return The flag 25.
+     */
+    public Boolean getBoolean25() {
+        return boolean25;
+    }
+
+    /**
+     * @param boolean25 The flag 25.
+     */
+    public void setBoolean25(final Boolean boolean25) {
+        this.boolean25 = boolean25;
+    }
+
+    /**
+     * @return The text 26.
+     */
+    public String getString26() {
+        return string26;
+    }
+
+    /**
+     * @param string26 The text 26.
+     */
+    public void setString26(final String string26) {
+        this.string26 = string26;
+    }
+
+    /**
+     * @return The 32-bit integer 27.
+     */
+    public Integer getInteger27() {
+        return integer27;
+    }
+
+    /**
+     * @param integer27 The 32-bit integer 27.
+     */
+    public void setInteger27(final Integer integer27) {
+        this.integer27 = integer27;
+    }
+
+    /**
+     * @return The 64-bit integer 28.
+     */
+    public Long getLong28() {
+        return long28;
+    }
+
+    /**
+     * @param long28 The 64-bit integer 28.
+     */
+    public void setLong28(final Long long28) {
+        this.long28 = long28;
+    }
+
+    /**
+     * @return The floating point number 29.
+     */
+    public Double getDouble29() {
+        return double29;
+    }
+
+    /**
+     * @param double29 The floating point number 29.
+     */
+    public void setDouble29(final Double double29) {
+        this.double29 = double29;
+    }
+
+    /**
+     * @return The flag 30.
+     */
+    public Boolean getBoolean30() {
+        return boolean30;
+    }
+
+    /**
+     * @param boolean30 The flag 30.
+     */
+    public void setBoolean30(final Boolean boolean30) {
+        this.boolean30 = boolean30;
+    }
+
+    /**
+     * @return The text 31.
+     */
+    public String getString31() {
+        return string31;
+    }
+
+    /**
+     * @param string31 The text 31.
+     */
+    public void setString31(final String string31) {
+        this.string31 = string31;
+    }
+
+    /**
+     * @return The 32-bit integer 32.
+     */
+    public Integer getInteger32() {
+        return integer32;
+    }
+
+    /**
+     * @param integer32 The 32-bit integer 32.
+     */
+    public void setInteger32(final Integer integer32) {
+        this.integer32 = integer32;
+    }
+
+    /**
+     * @return The 64-bit integer 33.
+     */
+    public Long getLong33() {
+        return long33;
+    }
+
+    /**
+     * @param long33 The 64-bit integer 33.
+     */
+    public void setLong33(final Long long33) {
+        this.long33 = long33;
+    }
+
+    /**
+     * @return The floating point number 34.
+     */
+    public Double getDouble34() {
+        return double34;
+    }
+
+    /**
+     * @param double34 The floating point number 34.
+     */
+    public void setDouble34(final Double double34) {
+        this.double34 = double34;
+    }
+
+    /**
+     * @return The flag 35.
+     */
+    public Boolean getBoolean35() {
+        return boolean35;
+    }
+
+    /**
+     * @param boolean35 The flag 35.
+     */
+    public void setBoolean35(final Boolean boolean35) {
+        this.boolean35 = boolean35;
+    }
+
+    /**
+     * @return The text 36.
+     */
+    public String getString36() {
+        return string36;
+    }
+
+    /**
+     * @param string36 The text 36.
+     */
+    public void setString36(final String string36) {
+        this.string36 = string36;
+    }
+
+    /**
+     * @return The 32-bit integer 37.
+     */
+    public Integer getInteger37() {
+        return integer37;
+    }
+
+    /**
+     * @param integer37 The 32-bit integer 37.
+     */
+    public void setInteger37(final Integer integer37) {
+        this.integer37 = integer37;
+    }
+
+    /**
+     * @return The 64-bit integer 38.
+     */
+    public Long getLong38() {
+        return long38;
+    }
+
+    /**
+     * @param long38 The 64-bit integer 38.
+     */
+    public void setLong38(final Long long38) {
+        this.long38 = long38;
+    }
+
+    /**
+     * @return The floating point number 39.
+     */
+    public Double getDouble39() {
+        return double39;
+    }
+
+    /**
+     * @param double39 The floating point number 39.
+     */
+    public void setDouble39(final Double double39) {
+        this.double39 = double39;
+    }
+
+    /**
+     * @return The flag 40.
+     */
+    public Boolean getBoolean40() {
+        return boolean40;
+    }
+
+    /**
+     * @param boolean40 The flag 40.
+     */
+    public void setBoolean40(final Boolean boolean40) {
+        this.boolean40 = boolean40;
+    }
+
+    /**
+     * @return The text 41.
+     */
+    public String getString41() {
+        return string41;
+    }
+
+    /**
+     * @param string41 The text 41.
+     */
+    public void setString41(final String string41) {
+        this.string41 = string41;
+    }
+
+    /**
+     * @return The 32-bit integer 42.
+     */
+    public Integer getInteger42() {
+        return integer42;
+    }
+
+    /**
+     * @param integer42 The 32-bit integer 42.
+     */
+    public void setInteger42(final Integer integer42) {
+        this.integer42 = integer42;
+    }
+
+    /**
+     * @return The 64-bit integer 43.
+     */
+    public Long getLong43() {
+        return long43;
+    }
+
+    /**
+     * @param long43 The 64-bit integer 43.
+     */
+    public void setLong43(final Long long43) {
+        this.long43 = long43;
+    }
+
+    /**
+     * @return The floating point number 44.
+     */
+    public Double getDouble44() {
+        return double44;
+    }
+
+    /**
+     * @param double44 The floating point number 44.
+     */
+    public void setDouble44(final Double double44) {
+        this.double44 = double44;
+    }
+
+    /**
+     * @return The flag 45.
+     */
+    public Boolean getBoolean45() {
+        return boolean45;
+    }
+
+    /**
+     * @param boolean45 The flag 45.
+     */
+    public void setBoolean45(final Boolean boolean45) {
+        this.boolean45 = boolean45;
+    }
+
+    /**
+     * @return The text 46.
+     */
+    public String getString46() {
+        return string46;
+    }
+
+    /**
+     * @param string46 The text 46.
+     */
+    public void setString46(final String string46) {
+        this.string46 = string46;
+    }
+
+    /**
+     * @return The 32-bit integer 47.
+     */
+    public Integer getInteger47() {
+        return integer47;
+    }
+
+    /**
+     * @param integer47 The 32-bit integer 47.
+     */
+    public void setInteger47(final Integer integer47) {
+        this.integer47 = integer47;
+    }
+
+    /**
+     * @return The 64-bit integer 48.
+     */
+    public Long getLong48() {
+        return long48;
+    }
+
+    /**
+     * @param long48 The 64-bit integer 48.
+     */
+    public void setLong48(final Long long48) {
+        this.long48 = long48;
+    }
+
+    /**
+     * @return The floating point number 49.
+     */
+    public Double getDouble49() {
+        return double49;
+    }
+
+    /**
+     * @param double49 The floating point number 49.
+     */
+    public void setDouble49(final Double double49) {
+        this.double49 = double49;
+    }
+
+    /**
+     * @return The flag 50.
+     */
+    public Boolean getBoolean50() {
+        return boolean50;
+    }
+
+    /**
+     * @param boolean50 The flag 50.
+     */
+    public void setBoolean50(final Boolean boolean50) {
+        this.boolean50 = boolean50;
+    }
+
+    /**
+     * @return The text 51.
+     */
+    public String getString51() {
+        return string51;
+    }
+
+    /**
+     * @param string51 The text 51.
+     */
+    public void setString51(final String string51) {
+        this.string51 = string51;
+    }
+
+    /**
+     * @return The 32-bit integer 52.
+     */
+    public Integer getInteger52() {
+        return integer52;
+    }
+
+    /**
+     * @param integer52 The 32-bit integer 52.
+     */
+    public void setInteger52(final Integer integer52) {
+        this.integer52 = integer52;
+    }
+
+    /**
+     * @return The 64-bit integer 53.
+     */
+    public Long getLong53() {
+        return long53;
+    }
+
+    /**
+     * @param long53 The 64-bit integer 53.
+     */
+    public void setLong53(final Long long53) {
+        this.long53 = long53;
+    }
+
+    /**
+     * @return The floating point number 54.
+     */
+    public Double getDouble54() {
+        return double54;
+    }
+
+    /**
+     * @param double54 The floating point number 54.
+     */
+    public void setDouble54(final Double double54) {
+        this.double54 = double54;
+    }
+
+    /**
+     * @return The flag 55.
+     */
+    public Boolean getBoolean55() {
+        return boolean55;
+    }
+
+    /**
+     * @param boolean55 The flag 55.
+     */
+    public void setBoolean55(final Boolean boolean55) {
+        this.boolean55 = boolean55;
+    }
+
+    /**
+     * @return The text 56.
+     */
+    public String getString56() {
+        return string56;
+    }
+
+    /**
+     * @param string56 The text 56.
+     */
+    public void setString56(final String string56) {
+        this.string56 = string56;
+    }
+
+    /**
+     * @return The 32-bit integer 57.
+     */
+    public Integer getInteger57() {
+        return integer57;
+    }
+
+    /**
+     * @param integer57 The 32-bit integer 57.
+     */
+    public void setInteger57(final Integer integer57) {
+        this.integer57 = integer57;
+    }
+
+    /**
+     * @return The 64-bit integer 58.
+     */
+    public Long getLong58() {
+        return long58;
+    }
+
+    /**
+     * @param long58 The 64-bit integer 58.
+     */
+    public void setLong58(final Long long58) {
+        this.long58 = long58;
+    }
+
+    /**
+     * @return The floating point number 59.
+     */
+    public Double getDouble59() {
+        return double59;
+    }
+
+    /**
+     * @param double59 The floating point number 59.
+     */
+    public void setDouble59(final Double double59) {
+        this.double59 = double59;
+    }
+
+    /**
+     * @return The flag 60.
+     */
+    public Boolean getBoolean60() {
+        return boolean60;
+    }
+
+    /**
+     * @param boolean60 The flag 60.
+     */
+    public void setBoolean60(final Boolean boolean60) {
+        this.boolean60 = boolean60;
+    }
+
+    /**
+     * @return The text 61.
+     */
+    public String getString61() {
+        return string61;
+    }
+
+    /**
+     * @param string61 The text 61.
+     */
+    public void setString61(final String string61) {
+        this.string61 = string61;
+    }
+
+    /**
+     * @return The 32-bit integer 62.
+     */
+    public Integer getInteger62() {
+        return integer62;
+    }
+
+    /**
+     * @param integer62 The 32-bit integer 62.
+     */
+    public void setInteger62(final Integer integer62) {
+        this.integer62 = integer62;
+    }
+
+    /**
+     * @return The 64-bit integer 63.
+     */
+    public Long getLong63() {
+        return long63;
+    }
+
+    /**
+     * @param long63 The 64-bit integer 63.
+     */
+    public void setLong63(final Long long63) {
+        this.long63 = long63;
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark.servlet;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Minimal in-memory {@link HttpServletRequest} of a request to a BushyTail servlet.
+ * <p>
+ * The servlet is mapped to {@value #SERVLET_PATH} within the context {@value #CONTEXT_PATH}. Instances are cheap to create,
+ * so that every benchmark invocation can use a fresh request with an unread body.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BenchmarkHttpServletRequest implements HttpServletRequest {
+
+    /** The context path of the web application. */
+    public static final String CONTEXT_PATH = "/bushytail";
+
+    /** The path of the BushyTail servlet within the web application. */
+    public static final String SERVLET_PATH = "/odata";
+
+    /** The name of the server. */
+    private static final String SERVER_NAME = "localhost";
+
+    /** The port of the server. */
+    private static final int SERVER_PORT = 8080;
+
+    /** The character encoding of request bodies. */
+    private static final String CHARACTER_ENCODING = "UTF-8";
+
+    /** The HTTP method. */
+    private final String method;
+
+    /** The path below the servlet path. */
+    private final String pathInfo;
+
+    /** The query string or {@code null} if there is none. */
+    private final String queryString;
+
+    /** The request headers by case-insensitive name. */
+    private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+    /** The request attributes. */
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+    /** The request body. */
+    private final byte[] body;
+
+    /** The HTTP session. */
+    private final HttpSession session;
+
+    /** The stream of the request body. */
+    private final ServletInputStream inputStream;
+
+    /**
+     * Constructs {@link BenchmarkHttpServletRequest}.
+     *
+     * @param method The HTTP method.
+     * @param pathInfo The path below the servlet path.
+     * @param queryString The query string or {@code null} if there is none.
+     * @param headers The request headers.
+     * @param body The request body.
+     * @param session The HTTP session.
+     */
+    public BenchmarkHttpServletRequest(final String method, final String pathInfo, final String queryString, final Map<String, String> headers,
+                                       final byte[] body, final HttpSession session) {
+        this.method = method;
+        this.pathInfo = pathInfo;
+        this.queryString = queryString;
+        this.headers.putAll(headers);
+        this.body = body;
+        this.session = session;
+
+        final ByteArrayInputStream bodyStream = new ByteArrayInputStream(body);
+        inputStream = new ServletInputStream() {
+            @Override
+            public int read() {
+                return bodyStream.read();
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                return bodyStream.read(b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public String getAuthType() {
+        return null;
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        return null;
+    }
+
+    @Override
+    public long getDateHeader(final String name) {
+        return -1;
+    }
+
+    @Override
+    public String getHeader(final String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public Enumeration getHeaders(final String name) {
+        final String value = headers.get(name);
+        return Collections.enumeration(value == null ? Collections.<String>emptyList() : Collections.singletonList(value));
+    }
+
+    @Override
+    public Enumeration getHeaderNames() {
+        return Collections.enumeration(headers.keySet());
+    }
+
+    @Override
+    public int getIntHeader(final String name) {
+        final String value = headers.get(name);
+        return value == null ? -1 : Integer.parseInt(value);
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getPathInfo() {
+        return pathInfo;
+    }
+
+    @Override
+    public String getPathTranslated() {
+        return null;
+    }
+
+    @Override
+    public String getContextPath() {
+        return CONTEXT_PATH;
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public String getRemoteUser() {
+        return null;
+    }
+
+    @Override
+    public boolean isUserInRole(final String role) {
+        return false;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return null;
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+        return session.getId();
+    }
+
+    @Override
+    public String getRequestURI() {
+        return CONTEXT_PATH + SERVLET_PATH + pathInfo;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        return new StringBuffer(getScheme()).append("://").append(SERVER_NAME).append(':').append(SERVER_PORT).append(getRequestURI());
+    }
+
+    @Override
+    public String getServletPath() {
+        return SERVLET_PATH;
+    }
+
+    @Override
+    public HttpSession getSession(final boolean create) {
+        return session;
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return session;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+        return true;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+        return true;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public boolean isRequestedSessionIdFromUrl() {
+        return false;
+    }
+
+    @Override
+    public Object getAttribute(final String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration getAttributeNames() {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return CHARACTER_ENCODING;
+    }
+
+    @Override
+    public void setCharacterEncoding(final String env) throws UnsupportedEncodingException {
+        throw new UnsupportedEncodingException("Requests are always encoded in " + CHARACTER_ENCODING);
+    }
+
+    @Override
+    public int getContentLength() {
+        return body.length;
+    }
+
+    @Override
+    public String getContentType() {
+        return headers.get("Content-Type");
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public String getParameter(final String name) {
+        return null;
+    }
+
+    @Override
+    public Enumeration getParameterNames() {
+        return Collections.enumeration(Collections.<String>emptyList());
+    }
+
+    @Override
+    public String[] getParameterValues(final String name) {
+        return null;
+    }
+
+    @Override
+    public Map getParameterMap() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public String getScheme() {
+        return "http";
+    }
+
+    @Override
+    public String getServerName() {
+        return SERVER_NAME;
+    }
+
+    @Override
+    public int getServerPort() {
+        return SERVER_PORT;
+    }
+
+    @Override
+    public BufferedReader getReader() throws UnsupportedEncodingException {
+        return new BufferedReader(new InputStreamReader(inputStream, CHARACTER_ENCODING));
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return SERVER_NAME;
+    }
+
+    @Override
+    public void setAttribute(final String name, final Object o) {
+        attributes.put(name, o);
+    }
+
+    @Override
+    public void removeAttribute(final String name) {
+        attributes.remove(name);
+    }
+
+    @Override
+    public Locale getLocale() {
+        return Locale.ENGLISH;
+    }
+
+    @Override
+    public Enumeration getLocales() {
+        return Collections.enumeration(Collections.singletonList(Locale.ENGLISH));
+    }
+
+    @Override
+    public boolean isSecure() {
+        return false;
+    }
+
+    @Override
+    public RequestDispatcher getRequestDispatcher(final String path) {
+        return null;
+    }
+
+    @Override
+    @Deprecated
+    public String getRealPath(final String path) {
+        return null;
+    }
+
+    @Override
+    public int getRemotePort() {
+        return 49152;
+    }
+
+    @Override
+    public String getLocalName() {
+        return SERVER_NAME;
+    }
+
+    @Override
+    public String getLocalAddr() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public int getLocalPort() {
+        return SERVER_PORT;
+    }
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.benchmark.servlet;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Minimal in-memory {@link HttpServletResponse} which keeps the status and headers and discards the body.
+ * <p>
+ * Only the number of body bytes is counted, so that the benchmarks neither measure buffering nor let the JIT
+ * eliminate the serialization of the body.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BenchmarkHttpServletResponse implements HttpServletResponse {
+
+    /** The response headers by case-insensitive name. */
+    private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+    /** The stream which counts the body bytes. */
+    private final CountingOutputStream outputStream = new CountingOutputStream();
+
+    /** The HTTP status code. */
+    private int status = SC_OK;
+
+    /** The character encoding of the body. */
+    private String characterEncoding = "ISO-8859-1";
+
+    /** The content type of the body. */
+    private String contentType;
+
+    /** The locale of the body. */
+    private Locale locale = Locale.ENGLISH;
+
+    /** The writer of the body or {@code null} if it has not been requested. */
+    private PrintWriter writer;
+
+    /**
+     * @return The HTTP status code.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the first value of a response header.
+     *
+     * @param name The name of the header.
+     * @return The first value or {@code null} if the header has not been set.
+     */
+    public String getHeader(final String name) {
+        final List<String> values = headers.get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    /**
+     * @return The number of body bytes written so far.
+     */
+    public long getBodyLength() {
+        if (writer != null) {
+            writer.flush();
+        }
+
+        return outputStream.count;
+    }
+
+    @Override
+    public void addCookie(final Cookie cookie) {
+        addHeader("Set-Cookie", cookie.getName() + "=" + cookie.getValue());
+    }
+
+    @Override
+    public boolean containsHeader(final String name) {
+        return headers.containsKey(name);
+    }
+
+    @Override
+    public String encodeURL(final String url) {
+        return url;
+    }
+
+    @Override
+    public String encodeRedirectURL(final String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeUrl(final String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeRedirectUrl(final String url) {
+        return url;
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) {
+        status = sc;
+    }
+
+    @Override
+    public void sendError(final int sc) {
+        status = sc;
+    }
+
+    @Override
+    public void sendRedirect(final String location) {
+        status = SC_FOUND;
+        setHeader("Location", location);
+    }
+
+    @Override
+    public void setDateHeader(final String name, final long date) {
+        setHeader(name, String.valueOf(date));
+    }
+
+    @Override
+    public void addDateHeader(final String name, final long date) {
+        addHeader(name, String.valueOf(date));
+    }
+
+    @Override
+    public void setHeader(final String name, final String value) {
+        headers.remove(name);
+        addHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(final String name, final String value) {
+        List<String> values = headers.get(name);
+        if (values == null) {
+            values = new ArrayList<String>(1);
+            headers.put(name, values);
+        }
+
+        values.add(value);
+    }
+
+    @Override
+    public void setIntHeader(final String name, final int value) {
+        setHeader(name, String.valueOf(value));
+    }
+
+    @Override
+    public void addIntHeader(final String name, final int value) {
+        addHeader(name, String.valueOf(value));
+    }
+
+    @Override
+    public void setStatus(final int sc) {
+        status = sc;
+    }
+
+    @Override
+    @Deprecated
+    public void setStatus(final int sc, final String sm) {
+        status = sc;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws UnsupportedEncodingException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, characterEncoding));
+        }
+
+        return writer;
+    }
+
+    @Override
+    public void setCharacterEncoding(final String charset) {
+        characterEncoding = charset;
+    }
+
+    @Override
+    public void setContentLength(final int len) {
+        setIntHeader("Content-Length", len);
+    }
+
+    @Override
+    public void setContentType(final String type) {
+        contentType = type;
+        setHeader("Content-Type", type);
+    }
+
+    @Override
+    public void setBufferSize(final int size) {
+        // The body is not buffered
+    }
+
+    @Override
+    public int getBufferSize() {
+        return 0;
+    }
+
+    @Override
+    public void flushBuffer() {
+        // The body is not buffered
+    }
+
+    @Override
+    public void resetBuffer() {
+        outputStream.count = 0;
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return outputStream.count > 0;
+    }
+
+    @Override
+    public void reset() {
+        headers.clear();
+        status = SC_OK;
+        resetBuffer();
+    }
+
+    @Override
+    public void setLocale(final Locale loc) {
+        locale = loc;
+    }
+
+    @Override
+    public Locale getLocale() {
+        return locale;
+    }
+
+
+    /**
+     * {@link ServletOutputStream} which only counts the written bytes.
+     */
+    private static final class CountingOutputStream extends ServletOutputStream {
+
+        /** The number of written bytes. */
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+
+    }
+
+}
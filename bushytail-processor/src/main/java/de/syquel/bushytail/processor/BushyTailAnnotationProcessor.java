@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.processor;
+
+import de.syquel.bushytail.processor.exception.BushyTailProcessorException;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * Annotation processor which derives the OData metadata and codec of each JPA {@code @Entity} at compile time.
+ * <p>
+ * For every entity {@code com.example.Customer}, a class {@code com.example.Customer_BushyTail} is generated. It describes
+ * the OData entity type and entity set by the same rules as {@code OlingoMetadataFactory} and accesses the entity's properties
+ * through direct getter and setter calls. {@code BushyTailBuilder} picks these classes up automatically, so that neither
+ * building the service nor serializing entities reflects over the entity classes.
+ * </p>
+ * <p>
+ * The processor is registered as a service, so it is enabled by adding {@code bushytail-processor} to the compile classpath.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+@SupportedAnnotationTypes("javax.persistence.Entity")
+public class BushyTailAnnotationProcessor extends AbstractProcessor {
+
+    /** The candidates of the {@code @Generated} annotation, in order of preference. */
+    private static final String[] GENERATED_ANNOTATIONS = {"javax.annotation.Generated", "javax.annotation.processing.Generated"};
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        // The processor only reads annotations and members, which are stable across source versions
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (final TypeElement annotation : annotations) {
+            for (final Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    continue;
+                }
+
+                try {
+                    generate((TypeElement) element);
+                } catch (BushyTailProcessorException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), element);
+                } catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write generated class: " + e.getMessage(), element);
+                }
+            }
+        }
+
+        // Other processors, e.g. of the JPA static metamodel, also need to see the entities
+        return false;
+    }
+
+    /**
+     * Determine the {@code @Generated} annotation, which has moved between Java versions.
+     *
+     * @return The qualified name of the annotation or {@code null} if none is available.
+     */
+    private String getGeneratedAnnotation() {
+        for (final String generatedAnnotation : GENERATED_ANNOTATIONS) {
+            if (processingEnv.getElementUtils().getTypeElement(generatedAnnotation) != null) {
+                return generatedAnnotation;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Generate the class of a JPA entity.
+     *
+     * @param entity The JPA entity.
+     * @throws BushyTailProcessorException if the JPA entity cannot be mapped to OData.
+     * @throws IOException if the generated class cannot be written.
+     */
+    private void generate(final TypeElement entity) throws BushyTailProcessorException, IOException {
+        final JpaEntityModel model = JpaEntityModel.create(processingEnv, entity);
+        final JpaEntitySourceWriter sourceWriter = new JpaEntitySourceWriter(processingEnv.getTypeUtils(), model, getGeneratedAnnotation());
+
+        final JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(sourceWriter.getQualifiedClassName(), entity);
+        final Writer out = sourceFile.openWriter();
+        try {
+            sourceWriter.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+}
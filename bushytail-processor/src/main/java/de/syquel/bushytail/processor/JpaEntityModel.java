@@ -0,0 +1,569 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.processor;
+
+import de.syquel.bushytail.processor.exception.BushyTailProcessorException;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.beans.Introspector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compile-time model of a JPA entity, derived from its annotations by the same rules which
+ * {@code OlingoMetadataFactory} applies through reflection at runtime.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class JpaEntityModel {
+
+    /** The package of the JPA annotations. */
+    private static final String JPA_PACKAGE = "javax.persistence.";
+
+    /** The OData primitive types of the Java types which are mapped directly, as in {@code OlingoMetadataFactory}. */
+    private static final Map<String, String> JAVA_TO_ODATA_TYPE_MAP = new HashMap<String, String>();
+    static {
+        JAVA_TO_ODATA_TYPE_MAP.put("java.lang.String", "String");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.lang.Short", "Int16");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.lang.Integer", "Int32");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.lang.Long", "Int64");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.math.BigInteger", "Int64");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.util.Date", "Date");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.util.Calendar", "Date");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.sql.Timestamp", "Date");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.sql.Time", "Date");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.lang.Double", "Double");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.lang.Boolean", "Boolean");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.lang.Byte", "Stream");
+        JAVA_TO_ODATA_TYPE_MAP.put("java.util.UUID", "Guid");
+    }
+
+    /** The utilities of the compiler. */
+    private final Types types;
+
+    /** The element utilities of the compiler. */
+    private final Elements elements;
+
+    /** The JPA entity. */
+    private final TypeElement entity;
+
+    /** The structural and navigation properties in declaration order. */
+    private final List<Property> properties = new ArrayList<Property>();
+
+    /** The names of the key properties. */
+    private final List<String> keyPropertyNames = new ArrayList<String>();
+
+    /** The JavaBeans properties by name. */
+    private final Map<String, BeanProperty> beanProperties = new LinkedHashMap<String, BeanProperty>();
+
+    /** The name of the OData entity set. */
+    private String entitySetName;
+
+    /** The name of the field annotated with {@code @Version} or {@code null}. */
+    private String versionFieldName;
+
+    /** Whether the entity can be instantiated from its package. */
+    private boolean instantiable;
+
+    /**
+     * Constructs {@link JpaEntityModel}.
+     *
+     * @param processingEnv The processing environment.
+     * @param entity The JPA entity.
+     */
+    private JpaEntityModel(final ProcessingEnvironment processingEnv, final TypeElement entity) {
+        this.types = processingEnv.getTypeUtils();
+        this.elements = processingEnv.getElementUtils();
+        this.entity = entity;
+    }
+
+    /**
+     * Derive the model of a JPA entity.
+     *
+     * @param processingEnv The processing environment.
+     * @param entity The JPA entity.
+     * @return The model.
+     * @throws BushyTailProcessorException if the JPA entity cannot be mapped to OData.
+     */
+    static JpaEntityModel create(final ProcessingEnvironment processingEnv, final TypeElement entity) throws BushyTailProcessorException {
+        final JpaEntityModel model = new JpaEntityModel(processingEnv, entity);
+
+        if (entity.getModifiers().contains(Modifier.PRIVATE)) {
+            throw new BushyTailProcessorException("Entity must not be private");
+        }
+
+        model.entitySetName = model.getTableName(entity);
+        model.instantiable = model.isInstantiable();
+
+        for (final VariableElement field : ElementFilter.fieldsIn(entity.getEnclosedElements())) {
+            try {
+                model.processField(field);
+            } catch (BushyTailProcessorException e) {
+                throw new BushyTailProcessorException("Cannot process property '" + field.getSimpleName() + "': " + e.getMessage());
+            }
+        }
+
+        model.processBeanProperties();
+
+        return model;
+    }
+
+    /**
+     * @return The JPA entity.
+     */
+    TypeElement getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return The structural and navigation properties in declaration order.
+     */
+    List<Property> getProperties() {
+        return Collections.unmodifiableList(properties);
+    }
+
+    /**
+     * @return The names of the key properties.
+     */
+    List<String> getKeyPropertyNames() {
+        return Collections.unmodifiableList(keyPropertyNames);
+    }
+
+    /**
+     * @return The JavaBeans properties.
+     */
+    Iterable<BeanProperty> getBeanProperties() {
+        return beanProperties.values();
+    }
+
+    /**
+     * @return The name of the OData entity set.
+     */
+    String getEntitySetName() {
+        return entitySetName;
+    }
+
+    /**
+     * @return The name of the field annotated with {@code @Version} or {@code null}.
+     */
+    String getVersionFieldName() {
+        return versionFieldName;
+    }
+
+    /**
+     * @return Whether the entity can be instantiated from its package.
+     */
+    boolean isEntityInstantiable() {
+        return instantiable;
+    }
+
+    /**
+     * Derive the OData property of a field.
+     *
+     * @param field The field.
+     * @throws BushyTailProcessorException if the field cannot be mapped to OData.
+     */
+    private void processField(final VariableElement field) throws BushyTailProcessorException {
+        final String propertyName = field.getSimpleName().toString();
+        final TypeMirror fieldType = field.asType();
+
+        // Determine if field is collection or Enumeration and assign actual type
+        final TypeMirror propertyType;
+        final boolean isCollection;
+        final AnnotationMirror enumerated = getAnnotation(field, "Enumerated");
+        if (enumerated != null) {
+            isCollection = isCollection(fieldType);
+
+            final String enumType = getAnnotationValue(enumerated, "value").toString();
+            if (enumType.endsWith("ORDINAL")) {
+                propertyType = elements.getTypeElement("java.lang.Integer").asType();
+            } else {
+                propertyType = elements.getTypeElement("java.lang.String").asType();
+            }
+        } else if (isCollection(fieldType)) {
+            propertyType = getElementType(fieldType, propertyName);
+            isCollection = true;
+        } else {
+            propertyType = fieldType;
+            isCollection = false;
+        }
+
+        if (propertyType.getKind() != TypeKind.DECLARED) {
+            throw new BushyTailProcessorException("Could not determine OData type for type '" + propertyType + "'");
+        }
+
+        final String javaClassName = types.erasure(propertyType).toString();
+        final String primitiveTypeKind = JAVA_TO_ODATA_TYPE_MAP.get(javaClassName);
+
+        // Sync JPA Column attributes with OData property
+        final AnnotationMirror column = getAnnotation(field, "Column");
+        final boolean isNullable = column == null || (Boolean) getAnnotationValue(column, "nullable");
+
+        final String mappingPartner = getMappingPartner(field, fieldType);
+        if (mappingPartner == null) {
+            properties.add(new Property(propertyName, javaClassName, primitiveTypeKind, isCollection, isNullable, null, null));
+        } else {
+            final TypeElement targetEntity = (TypeElement) types.asElement(propertyType);
+            properties.add(new Property(propertyName, javaClassName, primitiveTypeKind, isCollection, isNullable, mappingPartner,
+                    getTableName(targetEntity)));
+        }
+
+        if (getAnnotation(field, "Id") != null) {
+            keyPropertyNames.add(propertyName);
+        }
+        if (versionFieldName == null && getAnnotation(field, "Version") != null) {
+            versionFieldName = propertyName;
+        }
+    }
+
+    /**
+     * Determine the name of the partner property of a relationship field.
+     *
+     * @param field The field.
+     * @param fieldType The declared type of the field.
+     * @return The name of the partner property or {@code null} if the field is not a relationship.
+     * @throws BushyTailProcessorException if the partner cannot be determined.
+     */
+    private String getMappingPartner(final VariableElement field, final TypeMirror fieldType) throws BushyTailProcessorException {
+        final String fieldName = field.getSimpleName().toString();
+
+        String mappingPartner = null;
+        if (getAnnotation(field, "ManyToOne") != null) {
+            mappingPartner = findInverseField(types.asElement(fieldType), "OneToMany", fieldName);
+        } else if (getAnnotation(field, "OneToMany") != null) {
+            mappingPartner = getAnnotationValue(getAnnotation(field, "OneToMany"), "mappedBy").toString();
+        } else if (getAnnotation(field, "OneToOne") != null) {
+            mappingPartner = getAnnotationValue(getAnnotation(field, "OneToOne"), "mappedBy").toString();
+        } else if (getAnnotation(field, "ManyToMany") != null) {
+            mappingPartner = getAnnotationValue(getAnnotation(field, "ManyToMany"), "mappedBy").toString();
+
+            if (mappingPartner.isEmpty()) {
+                if (!isCollection(fieldType)) {
+                    throw new BushyTailProcessorException("Field '" + fieldName + "' has to be a Collection.");
+                }
+
+                mappingPartner = findInverseField(types.asElement(getElementType(fieldType, fieldName)), "ManyToMany", fieldName);
+            }
+        } else {
+            return null;
+        }
+
+        if (mappingPartner == null || mappingPartner.isEmpty()) {
+            throw new BushyTailProcessorException("Cannot determine mapping partner for Field '" + fieldName + "'");
+        }
+
+        return mappingPartner;
+    }
+
+    /**
+     * Find the field of a related entity which maps a relationship by name.
+     *
+     * @param relatedEntity The related entity.
+     * @param annotationName The simple name of the relationship annotation of the inverse side.
+     * @param mappedBy The name of the owning field.
+     * @return The name of the inverse field or {@code null} if there is none.
+     */
+    private String findInverseField(final Element relatedEntity, final String annotationName, final String mappedBy) {
+        if (relatedEntity == null) {
+            return null;
+        }
+
+        for (final VariableElement relatedField : ElementFilter.fieldsIn(relatedEntity.getEnclosedElements())) {
+            final AnnotationMirror mapping = getAnnotation(relatedField, annotationName);
+            if (mapping != null && mappedBy.equals(getAnnotationValue(mapping, "mappedBy").toString())) {
+                return relatedField.getSimpleName().toString();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Derive the JavaBeans properties from the public getters and setters, as the bean introspection would.
+     */
+    private void processBeanProperties() {
+        final DeclaredType entityType = (DeclaredType) entity.asType();
+
+        final Map<String, ExecutableElement> getters = new LinkedHashMap<String, ExecutableElement>();
+        final Map<String, List<ExecutableElement>> setters = new HashMap<String, List<ExecutableElement>>();
+        for (final ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(entity))) {
+            final Element owner = method.getEnclosingElement();
+            if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC)
+                    || ((TypeElement) owner).getQualifiedName().contentEquals("java.lang.Object")) {
+                continue;
+            }
+
+            final String methodName = method.getSimpleName().toString();
+            final ExecutableType methodType = (ExecutableType) types.asMemberOf(entityType, method);
+            final int parameterCount = methodType.getParameterTypes().size();
+            final TypeKind returnKind = methodType.getReturnType().getKind();
+
+            if (parameterCount == 0 && methodName.startsWith("get") && methodName.length() > 3 && returnKind != TypeKind.VOID) {
+                getters.put(Introspector.decapitalize(methodName.substring(3)), method);
+            } else if (parameterCount == 0 && methodName.startsWith("is") && methodName.length() > 2 && returnKind == TypeKind.BOOLEAN) {
+                getters.put(Introspector.decapitalize(methodName.substring(2)), method);
+            } else if (parameterCount == 1 && methodName.startsWith("set") && methodName.length() > 3 && returnKind == TypeKind.VOID) {
+                final String propertyName = Introspector.decapitalize(methodName.substring(3));
+
+                List<ExecutableElement> propertySetters = setters.get(propertyName);
+                if (propertySetters == null) {
+                    propertySetters = new ArrayList<ExecutableElement>();
+                    setters.put(propertyName, propertySetters);
+                }
+                propertySetters.add(method);
+            }
+        }
+
+        for (final Map.Entry<String, ExecutableElement> getter : getters.entrySet()) {
+            final TypeMirror propertyType = ((ExecutableType) types.asMemberOf(entityType, getter.getValue())).getReturnType();
+
+            // As with the bean introspection, a setter only belongs to the property if its type matches the getter
+            ExecutableElement matchingSetter = null;
+            final List<ExecutableElement> propertySetters = setters.remove(getter.getKey());
+            if (propertySetters != null) {
+                for (final ExecutableElement setter : propertySetters) {
+                    final TypeMirror parameterType = ((ExecutableType) types.asMemberOf(entityType, setter)).getParameterTypes().get(0);
+                    if (types.isSameType(types.erasure(parameterType), types.erasure(propertyType))) {
+                        matchingSetter = setter;
+                        break;
+                    }
+                }
+            }
+
+            beanProperties.put(getter.getKey(), new BeanProperty(getter.getKey(), types.erasure(propertyType),
+                    getter.getValue().getSimpleName().toString(), matchingSetter == null ? null : matchingSetter.getSimpleName().toString()));
+        }
+        for (final Map.Entry<String, List<ExecutableElement>> setter : setters.entrySet()) {
+            final ExecutableElement method = setter.getValue().get(0);
+            final TypeMirror propertyType = ((ExecutableType) types.asMemberOf(entityType, method)).getParameterTypes().get(0);
+
+            beanProperties.put(setter.getKey(), new BeanProperty(setter.getKey(), types.erasure(propertyType), null,
+                    method.getSimpleName().toString()));
+        }
+    }
+
+    /**
+     * @return Whether the entity has a no-argument constructor which is accessible from its package.
+     */
+    private boolean isInstantiable() {
+        if (entity.getModifiers().contains(Modifier.ABSTRACT)
+                || (entity.getNestingKind() == NestingKind.MEMBER && !entity.getModifiers().contains(Modifier.STATIC))) {
+            return false;
+        }
+
+        final List<ExecutableElement> constructors = ElementFilter.constructorsIn(entity.getEnclosedElements());
+        for (final ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty()) {
+                return !constructor.getModifiers().contains(Modifier.PRIVATE);
+            }
+        }
+
+        return constructors.isEmpty();
+    }
+
+    /**
+     * Determine the table name of a JPA entity, which is the name of its OData entity set.
+     *
+     * @param type The JPA entity.
+     * @return The table name.
+     * @throws BushyTailProcessorException if the {@code @Table} annotation is missing.
+     */
+    private String getTableName(final TypeElement type) throws BushyTailProcessorException {
+        final AnnotationMirror table = getAnnotation(type, "Table");
+        final String tableName = table == null ? "" : getAnnotationValue(table, "name").toString();
+        if (tableName.isEmpty()) {
+            throw new BushyTailProcessorException("Could not determine EntitySet name: @Table annotation is missing! (" + type.getQualifiedName() + ")");
+        }
+
+        return tableName;
+    }
+
+    /**
+     * @param type A type.
+     * @return Whether the type is a {@link java.util.Collection}.
+     */
+    private boolean isCollection(final TypeMirror type) {
+        final TypeElement collection = elements.getTypeElement("java.util.Collection");
+
+        return type.getKind() == TypeKind.DECLARED && types.isAssignable(types.erasure(type), types.erasure(collection.asType()));
+    }
+
+    /**
+     * Determine the element type of a collection.
+     *
+     * @param collectionType The type of the collection.
+     * @param fieldName The name of the field for error messages.
+     * @return The element type.
+     * @throws BushyTailProcessorException if the collection does not have exactly one type argument.
+     */
+    private TypeMirror getElementType(final TypeMirror collectionType, final String fieldName) throws BushyTailProcessorException {
+        final List<? extends TypeMirror> typeArguments = ((DeclaredType) collectionType).getTypeArguments();
+        if (typeArguments.size() != 1) {
+            throw new BushyTailProcessorException("Field '" + fieldName + " has to have exactly 1 generic type parameter. " + typeArguments.size() + " found.");
+        }
+
+        return typeArguments.get(0);
+    }
+
+    /**
+     * Look up a JPA annotation of an element.
+     *
+     * @param element The element.
+     * @param simpleName The simple name of the annotation in {@code javax.persistence}.
+     * @return The annotation or {@code null} if it is absent.
+     */
+    private static AnnotationMirror getAnnotation(final Element element, final String simpleName) {
+        for (final AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(JPA_PACKAGE + simpleName)) {
+                return annotation;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read an annotation value, falling back to its default.
+     *
+     * @param annotation The annotation.
+     * @param name The name of the annotation element.
+     * @return The value, i.e. a boxed primitive, a {@link String} or the {@link VariableElement} of an enumeration constant.
+     */
+    private Object getAnnotationValue(final AnnotationMirror annotation, final String name) {
+        for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : elements.getElementValuesWithDefaults(annotation).entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals(name)) {
+                return value.getValue().getValue();
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown annotation element '" + name + "'");
+    }
+
+
+    /**
+     * A structural or navigation property of the OData entity type.
+     */
+    static final class Property {
+
+        /** The name of the property. */
+        final String name;
+
+        /** The qualified name of the mapped Java class. */
+        final String javaClassName;
+
+        /** The name of the {@code EdmPrimitiveTypeKind} or {@code null} if the type is a JPA entity. */
+        final String primitiveTypeKind;
+
+        /** Whether the property is a collection. */
+        final boolean collection;
+
+        /** Whether the property is nullable. */
+        final boolean nullable;
+
+        /** The name of the partner navigation property or {@code null} if the property is structural. */
+        final String partner;
+
+        /** The name of the target entity set or {@code null} if the property is structural. */
+        final String bindingTarget;
+
+        /**
+         * Constructs {@link Property}.
+         *
+         * @param name The name of the property.
+         * @param javaClassName The qualified name of the mapped Java class.
+         * @param primitiveTypeKind The name of the {@code EdmPrimitiveTypeKind} or {@code null} if the type is a JPA entity.
+         * @param collection Whether the property is a collection.
+         * @param nullable Whether the property is nullable.
+         * @param partner The name of the partner navigation property or {@code null} if the property is structural.
+         * @param bindingTarget The name of the target entity set or {@code null} if the property is structural.
+         */
+        Property(final String name, final String javaClassName, final String primitiveTypeKind, final boolean collection, final boolean nullable,
+                 final String partner, final String bindingTarget) {
+            this.name = name;
+            this.javaClassName = javaClassName;
+            this.primitiveTypeKind = primitiveTypeKind;
+            this.collection = collection;
+            this.nullable = nullable;
+            this.partner = partner;
+            this.bindingTarget = bindingTarget;
+        }
+
+        /**
+         * @return Whether the property is a navigation property.
+         */
+        boolean isNavigation() {
+            return partner != null;
+        }
+
+    }
+
+    /**
+     * A JavaBeans property of the JPA entity.
+     */
+    static final class BeanProperty {
+
+        /** The name of the property. */
+        final String name;
+
+        /** The erased type of the property. */
+        final TypeMirror type;
+
+        /** The name of the getter or {@code null} if the property is write-only. */
+        final String getterName;
+
+        /** The name of the setter or {@code null} if the property is read-only. */
+        final String setterName;
+
+        /**
+         * Constructs {@link BeanProperty}.
+         *
+         * @param name The name of the property.
+         * @param type The erased type of the property.
+         * @param getterName The name of the getter or {@code null} if the property is write-only.
+         * @param setterName The name of the setter or {@code null} if the property is read-only.
+         */
+        BeanProperty(final String name, final TypeMirror type, final String getterName, final String setterName) {
+            this.name = name;
+            this.type = type;
+            this.getterName = getterName;
+            this.setterName = setterName;
+        }
+
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.processor;
+
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the source code of the class which provides the OData metadata and codec of a JPA entity.
+ * <p>
+ * All types are referenced by their qualified names, so that the generated code cannot clash with the names of the entity's package.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class JpaEntitySourceWriter {
+
+    /**
+     * The suffix of the generated classes, which {@code BushyTailBuilder} looks up by name.
+     * Must be kept in sync with {@code BushyTailBuilder.GENERATED_CLASS_SUFFIX}.
+     */
+    static final String GENERATED_CLASS_SUFFIX = "_BushyTail";
+
+    /** The base class of the generated classes. */
+    private static final String BASE_CLASS = "de.syquel.bushytail.factory.AbstractBushyTailGeneratedEntity";
+
+    /** The accessor interface implemented for each JavaBeans property. */
+    private static final String PROPERTY_ACCESSOR = "de.syquel.bushytail.serializer.plan.IPropertyAccessor";
+
+    /** The Olingo enumeration of the OData primitive types. */
+    private static final String PRIMITIVE_TYPE_KIND = "org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind";
+
+    /** The Olingo class of Full Qualified Names. */
+    private static final String FULL_QUALIFIED_NAME = "org.apache.olingo.commons.api.edm.FullQualifiedName";
+
+    /** The type utilities of the compiler. */
+    private final Types types;
+
+    /** The model of the JPA entity. */
+    private final JpaEntityModel model;
+
+    /** The qualified name of the JPA entity class. */
+    private final String entityClassName;
+
+    /** The qualified name of the {@code @Generated} annotation available to the compiled code or {@code null}. */
+    private final String generatedAnnotation;
+
+    /**
+     * Constructs {@link JpaEntitySourceWriter}.
+     *
+     * @param types The type utilities of the compiler.
+     * @param model The model of the JPA entity.
+     * @param generatedAnnotation The qualified name of the {@code @Generated} annotation available to the compiled code or {@code null}.
+     */
+    JpaEntitySourceWriter(final Types types, final JpaEntityModel model, final String generatedAnnotation) {
+        this.types = types;
+        this.model = model;
+        this.generatedAnnotation = generatedAnnotation;
+        this.entityClassName = types.erasure(model.getEntity().asType()).toString();
+    }
+
+    /**
+     * @return The package of the generated class, which is the package of the JPA entity.
+     */
+    String getPackageName() {
+        return getPackage().getQualifiedName().toString();
+    }
+
+    /**
+     * @return The simple name of the generated class, e.g. {@code Outer_Inner_BushyTail} for a nested JPA entity.
+     */
+    String getSimpleClassName() {
+        final String qualifiedName = model.getEntity().getQualifiedName().toString();
+        final String packageName = getPackageName();
+        final String nestedName = packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+
+        return nestedName.replace('.', '_') + GENERATED_CLASS_SUFFIX;
+    }
+
+    /**
+     * @return The qualified name of the generated class.
+     */
+    String getQualifiedClassName() {
+        final String packageName = getPackageName();
+
+        return packageName.isEmpty() ? getSimpleClassName() : packageName + '.' + getSimpleClassName();
+    }
+
+    /**
+     * Write the source code of the generated class.
+     *
+     * @param out The target of the source code.
+     * @throws IOException if the source code cannot be written.
+     */
+    void write(final Writer out) throws IOException {
+        final String packageName = getPackageName();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+
+        out.append("/**\n");
+        out.append(" * OData metadata and codec of {@link ").append(entityClassName).append("}.\n");
+        out.append(" */\n");
+        if (generatedAnnotation != null) {
+            out.append('@').append(generatedAnnotation).append("(\"").append(BushyTailAnnotationProcessor.class.getName()).append("\")\n");
+        }
+        out.append("@SuppressWarnings(\"unchecked\")\n");
+        out.append("public final class ").append(getSimpleClassName()).append(" extends ").append(BASE_CLASS)
+                .append('<').append(entityClassName).append("> {\n\n");
+
+        writeConstructor(out);
+        if (model.isEntityInstantiable()) {
+            writeNewInstance(out);
+        }
+        writeCreateEntityType(out);
+        writeCreateEntitySet(out);
+
+        out.append("}\n");
+    }
+
+    /**
+     * Write the constructor, which registers the JavaBeans properties with their direct accessors.
+     *
+     * @param out The target of the source code.
+     * @throws IOException if the source code cannot be written.
+     */
+    private void writeConstructor(final Writer out) throws IOException {
+        out.append("    public ").append(getSimpleClassName()).append("() {\n");
+        out.append("        super(").append(entityClassName).append(".class, ").append(literal(model.getEntitySetName())).append(", ")
+                .append(literal(model.getVersionFieldName())).append(", ").append(String.valueOf(model.isEntityInstantiable())).append(");\n");
+
+        for (final JpaEntityModel.BeanProperty property : model.getBeanProperties()) {
+            out.append('\n');
+            out.append("        addCodecProperty(").append(literal(property.name)).append(", ").append(classLiteral(property.type))
+                    .append(", new ").append(PROPERTY_ACCESSOR).append("() {\n");
+
+            out.append("            @Override\n");
+            out.append("            public Object get(final Object entity) {\n");
+            if (property.getterName == null) {
+                out.append("                throw new UnsupportedOperationException(\"Property is write-only\");\n");
+            } else {
+                out.append("                return ((").append(entityClassName).append(") entity).").append(property.getterName).append("();\n");
+            }
+            out.append("            }\n\n");
+
+            out.append("            @Override\n");
+            out.append("            public void set(final Object entity, final Object value) {\n");
+            if (property.setterName == null) {
+                out.append("                throw new UnsupportedOperationException(\"Property is read-only\");\n");
+            } else {
+                out.append("                ((").append(entityClassName).append(") entity).").append(property.setterName)
+                        .append("((").append(castType(property.type)).append(") value);\n");
+            }
+            out.append("            }\n");
+
+            out.append("        }, ").append(String.valueOf(property.getterName != null)).append(", ")
+                    .append(String.valueOf(property.setterName != null)).append(");\n");
+        }
+
+        out.append("    }\n\n");
+    }
+
+    /**
+     * Write the factory method of new JPA entities.
+     *
+     * @param out The target of the source code.
+     * @throws IOException if the source code cannot be written.
+     */
+    private void writeNewInstance(final Writer out) throws IOException {
+        out.append("    @Override\n");
+        out.append("    public ").append(entityClassName).append(" newInstance() {\n");
+        out.append("        return new ").append(entityClassName).append("();\n");
+        out.append("    }\n\n");
+    }
+
+    /**
+     * Write the factory method of the OData entity type.
+     *
+     * @param out The target of the source code.
+     * @throws IOException if the source code cannot be written.
+     */
+    private void writeCreateEntityType(final Writer out) throws IOException {
+        out.append("    @Override\n");
+        out.append("    public org.apache.olingo.commons.api.edm.provider.CsdlEntityType createEntityType(\n");
+        out.append("            final java.util.Map<Class<?>, ").append(FULL_QUALIFIED_NAME).append("> entityFQNs)\n");
+        out.append("            throws de.syquel.bushytail.factory.exception.OlingoMetadataFactoryException {\n");
+        out.append("        final org.apache.olingo.commons.api.edm.provider.CsdlEntityType entityType = newEntityType();\n\n");
+
+        for (final JpaEntityModel.Property property : model.getProperties()) {
+            final String odataType = property.primitiveTypeKind == null
+                    ? "getEntityType(entityFQNs, " + property.javaClassName + ".class)"
+                    : PRIMITIVE_TYPE_KIND + '.' + property.primitiveTypeKind + ".getFullQualifiedName()";
+
+            if (property.isNavigation()) {
+                out.append("        addNavigationProperty(entityType, ").append(literal(property.name)).append(", ").append(odataType).append(", ")
+                        .append(String.valueOf(property.collection)).append(", ").append(String.valueOf(property.nullable)).append(", ")
+                        .append(literal(property.partner)).append(");\n");
+            } else {
+                out.append("        addProperty(entityType, ").append(literal(property.name)).append(", ").append(odataType).append(", ")
+                        .append(String.valueOf(property.collection)).append(", ").append(String.valueOf(property.nullable)).append(", ")
+                        .append(property.javaClassName).append(".class);\n");
+            }
+        }
+        for (final String keyPropertyName : model.getKeyPropertyNames()) {
+            out.append("        addKey(entityType, ").append(literal(keyPropertyName)).append(");\n");
+        }
+
+        out.append("\n        return entityType;\n");
+        out.append("    }\n\n");
+    }
+
+    /**
+     * Write the factory method of the OData entity set.
+     *
+     * @param out The target of the source code.
+     * @throws IOException if the source code cannot be written.
+     */
+    private void writeCreateEntitySet(final Writer out) throws IOException {
+        out.append("    @Override\n");
+        out.append("    public org.apache.olingo.commons.api.edm.provider.CsdlEntitySet createEntitySet(final ").append(FULL_QUALIFIED_NAME)
+                .append(" entityFQN) {\n");
+        out.append("        final org.apache.olingo.commons.api.edm.provider.CsdlEntitySet entitySet = newEntitySet(entityFQN);\n\n");
+
+        for (final JpaEntityModel.Property property : model.getProperties()) {
+            if (property.isNavigation()) {
+                out.append("        addNavigationPropertyBinding(entitySet, ").append(literal(property.name)).append(", ")
+                        .append(literal(property.bindingTarget)).append(");\n");
+            }
+        }
+
+        out.append("\n        return entitySet;\n");
+        out.append("    }\n\n");
+    }
+
+    /**
+     * @return The package of the JPA entity.
+     */
+    private PackageElement getPackage() {
+        javax.lang.model.element.Element element = model.getEntity();
+        while (!(element instanceof PackageElement)) {
+            element = element.getEnclosingElement();
+        }
+
+        return (PackageElement) element;
+    }
+
+    /**
+     * Format the class literal of an erased type.
+     *
+     * @param type The erased type.
+     * @return The class literal, e.g. {@code int.class} or {@code java.util.Set.class}.
+     */
+    private static String classLiteral(final TypeMirror type) {
+        return type + ".class";
+    }
+
+    /**
+     * Determine the type a value must be cast to before it is passed to a setter.
+     *
+     * @param type The erased type of the setter parameter.
+     * @return The qualified name of the type, boxed if it is primitive.
+     */
+    private String castType(final TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return types.boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        if (type.getKind() == TypeKind.TYPEVAR) {
+            return "Object";
+        }
+
+        return type.toString();
+    }
+
+    /**
+     * Format a Java string literal.
+     *
+     * @param value The value or {@code null}.
+     * @return The string literal or {@code null}.
+     */
+    private static String literal(final String value) {
+        if (value == null) {
+            return "null";
+        }
+
+        final StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+        for (final char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+
+        return literal.append('"').toString();
+    }
+
+}
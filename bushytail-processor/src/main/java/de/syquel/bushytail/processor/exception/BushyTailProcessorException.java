@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.processor.exception;
+
+/**
+ * Exception which is thrown if the OData metadata of a JPA entity cannot be derived at compile time.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailProcessorException extends Exception {
+
+    /**
+     * Constructs {@link BushyTailProcessorException}.
+     *
+     * @param message The message of the exception.
+     */
+    public BushyTailProcessorException(final String message) {
+        super(message);
+    }
+
+}
@@ -16,22 +16,30 @@
 
 package de.syquel.bushytail;
 
-import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.cache.BushyTailCacheStatistics;
+import de.syquel.bushytail.cache.BushyTailEntityCache;
 import de.syquel.bushytail.helper.BushyTailCSRFProtectionHelper;
-import de.syquel.bushytail.service.BushyTailEdmProvider;
+import de.syquel.bushytail.helper.BushyTailCompressionHelper;
+import de.syquel.bushytail.helper.IBushyTailCSRFTokenStrategy;
+import de.syquel.bushytail.management.BushyTailManagement;
+import de.syquel.bushytail.metric.BushyTailMetricsHelper;
+import de.syquel.bushytail.metric.BushyTailMetricsPhase;
+import de.syquel.bushytail.metric.BushyTailRequestMetrics;
+import de.syquel.bushytail.service.BushyTailBatchProcessor;
+import de.syquel.bushytail.service.BushyTailEntityCollectionProcessor;
 import de.syquel.bushytail.service.BushyTailEntityProcessor;
-import org.apache.olingo.commons.api.edm.FullQualifiedName;
-import org.apache.olingo.commons.api.edm.provider.CsdlSchema;
-import org.apache.olingo.commons.api.edmx.EdmxReference;
-import org.apache.olingo.server.api.OData;
+import de.syquel.bushytail.service.BushyTailMetadataProcessor;
+import de.syquel.bushytail.service.BushyTailServiceContext;
+import de.syquel.bushytail.transaction.IBushyTailTransactionManager;
 import org.apache.olingo.server.api.ODataHttpHandler;
-import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The BushyTail class should be used by the developer.
@@ -47,25 +55,53 @@ import java.util.Map;
  */
 public class BushyTail {
 
+    /** The logger. */
+    private static final Logger logger = LoggerFactory.getLogger(BushyTail.class);
+
     /** The random byte count for the BushyTailCSRFProtectionHelper. */
     private static Integer RANDOM_BYTE_COUNT = 24;
 
     /** The helper for CSRF protection. */
-    private BushyTailCSRFProtectionHelper csrfProtectionHelper = new BushyTailCSRFProtectionHelper(RANDOM_BYTE_COUNT);
+    private final BushyTailCSRFProtectionHelper csrfProtectionHelper;
+
+    /** The pre-built service context shared by all requests. */
+    private final BushyTailServiceContext serviceContext;
+
+    /** The entity processor shared by all requests. */
+    private final BushyTailEntityProcessor entityProcessor;
+
+    /** The entity collection processor shared by all requests. */
+    private final BushyTailEntityCollectionProcessor entityCollectionProcessor;
 
-    /** The list of schema. */
-    private final List<CsdlSchema> odataSchemas;
+    /** The batch processor shared by all requests. */
+    private final BushyTailBatchProcessor batchProcessor;
 
-    /** The map of classes and controllers. */
-    private final Map<Class<?>, IBushyTailController<?>> entityControllerMap;
+    /** The processor of the pre-rendered metadata and service documents shared by all requests. */
+    private final BushyTailMetadataProcessor metadataProcessor;
 
-    /** The mapp of FQDNs and classes. */
-    private final Map<FullQualifiedName, Class<?>> entityTypeMap;
+    /** The helper which compresses responses or {@code null} if responses are sent uncompressed. */
+    private final BushyTailCompressionHelper compressionHelper;
 
-    BushyTail(List<CsdlSchema> odataSchemas, Map<Class<?>, IBushyTailController<?>> entityControllerMap, Map<FullQualifiedName, Class<?>> entityTypeMap) {
-        this.odataSchemas = odataSchemas;
-        this.entityControllerMap = entityControllerMap;
-        this.entityTypeMap = entityTypeMap;
+    /** The helper which records the metrics of requests or {@code null} if no metrics are recorded. */
+    private final BushyTailMetricsHelper metricsHelper;
+
+    /** The registered MBeans of this instance or {@code null} if it is not managed. */
+    private BushyTailManagement management;
+
+    BushyTail(BushyTailServiceContext serviceContext, IBushyTailTransactionManager transactionManager, ExecutorService batchReadExecutor,
+              int metadataMaxAge, BushyTailCompressionHelper compressionHelper, BushyTailMetricsHelper metricsHelper,
+              IBushyTailCSRFTokenStrategy csrfTokenStrategy) throws SerializerException {
+        this.serviceContext = serviceContext;
+        // Store the CSRF tokens in the HTTP session unless a stateless strategy has been configured
+        this.csrfProtectionHelper = csrfTokenStrategy == null ? new BushyTailCSRFProtectionHelper(RANDOM_BYTE_COUNT)
+                : new BushyTailCSRFProtectionHelper(csrfTokenStrategy);
+        this.compressionHelper = compressionHelper;
+        this.metricsHelper = metricsHelper;
+
+        entityProcessor = new BushyTailEntityProcessor(serviceContext);
+        entityCollectionProcessor = new BushyTailEntityCollectionProcessor(serviceContext);
+        batchProcessor = new BushyTailBatchProcessor(serviceContext, entityProcessor, entityCollectionProcessor, transactionManager, batchReadExecutor);
+        metadataProcessor = new BushyTailMetadataProcessor(serviceContext, metadataMaxAge);
     }
 
     /**
@@ -75,15 +111,96 @@ public class BushyTail {
      * @param resp The HTTP response as given by {@link javax.servlet.http.HttpServlet}, which will be modified.
      */
     public void service(final HttpServletRequest req, final HttpServletResponse resp) {
+        if (metricsHelper == null) {
+            process(req, resp);
+            return;
+        }
+
+        // Measure outside of the compression, so that the bytes actually sent are counted
+        final HttpServletResponse measuredResp = metricsHelper.begin(req, resp);
+        boolean failed = true;
+        try {
+            process(req, measuredResp);
+            failed = false;
+        } finally {
+            metricsHelper.finish(measuredResp, failed);
+        }
+    }
+
+    /**
+     * Process a request with the Olingo handler.
+     *
+     * @param req The HTTP request.
+     * @param resp The HTTP response, which will be modified.
+     */
+    private void process(final HttpServletRequest req, final HttpServletResponse resp) {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long csrfStartTime = metrics.startPhase();
         csrfProtectionHelper.process(req, resp);
+        metrics.endPhase(BushyTailMetricsPhase.CSRF, csrfStartTime);
+
+        // The Olingo handler keeps per-request state, thus only this thin shell is created per request
+        final ODataHttpHandler handler = serviceContext.getOData().createHandler(serviceContext.getServiceMetadata());
+        handler.register(entityProcessor);
+        handler.register(entityCollectionProcessor);
+        handler.register(batchProcessor);
+        handler.register(metadataProcessor);
 
-        final OData oData = OData.newInstance();
-        final ServiceMetadata serviceMetadata = oData.createServiceMetadata(new BushyTailEdmProvider(odataSchemas), new ArrayList<EdmxReference>(0));
+        metrics.startDispatch();
+        if (compressionHelper == null) {
+            handler.process(req, resp);
+            return;
+        }
 
-        final ODataHttpHandler handler = oData.createHandler(serviceMetadata);
-        handler.register(new BushyTailEntityProcessor(entityTypeMap, entityControllerMap));
+        final HttpServletResponse compressingResp = compressionHelper.wrap(req, resp);
+        try {
+            handler.process(req, compressingResp);
+        } finally {
+            try {
+                compressionHelper.finish(compressingResp);
+            } catch (IOException e) {
+                logger.warn("Cannot finish compressed response", e);
+            }
+        }
+    }
 
-        handler.process(req, resp);
+    /**
+     * Release the resources of this instance, i.e. unregister its MBeans.
+     * Should be called from {@link javax.servlet.http.HttpServlet#destroy()}.
+     *
+     * @see BushyTailBuilder#setManagementName
+     */
+    public void destroy() {
+        if (management != null) {
+            management.unregister();
+            management = null;
+        }
+    }
+
+    /**
+     * Get the statistics of the entity cache of a JPA entity class.
+     *
+     * @param entityClass The JPA entity class.
+     * @return The statistics or {@code null} if the entities are not cached.
+     * @see BushyTailBuilder#setEntityCache
+     */
+    public BushyTailCacheStatistics getCacheStatistics(final Class<?> entityClass) {
+        final BushyTailEntityCache entityCache = serviceContext.getEntityCache(entityClass);
+        return entityCache == null ? null : entityCache.getStatistics();
+    }
+
+    /**
+     * @return The helper for CSRF protection.
+     */
+    BushyTailCSRFProtectionHelper getCsrfProtectionHelper() {
+        return csrfProtectionHelper;
+    }
+
+    /**
+     * @param management The registered MBeans of this instance, which are unregistered on {@link #destroy()}.
+     */
+    void setManagement(final BushyTailManagement management) {
+        this.management = management;
     }
 
 }
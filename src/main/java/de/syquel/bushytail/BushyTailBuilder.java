@@ -16,17 +16,45 @@
 
 package de.syquel.bushytail;
 
+import de.syquel.bushytail.cache.BushyTailEntityCache;
+import de.syquel.bushytail.cache.BushyTailEvictionPolicy;
 import de.syquel.bushytail.controller.IBushyTailController;
 import de.syquel.bushytail.exception.BushyTailException;
+import de.syquel.bushytail.factory.IOlingoEntityMetadata;
 import de.syquel.bushytail.factory.OlingoMetadataFactory;
+import de.syquel.bushytail.factory.OlingoMetadataSnapshot;
 import de.syquel.bushytail.factory.exception.OlingoMetadataFactoryException;
+import de.syquel.bushytail.helper.BushyTailCompressionHelper;
+import de.syquel.bushytail.helper.BushyTailHmacCSRFTokenStrategy;
+import de.syquel.bushytail.helper.IBushyTailCSRFTokenStrategy;
+import de.syquel.bushytail.management.BushyTailManagement;
+import de.syquel.bushytail.metric.BushyTailMetricsCollector;
+import de.syquel.bushytail.metric.BushyTailMetricsHelper;
+import de.syquel.bushytail.metric.BushyTailSlowRequestLog;
+import de.syquel.bushytail.metric.IBushyTailMetricsListener;
+import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.serializer.plan.IOlingoEntityCodec;
+import de.syquel.bushytail.service.BushyTailServiceContext;
+import de.syquel.bushytail.transaction.IBushyTailTransactionManager;
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.olingo.commons.api.edm.FullQualifiedName;
 import org.apache.olingo.commons.api.edm.provider.CsdlSchema;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 /**
  * Builder for a new {@link BushyTail} instance.
@@ -37,6 +65,21 @@ import java.util.Map;
  */
 public class BushyTailBuilder {
 
+    /** The logger. */
+    private static final Logger logger = LoggerFactory.getLogger(BushyTailBuilder.class);
+
+    /** The default fetch size hint for collection reads. */
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    /** The default minimum number of bytes of compressed responses. */
+    public static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+
+    /**
+     * The suffix of the classes generated by the {@code bushytail-processor} annotation processor for each JPA entity,
+     * e.g. {@code com.example.Customer_BushyTail} for {@code com.example.Customer}.
+     */
+    public static final String GENERATED_CLASS_SUFFIX = "_BushyTail";
+
     /**
      * Maps JPA {@link javax.persistence.Entity} with their corresponding CRUD business controller.
      */
@@ -47,6 +90,81 @@ public class BushyTailBuilder {
      */
     private final Map<FullQualifiedName, Class<?>> entityTypeMap = new HashMap<FullQualifiedName, Class<?>>();
 
+    /**
+     * Maps JPA {@link javax.persistence.Entity} to the maximum number of entities per response page of their entity set.
+     */
+    private final Map<Class<?>, Integer> maxPageSizeMap = new HashMap<Class<?>, Integer>();
+
+    /**
+     * Maps JPA {@link javax.persistence.Entity} to the explicitly configured property their ETags are derived from.
+     */
+    private final Map<Class<?>, String> versionPropertyMap = new HashMap<Class<?>, String>();
+
+    /**
+     * Maps JPA {@link javax.persistence.Entity} to the read-through cache of their entities.
+     */
+    private final Map<Class<?>, BushyTailEntityCache> entityCacheMap = new HashMap<Class<?>, BushyTailEntityCache>();
+
+    /**
+     * The number of entities which controllers should fetch from the backend at once when reading collections.
+     */
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * The number of seconds clients may use the metadata and service documents without revalidation.
+     */
+    private int metadataMaxAge;
+
+    /**
+     * The helper which compresses responses or {@code null} if responses are sent uncompressed.
+     */
+    private BushyTailCompressionHelper compressionHelper;
+
+    /**
+     * The listener which is notified with the metrics of each request or {@code null}.
+     */
+    private IBushyTailMetricsListener metricsListener;
+
+    /**
+     * The name the MBeans of the instance are registered with or {@code null} if it is not managed.
+     */
+    private String managementName;
+
+    /**
+     * Whether the phase durations of each request are reported to the client in a {@code Server-Timing} header.
+     */
+    private boolean serverTiming;
+
+    /**
+     * The log of slow requests or {@code null}.
+     */
+    private BushyTailSlowRequestLog slowRequestLog;
+
+    /**
+     * The strategy which issues and verifies CSRF tokens or {@code null} to store them in the HTTP session.
+     */
+    private IBushyTailCSRFTokenStrategy csrfTokenStrategy;
+
+    /**
+     * The transaction manager which makes {@code $batch} change sets atomic or {@code null}.
+     */
+    private IBushyTailTransactionManager transactionManager;
+
+    /**
+     * The executor which processes independent read requests of a {@code $batch} concurrently or {@code null}.
+     */
+    private ExecutorService batchReadExecutor;
+
+    /**
+     * The executor which creates the OData entity types concurrently during {@link #build()} or {@code null}.
+     */
+    private ExecutorService buildExecutor;
+
+    /**
+     * The file the generated OData metadata is persisted to and loaded from or {@code null}.
+     */
+    private File metadataSnapshotFile;
+
     /**
      * Add a JPA entity and associate it with a business controller.
      * Determines the namespace and entity name automatically.
@@ -56,10 +174,23 @@ public class BushyTailBuilder {
      * @param entityController The business controller which shall be associated to the JPA entity class to handle CRUDQ operations.
      */
     public <T> void addEntity(Class<T> entityClass, IBushyTailController<T> entityController) {
+        addEntity(entityClass, entityController, 0);
+    }
+
+    /**
+     * Add a JPA entity and associate it with a business controller.
+     * Determines the namespace and entity name automatically.
+     *
+     * @param <T> The class type of the JPA entity.
+     * @param entityClass The class type of the JPA entity.
+     * @param entityController The business controller which shall be associated to the JPA entity class to handle CRUDQ operations.
+     * @param maxPageSize The maximum number of entities per response page or {@code 0} for unpaged responses.
+     */
+    public <T> void addEntity(Class<T> entityClass, IBushyTailController<T> entityController, int maxPageSize) {
         String namespace = ClassUtils.getPackageName(entityClass);
         String entityName = entityClass.getSimpleName();
 
-        addEntity(entityClass, entityName, namespace, entityController);
+        addEntity(entityClass, entityName, namespace, entityController, maxPageSize);
     }
 
     /**
@@ -72,9 +203,23 @@ public class BushyTailBuilder {
      * @param entityController The business controller which shall be associated to the JPA entity class to handle CRUDQ operations.
      */
     public <T> void addEntity(Class<T> entityClass, String entityName, String namespace, IBushyTailController<T> entityController) {
+        addEntity(entityClass, entityName, namespace, entityController, 0);
+    }
+
+    /**
+     * Add a JPA entity and associate it with a business controller.
+     *
+     * @param <T> The class type of the JPA entity.
+     * @param entityClass The class type of the JPA entity.
+     * @param entityName The OData resource name for this entity class.
+     * @param namespace The namespace of this OData resource.
+     * @param entityController The business controller which shall be associated to the JPA entity class to handle CRUDQ operations.
+     * @param maxPageSize The maximum number of entities per response page or {@code 0} for unpaged responses.
+     */
+    public <T> void addEntity(Class<T> entityClass, String entityName, String namespace, IBushyTailController<T> entityController, int maxPageSize) {
         FullQualifiedName entityFQN = new FullQualifiedName(namespace, entityName);
 
-        addEntity(entityClass, entityFQN, entityController);
+        addEntity(entityClass, entityFQN, entityController, maxPageSize);
     }
 
     /**
@@ -86,33 +231,465 @@ public class BushyTailBuilder {
      * @param entityController The business controller which shall be associated to the JPA entity class to handle CRUDQ operations.
      */
     public <T> void addEntity(Class<T> entityClass, FullQualifiedName entityFQN, IBushyTailController<T> entityController) {
+        addEntity(entityClass, entityFQN, entityController, 0);
+    }
+
+    /**
+     * Add a JPA entity and associate it with a business controller.
+     * <p>
+     * If a maximum page size is given, collection responses of the entity set contain at most this many entities
+     * and a next link with a {@code $skiptoken} for the following page.
+     * </p>
+     *
+     * @param <T> The class type of the JPA entity.
+     * @param entityClass The class type of the JPA entity.
+     * @param entityFQN The unique full qualified name of this Odata resource.
+     * @param entityController The business controller which shall be associated to the JPA entity class to handle CRUDQ operations.
+     * @param maxPageSize The maximum number of entities per response page or {@code 0} for unpaged responses.
+     */
+    public <T> void addEntity(Class<T> entityClass, FullQualifiedName entityFQN, IBushyTailController<T> entityController, int maxPageSize) {
+        if (maxPageSize < 0) {
+            throw new IllegalArgumentException("Maximum page size must not be negative");
+        }
+
         entityControllerMap.put(entityClass, entityController);
         entityTypeMap.put(entityFQN, entityClass);
+        if (maxPageSize > 0) {
+            maxPageSizeMap.put(entityClass, maxPageSize);
+        } else {
+            maxPageSizeMap.remove(entityClass);
+        }
+    }
+
+    /**
+     * Set the property of a JPA entity which the ETags of its entities are derived from.
+     * <p>
+     * By default, the field annotated with {@link javax.persistence.Version} is used. Entities without a version
+     * property have no ETag, so conditional requests cannot skip their serialization.
+     * </p>
+     *
+     * @param entityClass The class type of the JPA entity.
+     * @param propertyName The name of the version property, e.g. a last modification timestamp.
+     */
+    public void setVersionProperty(Class<?> entityClass, String propertyName) {
+        if (propertyName == null || propertyName.isEmpty()) {
+            throw new IllegalArgumentException("Version property must not be empty");
+        }
+
+        versionPropertyMap.put(entityClass, propertyName);
+    }
+
+    /**
+     * Cache the entities of a JPA entity class which are read by their key.
+     * <p>
+     * Reads of single entities are answered from the cache without calling the controller. Entities which are created,
+     * updated or deleted through BushyTail are removed from the cache; changes which bypass BushyTail only become
+     * visible after the time to live. The cached entities are detached and shared between requests, thus caching is meant
+     * for rarely changing reference entities.
+     * </p>
+     *
+     * @param entityClass The class type of the JPA entity.
+     * @param maximumSize The maximum number of cached entities.
+     * @param timeToLive The time after which a cached entity is read again or {@code 0} if entities do not expire.
+     * @param timeUnit The unit of the time to live.
+     * @param evictionPolicy The policy which selects the entities to evict when the cache is full.
+     */
+    public void setEntityCache(Class<?> entityClass, int maximumSize, long timeToLive, TimeUnit timeUnit, BushyTailEvictionPolicy evictionPolicy) {
+        entityCacheMap.put(entityClass, new BushyTailEntityCache(maximumSize, timeToLive, timeUnit, evictionPolicy));
+    }
+
+    /**
+     * Set the fetch size hint which is passed to {@link de.syquel.bushytail.controller.IBushyTailCollectionController#readAll(int)}.
+     *
+     * @param fetchSize The number of entities which should be fetched from the backend at once.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive");
+        }
+
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Set the number of seconds clients may use the metadata and service documents without revalidating them.
+     * By default, clients revalidate the documents on every use, which is answered with {@code 304 Not Modified}
+     * as long as the service has not been rebuilt.
+     *
+     * @param metadataMaxAge The maximum age in seconds or {@code 0} if clients must always revalidate.
+     */
+    public void setMetadataMaxAge(int metadataMaxAge) {
+        if (metadataMaxAge < 0) {
+            throw new IllegalArgumentException("Maximum age must not be negative");
+        }
+
+        this.metadataMaxAge = metadataMaxAge;
+    }
+
+    /**
+     * Compress responses with gzip or deflate, as accepted by the client.
+     * The content is compressed while it is written; responses smaller than {@link #DEFAULT_COMPRESSION_MIN_SIZE} bytes are sent as is.
+     *
+     * @param level The compression level between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}.
+     */
+    public void setCompression(int level) {
+        setCompression(level, DEFAULT_COMPRESSION_MIN_SIZE);
+    }
+
+    /**
+     * Compress responses with gzip or deflate, as accepted by the client.
+     * The content is compressed while it is written, so that large collections are not buffered.
+     *
+     * @param level The compression level between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}.
+     * @param minSize The minimum number of bytes of compressed responses, smaller responses are sent as is.
+     */
+    public void setCompression(int level, int minSize) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between " + Deflater.BEST_SPEED + " and " + Deflater.BEST_COMPRESSION);
+        }
+        if (minSize < 0) {
+            throw new IllegalArgumentException("Minimum size must not be negative");
+        }
+
+        // Each concurrently compressed response holds one deflater, so keep about as many as can run at once
+        compressionHelper = new BushyTailCompressionHelper(level, minSize, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Set the listener which is notified with the metrics of each completed request.
+     * <p>
+     * The listener is called on the thread of the HTTP request after the response has been written,
+     * so it must be thread-safe and should return quickly. {@link de.syquel.bushytail.metric.BushyTailMetricsCollector}
+     * aggregates latency histograms per entity set and operation.
+     * </p>
+     *
+     * @param metricsListener The listener or {@code null} to not record any metrics.
+     */
+    public void setMetricsListener(IBushyTailMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Report the durations of the phases of each request, e.g. the controller call, in a {@code Server-Timing} header,
+     * which browser developer tools display next to the network timings.
+     * <p>
+     * The header is added right before the response is committed, so it does not cover writing the response body.
+     * The header discloses processing details, so it should only be enabled if clients are trusted.
+     * </p>
+     *
+     * @param serverTiming Whether to add the header.
+     */
+    public void setServerTiming(boolean serverTiming) {
+        this.serverTiming = serverTiming;
+    }
+
+    /**
+     * Log all requests which take longer than a threshold with the duration of each phase.
+     *
+     * @param threshold The minimum duration of logged requests.
+     * @param unit The unit of the threshold.
+     * @see #setSlowRequestLog(long, TimeUnit, int)
+     */
+    public void setSlowRequestLog(long threshold, TimeUnit unit) {
+        setSlowRequestLog(threshold, unit, 1);
+    }
+
+    /**
+     * Log a sample of the requests which take longer than a threshold with the duration of each phase.
+     * The log is written with the category {@link BushyTailSlowRequestLog} on level {@code WARN}.
+     *
+     * @param threshold The minimum duration of logged requests.
+     * @param unit The unit of the threshold.
+     * @param sampleInterval Every how many slow requests one is logged, {@code 1} to log all of them.
+     */
+    public void setSlowRequestLog(long threshold, TimeUnit unit, int sampleInterval) {
+        slowRequestLog = new BushyTailSlowRequestLog(threshold, unit, sampleInterval);
+    }
+
+    /**
+     * Issue stateless CSRF tokens signed with HMAC-SHA256 instead of storing them in the HTTP session,
+     * so that requests neither create nor look up sessions and the service can be scaled out without session replication.
+     * <p>
+     * A token is bound to the authenticated user or, for anonymous clients, to a random HttpOnly cookie, and expires after
+     * its time to live. All instances of a scaled-out service must share the same secret.
+     * </p>
+     *
+     * @param secret The secret key of at least {@value BushyTailHmacCSRFTokenStrategy#MIN_SECRET_LENGTH} random bytes.
+     * @param timeToLive The time a token is valid after being issued.
+     * @param unit The unit of the time to live.
+     */
+    public void setCsrfTokenSecret(byte[] secret, long timeToLive, TimeUnit unit) {
+        csrfTokenStrategy = new BushyTailHmacCSRFTokenStrategy(secret, timeToLive, unit);
+    }
+
+    /**
+     * Register MBeans with the platform MBean server, which expose request, cache and CSRF statistics
+     * and allow clearing caches. Requests are measured with a {@link BushyTailMetricsCollector}, which is
+     * the metrics listener if it has been set to one, or an additional one otherwise.
+     * <p>
+     * The MBeans are unregistered by {@link BushyTail#destroy()}.
+     * </p>
+     *
+     * @param managementName The name of the instance, which must be unique within the JVM, or {@code null} to not register any MBeans.
+     * @see de.syquel.bushytail.management.IBushyTailServiceMXBean
+     * @see de.syquel.bushytail.management.IBushyTailEntitySetMXBean
+     */
+    public void setManagementName(String managementName) {
+        if (managementName != null) {
+            try {
+                BushyTailManagement.createServiceName(managementName);
+            } catch (MalformedObjectNameException e) {
+                throw new IllegalArgumentException("Invalid management name '" + managementName + "'", e);
+            }
+        }
+
+        this.managementName = managementName;
+    }
+
+    /**
+     * Set the transaction manager which runs all operations of a {@code $batch} change set in one transaction.
+     * Without a transaction manager, each operation of a change set is committed by its controller on its own.
+     *
+     * @param transactionManager The transaction manager or {@code null}.
+     */
+    public void setTransactionManager(IBushyTailTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Set the executor which processes consecutive read requests outside of {@code $batch} change sets concurrently.
+     * <p>
+     * The controllers are called from the threads of the executor, so it must only be set if they do not depend on
+     * state which is bound to the thread of the HTTP request, e.g. a thread-bound entity manager or transaction.
+     * Without an executor, all requests of a batch are processed sequentially.
+     * </p>
+     *
+     * @param batchReadExecutor The executor or {@code null}.
+     */
+    public void setBatchReadExecutor(ExecutorService batchReadExecutor) {
+        this.batchReadExecutor = batchReadExecutor;
+    }
+
+    /**
+     * Set the executor which creates the OData entity types concurrently during {@link #build()}.
+     * This speeds up building large models on multi-core machines; the executor is not shut down by the builder.
+     *
+     * @param buildExecutor The executor or {@code null} to create the entity types sequentially.
+     */
+    public void setBuildExecutor(ExecutorService buildExecutor) {
+        this.buildExecutor = buildExecutor;
+    }
+
+    /**
+     * Set the file which persists the generated OData metadata between starts.
+     * <p>
+     * If the file holds a snapshot of the same JPA entity classes, {@link #build()} loads the metadata from it instead of
+     * reflecting over the classes. Otherwise, the metadata is generated as usual and the file is replaced with a new snapshot.
+     * </p>
+     *
+     * @param metadataSnapshotFile The snapshot file or {@code null} to always generate the metadata.
+     */
+    public void setMetadataSnapshotFile(File metadataSnapshotFile) {
+        this.metadataSnapshotFile = metadataSnapshotFile;
     }
 
     /**
-     * Build the odata metadata and other internal helper classes from the previously added JPA entity types via {@link #addEntity(Class, IBushyTailController)}.
+     * Build the odata metadata, the shared Olingo service context and other internal helper classes from the previously added JPA entity types via {@link #addEntity(Class, IBushyTailController)}.
      *
-     * This method makes heavy use of reflection. Thus it is advised to execute this method only once in the lifetime of the application.
+     * This method makes heavy use of reflection unless a matching metadata snapshot exists (see {@link #setMetadataSnapshotFile(File)}).
+     * Thus it is advised to execute this method only once in the lifetime of the application.
      */
     public BushyTail build() throws BushyTailException {
+        final long startTime = System.nanoTime();
+
+        final Map<Class<?>, Object> generatedEntities = findGeneratedEntities();
+
+        OlingoMetadataSnapshot metadataSnapshot = null;
+        String fingerprint = null;
+        if (metadataSnapshotFile != null) {
+            fingerprint = OlingoMetadataSnapshot.fingerprint(entityTypeMap, versionPropertyMap);
+            try {
+                metadataSnapshot = OlingoMetadataSnapshot.load(metadataSnapshotFile, fingerprint, entityTypeMap);
+            } catch (IOException e) {
+                logger.warn("Cannot load metadata snapshot '" + metadataSnapshotFile + "', generating metadata", e);
+            }
+        }
+
+        if (metadataSnapshot == null) {
+            metadataSnapshot = createMetadataSnapshot(generatedEntities);
+
+            if (metadataSnapshotFile != null) {
+                try {
+                    metadataSnapshot.save(metadataSnapshotFile, fingerprint);
+                } catch (IOException e) {
+                    logger.warn("Cannot save metadata snapshot '" + metadataSnapshotFile + "'", e);
+                }
+            }
+        } else {
+            logger.debug("Loaded metadata snapshot '{}'", metadataSnapshotFile);
+        }
+
+        final List<CsdlSchema> odataSchemas = metadataSnapshot.getSchemas();
+
+        final long schemaTime = System.nanoTime();
+
+        final Map<Class<?>, String> resolvedVersionPropertyMap = new HashMap<Class<?>, String>();
+        for (Map.Entry<FullQualifiedName, String> versionProperty : metadataSnapshot.getVersionPropertyNames().entrySet()) {
+            resolvedVersionPropertyMap.put(entityTypeMap.get(versionProperty.getKey()), versionProperty.getValue());
+        }
+
+        final Map<Class<?>, IOlingoEntityCodec<?>> entityCodecMap = new HashMap<Class<?>, IOlingoEntityCodec<?>>();
+        for (Map.Entry<Class<?>, Object> generatedEntity : generatedEntities.entrySet()) {
+            if (generatedEntity.getValue() instanceof IOlingoEntityCodec) {
+                entityCodecMap.put(generatedEntity.getKey(), (IOlingoEntityCodec<?>) generatedEntity.getValue());
+            }
+        }
+
+        final BushyTailServiceContext serviceContext;
+        try {
+            serviceContext = new BushyTailServiceContext(odataSchemas, entityTypeMap, entityControllerMap, maxPageSizeMap, resolvedVersionPropertyMap,
+                    entityCacheMap, entityCodecMap, fetchSize);
+        } catch (OlingoSerializerException e) {
+            throw new BushyTailException("Cannot build entity accessor plans", e);
+        } catch (OlingoDeserializerException e) {
+            throw new BushyTailException("Cannot build entity binders", e);
+        }
+
+        final long serviceContextTime = System.nanoTime();
+
+        BushyTailMetricsCollector metricsCollector = null;
+        final List<IBushyTailMetricsListener> metricsListeners = new ArrayList<IBushyTailMetricsListener>();
+        if (metricsListener != null) {
+            metricsListeners.add(metricsListener);
+            if (metricsListener instanceof BushyTailMetricsCollector) {
+                metricsCollector = (BushyTailMetricsCollector) metricsListener;
+            }
+        }
+        if (managementName != null && metricsCollector == null) {
+            metricsCollector = new BushyTailMetricsCollector();
+            metricsListeners.add(metricsCollector);
+        }
+        if (slowRequestLog != null) {
+            metricsListeners.add(slowRequestLog);
+        }
+        final BushyTailMetricsHelper metricsHelper = metricsListeners.isEmpty() && !serverTiming ? null
+                : new BushyTailMetricsHelper(serverTiming, metricsListeners.toArray(new IBushyTailMetricsListener[metricsListeners.size()]));
+
+        // The metadata and service documents are rendered here once instead of on every request
+        final BushyTail bushyTail;
+        try {
+            bushyTail = new BushyTail(serviceContext, transactionManager, batchReadExecutor, metadataMaxAge, compressionHelper, metricsHelper, csrfTokenStrategy);
+        } catch (SerializerException e) {
+            throw new BushyTailException("Cannot render metadata document", e);
+        }
+        final long endTime = System.nanoTime();
+
+        if (managementName != null) {
+            try {
+                final BushyTailManagement management = new BushyTailManagement(managementName, serviceContext, bushyTail.getCsrfProtectionHelper(),
+                        metricsCollector, endTime - startTime, schemaTime - startTime);
+                management.register();
+                bushyTail.setManagement(management);
+            } catch (JMException e) {
+                throw new BushyTailException("Cannot register MBeans of '" + managementName + "'", e);
+            }
+        }
+
+        logger.info("Built OData service of {} entities in {} ms (schema: {} ms, service context: {} ms, metadata documents: {} ms)",
+                new Object[] {entityTypeMap.size(), toMillis(endTime - startTime), toMillis(schemaTime - startTime),
+                        toMillis(serviceContextTime - schemaTime), toMillis(endTime - serviceContextTime)});
+
+        return bushyTail;
+    }
+
+    /**
+     * Look up the classes generated by the {@code bushytail-processor} annotation processor for the JPA entity types.
+     *
+     * @return The instances of the generated classes by JPA entity type.
+     * @throws BushyTailException if a generated class cannot be instantiated.
+     * @see #GENERATED_CLASS_SUFFIX
+     */
+    private Map<Class<?>, Object> findGeneratedEntities() throws BushyTailException {
+        final Map<Class<?>, Object> generatedEntities = new HashMap<Class<?>, Object>();
+        for (Class<?> entityType : entityTypeMap.values()) {
+            // Nested entity classes are generated as top-level classes of their package
+            final String generatedClassName = entityType.getName().replace('$', '_') + GENERATED_CLASS_SUFFIX;
+
+            final Class<?> generatedClass;
+            try {
+                generatedClass = Class.forName(generatedClassName, true, entityType.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+
+            try {
+                generatedEntities.put(entityType, generatedClass.newInstance());
+            } catch (InstantiationException e) {
+                throw new BushyTailException("Cannot instantiate generated class '" + generatedClassName + "'", e);
+            } catch (IllegalAccessException e) {
+                throw new BushyTailException("Cannot instantiate generated class '" + generatedClassName + "'", e);
+            }
+        }
+
+        if (!generatedEntities.isEmpty()) {
+            logger.debug("Using generated metadata and codecs of {} entities", generatedEntities.size());
+        }
+
+        return generatedEntities;
+    }
+
+    /**
+     * Generate the OData metadata from the generated metadata or by reflecting over the JPA entity types.
+     *
+     * @param generatedEntities The instances of the classes generated for the JPA entity types.
+     * @return The generated OData metadata.
+     * @throws BushyTailException if the metadata cannot be generated.
+     */
+    private OlingoMetadataSnapshot createMetadataSnapshot(final Map<Class<?>, Object> generatedEntities) throws BushyTailException {
         final OlingoMetadataFactory metadataFactory = new OlingoMetadataFactory();
 
+        for (Object generatedEntity : generatedEntities.values()) {
+            if (generatedEntity instanceof IOlingoEntityMetadata) {
+                metadataFactory.setEntityMetadata((IOlingoEntityMetadata) generatedEntity);
+            }
+        }
+
         for (Map.Entry<FullQualifiedName, Class<?>> entity : entityTypeMap.entrySet()) {
             final FullQualifiedName entityFQN = entity.getKey();
             final Class<?> entityType = entity.getValue();
 
             metadataFactory.addEntity(entityType, entityFQN);
         }
+        for (Map.Entry<Class<?>, String> versionProperty : versionPropertyMap.entrySet()) {
+            metadataFactory.setVersionProperty(versionProperty.getKey(), versionProperty.getValue());
+        }
 
         final List<CsdlSchema> odataSchemas;
         try {
-            odataSchemas = metadataFactory.createSchema("");
+            odataSchemas = metadataFactory.createSchema("", buildExecutor);
         } catch (OlingoMetadataFactoryException e) {
             throw new BushyTailException("Cannot build Olingo metadata", e);
         }
 
-        return new BushyTail(odataSchemas, entityControllerMap, entityTypeMap);
+        final Map<FullQualifiedName, String> versionPropertyNames = new HashMap<FullQualifiedName, String>();
+        for (Map.Entry<FullQualifiedName, Class<?>> entity : entityTypeMap.entrySet()) {
+            final String versionProperty = metadataFactory.getVersionPropertyName(entity.getValue());
+            if (versionProperty != null) {
+                versionPropertyNames.put(entity.getKey(), versionProperty);
+            }
+        }
+
+        return new OlingoMetadataSnapshot(odataSchemas, versionPropertyNames);
+    }
+
+    /**
+     * Convert a duration to milliseconds.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @return The duration in milliseconds.
+     */
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
 }
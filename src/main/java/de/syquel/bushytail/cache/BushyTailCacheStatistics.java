@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.cache;
+
+/**
+ * Immutable snapshot of the statistics of a {@link BushyTailEntityCache}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailCacheStatistics {
+
+    /** The number of reads which have been answered by the cache. */
+    private final long hitCount;
+
+    /** The number of reads which have been passed to the controller. */
+    private final long missCount;
+
+    /** The number of entities which have been evicted because of the size bound or their age. */
+    private final long evictionCount;
+
+    /** The number of cached entities. */
+    private final long size;
+
+    /**
+     * Constructs {@link BushyTailCacheStatistics}.
+     *
+     * @param hitCount The number of reads which have been answered by the cache.
+     * @param missCount The number of reads which have been passed to the controller.
+     * @param evictionCount The number of entities which have been evicted because of the size bound or their age.
+     * @param size The number of cached entities.
+     */
+    public BushyTailCacheStatistics(final long hitCount, final long missCount, final long evictionCount, final long size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    /**
+     * @return The number of reads which have been answered by the cache.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of reads which have been passed to the controller.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return The ratio of reads which have been answered by the cache or {@code 1.0} if there have not been any reads.
+     */
+    public double getHitRate() {
+        final long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * @return The number of entities which have been evicted because of the size bound or their age.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return The number of cached entities.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "BushyTailCacheStatistics{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount + ", size=" + size + '}';
+    }
+
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.cache;
+
+import de.syquel.bushytail.controller.BushyTailEntityKey;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe cache of the entities of one entity set by their key.
+ * <p>
+ * The keys are spread over independently locked segments, so that concurrent reads of different entities
+ * rarely contend and there is no global lock. Each segment evicts by the configured {@link BushyTailEvictionPolicy}:
+ * with {@link BushyTailEvictionPolicy#LRU}, a segment is a single access-ordered map. With
+ * {@link BushyTailEvictionPolicy#W_TINY_LFU}, new entities enter a window of about one percent of the segment;
+ * an entity which leaves the window only replaces the least recently used entity of the main region if it has
+ * been requested more frequently according to a shared {@link BushyTailFrequencySketch}.
+ * </p>
+ * <p>
+ * Entities expire after a fixed time to live since they have been put into the cache. The cache holds detached
+ * entities which are shared between requests, so they must not be modified by the caller.
+ * </p>
+ * <p>
+ * An entity which is read while it is being updated may already be stale when it is put into the cache. Therefore,
+ * the caller takes a {@link #stamp(BushyTailEntityKey) stamp} before reading an entity, and {@link #put(BushyTailEntityKey, Object, long)}
+ * discards the entity if the key has been invalidated since.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailEntityCache {
+
+    /** The maximum number of segments. */
+    private static final int MAX_SEGMENTS = 16;
+
+    /** The minimum number of entities per segment. */
+    private static final int MIN_SEGMENT_SIZE = 32;
+
+    /** The number of invalidation stamps per segment, which are shared by the keys with the same hash bits. */
+    private static final int STAMPS_PER_SEGMENT = 64;
+
+    /** The segments of the cache. */
+    private final Segment[] segments;
+
+    /** The time to live of an entity in nanoseconds or {@code 0} if entities do not expire. */
+    private final long timeToLiveNanos;
+
+    /** The frequency sketch or {@code null} if the eviction policy does not consider frequencies. */
+    private final BushyTailFrequencySketch sketch;
+
+    /** The number of reads which have been answered by the cache. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The number of reads which have not been answered by the cache. */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** The number of evicted or expired entities. */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructs {@link BushyTailEntityCache}.
+     *
+     * @param maximumSize The maximum number of cached entities.
+     * @param timeToLive The time to live of an entity or {@code 0} if entities do not expire.
+     * @param timeUnit The unit of the time to live.
+     * @param evictionPolicy The policy which selects the entities to evict.
+     */
+    public BushyTailEntityCache(final int maximumSize, final long timeToLive, final TimeUnit timeUnit, final BushyTailEvictionPolicy evictionPolicy) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum cache size must be positive");
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative");
+        }
+
+        timeToLiveNanos = timeUnit.toNanos(timeToLive);
+        sketch = evictionPolicy == BushyTailEvictionPolicy.W_TINY_LFU ? new BushyTailFrequencySketch(maximumSize) : null;
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && maximumSize / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+            segmentCount <<= 1;
+        }
+
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // The remainder of the maximum size is distributed over the first segments
+            final int capacity = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+            final int windowCapacity = sketch == null ? capacity : Math.max(1, capacity / 100);
+            segments[i] = new Segment(windowCapacity, capacity - windowCapacity);
+        }
+    }
+
+    /**
+     * Look up a cached entity.
+     *
+     * @param key The key of the entity.
+     * @return The cached entity or {@code null} if it is not cached or has expired.
+     */
+    public Object get(final BushyTailEntityKey key) {
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+
+        final Object entity = segmentFor(key).get(key, System.nanoTime());
+        if (entity == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+
+        return entity;
+    }
+
+    /**
+     * Determine the invalidation stamp of a key, which has to be taken before the entity is read from the backend.
+     *
+     * @param key The key of the entity.
+     * @return The stamp which has to be passed to {@link #put(BushyTailEntityKey, Object, long)}.
+     */
+    public long stamp(final BushyTailEntityKey key) {
+        return segmentFor(key).stamp(key);
+    }
+
+    /**
+     * Cache an entity, evicting other entities if the cache is full.
+     * <p>
+     * The entity is discarded if its key has been invalidated since the stamp has been taken, because it may have
+     * been read before the change which caused the invalidation.
+     * </p>
+     *
+     * @param key The key of the entity.
+     * @param entity The entity.
+     * @param stamp The stamp of the key which has been taken before the entity has been read.
+     * @return Whether the entity has been cached.
+     */
+    public boolean put(final BushyTailEntityKey key, final Object entity, final long stamp) {
+        final long expiresAt = timeToLiveNanos == 0 ? 0 : System.nanoTime() + timeToLiveNanos;
+        return segmentFor(key).put(key, new CacheEntry(entity, expiresAt), stamp);
+    }
+
+    /**
+     * Remove an entity from the cache, because it has been created, updated or deleted.
+     *
+     * @param key The key of the entity.
+     */
+    public void invalidate(final BushyTailEntityKey key) {
+        segmentFor(key).invalidate(key);
+    }
+
+    /**
+     * Remove all entities from the cache.
+     */
+    public void invalidateAll() {
+        for (final Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return The current number of cached entities, which may include expired entities which have not been removed yet.
+     */
+    public long size() {
+        long size = 0;
+        for (final Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Reset the hit, miss and eviction counts of the cache.
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+
+    /**
+     * @return A snapshot of the statistics of the cache.
+     */
+    public BushyTailCacheStatistics getStatistics() {
+        return new BushyTailCacheStatistics(hitCount.get(), missCount.get(), evictionCount.get(), size());
+    }
+
+    /**
+     * @param key The key of an entity.
+     * @return The segment which is responsible for the key.
+     */
+    private Segment segmentFor(final BushyTailEntityKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+
+    /**
+     * A cached entity and the time it expires.
+     */
+    private static final class CacheEntry {
+
+        /** The cached entity. */
+        private final Object entity;
+
+        /** The value of {@link System#nanoTime()} after which the entity has expired or {@code 0} if it does not expire. */
+        private final long expiresAt;
+
+        /**
+         * Constructs {@link CacheEntry}.
+         *
+         * @param entity The cached entity.
+         * @param expiresAt The value of {@link System#nanoTime()} after which the entity has expired or {@code 0} if it does not expire.
+         */
+        CacheEntry(final Object entity, final long expiresAt) {
+            this.entity = entity;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @param now The current value of {@link System#nanoTime()}.
+         * @return Whether the entity has expired.
+         */
+        boolean isExpired(final long now) {
+            return expiresAt != 0 && now - expiresAt > 0;
+        }
+
+    }
+
+
+    /**
+     * Independently locked part of the cache, which consists of an LRU window and an LRU main region.
+     */
+    private final class Segment {
+
+        /** The recently added entities in access order. */
+        private final LinkedHashMap<BushyTailEntityKey, CacheEntry> window = new LinkedHashMap<BushyTailEntityKey, CacheEntry>(16, 0.75f, true);
+
+        /** The entities which have been admitted to the main region in access order. */
+        private final LinkedHashMap<BushyTailEntityKey, CacheEntry> main = new LinkedHashMap<BushyTailEntityKey, CacheEntry>(16, 0.75f, true);
+
+        /** The invalidation stamps of the keys by their hash bits, which are incremented whenever a key is invalidated. */
+        private final long[] stamps = new long[STAMPS_PER_SEGMENT];
+
+        /** The number of entities of the segment, which is published for reading without the lock. */
+        private volatile int size;
+
+        /** The maximum number of entities of the window. */
+        private final int windowCapacity;
+
+        /** The maximum number of entities of the main region. */
+        private final int mainCapacity;
+
+        /**
+         * Constructs {@link Segment}.
+         *
+         * @param windowCapacity The maximum number of entities of the window.
+         * @param mainCapacity The maximum number of entities of the main region.
+         */
+        Segment(final int windowCapacity, final int mainCapacity) {
+            this.windowCapacity = windowCapacity;
+            this.mainCapacity = mainCapacity;
+        }
+
+        /**
+         * Look up an entity and mark it as recently used.
+         *
+         * @param key The key of the entity.
+         * @param now The current value of {@link System#nanoTime()}.
+         * @return The entity or {@code null} if it is not cached or has expired.
+         */
+        synchronized Object get(final BushyTailEntityKey key, final long now) {
+            CacheEntry entry = window.get(key);
+            if (entry == null) {
+                entry = main.get(key);
+            }
+            if (entry == null) {
+                return null;
+            }
+
+            if (entry.isExpired(now)) {
+                remove(key);
+                evictionCount.incrementAndGet();
+                return null;
+            }
+
+            return entry.entity;
+        }
+
+        /**
+         * @param key The key of an entity.
+         * @return The current invalidation stamp of the key.
+         */
+        synchronized long stamp(final BushyTailEntityKey key) {
+            return stamps[stampIndex(key)];
+        }
+
+        /**
+         * Add an entity to the window and evict entities if the segment is full, unless the key has been invalidated.
+         *
+         * @param key The key of the entity.
+         * @param entry The entity and the time it expires.
+         * @param stamp The stamp of the key which has been taken before the entity has been read.
+         * @return Whether the entity has been added.
+         */
+        synchronized boolean put(final BushyTailEntityKey key, final CacheEntry entry, final long stamp) {
+            if (stamps[stampIndex(key)] != stamp) {
+                return false;
+            }
+
+            if (main.containsKey(key)) {
+                main.put(key, entry);
+                return true;
+            }
+
+            window.put(key, entry);
+            if (window.size() > windowCapacity) {
+                final Iterator<Map.Entry<BushyTailEntityKey, CacheEntry>> windowIterator = window.entrySet().iterator();
+                final Map.Entry<BushyTailEntityKey, CacheEntry> candidate = windowIterator.next();
+                windowIterator.remove();
+                admit(candidate.getKey(), candidate.getValue());
+            }
+            size = window.size() + main.size();
+            return true;
+        }
+
+        /**
+         * Move an entity which has left the window into the main region, if it is used more frequently than
+         * the entity it would displace.
+         *
+         * @param key The key of the entity.
+         * @param entry The entity and the time it expires.
+         */
+        private void admit(final BushyTailEntityKey key, final CacheEntry entry) {
+            if (main.size() < mainCapacity) {
+                main.put(key, entry);
+                return;
+            }
+
+            evictionCount.incrementAndGet();
+            if (mainCapacity == 0) {
+                return;
+            }
+
+            final Iterator<Map.Entry<BushyTailEntityKey, CacheEntry>> mainIterator = main.entrySet().iterator();
+            final BushyTailEntityKey victimKey = mainIterator.next().getKey();
+            if (sketch.frequency(key) > sketch.frequency(victimKey)) {
+                mainIterator.remove();
+                main.put(key, entry);
+            }
+        }
+
+        /**
+         * Remove an entity and prevent entities which have been read before from being added.
+         *
+         * @param key The key of the entity.
+         */
+        synchronized void invalidate(final BushyTailEntityKey key) {
+            stamps[stampIndex(key)]++;
+            remove(key);
+        }
+
+        /**
+         * Remove an entity.
+         *
+         * @param key The key of the entity.
+         */
+        synchronized void remove(final BushyTailEntityKey key) {
+            if (window.remove(key) == null) {
+                main.remove(key);
+            }
+            size = window.size() + main.size();
+        }
+
+        /**
+         * Remove all entities and prevent entities which have been read before from being added.
+         */
+        synchronized void clear() {
+            for (int i = 0; i < stamps.length; i++) {
+                stamps[i]++;
+            }
+            window.clear();
+            main.clear();
+            size = 0;
+        }
+
+        /**
+         * @param key The key of an entity.
+         * @return The index of the invalidation stamp of the key, which is independent of the segment index.
+         */
+        private int stampIndex(final BushyTailEntityKey key) {
+            return (key.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(STAMPS_PER_SEGMENT));
+        }
+
+        /**
+         * @return The number of entities of the segment, which is read without acquiring the lock.
+         */
+        int size() {
+            return size;
+        }
+
+    }
+
+}
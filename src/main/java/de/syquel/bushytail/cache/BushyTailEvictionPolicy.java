@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.cache;
+
+/**
+ * The policies which select the entities a full {@link BushyTailEntityCache} evicts.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public enum BushyTailEvictionPolicy {
+
+    /** Evict the least recently used entity. */
+    LRU,
+
+    /**
+     * Admit new entities through a small LRU window and keep the entities of the main region by their frequency of use,
+     * so that a burst of one-off reads does not displace the frequently used entities.
+     */
+    W_TINY_LFU
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate, aging frequency counter of cache keys for the TinyLFU admission of a {@link BushyTailEntityCache}.
+ * <p>
+ * The frequencies are kept in a count-min sketch with four hash functions and counters which saturate at 15.
+ * After a sample of ten times the maximum cache size has been recorded, all counters are halved, so that
+ * entities which have been popular in the past lose their advantage over time. Counters are updated without locks;
+ * lost updates under contention only make the estimates slightly less accurate.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailFrequencySketch {
+
+    /** The number of hash functions. */
+    private static final int DEPTH = 4;
+
+    /** The maximum value of a counter. */
+    private static final int MAX_FREQUENCY = 15;
+
+    /** The seeds of the hash functions. */
+    private static final int[] SEEDS = {0x97cb3127, 0xb3b7bdf5, 0xe8c45a4d, 0x2c8a6f2b};
+
+    /** The counters of all hash functions. */
+    private final AtomicIntegerArray counters;
+
+    /** The mask which maps a hash to a counter index. */
+    private final int mask;
+
+    /** The number of recorded accesses after which all counters are halved. */
+    private final int sampleSize;
+
+    /** The number of recorded accesses since the counters have been halved. */
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * Constructs {@link BushyTailFrequencySketch}.
+     *
+     * @param maximumSize The maximum number of entities of the cache.
+     */
+    BushyTailFrequencySketch(final int maximumSize) {
+        int width = 16;
+        while (width < maximumSize * 4 && width < (1 << 24)) {
+            width <<= 1;
+        }
+
+        counters = new AtomicIntegerArray(width);
+        mask = width - 1;
+        sampleSize = Math.max(10 * maximumSize, 10);
+    }
+
+    /**
+     * Record an access of a key.
+     *
+     * @param key The key.
+     */
+    void increment(final Object key) {
+        final int hash = spread(key.hashCode());
+        for (int i = 0; i < DEPTH; i++) {
+            final int index = indexOf(hash, i);
+            final int count = counters.get(index);
+            if (count < MAX_FREQUENCY) {
+                counters.compareAndSet(index, count, count + 1);
+            }
+        }
+
+        if (additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Estimate the frequency of a key.
+     *
+     * @param key The key.
+     * @return The estimated number of recent accesses, at most 15.
+     */
+    int frequency(final Object key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, counters.get(indexOf(hash, i)));
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Halve all counters.
+     */
+    private void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >>> 1);
+        }
+        additions.set(0);
+    }
+
+    /**
+     * @param hash The spread hash of a key.
+     * @param function The index of the hash function.
+     * @return The index of the counter of the key for the hash function.
+     */
+    private int indexOf(final int hash, final int function) {
+        int h = (hash ^ SEEDS[function]) * SEEDS[(function + 1) % DEPTH];
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    /**
+     * Spread the bits of a hash code, so that keys with similar hash codes map to different counters.
+     *
+     * @param hashCode The hash code of a key.
+     * @return The spread hash.
+     */
+    private static int spread(final int hashCode) {
+        int h = hashCode * 0x9e3779b9;
+        h ^= h >>> 15;
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller;
+
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link IBushyTailBulkController} whose bulk operations loop over the single-entity operations of {@link IBushyTailController}.
+ * <p>
+ * Controllers extend this class to take part in bulk operations and override the operations their backend can perform
+ * more efficiently, e.g. with a multi-row insert.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the controller.
+ */
+public abstract class AbstractBushyTailBulkController<T> implements IBushyTailBulkController<T> {
+
+    @Override
+    public List<T> createAll(final List<T> entities) {
+        final List<T> createdEntities = new ArrayList<T>(entities.size());
+        for (final T entity : entities) {
+            final T createdEntity = create(entity);
+            createdEntities.add(createdEntity == null ? entity : createdEntity);
+        }
+
+        return createdEntities;
+    }
+
+    @Override
+    public List<T> updateAll(final List<T> entities) {
+        final List<T> updatedEntities = new ArrayList<T>(entities.size());
+        for (final T entity : entities) {
+            final T updatedEntity = update(entity);
+            updatedEntities.add(updatedEntity == null ? entity : updatedEntity);
+        }
+
+        return updatedEntities;
+    }
+
+    @Override
+    public List<Boolean> deleteByKeys(final List<List<UriParameter>> keyPredicates) {
+        final List<Boolean> deleted = new ArrayList<Boolean>(keyPredicates.size());
+        for (final List<UriParameter> keyPredicate : keyPredicates) {
+            final T entity = read(keyPredicate);
+            deleted.add(entity != null && delete(entity));
+        }
+
+        return deleted;
+    }
+
+}
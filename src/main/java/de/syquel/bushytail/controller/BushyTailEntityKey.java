@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable primary key of an entity, consisting of the values of its key properties by property name.
+ * <p>
+ * Keys are compared by value, so they can be used to group related entities by the entity they belong to.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailEntityKey {
+
+    /** The values of the key properties by property name. */
+    private final Map<String, Object> values;
+
+    /**
+     * Constructs {@link BushyTailEntityKey}.
+     *
+     * @param values The values of the key properties by property name.
+     */
+    public BushyTailEntityKey(final Map<String, Object> values) {
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(values));
+    }
+
+    /**
+     * @return The values of the key properties by property name.
+     */
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    /**
+     * @param propertyName The name of a key property.
+     * @return The value of the key property or {@code null} if it is not part of the key.
+     */
+    public Object getValue(final String propertyName) {
+        return values.get(propertyName);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BushyTailEntityKey)) {
+            return false;
+        }
+
+        return values.equals(((BushyTailEntityKey) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+
+}
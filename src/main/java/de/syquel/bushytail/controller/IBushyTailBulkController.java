@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller;
+
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import java.util.List;
+
+/**
+ * Optional extension of {@link IBushyTailController} which writes many entities in one call.
+ * <p>
+ * Consecutive operations of the same kind on the same entity set within a {@code $batch} change set are handed over at once,
+ * so the backend can write them with as few round trips as possible. {@link AbstractBushyTailBulkController} implements
+ * the bulk operations by looping over the single-entity operations.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the controller.
+ */
+public interface IBushyTailBulkController<T> extends IBushyTailController<T> {
+
+    /**
+     * Create entities.
+     * @param entities the entities to create in order
+     * @return the created entities in the same order
+     */
+    List<T> createAll(List<T> entities);
+
+    /**
+     * Update entities.
+     * @param entities the entities to update in order
+     * @return the updated entities in the same order
+     */
+    List<T> updateAll(List<T> entities);
+
+    /**
+     * Delete entities by their keys.
+     * @param keyPredicates the keys of the entities to delete in order
+     * @return whether each entity has been deleted in the same order, i.e. {@code false} if it does not exist
+     */
+    List<Boolean> deleteByKeys(List<List<UriParameter>> keyPredicates);
+
+}
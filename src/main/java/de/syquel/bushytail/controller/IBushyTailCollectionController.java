@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.syquel.bushytail.controller;
+
+/**
+ * Optional extension of {@link IBushyTailController} which can read whole entity collections.
+ * <p>
+ * The entities are pulled one at a time from the returned cursor and written to the response immediately,
+ * so the collection never has to be held in memory.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the controller.
+ */
+public interface IBushyTailCollectionController<T> extends IBushyTailController<T> {
+
+    /**
+     * Read all entities.
+     * @param fetchSize the number of entities which should be fetched from the backend at once
+     * @return the cursor over all entities, which is closed after the response has been written
+     */
+    IBushyTailCursor<T> readAll(int fetchSize);
+
+}
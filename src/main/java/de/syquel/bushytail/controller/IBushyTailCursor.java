@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.syquel.bushytail.controller;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Forward-only cursor over the entities of a collection read.
+ * <p>
+ * The cursor is consumed while the response is being written and closed afterwards,
+ * so implementations may keep a database cursor or result set open until {@link #close()}.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the cursor.
+ */
+public interface IBushyTailCursor<T> extends Iterator<T>, Closeable {
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional extension of {@link IBushyTailController} which reads the entities related to many other entities at once.
+ * <p>
+ * Navigation properties and {@code $expand} are resolved with one call per navigation property for all entities of a
+ * response page instead of one call per entity. Nested expansions are resolved level by level in the same way.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the controller.
+ */
+public interface IBushyTailExpandController<T> extends IBushyTailController<T> {
+
+    /**
+     * Read the entities which are related to any of the given partner entities.
+     * @param partnerProperty the name of the navigation property of the handled entity which refers to the partner entities
+     * @param partnerKeys the keys of the partner entities
+     * @return the related entities grouped by the key of their partner entity; partners without related entities may be absent
+     * @throws BushyTailQueryException if the navigation property cannot be resolved by the controller
+     */
+    Map<BushyTailEntityKey, List<T>> readByPartner(String partnerProperty, Collection<BushyTailEntityKey> partnerKeys) throws BushyTailQueryException;
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import java.util.List;
+
+/**
+ * Optional extension of {@link IBushyTailController} which reads the version of an entity without loading it.
+ * <p>
+ * Conditional reads with {@code If-None-Match} compare the ETag of an entity, which is derived from its version,
+ * before the entity itself is read and serialized. Unchanged entities are then answered with {@code 304 Not Modified}.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the controller.
+ */
+public interface IBushyTailVersionController<T> extends IBushyTailController<T> {
+
+    /**
+     * Read the version of an entity.
+     * @param versionProperty the name of the version property of the handled entity
+     * @param keyPredicates the key of the entity
+     * @return the version or {@code null} if the entity does not exist or has no version
+     * @throws BushyTailQueryException if the version property cannot be resolved by the controller
+     */
+    Object readVersion(String versionProperty, List<UriParameter> keyPredicates) throws BushyTailQueryException;
+
+}
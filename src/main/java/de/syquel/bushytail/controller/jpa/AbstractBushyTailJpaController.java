@@ -0,0 +1,480 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.jpa;
+
+import de.syquel.bushytail.controller.BushyTailEntityKey;
+import de.syquel.bushytail.controller.IBushyTailBulkController;
+import de.syquel.bushytail.controller.IBushyTailCursor;
+import de.syquel.bushytail.controller.IBushyTailExpandController;
+import de.syquel.bushytail.controller.IBushyTailVersionController;
+import de.syquel.bushytail.controller.query.*;
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
+import de.syquel.bushytail.serializer.plan.OlingoEntityBinder;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ready-made {@link IBushyTailQueryController}, {@link IBushyTailExpandController}, {@link IBushyTailBulkController}
+ * and {@link IBushyTailVersionController} which reads and writes JPA entities through an {@link EntityManager}.
+ * <p>
+ * Queries are compiled into JPQL by a {@link BushyTailJpqlCompiler}, so filtering, sorting and paging happen in the database.
+ * Related entities of many partner entities are read with a single {@code JOIN} query per chunk of partner keys,
+ * bulk operations flush and clear the persistence context per chunk of entities and versions are read
+ * with a query which only selects the key and the version column.
+ * Transaction demarcation is left to the caller, e.g. a container-managed transaction of an EJB
+ * or an {@link AbstractBushyTailJpaTransactionManager}.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the controller.
+ */
+public abstract class AbstractBushyTailJpaController<T> implements IBushyTailQueryController<T>, IBushyTailExpandController<T>,
+        IBushyTailBulkController<T>, IBushyTailVersionController<T> {
+
+    /** The default number of entities after which bulk operations flush and clear the persistence context. */
+    private static final int DEFAULT_BULK_CHUNK_SIZE = 500;
+
+    /** The default maximum number of partner keys per partner query. */
+    private static final int DEFAULT_MAX_PARTNER_KEYS = 500;
+
+    /** The JPA entity class. */
+    private final Class<T> entityClass;
+
+    /** The JPQL compiler of the JPA entity class. */
+    private final BushyTailJpqlCompiler compiler;
+
+    /** The binders which create entities from projected rows by projection. */
+    private final ConcurrentMap<List<String>, OlingoEntityBinder<T>> projectionBinders = new ConcurrentHashMap<List<String>, OlingoEntityBinder<T>>();
+
+    /**
+     * Constructs {@link AbstractBushyTailJpaController}.
+     *
+     * @param entityClass The JPA entity class.
+     */
+    protected AbstractBushyTailJpaController(final Class<T> entityClass) {
+        this.entityClass = entityClass;
+
+        compiler = new BushyTailJpqlCompiler(entityClass);
+    }
+
+    /**
+     * @return The entity manager of the current request.
+     */
+    protected abstract EntityManager getEntityManager();
+
+    /**
+     * Determine whether the persistence context is cleared between the pages of a collection read,
+     * which keeps the memory consumption flat no matter how large the collection is, but detaches all managed entities.
+     * Subclasses which read collections within a unit of work that still has unflushed changes should disable it.
+     *
+     * @return {@code true} by default.
+     */
+    protected boolean isClearBetweenPages() {
+        return true;
+    }
+
+    /**
+     * Determine the number of entities after which bulk operations flush and clear the persistence context.
+     * <p>
+     * The statements of a chunk are sent at once, so the JPA provider can combine them into JDBC batches if JDBC batching
+     * is enabled in the persistence unit, e.g. by {@code hibernate.jdbc.batch_size} or {@code eclipselink.jdbc.batch-writing}.
+     * Clearing keeps the persistence context small, but detaches the returned entities.
+     * </p>
+     *
+     * @return {@code 500} by default.
+     */
+    protected int getBulkChunkSize() {
+        return DEFAULT_BULK_CHUNK_SIZE;
+    }
+
+    /**
+     * Determine the maximum number of partner keys per partner query, which keeps the {@code IN} lists
+     * within the limits of the database, e.g. 1000 elements for Oracle.
+     *
+     * @return {@code 500} by default.
+     */
+    protected int getMaxPartnerKeys() {
+        return DEFAULT_MAX_PARTNER_KEYS;
+    }
+
+    /**
+     * @return The JPA entity class.
+     */
+    protected Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return The JPQL compiler of the JPA entity class.
+     */
+    protected BushyTailJpqlCompiler getCompiler() {
+        return compiler;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T read(final List<UriParameter> keyPredicates) {
+        final List<String> keyPropertyNames = compiler.getKeyPropertyNames();
+        if (keyPredicates.size() == 1 && keyPropertyNames.size() == 1) {
+            final Object key = parseKey(keyPropertyNames.get(0), keyPredicates.get(0).getText());
+            return getEntityManager().find(entityClass, key);
+        }
+
+        final BushyTailJpqlQuery query;
+        try {
+            query = compiler.compile(new BushyTailQuery(createKeyFilter(keyPredicates), Collections.<BushyTailSortKey>emptyList(), 1, 0, 1));
+        } catch (BushyTailQueryException e) {
+            throw new IllegalArgumentException("Invalid key of class '" + entityClass.getName() + "'", e);
+        }
+
+        final List<T> results = query.createQuery(getEntityManager()).getResultList();
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    @Override
+    public T create(final T entity) {
+        getEntityManager().persist(entity);
+        return entity;
+    }
+
+    @Override
+    public List<T> createAll(final List<T> entities) {
+        final EntityManager entityManager = getEntityManager();
+        final int chunkSize = Math.max(1, getBulkChunkSize());
+        for (int i = 0; i < entities.size(); i++) {
+            entityManager.persist(entities.get(i));
+            if ((i + 1) % chunkSize == 0 || i == entities.size() - 1) {
+                flushAndClear(entityManager);
+            }
+        }
+
+        return entities;
+    }
+
+    @Override
+    public List<T> updateAll(final List<T> entities) {
+        final EntityManager entityManager = getEntityManager();
+        final int chunkSize = Math.max(1, getBulkChunkSize());
+        final List<T> updatedEntities = new ArrayList<T>(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            updatedEntities.add(entityManager.merge(entities.get(i)));
+            if ((i + 1) % chunkSize == 0 || i == entities.size() - 1) {
+                flushAndClear(entityManager);
+            }
+        }
+
+        return updatedEntities;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Boolean> deleteByKeys(final List<List<UriParameter>> keyPredicates) {
+        final EntityManager entityManager = getEntityManager();
+        final int chunkSize = Math.max(1, getBulkChunkSize());
+        final List<Boolean> deleted = new ArrayList<Boolean>(keyPredicates.size());
+        for (int offset = 0; offset < keyPredicates.size(); offset += chunkSize) {
+            final List<List<UriParameter>> chunk = keyPredicates.subList(offset, Math.min(offset + chunkSize, keyPredicates.size()));
+
+            // The entities of the whole chunk are loaded with one query and matched by their key values
+            IBushyTailExpression filter = null;
+            for (final List<UriParameter> keyPredicate : chunk) {
+                final IBushyTailExpression keyFilter = createKeyFilter(keyPredicate);
+                filter = filter == null ? keyFilter : new BushyTailBinaryExpression(BushyTailBinaryOperator.OR, filter, keyFilter);
+            }
+
+            final BushyTailJpqlQuery query;
+            try {
+                query = compiler.compile(new BushyTailQuery(filter, Collections.<BushyTailSortKey>emptyList(), null, 0, chunk.size()));
+            } catch (BushyTailQueryException e) {
+                throw new IllegalArgumentException("Invalid keys of class '" + entityClass.getName() + "'", e);
+            }
+
+            final Map<List<Object>, T> entitiesByKey = new HashMap<List<Object>, T>();
+            for (final T entity : (List<T>) query.createQuery(entityManager).getResultList()) {
+                entitiesByKey.put(getKeyValues(entity), entity);
+            }
+
+            for (final List<UriParameter> keyPredicate : chunk) {
+                final T entity = entitiesByKey.remove(parseKeyValues(keyPredicate));
+                if (entity != null) {
+                    entityManager.remove(entity);
+                }
+                deleted.add(entity != null);
+            }
+            flushAndClear(entityManager);
+        }
+
+        return deleted;
+    }
+
+    @Override
+    public T update(final T entity) {
+        return getEntityManager().merge(entity);
+    }
+
+    @Override
+    public boolean delete(final T entity) {
+        final EntityManager entityManager = getEntityManager();
+        entityManager.remove(entityManager.contains(entity) ? entity : entityManager.merge(entity));
+        return true;
+    }
+
+    @Override
+    public IBushyTailCursor<T> readAll(final int fetchSize) {
+        try {
+            return query(new BushyTailQuery(null, Collections.<BushyTailSortKey>emptyList(), null, 0, fetchSize));
+        } catch (BushyTailQueryException e) {
+            throw new IllegalStateException("Cannot read all entities of class '" + entityClass.getName() + "'", e);
+        }
+    }
+
+    @Override
+    public IBushyTailCursor<T> query(final BushyTailQuery query) throws BushyTailQueryException {
+        final BushyTailJpqlQuery jpqlQuery = compiler.compile(query);
+        final OlingoEntityBinder<T> projectionBinder = jpqlQuery.getSelection() == null ? null : getProjectionBinder(jpqlQuery.getSelection());
+
+        return new BushyTailJpaPagingCursor<T>(getEntityManager(), jpqlQuery, isClearBetweenPages(), projectionBinder);
+    }
+
+    @Override
+    public long count(final IBushyTailExpression filter) throws BushyTailQueryException {
+        final BushyTailJpqlQuery jpqlQuery = compiler.compileCount(filter);
+
+        return ((Number) jpqlQuery.createQuery(getEntityManager()).getSingleResult()).longValue();
+    }
+
+    @Override
+    public Object readVersion(final String versionProperty, final List<UriParameter> keyPredicates) throws BushyTailQueryException {
+        // The key is selected as well, so that the result rows are arrays regardless of the JPA provider
+        final List<String> projection = new ArrayList<String>(compiler.getKeyPropertyNames());
+        projection.add(versionProperty);
+
+        final BushyTailJpqlQuery jpqlQuery = compiler.compile(
+                new BushyTailQuery(createKeyFilter(keyPredicates), Collections.<BushyTailSortKey>emptyList(), 1, 0, 1, projection));
+        final List<?> rows = jpqlQuery.createQuery(getEntityManager()).getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        final Object[] row = (Object[]) rows.get(0);
+        return row[row.length - 1];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<BushyTailEntityKey, List<T>> readByPartner(final String partnerProperty, final Collection<BushyTailEntityKey> partnerKeys)
+            throws BushyTailQueryException {
+        final Map<BushyTailEntityKey, List<T>> relatedEntities = new HashMap<BushyTailEntityKey, List<T>>();
+        if (partnerKeys.isEmpty()) {
+            return relatedEntities;
+        }
+
+        final List<String> partnerKeyPropertyNames = compiler.getPartnerKeyPropertyNames(partnerProperty);
+        final List<BushyTailEntityKey> remainingPartnerKeys = new ArrayList<BushyTailEntityKey>(partnerKeys);
+        final int maxPartnerKeys = Math.max(1, getMaxPartnerKeys());
+        for (int offset = 0; offset < remainingPartnerKeys.size(); offset += maxPartnerKeys) {
+            final List<BushyTailEntityKey> chunk = remainingPartnerKeys.subList(offset, Math.min(offset + maxPartnerKeys, remainingPartnerKeys.size()));
+            final BushyTailJpqlQuery jpqlQuery = compiler.compilePartnerQuery(partnerProperty, chunk, chunk.size());
+
+            for (final Object[] row : (List<Object[]>) jpqlQuery.createQuery(getEntityManager()).getResultList()) {
+                final Map<String, Object> partnerKeyValues = new LinkedHashMap<String, Object>();
+                for (int i = 0; i < partnerKeyPropertyNames.size(); i++) {
+                    partnerKeyValues.put(partnerKeyPropertyNames.get(i), row[i]);
+                }
+
+                final BushyTailEntityKey partnerKey = new BushyTailEntityKey(partnerKeyValues);
+                List<T> entities = relatedEntities.get(partnerKey);
+                if (entities == null) {
+                    entities = new ArrayList<T>();
+                    relatedEntities.put(partnerKey, entities);
+                }
+                entities.add((T) row[partnerKeyPropertyNames.size()]);
+            }
+        }
+
+        return relatedEntities;
+    }
+
+    /**
+     * Get the cached binder which creates entities from the rows of a projection.
+     *
+     * @param projection The names of the projected properties.
+     * @return The binder.
+     * @throws BushyTailQueryException if a projected property cannot be written.
+     */
+    private OlingoEntityBinder<T> getProjectionBinder(final List<String> projection) throws BushyTailQueryException {
+        OlingoEntityBinder<T> projectionBinder = projectionBinders.get(projection);
+        if (projectionBinder == null) {
+            try {
+                projectionBinder = OlingoEntityBinder.create(entityClass, projection, compiler.getKeyPropertyNames());
+            } catch (OlingoDeserializerException e) {
+                throw new BushyTailQueryException("Cannot project class '" + entityClass.getName() + "'", e);
+            }
+            if (!projectionBinder.getPropertyNames().containsAll(projection)) {
+                throw new BushyTailQueryException("Projection " + projection + " contains properties of class '" + entityClass.getName() + "' without setter");
+            }
+
+            final OlingoEntityBinder<T> existingProjectionBinder = projectionBinders.putIfAbsent(projection, projectionBinder);
+            if (existingProjectionBinder != null) {
+                projectionBinder = existingProjectionBinder;
+            }
+        }
+
+        return projectionBinder;
+    }
+
+    /**
+     * Create the filter which matches the entity with a key.
+     *
+     * @param keyPredicates The key of the entity.
+     * @return The filter.
+     * @throws IllegalArgumentException if a key property is unknown or its literal cannot be parsed.
+     */
+    private IBushyTailExpression createKeyFilter(final List<UriParameter> keyPredicates) {
+        IBushyTailExpression filter = null;
+        for (final UriParameter keyPredicate : keyPredicates) {
+            final IBushyTailExpression equality = new BushyTailBinaryExpression(BushyTailBinaryOperator.EQ,
+                    new BushyTailPropertyPath(Collections.singletonList(keyPredicate.getName())),
+                    new BushyTailLiteral(parseKey(keyPredicate.getName(), keyPredicate.getText())));
+            filter = filter == null ? equality : new BushyTailBinaryExpression(BushyTailBinaryOperator.AND, filter, equality);
+        }
+
+        return filter;
+    }
+
+    /**
+     * Parse the values of a key in the order of the primary key fields.
+     *
+     * @param keyPredicates The key of the entity.
+     * @return The key values.
+     * @throws IllegalArgumentException if a key property is missing or its literal cannot be parsed.
+     */
+    private List<Object> parseKeyValues(final List<UriParameter> keyPredicates) {
+        final List<String> keyPropertyNames = compiler.getKeyPropertyNames();
+        final List<Object> keyValues = new ArrayList<Object>(keyPropertyNames.size());
+        for (final String keyPropertyName : keyPropertyNames) {
+            UriParameter matchingKeyPredicate = null;
+            for (final UriParameter keyPredicate : keyPredicates) {
+                if (keyPropertyName.equals(keyPredicate.getName())) {
+                    matchingKeyPredicate = keyPredicate;
+                }
+            }
+            if (matchingKeyPredicate == null) {
+                throw new IllegalArgumentException("Missing key property '" + keyPropertyName + "' of class '" + entityClass.getName() + "'");
+            }
+
+            keyValues.add(parseKey(keyPropertyName, matchingKeyPredicate.getText()));
+        }
+
+        return keyValues;
+    }
+
+    /**
+     * Read the values of the primary key fields of an entity.
+     *
+     * @param entity The JPA entity.
+     * @return The key values in the order of the primary key fields.
+     * @throws IllegalStateException if a key property cannot be read.
+     */
+    private List<Object> getKeyValues(final T entity) {
+        final List<String> keyPropertyNames = compiler.getKeyPropertyNames();
+        final List<Object> keyValues = new ArrayList<Object>(keyPropertyNames.size());
+        for (final String keyPropertyName : keyPropertyNames) {
+            try {
+                keyValues.add(PropertyUtils.getProperty(entity, keyPropertyName));
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot read key property '" + keyPropertyName + "' of class '" + entityClass.getName() + "'", e);
+            }
+        }
+
+        return keyValues;
+    }
+
+    /**
+     * Send the pending statements of a bulk operation chunk and detach all entities.
+     *
+     * @param entityManager The entity manager.
+     */
+    private static void flushAndClear(final EntityManager entityManager) {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Parse the URI literal of a key property into its Java type.
+     *
+     * @param propertyName The name of the key property.
+     * @param text The URI literal, e.g. {@code 42} or {@code 'abc'}.
+     * @return The key value.
+     * @throws IllegalArgumentException if the key property is unknown or the literal cannot be parsed.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object parseKey(final String propertyName, final String text) {
+        final Field keyField = BushyTailJpqlCompiler.findField(entityClass, propertyName);
+        if (keyField == null) {
+            throw new IllegalArgumentException("Unknown key property '" + propertyName + "' of class '" + entityClass.getName() + "'");
+        }
+
+        String value = text;
+        if (value.length() > 1 && value.startsWith("'") && value.endsWith("'")) {
+            value = value.substring(1, value.length() - 1).replace("''", "'");
+        }
+
+        final Class<?> keyType = ClassUtils.primitiveToWrapper(keyField.getType());
+        if (String.class.equals(keyType)) {
+            return value;
+        } else if (Integer.class.equals(keyType)) {
+            return Integer.valueOf(value);
+        } else if (Long.class.equals(keyType)) {
+            return Long.valueOf(value);
+        } else if (Short.class.equals(keyType)) {
+            return Short.valueOf(value);
+        } else if (Byte.class.equals(keyType)) {
+            return Byte.valueOf(value);
+        } else if (BigInteger.class.equals(keyType)) {
+            return new BigInteger(value);
+        } else if (BigDecimal.class.equals(keyType)) {
+            return new BigDecimal(value);
+        } else if (UUID.class.equals(keyType)) {
+            return UUID.fromString(value);
+        } else if (keyType.isEnum()) {
+            return Enum.valueOf((Class<? extends Enum>) keyType, value);
+        }
+
+        throw new IllegalArgumentException("Unsupported key type '" + keyType.getName() + "' of class '" + entityClass.getName() + "'");
+    }
+
+}
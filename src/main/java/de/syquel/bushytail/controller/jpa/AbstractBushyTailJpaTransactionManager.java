@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.jpa;
+
+import de.syquel.bushytail.transaction.IBushyTailTransactionManager;
+import de.syquel.bushytail.transaction.exception.BushyTailTransactionException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+/**
+ * {@link IBushyTailTransactionManager} for resource-local entity managers, which demarcates the {@link EntityTransaction}
+ * of the entity manager the {@link AbstractBushyTailJpaController}s of the request use.
+ * <p>
+ * Container-managed entity managers take part in JTA transactions instead, which should be demarcated through the
+ * {@code UserTransaction} of the container.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public abstract class AbstractBushyTailJpaTransactionManager implements IBushyTailTransactionManager {
+
+    /**
+     * @return The entity manager of the current request.
+     */
+    protected abstract EntityManager getEntityManager();
+
+    @Override
+    public void begin() throws BushyTailTransactionException {
+        try {
+            getEntityManager().getTransaction().begin();
+        } catch (PersistenceException e) {
+            throw new BushyTailTransactionException("Cannot begin transaction", e);
+        } catch (IllegalStateException e) {
+            throw new BushyTailTransactionException("Cannot begin transaction", e);
+        }
+    }
+
+    @Override
+    public void commit() throws BushyTailTransactionException {
+        try {
+            getEntityManager().getTransaction().commit();
+        } catch (PersistenceException e) {
+            throw new BushyTailTransactionException("Cannot commit transaction", e);
+        } catch (IllegalStateException e) {
+            throw new BushyTailTransactionException("Cannot commit transaction", e);
+        }
+    }
+
+    @Override
+    public void rollback() throws BushyTailTransactionException {
+        try {
+            final EntityTransaction transaction = getEntityManager().getTransaction();
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+        } catch (PersistenceException e) {
+            throw new BushyTailTransactionException("Cannot roll back transaction", e);
+        } catch (IllegalStateException e) {
+            throw new BushyTailTransactionException("Cannot roll back transaction", e);
+        }
+    }
+
+}
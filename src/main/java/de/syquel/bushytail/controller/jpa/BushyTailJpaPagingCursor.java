@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.jpa;
+
+import de.syquel.bushytail.controller.IBushyTailCursor;
+import de.syquel.bushytail.serializer.plan.OlingoEntityBinder;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link IBushyTailCursor} which reads the results of a {@link BushyTailJpqlQuery} page by page.
+ * <p>
+ * JPA 1.0 cannot stream query results, so only one page of {@code fetchSize} entities is loaded at a time.
+ * The compiled queries are always ordered by the primary key, which keeps the pages consistent. If the query has a
+ * {@link BushyTailJpqlQuery.Keyset keyset}, each page after the first one continues after the sort values of the
+ * last row, so the database does not need to skip the rows of all previous pages and concurrent inserts or deletes
+ * do not shift rows between pages. Otherwise the pages are read by offset.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the cursor.
+ */
+class BushyTailJpaPagingCursor<T> implements IBushyTailCursor<T> {
+
+    /** The entity manager. */
+    private final EntityManager entityManager;
+
+    /** The compiled query. */
+    private final BushyTailJpqlQuery query;
+
+    /** Whether the persistence context is cleared before loading the next page. */
+    private final boolean clearBetweenPages;
+
+    /** The binder which creates entities from projected rows or {@code null} if whole entities are selected. */
+    private final OlingoEntityBinder<T> projectionBinder;
+
+    /** The index of the first result of the next page, if the query is paged by offset. */
+    private int nextFirstResult;
+
+    /** The indexes of the keyset fields in the projected rows or {@code null} if whole entities are selected. */
+    private final int[] keysetColumns;
+
+    /** The values of the keyset fields of the last loaded row or {@code null} before the first page. */
+    private List<Object> lastValues;
+
+    /** The number of results which may still be loaded or {@code null} for no limit. */
+    private Integer remainingResults;
+
+    /** The iterator over the current page or {@code null} before the first page. */
+    private Iterator<T> page;
+
+    /** Whether no further page exists. */
+    private boolean exhausted;
+
+    /**
+     * Constructs {@link BushyTailJpaPagingCursor}.
+     *
+     * @param entityManager The entity manager.
+     * @param query The compiled query.
+     * @param clearBetweenPages Whether the persistence context is cleared before loading the next page.
+     * @param projectionBinder The binder which creates entities from projected rows or {@code null} if whole entities are selected.
+     */
+    BushyTailJpaPagingCursor(final EntityManager entityManager, final BushyTailJpqlQuery query, final boolean clearBetweenPages,
+                             final OlingoEntityBinder<T> projectionBinder) {
+        this.entityManager = entityManager;
+        this.query = query;
+        this.clearBetweenPages = clearBetweenPages;
+        this.projectionBinder = projectionBinder;
+
+        nextFirstResult = query.getFirstResult();
+        remainingResults = query.getMaxResults();
+        exhausted = remainingResults != null && remainingResults <= 0;
+
+        final BushyTailJpqlQuery.Keyset keyset = query.getKeyset();
+        if (keyset == null || query.getSelection() == null) {
+            keysetColumns = null;
+        } else {
+            keysetColumns = new int[keyset.getFields().size()];
+            for (int i = 0; i < keysetColumns.length; i++) {
+                keysetColumns[i] = query.getSelection().indexOf(keyset.getFields().get(i).getName());
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (page == null || !page.hasNext()) {
+            if (exhausted) {
+                return false;
+            }
+
+            loadPage();
+        }
+
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return page.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Cursor is read-only");
+    }
+
+    @Override
+    public void close() {
+        page = null;
+        exhausted = true;
+    }
+
+    /**
+     * Load the next page.
+     */
+    @SuppressWarnings("unchecked")
+    private void loadPage() {
+        if (page != null && clearBetweenPages) {
+            entityManager.clear();
+        }
+
+        final int pageSize = remainingResults == null ? query.getFetchSize() : Math.min(query.getFetchSize(), remainingResults);
+        final List<?> rows = lastValues == null
+                ? query.createQuery(entityManager, nextFirstResult, pageSize).getResultList()
+                : query.createKeysetQuery(entityManager, lastValues, pageSize).getResultList();
+        if (query.getKeyset() != null && !rows.isEmpty()) {
+            lastValues = getKeysetValues(rows.get(rows.size() - 1));
+        }
+        final List<T> results = projectionBinder == null ? (List<T>) rows : toEntities(rows);
+
+        nextFirstResult += results.size();
+        if (remainingResults != null) {
+            remainingResults -= results.size();
+        }
+
+        exhausted = results.size() < pageSize || (remainingResults != null && remainingResults <= 0);
+        page = results.iterator();
+    }
+
+    /**
+     * Read the values of the keyset fields of a row.
+     *
+     * @param row The entity or the projected row.
+     * @return The values in the order of the keyset fields.
+     */
+    private List<Object> getKeysetValues(final Object row) {
+        final List<Field> keysetFields = query.getKeyset().getFields();
+        final List<Object> values = new ArrayList<Object>(keysetFields.size());
+        if (keysetColumns != null) {
+            final Object[] columns = row instanceof Object[] ? (Object[]) row : new Object[] {row};
+            for (final int keysetColumn : keysetColumns) {
+                values.add(columns[keysetColumn]);
+            }
+
+            return values;
+        }
+
+        for (final Field keysetField : keysetFields) {
+            try {
+                keysetField.setAccessible(true);
+                values.add(keysetField.get(row));
+            } catch (IllegalAccessException e) {
+                throw new PersistenceException("Cannot read field '" + keysetField.getName() + "' of class '" + row.getClass().getName() + "'", e);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Create detached entities which only carry the projected properties.
+     *
+     * @param rows The projected rows.
+     * @return The entities.
+     */
+    private List<T> toEntities(final List<?> rows) {
+        final List<String> selection = query.getSelection();
+
+        final List<T> entities = new ArrayList<T>(rows.size());
+        for (final Object row : rows) {
+            final Object[] values = row instanceof Object[] ? (Object[]) row : new Object[] {row};
+            try {
+                final T entity = projectionBinder.newInstance();
+                for (int i = 0; i < values.length; i++) {
+                    projectionBinder.getPropertyBinder(selection.get(i)).bind(entity, values[i]);
+                }
+                entities.add(entity);
+            } catch (Exception e) {
+                throw new PersistenceException("Cannot create entity of class '" + projectionBinder.getEntityClass().getName() + "' from projection", e);
+            }
+        }
+
+        return entities;
+    }
+
+}
@@ -0,0 +1,848 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.jpa;
+
+import de.syquel.bushytail.controller.BushyTailEntityKey;
+import de.syquel.bushytail.controller.query.*;
+import de.syquel.bushytail.controller.query.exception.BushyTailInvalidQueryException;
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+import de.syquel.bushytail.serializer.plan.OlingoValueCoercion;
+import org.apache.commons.lang3.ClassUtils;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compiles backend-neutral {@link BushyTailQuery}s of a JPA entity class into JPQL.
+ * <p>
+ * Property paths are resolved against the fields of the JPA entity, i.e. the same fields the OData properties have been
+ * generated from. Navigation segments become {@code LEFT JOIN}s, and literals become positional parameters which are
+ * coerced into the Java type of the property they are compared with. Only JPQL of JPA 1.0 is generated, thus date parts
+ * and rounding are not supported. Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailJpqlCompiler {
+
+    /** The alias of the queried entity. */
+    private static final String ROOT_ALIAS = "e";
+
+    /** The alias of the partner entity in partner queries. */
+    private static final String PARTNER_ALIAS = "p";
+
+    /** Marker value of boolean fragments which are conditions. */
+    private static final Object CONDITION = new Object();
+
+    /** Reference fragment for string parameters. */
+    private static final Fragment STRING = new Fragment("", String.class, null, null);
+
+    /** Reference fragment for integer parameters. */
+    private static final Fragment INTEGER = new Fragment("", Integer.class, null, null);
+
+    /** The JPA entity class. */
+    private final Class<?> entityClass;
+
+    /** The JPQL name of the JPA entity. */
+    private final String entityName;
+
+    /** The names of the primary key fields, which make the sort order unique. */
+    private final List<String> keyPropertyNames;
+
+    /**
+     * Constructs {@link BushyTailJpqlCompiler}.
+     *
+     * @param entityClass The JPA entity class.
+     */
+    public BushyTailJpqlCompiler(final Class<?> entityClass) {
+        this.entityClass = entityClass;
+
+        final Entity entityAnnotation = entityClass.getAnnotation(Entity.class);
+        entityName = entityAnnotation == null || entityAnnotation.name().isEmpty() ? entityClass.getSimpleName() : entityAnnotation.name();
+
+        keyPropertyNames = findKeyPropertyNames(entityClass);
+    }
+
+    /**
+     * @return The JPA entity class.
+     */
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return The names of the primary key fields.
+     */
+    public List<String> getKeyPropertyNames() {
+        return keyPropertyNames;
+    }
+
+    /**
+     * Compile a query which selects the matching entities or, if the query has a projection, the selected properties.
+     * The primary key is always appended to the sort keys, so that paging is deterministic.
+     * <p>
+     * If the query is ordered by non-nullable properties of the entity only, the JPQL query also carries a
+     * {@link BushyTailJpqlQuery.Keyset keyset} variant, which continues after the last row of a page instead of skipping
+     * the rows of the previous pages.
+     * </p>
+     *
+     * @param query The backend-neutral query.
+     * @return The JPQL query.
+     * @throws BushyTailInvalidQueryException if a literal cannot be converted into the type of the property it is compared with.
+     * @throws BushyTailQueryException if the query contains an unknown property or an expression JPQL cannot express.
+     */
+    public BushyTailJpqlQuery compile(final BushyTailQuery query) throws BushyTailQueryException {
+        final Compilation compilation = new Compilation();
+
+        final String where = query.getFilter() == null ? null : compilation.predicate(query.getFilter().accept(compilation));
+
+        final List<String> orderItems = new ArrayList<String>();
+        final List<BushyTailPropertyPath> orderedPaths = new ArrayList<BushyTailPropertyPath>();
+        final List<Boolean> orderDirections = new ArrayList<Boolean>();
+        for (final BushyTailSortKey sortKey : query.getSortKeys()) {
+            if (!(sortKey.getExpression() instanceof BushyTailPropertyPath)) {
+                throw new BushyTailQueryException("JPQL can only order by properties");
+            }
+
+            final BushyTailPropertyPath propertyPath = (BushyTailPropertyPath) sortKey.getExpression();
+            orderItems.add(compilation.visitProperty(propertyPath).jpql + (sortKey.isDescending() ? " DESC" : " ASC"));
+            orderedPaths.add(propertyPath);
+            orderDirections.add(sortKey.isDescending());
+        }
+        for (final String keyPropertyName : keyPropertyNames) {
+            final BushyTailPropertyPath keyPath = new BushyTailPropertyPath(Collections.singletonList(keyPropertyName));
+            if (!orderedPaths.contains(keyPath)) {
+                orderItems.add(ROOT_ALIAS + "." + keyPropertyName + " ASC");
+                orderedPaths.add(keyPath);
+                orderDirections.add(false);
+            }
+        }
+
+        final List<String> projection = query.getProjection();
+        final StringBuilder selectFrom = new StringBuilder("SELECT ");
+        if (projection == null) {
+            selectFrom.append(ROOT_ALIAS);
+        } else {
+            // Only the selected columns are fetched, so unused LOBs and wide columns are never read
+            for (int i = 0; i < projection.size(); i++) {
+                if (findField(entityClass, projection.get(i)) == null) {
+                    throw new BushyTailQueryException("Unknown property '" + projection.get(i) + "' of class '" + entityClass.getName() + "'");
+                }
+
+                selectFrom.append(i == 0 ? "" : ", ").append(ROOT_ALIAS).append('.').append(projection.get(i));
+            }
+        }
+        compilation.appendFrom(selectFrom);
+
+        final StringBuilder orderBy = new StringBuilder();
+        for (int i = 0; i < orderItems.size(); i++) {
+            orderBy.append(i == 0 ? " ORDER BY " : ", ").append(orderItems.get(i));
+        }
+
+        final StringBuilder jpql = new StringBuilder(selectFrom);
+        if (where != null) {
+            jpql.append(" WHERE ").append(where);
+        }
+        jpql.append(orderBy);
+
+        final BushyTailJpqlQuery.Keyset keyset = compileKeyset(selectFrom, where, orderBy, orderedPaths, orderDirections, projection,
+                compilation.parameters.size());
+
+        return new BushyTailJpqlQuery(jpql.toString(), compilation.parameters, projection, query.getOffset(), query.getLimit(), query.getFetchSize(),
+                keyset);
+    }
+
+    /**
+     * Compile the keyset variant of a query, which selects the rows after the sort values of the last row of a page.
+     * <p>
+     * A row follows the last row, if it is greater in the first sort property or equal in it and greater in the next one
+     * and so forth, where descending properties compare inversely. Rows whose sort property is {@code NULL} would never
+     * satisfy such a predicate, thus a keyset is only compiled if every sort property is a non-nullable property of the
+     * entity itself and, for projections, is selected.
+     * </p>
+     *
+     * @param selectFrom The SELECT and FROM clauses.
+     * @param where The condition of the query or {@code null}.
+     * @param orderBy The ORDER BY clause.
+     * @param orderedPaths The sort properties including the primary key.
+     * @param orderDirections Whether the sort properties are descending.
+     * @param projection The names of the selected properties or {@code null} if whole entities are selected.
+     * @param parameterCount The number of positional parameters of the query.
+     * @return The keyset or {@code null} if the query cannot be paged by keyset.
+     */
+    private BushyTailJpqlQuery.Keyset compileKeyset(final CharSequence selectFrom, final String where, final CharSequence orderBy,
+                                                   final List<BushyTailPropertyPath> orderedPaths, final List<Boolean> orderDirections,
+                                                   final List<String> projection, final int parameterCount) {
+        final List<Field> fields = new ArrayList<Field>(orderedPaths.size());
+        for (final BushyTailPropertyPath orderedPath : orderedPaths) {
+            final List<String> segments = orderedPath.getSegments();
+            final Field field = segments.size() == 1 ? findField(entityClass, segments.get(0)) : null;
+            if (field == null || !isNonNullable(field) || (projection != null && !projection.contains(field.getName()))) {
+                return null;
+            }
+
+            fields.add(field);
+        }
+
+        final StringBuilder jpql = new StringBuilder(selectFrom).append(" WHERE ");
+        if (where != null) {
+            jpql.append('(').append(where).append(") AND ");
+        }
+
+        jpql.append('(');
+        for (int i = 0; i < fields.size(); i++) {
+            jpql.append(i == 0 ? "" : " OR ").append('(');
+            for (int j = 0; j < i; j++) {
+                jpql.append(ROOT_ALIAS).append('.').append(fields.get(j).getName()).append(" = ?").append(parameterCount + j + 1).append(" AND ");
+            }
+            jpql.append(ROOT_ALIAS).append('.').append(fields.get(i).getName()).append(orderDirections.get(i) ? " < ?" : " > ?")
+                    .append(parameterCount + i + 1).append(')');
+        }
+        jpql.append(')').append(orderBy);
+
+        return new BushyTailJpqlQuery.Keyset(jpql.toString(), fields);
+    }
+
+    /**
+     * Compile a query which counts the entities matching a filter with a single {@code SELECT COUNT}.
+     *
+     * @param filter The filter or {@code null} to count all entities.
+     * @return The JPQL query, whose single result is a {@link Number}.
+     * @throws BushyTailInvalidQueryException if a literal cannot be converted into the type of the property it is compared with.
+     * @throws BushyTailQueryException if the filter contains an unknown property or an expression JPQL cannot express.
+     */
+    public BushyTailJpqlQuery compileCount(final IBushyTailExpression filter) throws BushyTailQueryException {
+        final Compilation compilation = new Compilation();
+
+        final String where = filter == null ? null : compilation.predicate(filter.accept(compilation));
+
+        final StringBuilder jpql = new StringBuilder("SELECT COUNT(").append(ROOT_ALIAS).append(')');
+        compilation.appendFrom(jpql);
+        if (where != null) {
+            jpql.append(" WHERE ").append(where);
+        }
+
+        return new BushyTailJpqlQuery(jpql.toString(), compilation.parameters, null, 0, null, 1, null);
+    }
+
+    /**
+     * Determine the names of the primary key fields of the partner entity class of a navigation property.
+     *
+     * @param partnerProperty The name of the navigation property which refers to the partner entities.
+     * @return The names of the primary key fields of the partner entity class.
+     * @throws BushyTailQueryException if the navigation property is unknown.
+     */
+    public List<String> getPartnerKeyPropertyNames(final String partnerProperty) throws BushyTailQueryException {
+        return findKeyPropertyNames(getPartnerClass(partnerProperty));
+    }
+
+    /**
+     * Compile a query which selects the entities related to any of the given partner entities.
+     * <p>
+     * Each row consists of the primary key fields of the partner entity in the order of
+     * {@link #getPartnerKeyPropertyNames(String)}, followed by the related entity. A related entity is
+     * selected once per partner entity it is related to. Single keys are matched with {@code IN},
+     * composite keys with a disjunction of conjunctions.
+     * </p>
+     *
+     * @param partnerProperty The name of the navigation property which refers to the partner entities.
+     * @param partnerKeys The keys of the partner entities.
+     * @param fetchSize The number of rows which should be fetched per round trip.
+     * @return The JPQL query.
+     * @throws BushyTailQueryException if the navigation property is unknown or a key lacks a primary key field.
+     */
+    public BushyTailJpqlQuery compilePartnerQuery(final String partnerProperty, final Collection<BushyTailEntityKey> partnerKeys, final int fetchSize)
+            throws BushyTailQueryException {
+        final Class<?> partnerClass = getPartnerClass(partnerProperty);
+        final List<String> partnerKeyPropertyNames = findKeyPropertyNames(partnerClass);
+        if (partnerKeyPropertyNames.isEmpty() || partnerKeys.isEmpty()) {
+            throw new BushyTailQueryException("Cannot match partner '" + partnerProperty + "' of class '" + entityClass.getName() + "' by key");
+        }
+
+        final List<Field> partnerKeyFields = new ArrayList<Field>(partnerKeyPropertyNames.size());
+        final StringBuilder jpql = new StringBuilder("SELECT ");
+        for (final String partnerKeyPropertyName : partnerKeyPropertyNames) {
+            partnerKeyFields.add(findField(partnerClass, partnerKeyPropertyName));
+            jpql.append(PARTNER_ALIAS).append('.').append(partnerKeyPropertyName).append(", ");
+        }
+        jpql.append(ROOT_ALIAS).append(" FROM ").append(entityName).append(' ').append(ROOT_ALIAS)
+                .append(" JOIN ").append(ROOT_ALIAS).append('.').append(partnerProperty).append(' ').append(PARTNER_ALIAS).append(" WHERE ");
+
+        final List<BushyTailJpqlQuery.Parameter> parameters = new ArrayList<BushyTailJpqlQuery.Parameter>();
+        final boolean singleKey = partnerKeyPropertyNames.size() == 1;
+        if (singleKey) {
+            jpql.append(PARTNER_ALIAS).append('.').append(partnerKeyPropertyNames.get(0)).append(" IN (");
+        }
+
+        boolean first = true;
+        for (final BushyTailEntityKey partnerKey : partnerKeys) {
+            jpql.append(first ? "" : singleKey ? ", " : " OR ");
+            jpql.append(singleKey ? "" : "(");
+            for (int i = 0; i < partnerKeyPropertyNames.size(); i++) {
+                final Object value = partnerKey.getValue(partnerKeyPropertyNames.get(i));
+                if (value == null) {
+                    throw new BushyTailQueryException("Key " + partnerKey + " lacks property '" + partnerKeyPropertyNames.get(i) + "' of class '" + partnerClass.getName() + "'");
+                }
+
+                parameters.add(new BushyTailJpqlQuery.Parameter(value, getTemporalType(partnerKeyFields.get(i))));
+                if (!singleKey) {
+                    jpql.append(i == 0 ? "" : " AND ").append(PARTNER_ALIAS).append('.').append(partnerKeyPropertyNames.get(i)).append(" = ");
+                }
+                jpql.append('?').append(parameters.size());
+            }
+            jpql.append(singleKey ? "" : ")");
+            first = false;
+        }
+        jpql.append(singleKey ? ")" : "");
+
+        for (int i = 0; i < keyPropertyNames.size(); i++) {
+            jpql.append(i == 0 ? " ORDER BY " : ", ").append(ROOT_ALIAS).append('.').append(keyPropertyNames.get(i)).append(" ASC");
+        }
+
+        return new BushyTailJpqlQuery(jpql.toString(), parameters, null, 0, null, fetchSize, null);
+    }
+
+    /**
+     * Determine the partner entity class of a navigation property, i.e. its type or its element type if it is a collection.
+     *
+     * @param partnerProperty The name of the navigation property.
+     * @return The partner entity class.
+     * @throws BushyTailQueryException if the navigation property is unknown or its element type cannot be determined.
+     */
+    private Class<?> getPartnerClass(final String partnerProperty) throws BushyTailQueryException {
+        final Field partnerField = findField(entityClass, partnerProperty);
+        if (partnerField == null) {
+            throw new BushyTailQueryException("Unknown partner '" + partnerProperty + "' of class '" + entityClass.getName() + "'");
+        }
+        if (!Collection.class.isAssignableFrom(partnerField.getType())) {
+            return partnerField.getType();
+        }
+
+        if (partnerField.getGenericType() instanceof ParameterizedType) {
+            final Type[] typeArguments = ((ParameterizedType) partnerField.getGenericType()).getActualTypeArguments();
+            if (typeArguments.length == 1 && typeArguments[0] instanceof Class) {
+                return (Class<?>) typeArguments[0];
+            }
+        }
+
+        throw new BushyTailQueryException("Cannot determine element type of partner '" + partnerProperty + "' of class '" + entityClass.getName() + "'");
+    }
+
+    /**
+     * Determine the names of the primary key fields of a class or its superclasses.
+     *
+     * @param type The JPA entity class.
+     * @return The names of the primary key fields.
+     */
+    static List<String> findKeyPropertyNames(final Class<?> type) {
+        final List<String> keyPropertyNames = new ArrayList<String>();
+        for (Class<?> currentType = type; currentType != null && currentType != Object.class; currentType = currentType.getSuperclass()) {
+            for (final Field field : currentType.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Id.class)) {
+                    keyPropertyNames.add(field.getName());
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(keyPropertyNames);
+    }
+
+    /**
+     * Determine a field of a class or its superclasses.
+     *
+     * @param type The class.
+     * @param fieldName The name of the field.
+     * @return The field or {@code null} if there is none.
+     */
+    static Field findField(final Class<?> type, final String fieldName) {
+        for (Class<?> currentType = type; currentType != null && currentType != Object.class; currentType = currentType.getSuperclass()) {
+            try {
+                return currentType.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException e) {
+                // Continue with superclass
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Determine whether a field can never be {@code NULL}, i.e. it is primitive, part of the primary key or mapped as mandatory.
+     *
+     * @param field The field.
+     * @return Whether the field is non-nullable.
+     */
+    static boolean isNonNullable(final Field field) {
+        if (field.getType().isPrimitive() || field.isAnnotationPresent(Id.class)) {
+            return true;
+        }
+
+        final Column columnAnnotation = field.getAnnotation(Column.class);
+        final Basic basicAnnotation = field.getAnnotation(Basic.class);
+        return (columnAnnotation != null && !columnAnnotation.nullable()) || (basicAnnotation != null && !basicAnnotation.optional());
+    }
+
+    /**
+     * Determine the temporal type a parameter for a field must be bound with.
+     *
+     * @param field The field.
+     * @return The temporal type or {@code null} if the field is not a {@link Date} or {@link Calendar}.
+     */
+    static TemporalType getTemporalType(final Field field) {
+        final Class<?> fieldType = field.getType();
+        if (!Date.class.equals(fieldType) && !Calendar.class.equals(fieldType)) {
+            return null;
+        }
+
+        final Temporal temporalAnnotation = field.getAnnotation(Temporal.class);
+        return temporalAnnotation == null ? TemporalType.TIMESTAMP : temporalAnnotation.value();
+    }
+
+
+    /**
+     * Compiled part of an expression: Either rendered JPQL of a known Java type or a literal whose parameter
+     * has not been bound yet, since its type depends on the expression it is compared with.
+     */
+    private static final class Fragment {
+
+        /** The rendered JPQL or {@code null} for a pending literal. */
+        final String jpql;
+
+        /** The Java type of the expression or {@code null} if unknown. */
+        final Class<?> javaType;
+
+        /** The temporal type of parameters compared with the expression or {@code null}. */
+        final TemporalType temporalType;
+
+        /** The value of a pending literal. */
+        final Object value;
+
+        /**
+         * Constructs {@link Fragment}.
+         *
+         * @param jpql The rendered JPQL or {@code null} for a pending literal.
+         * @param javaType The Java type of the expression or {@code null} if unknown.
+         * @param temporalType The temporal type of parameters compared with the expression or {@code null}.
+         * @param value The value of a pending literal.
+         */
+        Fragment(final String jpql, final Class<?> javaType, final TemporalType temporalType, final Object value) {
+            this.jpql = jpql;
+            this.javaType = javaType;
+            this.temporalType = temporalType;
+            this.value = value;
+        }
+
+        /**
+         * @return Whether this is a literal whose parameter has not been bound yet.
+         */
+        boolean isLiteral() {
+            return jpql == null;
+        }
+
+    }
+
+
+    /**
+     * State of a single compilation: the joins and parameters collected while visiting the expressions.
+     */
+    private final class Compilation implements IBushyTailExpressionVisitor<Fragment> {
+
+        /** The join aliases by navigation path. */
+        final Map<String, String> joinAliases = new LinkedHashMap<String, String>();
+
+        /** The join clauses by navigation path. */
+        final Map<String, String> joins = new LinkedHashMap<String, String>();
+
+        /** The positional parameters in order. */
+        final List<BushyTailJpqlQuery.Parameter> parameters = new ArrayList<BushyTailJpqlQuery.Parameter>();
+
+        /**
+         * Append the FROM clause including all joins.
+         *
+         * @param jpql The JPQL statement.
+         */
+        void appendFrom(final StringBuilder jpql) {
+            jpql.append(" FROM ").append(entityName).append(' ').append(ROOT_ALIAS);
+            for (final String join : joins.values()) {
+                jpql.append(join);
+            }
+        }
+
+        @Override
+        public Fragment visitBinary(final BushyTailBinaryOperator operator, final Fragment left, final Fragment right) throws BushyTailQueryException {
+            switch (operator) {
+                case AND:
+                    return bool("(" + predicate(left) + " AND " + predicate(right) + ")");
+                case OR:
+                    return bool("(" + predicate(left) + " OR " + predicate(right) + ")");
+                case EQ:
+                case NE:
+                    if (right.isLiteral() && right.value == null) {
+                        return bool(render(left, null) + (operator == BushyTailBinaryOperator.EQ ? " IS NULL" : " IS NOT NULL"));
+                    }
+                    if (left.isLiteral() && left.value == null) {
+                        return bool(render(right, null) + (operator == BushyTailBinaryOperator.EQ ? " IS NULL" : " IS NOT NULL"));
+                    }
+
+                    return comparison(operator == BushyTailBinaryOperator.EQ ? " = " : " <> ", left, right);
+                case GT:
+                    return comparison(" > ", left, right);
+                case GE:
+                    return comparison(" >= ", left, right);
+                case LT:
+                    return comparison(" < ", left, right);
+                case LE:
+                    return comparison(" <= ", left, right);
+                case ADD:
+                    return arithmetic(" + ", left, right);
+                case SUB:
+                    return arithmetic(" - ", left, right);
+                case MUL:
+                    return arithmetic(" * ", left, right);
+                case DIV:
+                    return arithmetic(" / ", left, right);
+                case MOD:
+                    final Fragment reference = left.isLiteral() ? right : left;
+                    return new Fragment("MOD(" + render(left, reference) + ", " + render(right, reference) + ")", reference.javaType, null, null);
+                default:
+                    throw new BushyTailQueryException("Unsupported operator " + operator);
+            }
+        }
+
+        @Override
+        public Fragment visitUnary(final BushyTailUnaryOperator operator, final Fragment operand) throws BushyTailQueryException {
+            if (operator == BushyTailUnaryOperator.NOT) {
+                return bool("NOT " + predicate(operand));
+            }
+
+            return new Fragment("-" + render(operand, null), operand.javaType, null, null);
+        }
+
+        @Override
+        public Fragment visitMethod(final BushyTailMethod method, final List<Fragment> parameters) throws BushyTailQueryException {
+            switch (method) {
+                case CONTAINS:
+                    if (isStringLiteral(parameters, 1)) {
+                        return like(parameters, "%", "%");
+                    }
+
+                    return bool("LOCATE(" + string(parameters, 1) + ", " + string(parameters, 0) + ") > 0");
+                case STARTSWITH:
+                    if (isStringLiteral(parameters, 1)) {
+                        return like(parameters, "", "%");
+                    }
+
+                    return bool("LOCATE(" + string(parameters, 1) + ", " + string(parameters, 0) + ") = 1");
+                case ENDSWITH:
+                    if (isStringLiteral(parameters, 1)) {
+                        return like(parameters, "%", "");
+                    }
+
+                    final String value = string(parameters, 0);
+                    final String suffix = string(parameters, 1);
+                    return bool("SUBSTRING(" + value + ", LENGTH(" + value + ") - LENGTH(" + suffix + ") + 1, LENGTH(" + suffix + ")) = " + suffix);
+                case LENGTH:
+                    return new Fragment("LENGTH(" + string(parameters, 0) + ")", Integer.class, null, null);
+                case INDEXOF:
+                    return new Fragment("(LOCATE(" + string(parameters, 1) + ", " + string(parameters, 0) + ") - 1)", Integer.class, null, null);
+                case SUBSTRING:
+                    final String string = string(parameters, 0);
+                    final String start = integer(parameters, 1) + " + 1";
+                    final String length = parameters.size() > 2 ? integer(parameters, 2) : "LENGTH(" + string + ")";
+                    return new Fragment("SUBSTRING(" + string + ", " + start + ", " + length + ")", String.class, null, null);
+                case TOLOWER:
+                    return new Fragment("LOWER(" + string(parameters, 0) + ")", String.class, null, null);
+                case TOUPPER:
+                    return new Fragment("UPPER(" + string(parameters, 0) + ")", String.class, null, null);
+                case TRIM:
+                    return new Fragment("TRIM(" + string(parameters, 0) + ")", String.class, null, null);
+                case CONCAT:
+                    return new Fragment("CONCAT(" + string(parameters, 0) + ", " + string(parameters, 1) + ")", String.class, null, null);
+                case NOW:
+                    return new Fragment("CURRENT_TIMESTAMP", java.sql.Timestamp.class, null, null);
+                default:
+                    throw new BushyTailQueryException("Method " + method.name().toLowerCase(Locale.ENGLISH) + " cannot be expressed in JPQL");
+            }
+        }
+
+        @Override
+        public Fragment visitLiteral(final BushyTailLiteral literal) {
+            return new Fragment(null, null, null, literal.getValue());
+        }
+
+        @Override
+        public Fragment visitProperty(final BushyTailPropertyPath propertyPath) throws BushyTailQueryException {
+            final List<String> segments = propertyPath.getSegments();
+
+            String alias = ROOT_ALIAS;
+            Class<?> type = entityClass;
+            final StringBuilder navigationPath = new StringBuilder();
+            for (int i = 0; i < segments.size() - 1; i++) {
+                final Field navigationField = resolveField(type, segments.get(i), propertyPath);
+                navigationPath.append('/').append(segments.get(i));
+
+                final String key = navigationPath.toString();
+                String joinAlias = joinAliases.get(key);
+                if (joinAlias == null) {
+                    joinAlias = "j" + (joinAliases.size() + 1);
+                    joinAliases.put(key, joinAlias);
+                    joins.put(key, " LEFT JOIN " + alias + "." + segments.get(i) + " " + joinAlias);
+                }
+
+                alias = joinAlias;
+                type = navigationField.getType();
+            }
+
+            final String propertyName = segments.get(segments.size() - 1);
+            final Field field = resolveField(type, propertyName, propertyPath);
+
+            return new Fragment(alias + "." + propertyName, ClassUtils.primitiveToWrapper(field.getType()), getTemporalType(field), null);
+        }
+
+        /**
+         * Resolve a field along a property path.
+         *
+         * @param type The class declaring the field.
+         * @param fieldName The name of the field.
+         * @param propertyPath The property path for error messages.
+         * @return The field.
+         * @throws BushyTailQueryException if there is no such field.
+         */
+        private Field resolveField(final Class<?> type, final String fieldName, final BushyTailPropertyPath propertyPath) throws BushyTailQueryException {
+            final Field field = findField(type, fieldName);
+            if (field == null) {
+                throw new BushyTailQueryException("Unknown property '" + propertyPath + "' of class '" + entityClass.getName() + "'");
+            }
+
+            return field;
+        }
+
+        /**
+         * Render a fragment as boolean condition.
+         *
+         * @param fragment The fragment.
+         * @return The condition.
+         * @throws BushyTailInvalidQueryException if the fragment is not boolean.
+         */
+        String predicate(final Fragment fragment) throws BushyTailQueryException {
+            if (fragment.isLiteral()) {
+                if (!(fragment.value instanceof Boolean)) {
+                    throw new BushyTailInvalidQueryException("Literal '" + fragment.value + "' is not a condition");
+                }
+
+                return (Boolean) fragment.value ? "1 = 1" : "1 = 0";
+            }
+            if (!Boolean.class.equals(fragment.javaType)) {
+                throw new BushyTailInvalidQueryException("Expression '" + fragment.jpql + "' is not a condition");
+            }
+
+            // Boolean properties cannot be used as conditions in JPQL on their own
+            return isCondition(fragment) ? fragment.jpql : fragment.jpql + " = TRUE";
+        }
+
+        /**
+         * Render a fragment, binding a pending literal as parameter.
+         *
+         * @param fragment The fragment.
+         * @param reference The fragment whose type the literal is coerced into or {@code null}.
+         * @return The rendered JPQL.
+         * @throws BushyTailQueryException if the literal cannot be coerced.
+         */
+        String render(final Fragment fragment, final Fragment reference) throws BushyTailQueryException {
+            if (!fragment.isLiteral()) {
+                return fragment.jpql;
+            }
+
+            return bind(fragment.value, reference == null ? null : reference.javaType, reference == null ? null : reference.temporalType);
+        }
+
+        /**
+         * Add a positional parameter.
+         *
+         * @param value The raw value.
+         * @param javaType The Java type the value is coerced into or {@code null}.
+         * @param temporalType The temporal type of the parameter or {@code null}.
+         * @return The parameter placeholder.
+         * @throws BushyTailInvalidQueryException if the value cannot be coerced.
+         */
+        String bind(final Object value, final Class<?> javaType, final TemporalType temporalType) throws BushyTailQueryException {
+            Object coercedValue = value;
+            if (javaType != null) {
+                try {
+                    coercedValue = OlingoValueCoercion.forType(javaType).coerce(value);
+                } catch (RuntimeException e) {
+                    throw new BushyTailInvalidQueryException("Literal '" + value + "' cannot be converted into '" + javaType.getName() + "'", e);
+                }
+            }
+
+            parameters.add(new BushyTailJpqlQuery.Parameter(coercedValue, temporalType));
+            return "?" + parameters.size();
+        }
+
+        /**
+         * Create a boolean fragment.
+         *
+         * @param jpql The condition.
+         * @return The fragment.
+         */
+        private Fragment bool(final String jpql) {
+            return new Fragment(jpql, Boolean.class, null, CONDITION);
+        }
+
+        /**
+         * Determine whether a boolean fragment is a condition rather than a boolean value.
+         *
+         * @param fragment The boolean fragment.
+         * @return Whether it is a condition.
+         */
+        private boolean isCondition(final Fragment fragment) {
+            return fragment.value == CONDITION;
+        }
+
+        /**
+         * Create a comparison, coercing a literal on either side into the type of the other side.
+         *
+         * @param operator The JPQL comparison operator.
+         * @param left The left operand.
+         * @param right The right operand.
+         * @return The condition.
+         * @throws BushyTailQueryException if a literal cannot be coerced.
+         */
+        private Fragment comparison(final String operator, final Fragment left, final Fragment right) throws BushyTailQueryException {
+            return bool(render(left, right) + operator + render(right, left));
+        }
+
+        /**
+         * Create an arithmetic operation, coercing a literal on either side into the type of the other side.
+         *
+         * @param operator The JPQL arithmetic operator.
+         * @param left The left operand.
+         * @param right The right operand.
+         * @return The operation.
+         * @throws BushyTailQueryException if a literal cannot be coerced.
+         */
+        private Fragment arithmetic(final String operator, final Fragment left, final Fragment right) throws BushyTailQueryException {
+            final Class<?> javaType = left.isLiteral() ? right.javaType : left.javaType;
+            return new Fragment("(" + render(left, right) + operator + render(right, left) + ")", javaType, null, null);
+        }
+
+        /**
+         * Create a LIKE condition whose pattern is the string literal of the second parameter.
+         *
+         * @param parameters The method parameters, whose second parameter is a string literal.
+         * @param prefix The wildcard prefix of the pattern.
+         * @param suffix The wildcard suffix of the pattern.
+         * @return The condition.
+         * @throws BushyTailQueryException if a parameter is missing.
+         */
+        private Fragment like(final List<Fragment> parameters, final String prefix, final String suffix) throws BushyTailQueryException {
+            final String pattern = prefix + escapeLike((String) parameters.get(1).value) + suffix;
+            return bool(string(parameters, 0) + " LIKE " + bind(pattern, null, null) + " ESCAPE '\\'");
+        }
+
+        /**
+         * Render a string parameter of a method.
+         *
+         * @param parameters The method parameters.
+         * @param index The index of the parameter.
+         * @return The rendered JPQL.
+         * @throws BushyTailQueryException if the parameter is missing.
+         */
+        private String string(final List<Fragment> parameters, final int index) throws BushyTailQueryException {
+            return render(parameter(parameters, index), STRING);
+        }
+
+        /**
+         * Render an integer parameter of a method.
+         *
+         * @param parameters The method parameters.
+         * @param index The index of the parameter.
+         * @return The rendered JPQL.
+         * @throws BushyTailQueryException if the parameter is missing.
+         */
+        private String integer(final List<Fragment> parameters, final int index) throws BushyTailQueryException {
+            return render(parameter(parameters, index), INTEGER);
+        }
+
+        /**
+         * Determine whether a parameter of a method is a string literal.
+         *
+         * @param parameters The method parameters.
+         * @param index The index of the parameter.
+         * @return Whether the parameter is a string literal.
+         * @throws BushyTailQueryException if the parameter is missing.
+         */
+        private boolean isStringLiteral(final List<Fragment> parameters, final int index) throws BushyTailQueryException {
+            final Fragment parameter = parameter(parameters, index);
+            return parameter.isLiteral() && parameter.value instanceof String;
+        }
+
+        /**
+         * Determine a parameter of a method.
+         *
+         * @param parameters The method parameters.
+         * @param index The index of the parameter.
+         * @return The parameter.
+         * @throws BushyTailInvalidQueryException if the parameter is missing.
+         */
+        private Fragment parameter(final List<Fragment> parameters, final int index) throws BushyTailQueryException {
+            if (index >= parameters.size()) {
+                throw new BushyTailInvalidQueryException("Missing method parameter " + (index + 1));
+            }
+
+            return parameters.get(index);
+        }
+
+    }
+
+    /**
+     * Escape the wildcards of a LIKE pattern with a backslash.
+     *
+     * @param value The literal value.
+     * @return The escaped value.
+     */
+    private static String escapeLike(final String value) {
+        final StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' || c == '%' || c == '_') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+
+        return escaped.toString();
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.jpa;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * JPQL statement with positional parameters and paging, as compiled by {@link BushyTailJpqlCompiler}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailJpqlQuery {
+
+    /** The hints which make common JPA providers fetch the given number of rows per round trip. */
+    private static final String[] FETCH_SIZE_HINTS = {"org.hibernate.fetchSize", "eclipselink.jdbc.fetch-size", "openjpa.FetchPlan.FetchBatchSize"};
+
+    /** The JPQL statement. */
+    private final String jpql;
+
+    /** The positional parameters in order. */
+    private final List<Parameter> parameters;
+
+    /** The names of the selected properties or {@code null} if whole entities are selected. */
+    private final List<String> selection;
+
+    /** The index of the first result. */
+    private final int firstResult;
+
+    /** The maximum number of results or {@code null} for no limit. */
+    private final Integer maxResults;
+
+    /** The number of rows which should be fetched per round trip. */
+    private final int fetchSize;
+
+    /** The keyset variant of the statement or {@code null} if the results cannot be paged by keyset. */
+    private final Keyset keyset;
+
+    /**
+     * Constructs {@link BushyTailJpqlQuery}.
+     *
+     * @param jpql The JPQL statement.
+     * @param parameters The positional parameters in order.
+     * @param selection The names of the selected properties or {@code null} if whole entities are selected.
+     * @param firstResult The index of the first result.
+     * @param maxResults The maximum number of results or {@code null} for no limit.
+     * @param fetchSize The number of rows which should be fetched per round trip.
+     * @param keyset The keyset variant of the statement or {@code null} if the results cannot be paged by keyset.
+     */
+    BushyTailJpqlQuery(final String jpql, final List<Parameter> parameters, final List<String> selection, final int firstResult,
+                       final Integer maxResults, final int fetchSize, final Keyset keyset) {
+        this.jpql = jpql;
+        this.parameters = Collections.unmodifiableList(new ArrayList<Parameter>(parameters));
+        this.selection = selection == null ? null : Collections.unmodifiableList(new ArrayList<String>(selection));
+        this.firstResult = firstResult;
+        this.maxResults = maxResults;
+        this.fetchSize = fetchSize;
+        this.keyset = keyset;
+    }
+
+    /**
+     * @return The JPQL statement.
+     */
+    public String getJpql() {
+        return jpql;
+    }
+
+    /**
+     * @return The positional parameters in order.
+     */
+    public List<Parameter> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * If properties are selected, each result row is an {@code Object[]} with the property values in this order,
+     * or the single property value.
+     *
+     * @return The names of the selected properties or {@code null} if whole entities are selected.
+     */
+    public List<String> getSelection() {
+        return selection;
+    }
+
+    /**
+     * @return The index of the first result.
+     */
+    public int getFirstResult() {
+        return firstResult;
+    }
+
+    /**
+     * @return The maximum number of results or {@code null} for no limit.
+     */
+    public Integer getMaxResults() {
+        return maxResults;
+    }
+
+    /**
+     * @return The number of rows which should be fetched per round trip.
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @return The keyset variant of the statement or {@code null} if the results cannot be paged by keyset.
+     */
+    public Keyset getKeyset() {
+        return keyset;
+    }
+
+    /**
+     * Create the JPA query including its paging.
+     *
+     * @param entityManager The entity manager.
+     * @return The JPA query.
+     */
+    public Query createQuery(final EntityManager entityManager) {
+        return createQuery(entityManager, firstResult, maxResults);
+    }
+
+    /**
+     * Create the JPA query for a page of the results.
+     *
+     * @param entityManager The entity manager.
+     * @param pageFirstResult The index of the first result of the page.
+     * @param pageMaxResults The maximum number of results of the page or {@code null} for no limit.
+     * @return The JPA query.
+     */
+    public Query createQuery(final EntityManager entityManager, final int pageFirstResult, final Integer pageMaxResults) {
+        final Query query = entityManager.createQuery(jpql);
+
+        for (int i = 0; i < parameters.size(); i++) {
+            parameters.get(i).bind(query, i + 1);
+        }
+
+        if (pageFirstResult > 0) {
+            query.setFirstResult(pageFirstResult);
+        }
+
+        return applyPaging(query, pageMaxResults);
+    }
+
+    /**
+     * Create the JPA query for the page which follows a row, using the {@link #getKeyset() keyset} variant of the statement.
+     *
+     * @param entityManager The entity manager.
+     * @param lastValues The values of the {@link Keyset#getFields() sort fields} of the last row of the previous page.
+     * @param pageMaxResults The maximum number of results of the page or {@code null} for no limit.
+     * @return The JPA query.
+     * @throws IllegalStateException if the results cannot be paged by keyset.
+     */
+    public Query createKeysetQuery(final EntityManager entityManager, final List<?> lastValues, final Integer pageMaxResults) {
+        if (keyset == null) {
+            throw new IllegalStateException("Query '" + jpql + "' cannot be paged by keyset");
+        }
+
+        final Query query = entityManager.createQuery(keyset.jpql);
+
+        for (int i = 0; i < parameters.size(); i++) {
+            parameters.get(i).bind(query, i + 1);
+        }
+        for (int i = 0; i < lastValues.size(); i++) {
+            new Parameter(lastValues.get(i), BushyTailJpqlCompiler.getTemporalType(keyset.fields.get(i))).bind(query, parameters.size() + i + 1);
+        }
+
+        return applyPaging(query, pageMaxResults);
+    }
+
+    /**
+     * Limit the results of a JPA query and set the fetch size.
+     *
+     * @param query The JPA query.
+     * @param pageMaxResults The maximum number of results of the page or {@code null} for no limit.
+     * @return The JPA query.
+     */
+    private Query applyPaging(final Query query, final Integer pageMaxResults) {
+        if (pageMaxResults != null) {
+            query.setMaxResults(pageMaxResults);
+        }
+
+        // Providers silently ignore hints they do not know
+        for (final String fetchSizeHint : FETCH_SIZE_HINTS) {
+            query.setHint(fetchSizeHint, fetchSize);
+        }
+
+        return query;
+    }
+
+    @Override
+    public String toString() {
+        return jpql;
+    }
+
+
+    /**
+     * Variant of a {@link BushyTailJpqlQuery} which selects the rows following the last row of a page in the sort order.
+     * The sort values of the last row are bound as additional positional parameters after the parameters of the query.
+     */
+    public static final class Keyset {
+
+        /** The JPQL statement. */
+        private final String jpql;
+
+        /** The sort fields, which are never {@code null}, in the order of the ORDER BY clause. */
+        private final List<Field> fields;
+
+        /**
+         * Constructs {@link Keyset}.
+         *
+         * @param jpql The JPQL statement.
+         * @param fields The sort fields, which are never {@code null}, in the order of the ORDER BY clause.
+         */
+        Keyset(final String jpql, final List<Field> fields) {
+            this.jpql = jpql;
+            this.fields = Collections.unmodifiableList(new ArrayList<Field>(fields));
+        }
+
+        /**
+         * @return The JPQL statement.
+         */
+        public String getJpql() {
+            return jpql;
+        }
+
+        /**
+         * @return The sort fields in the order of the ORDER BY clause.
+         */
+        public List<Field> getFields() {
+            return fields;
+        }
+
+    }
+
+
+    /**
+     * Positional parameter of a {@link BushyTailJpqlQuery}.
+     */
+    public static final class Parameter {
+
+        /** The value, already coerced into the Java type of the compared property. */
+        private final Object value;
+
+        /** The temporal type for {@link Date} and {@link Calendar} values or {@code null}. */
+        private final TemporalType temporalType;
+
+        /**
+         * Constructs {@link Parameter}.
+         *
+         * @param value The value, already coerced into the Java type of the compared property.
+         * @param temporalType The temporal type for {@link Date} and {@link Calendar} values or {@code null}.
+         */
+        Parameter(final Object value, final TemporalType temporalType) {
+            this.value = value;
+            this.temporalType = temporalType;
+        }
+
+        /**
+         * @return The value.
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * Bind the value to a JPA query.
+         *
+         * @param query The JPA query.
+         * @param position The one-based position of the parameter.
+         */
+        void bind(final Query query, final int position) {
+            if (temporalType != null && value instanceof Calendar) {
+                query.setParameter(position, (Calendar) value, temporalType);
+            } else if (temporalType != null && value instanceof Date) {
+                query.setParameter(position, (Date) value, temporalType);
+            } else {
+                query.setParameter(position, value);
+            }
+        }
+
+    }
+
+}
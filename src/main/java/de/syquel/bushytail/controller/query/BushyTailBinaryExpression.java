@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+/**
+ * Binary operation of two expressions.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailBinaryExpression implements IBushyTailExpression {
+
+    /** The operator. */
+    private final BushyTailBinaryOperator operator;
+
+    /** The left operand. */
+    private final IBushyTailExpression left;
+
+    /** The right operand. */
+    private final IBushyTailExpression right;
+
+    /**
+     * Constructs {@link BushyTailBinaryExpression}.
+     *
+     * @param operator The operator.
+     * @param left The left operand.
+     * @param right The right operand.
+     */
+    public BushyTailBinaryExpression(final BushyTailBinaryOperator operator, final IBushyTailExpression left, final IBushyTailExpression right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * @return The operator.
+     */
+    public BushyTailBinaryOperator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return The left operand.
+     */
+    public IBushyTailExpression getLeft() {
+        return left;
+    }
+
+    /**
+     * @return The right operand.
+     */
+    public IBushyTailExpression getRight() {
+        return right;
+    }
+
+    @Override
+    public <T> T accept(final IBushyTailExpressionVisitor<T> visitor) throws BushyTailQueryException {
+        return visitor.visitBinary(operator, left.accept(visitor), right.accept(visitor));
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+/**
+ * Binary operators of a {@link BushyTailBinaryExpression}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public enum BushyTailBinaryOperator {
+    /** Equality. */
+    EQ,
+    /** Inequality. */
+    NE,
+    /** Greater than. */
+    GT,
+    /** Greater than or equal. */
+    GE,
+    /** Less than. */
+    LT,
+    /** Less than or equal. */
+    LE,
+    /** Logical conjunction. */
+    AND,
+    /** Logical disjunction. */
+    OR,
+    /** Addition. */
+    ADD,
+    /** Subtraction. */
+    SUB,
+    /** Multiplication. */
+    MUL,
+    /** Division. */
+    DIV,
+    /** Modulo. */
+    MOD
+}
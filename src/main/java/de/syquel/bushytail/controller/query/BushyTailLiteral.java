@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+/**
+ * Constant value, already converted to its default Java type, e.g. {@link String}, {@link Integer} or {@link java.util.Calendar}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailLiteral implements IBushyTailExpression {
+
+    /** The value or {@code null}. */
+    private final Object value;
+
+    /**
+     * Constructs {@link BushyTailLiteral}.
+     *
+     * @param value The value or {@code null}.
+     */
+    public BushyTailLiteral(final Object value) {
+        this.value = value;
+    }
+
+    /**
+     * @return The value or {@code null}.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public <T> T accept(final IBushyTailExpressionVisitor<T> visitor) throws BushyTailQueryException {
+        return visitor.visitLiteral(this);
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+/**
+ * Methods of a {@link BushyTailMethodExpression}, named after their OData counterparts.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public enum BushyTailMethod {
+    /** Whether the first string contains the second one. */
+    CONTAINS,
+    /** Whether the first string starts with the second one. */
+    STARTSWITH,
+    /** Whether the first string ends with the second one. */
+    ENDSWITH,
+    /** The length of a string. */
+    LENGTH,
+    /** The zero-based index of the second string in the first one. */
+    INDEXOF,
+    /** The zero-based substring of a string. */
+    SUBSTRING,
+    /** The lower case of a string. */
+    TOLOWER,
+    /** The upper case of a string. */
+    TOUPPER,
+    /** A string without leading and trailing whitespace. */
+    TRIM,
+    /** The concatenation of two strings. */
+    CONCAT,
+    /** The year of a date. */
+    YEAR,
+    /** The month of a date. */
+    MONTH,
+    /** The day of a date. */
+    DAY,
+    /** The hour of a time. */
+    HOUR,
+    /** The minute of a time. */
+    MINUTE,
+    /** The second of a time. */
+    SECOND,
+    /** The current point in time. */
+    NOW,
+    /** The nearest integer of a number. */
+    ROUND,
+    /** The largest integer not greater than a number. */
+    FLOOR,
+    /** The smallest integer not less than a number. */
+    CEILING
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Call of a method with expressions as parameters.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailMethodExpression implements IBushyTailExpression {
+
+    /** The method. */
+    private final BushyTailMethod method;
+
+    /** The parameters. */
+    private final List<IBushyTailExpression> parameters;
+
+    /**
+     * Constructs {@link BushyTailMethodExpression}.
+     *
+     * @param method The method.
+     * @param parameters The parameters.
+     */
+    public BushyTailMethodExpression(final BushyTailMethod method, final List<IBushyTailExpression> parameters) {
+        this.method = method;
+        this.parameters = Collections.unmodifiableList(new ArrayList<IBushyTailExpression>(parameters));
+    }
+
+    /**
+     * @return The method.
+     */
+    public BushyTailMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * @return The parameters.
+     */
+    public List<IBushyTailExpression> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public <T> T accept(final IBushyTailExpressionVisitor<T> visitor) throws BushyTailQueryException {
+        final List<T> parameterResults = new ArrayList<T>(parameters.size());
+        for (final IBushyTailExpression parameter : parameters) {
+            parameterResults.add(parameter.accept(visitor));
+        }
+
+        return visitor.visitMethod(method, parameterResults);
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Path to a property of the queried entity, optionally across navigation properties, e.g. {@code Customer/Name}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailPropertyPath implements IBushyTailExpression {
+
+    /** The property names along the path. */
+    private final List<String> segments;
+
+    /**
+     * Constructs {@link BushyTailPropertyPath}.
+     *
+     * @param segments The property names along the path.
+     */
+    public BushyTailPropertyPath(final List<String> segments) {
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("Property path must not be empty");
+        }
+
+        this.segments = Collections.unmodifiableList(new ArrayList<String>(segments));
+    }
+
+    /**
+     * @return The property names along the path.
+     */
+    public List<String> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return Whether the path points to a property of the queried entity itself.
+     */
+    public boolean isSimple() {
+        return segments.size() == 1;
+    }
+
+    @Override
+    public <T> T accept(final IBushyTailExpressionVisitor<T> visitor) throws BushyTailQueryException {
+        return visitor.visitProperty(this);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || (o instanceof BushyTailPropertyPath && segments.equals(((BushyTailPropertyPath) o).segments));
+    }
+
+    @Override
+    public int hashCode() {
+        return segments.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder path = new StringBuilder();
+        for (final String segment : segments) {
+            if (path.length() > 0) {
+                path.append('/');
+            }
+            path.append(segment);
+        }
+
+        return path.toString();
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Backend-neutral description of a collection read, built from the OData system query options.
+ * <p>
+ * Controllers implementing {@link IBushyTailQueryController} translate it into their own query language,
+ * so that filtering, sorting and paging happen inside the backend.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailQuery {
+
+    /** The predicate which entities must satisfy or {@code null} for all entities. */
+    private final IBushyTailExpression filter;
+
+    /** The sort keys in order of precedence. */
+    private final List<BushyTailSortKey> sortKeys;
+
+    /** The maximum number of entities or {@code null} for no limit. */
+    private final Integer limit;
+
+    /** The number of entities to skip. */
+    private final int offset;
+
+    /** The number of entities which should be fetched from the backend at once. */
+    private final int fetchSize;
+
+    /** The names of the properties which have to be loaded or {@code null} for all properties. */
+    private final List<String> projection;
+
+    /**
+     * Constructs {@link BushyTailQuery}.
+     *
+     * @param filter The predicate which entities must satisfy or {@code null} for all entities.
+     * @param sortKeys The sort keys in order of precedence.
+     * @param limit The maximum number of entities or {@code null} for no limit.
+     * @param offset The number of entities to skip.
+     * @param fetchSize The number of entities which should be fetched from the backend at once.
+     */
+    public BushyTailQuery(final IBushyTailExpression filter, final List<BushyTailSortKey> sortKeys, final Integer limit, final int offset,
+                          final int fetchSize) {
+        this(filter, sortKeys, limit, offset, fetchSize, null);
+    }
+
+    /**
+     * Constructs {@link BushyTailQuery} with a projection.
+     *
+     * @param filter The predicate which entities must satisfy or {@code null} for all entities.
+     * @param sortKeys The sort keys in order of precedence.
+     * @param limit The maximum number of entities or {@code null} for no limit.
+     * @param offset The number of entities to skip.
+     * @param fetchSize The number of entities which should be fetched from the backend at once.
+     * @param projection The names of the properties which have to be loaded or {@code null} for all properties.
+     */
+    public BushyTailQuery(final IBushyTailExpression filter, final List<BushyTailSortKey> sortKeys, final Integer limit, final int offset,
+                          final int fetchSize, final List<String> projection) {
+        this.filter = filter;
+        this.sortKeys = Collections.unmodifiableList(new ArrayList<BushyTailSortKey>(sortKeys));
+        this.limit = limit;
+        this.offset = offset;
+        this.fetchSize = fetchSize;
+        this.projection = projection == null ? null : Collections.unmodifiableList(new ArrayList<String>(projection));
+    }
+
+    /**
+     * @return The predicate which entities must satisfy or {@code null} for all entities.
+     */
+    public IBushyTailExpression getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return The sort keys in order of precedence.
+     */
+    public List<BushyTailSortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    /**
+     * @return The maximum number of entities or {@code null} for no limit.
+     */
+    public Integer getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return The number of entities to skip.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The number of entities which should be fetched from the backend at once.
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * The projection always contains the key properties. Entities returned for a projection only need to carry
+     * the projected properties; all other properties are neither read nor serialized.
+     *
+     * @return The names of the properties which have to be loaded or {@code null} for all properties.
+     */
+    public List<String> getProjection() {
+        return projection;
+    }
+
+}
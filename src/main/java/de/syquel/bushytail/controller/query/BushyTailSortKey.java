@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+/**
+ * Sort key of a {@link BushyTailQuery}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailSortKey {
+
+    /** The expression to sort by. */
+    private final IBushyTailExpression expression;
+
+    /** Whether to sort in descending order. */
+    private final boolean descending;
+
+    /**
+     * Constructs {@link BushyTailSortKey}.
+     *
+     * @param expression The expression to sort by.
+     * @param descending Whether to sort in descending order.
+     */
+    public BushyTailSortKey(final IBushyTailExpression expression, final boolean descending) {
+        this.expression = expression;
+        this.descending = descending;
+    }
+
+    /**
+     * @return The expression to sort by.
+     */
+    public IBushyTailExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return Whether to sort in descending order.
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+}
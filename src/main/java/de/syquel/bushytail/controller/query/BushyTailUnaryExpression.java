@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+/**
+ * Unary operation of an expression.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailUnaryExpression implements IBushyTailExpression {
+
+    /** The operator. */
+    private final BushyTailUnaryOperator operator;
+
+    /** The operand. */
+    private final IBushyTailExpression operand;
+
+    /**
+     * Constructs {@link BushyTailUnaryExpression}.
+     *
+     * @param operator The operator.
+     * @param operand The operand.
+     */
+    public BushyTailUnaryExpression(final BushyTailUnaryOperator operator, final IBushyTailExpression operand) {
+        this.operator = operator;
+        this.operand = operand;
+    }
+
+    /**
+     * @return The operator.
+     */
+    public BushyTailUnaryOperator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return The operand.
+     */
+    public IBushyTailExpression getOperand() {
+        return operand;
+    }
+
+    @Override
+    public <T> T accept(final IBushyTailExpressionVisitor<T> visitor) throws BushyTailQueryException {
+        return visitor.visitUnary(operator, operand.accept(visitor));
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+/**
+ * Node of a backend-neutral predicate or value expression of a {@link BushyTailQuery}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public interface IBushyTailExpression {
+
+    /**
+     * Let a visitor process this expression node.
+     *
+     * @param <T> The result type of the visitor.
+     * @param visitor The visitor.
+     * @return The result of the visitor.
+     * @throws BushyTailQueryException if the visitor cannot process the expression.
+     */
+    <T> T accept(IBushyTailExpressionVisitor<T> visitor) throws BushyTailQueryException;
+
+}
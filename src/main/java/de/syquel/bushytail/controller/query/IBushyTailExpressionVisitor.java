@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+import java.util.List;
+
+/**
+ * Visitor over a tree of {@link IBushyTailExpression}s, e.g. to translate it into a query language of a backend.
+ * <p>
+ * The operands of a node are visited by the node itself before the visitor method is called,
+ * so each method receives the results of its operands.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> The result type of the visitor.
+ */
+public interface IBushyTailExpressionVisitor<T> {
+
+    /**
+     * Visit a binary operation.
+     *
+     * @param operator The operator.
+     * @param left The result of the left operand.
+     * @param right The result of the right operand.
+     * @return The result of the operation.
+     * @throws BushyTailQueryException if the operation is not supported.
+     */
+    T visitBinary(BushyTailBinaryOperator operator, T left, T right) throws BushyTailQueryException;
+
+    /**
+     * Visit a unary operation.
+     *
+     * @param operator The operator.
+     * @param operand The result of the operand.
+     * @return The result of the operation.
+     * @throws BushyTailQueryException if the operation is not supported.
+     */
+    T visitUnary(BushyTailUnaryOperator operator, T operand) throws BushyTailQueryException;
+
+    /**
+     * Visit a method call.
+     *
+     * @param method The method.
+     * @param parameters The results of the parameters.
+     * @return The result of the method call.
+     * @throws BushyTailQueryException if the method is not supported.
+     */
+    T visitMethod(BushyTailMethod method, List<T> parameters) throws BushyTailQueryException;
+
+    /**
+     * Visit a literal.
+     *
+     * @param literal The literal.
+     * @return The result of the literal.
+     * @throws BushyTailQueryException if the literal is not supported.
+     */
+    T visitLiteral(BushyTailLiteral literal) throws BushyTailQueryException;
+
+    /**
+     * Visit a property path.
+     *
+     * @param propertyPath The property path.
+     * @return The result of the property path.
+     * @throws BushyTailQueryException if the property path cannot be resolved.
+     */
+    T visitProperty(BushyTailPropertyPath propertyPath) throws BushyTailQueryException;
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.query;
+
+import de.syquel.bushytail.controller.IBushyTailCollectionController;
+import de.syquel.bushytail.controller.IBushyTailCursor;
+import de.syquel.bushytail.controller.query.exception.BushyTailInvalidQueryException;
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+
+/**
+ * Optional extension of {@link IBushyTailCollectionController} which evaluates filtering, sorting, paging and counting in the backend.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> Entity which is handled by the controller.
+ */
+public interface IBushyTailQueryController<T> extends IBushyTailCollectionController<T> {
+
+    /**
+     * Read all entities which match a query.
+     * @param query the query
+     * @return the cursor over the matching entities in query order, which is closed after the response has been written
+     * @throws BushyTailInvalidQueryException if the query is invalid, e.g. a literal does not match the type of a property
+     * @throws BushyTailQueryException if the query cannot be translated for the backend
+     */
+    IBushyTailCursor<T> query(BushyTailQuery query) throws BushyTailQueryException;
+
+    /**
+     * Count all entities which match a filter without reading them.
+     * @param filter the filter or {@code null} to count all entities
+     * @return the number of matching entities
+     * @throws BushyTailInvalidQueryException if the filter is invalid, e.g. a literal does not match the type of a property
+     * @throws BushyTailQueryException if the filter cannot be translated for the backend
+     */
+    long count(IBushyTailExpression filter) throws BushyTailQueryException;
+
+}
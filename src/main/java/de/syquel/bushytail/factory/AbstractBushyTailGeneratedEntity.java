@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.factory;
+
+import de.syquel.bushytail.factory.exception.OlingoMetadataFactoryException;
+import de.syquel.bushytail.serializer.plan.IOlingoEntityCodec;
+import de.syquel.bushytail.serializer.plan.IPropertyAccessor;
+import de.syquel.bushytail.serializer.plan.OlingoCodecProperty;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntitySet;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityType;
+import org.apache.olingo.commons.api.edm.provider.CsdlMapping;
+import org.apache.olingo.commons.api.edm.provider.CsdlNavigationProperty;
+import org.apache.olingo.commons.api.edm.provider.CsdlNavigationPropertyBinding;
+import org.apache.olingo.commons.api.edm.provider.CsdlProperty;
+import org.apache.olingo.commons.api.edm.provider.CsdlPropertyRef;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of the metadata and codecs generated by the {@code bushytail-processor} annotation processor.
+ * <p>
+ * The generated subclasses register the JavaBeans properties of their JPA entity with direct accessors on construction
+ * and describe the OData entity type and entity set in terms of the helper methods of this class, so that the
+ * generated code does not depend on the exact shape of the Olingo CSDL API.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> The JPA entity class.
+ */
+public abstract class AbstractBushyTailGeneratedEntity<T> implements IOlingoEntityMetadata, IOlingoEntityCodec<T> {
+
+    /** The JPA entity class. */
+    private final Class<T> entityClass;
+
+    /** The name of the OData entity set. */
+    private final String entitySetName;
+
+    /** The name of the field annotated with {@link javax.persistence.Version} or {@code null}. */
+    private final String versionFieldName;
+
+    /** Whether the generated class creates JPA entities. */
+    private final boolean instantiable;
+
+    /** The JavaBeans properties by name. */
+    private final Map<String, OlingoCodecProperty> properties = new HashMap<String, OlingoCodecProperty>();
+
+    /** The read-only view of the JavaBeans properties. */
+    private final Map<String, OlingoCodecProperty> unmodifiableProperties = Collections.unmodifiableMap(properties);
+
+    /**
+     * Constructs {@link AbstractBushyTailGeneratedEntity}.
+     *
+     * @param entityClass The JPA entity class.
+     * @param entitySetName The name of the OData entity set.
+     * @param versionFieldName The name of the field annotated with {@link javax.persistence.Version} or {@code null}.
+     * @param instantiable Whether the generated class overrides {@link #newInstance()}.
+     */
+    protected AbstractBushyTailGeneratedEntity(final Class<T> entityClass, final String entitySetName, final String versionFieldName,
+                                               final boolean instantiable) {
+        this.entityClass = entityClass;
+        this.entitySetName = entitySetName;
+        this.versionFieldName = versionFieldName;
+        this.instantiable = instantiable;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    @Override
+    public String getVersionFieldName() {
+        return versionFieldName;
+    }
+
+    @Override
+    public T newInstance() throws Exception {
+        throw new InstantiationException("No accessible no-argument constructor for class '" + entityClass.getName() + "'");
+    }
+
+    @Override
+    public boolean isInstantiable() {
+        return instantiable;
+    }
+
+    @Override
+    public Map<String, OlingoCodecProperty> getProperties() {
+        return unmodifiableProperties;
+    }
+
+    /**
+     * Register a JavaBeans property of the JPA entity.
+     *
+     * @param name The name of the property.
+     * @param type The declared Java type of the property.
+     * @param accessor The direct accessor of the property.
+     * @param readable Whether the property has a getter.
+     * @param writable Whether the property has a setter.
+     */
+    protected final void addCodecProperty(final String name, final Class<?> type, final IPropertyAccessor accessor, final boolean readable,
+                                          final boolean writable) {
+        properties.put(name, new OlingoCodecProperty(name, type, accessor, readable, writable));
+    }
+
+    /**
+     * Create an empty OData entity type named after the JPA entity class.
+     *
+     * @return The OData entity type.
+     */
+    protected final CsdlEntityType newEntityType() {
+        final CsdlEntityType entityType = new CsdlEntityType();
+        entityType.setName(entityClass.getSimpleName());
+        entityType.setProperties(new ArrayList<CsdlProperty>());
+        entityType.setKey(new ArrayList<CsdlPropertyRef>());
+        entityType.setNavigationProperties(new ArrayList<CsdlNavigationProperty>());
+
+        return entityType;
+    }
+
+    /**
+     * Create an empty OData entity set named after the table of the JPA entity.
+     *
+     * @param entityFQN The Full Qualified Name of the OData entity type.
+     * @return The OData entity set.
+     */
+    protected final CsdlEntitySet newEntitySet(final FullQualifiedName entityFQN) {
+        final CsdlEntitySet entitySet = new CsdlEntitySet();
+        entitySet.setName(entitySetName);
+        entitySet.setType(entityFQN);
+        entitySet.setNavigationPropertyBindings(new ArrayList<CsdlNavigationPropertyBinding>());
+
+        return entitySet;
+    }
+
+    /**
+     * Add a structural property to an OData entity type.
+     *
+     * @param entityType The OData entity type.
+     * @param name The name of the property.
+     * @param type The OData type of the property.
+     * @param collection Whether the property is a collection.
+     * @param nullable Whether the property is nullable.
+     * @param javaClass The Java class the property is mapped to.
+     */
+    protected static void addProperty(final CsdlEntityType entityType, final String name, final FullQualifiedName type, final boolean collection,
+                                      final boolean nullable, final Class<?> javaClass) {
+        final CsdlMapping mapping = new CsdlMapping();
+        mapping.setInternalName(javaClass.getName());
+        mapping.setMappedJavaClass(javaClass);
+
+        final CsdlProperty property = new CsdlProperty();
+        property.setName(name);
+        property.setType(type);
+        property.setCollection(collection);
+        property.setNullable(nullable);
+        property.setMapping(mapping);
+
+        entityType.getProperties().add(property);
+    }
+
+    /**
+     * Add a navigation property to an OData entity type.
+     *
+     * @param entityType The OData entity type.
+     * @param name The name of the navigation property.
+     * @param type The OData entity type of the navigation target.
+     * @param collection Whether the navigation property is a collection.
+     * @param nullable Whether the navigation property is nullable.
+     * @param partner The name of the partner navigation property.
+     */
+    protected static void addNavigationProperty(final CsdlEntityType entityType, final String name, final FullQualifiedName type,
+                                                final boolean collection, final boolean nullable, final String partner) {
+        final CsdlNavigationProperty navigationProperty = new CsdlNavigationProperty();
+        navigationProperty.setName(name);
+        navigationProperty.setType(type);
+        navigationProperty.setCollection(collection);
+        navigationProperty.setNullable(nullable);
+        navigationProperty.setPartner(partner);
+
+        entityType.getNavigationProperties().add(navigationProperty);
+    }
+
+    /**
+     * Add a key property to an OData entity type.
+     *
+     * @param entityType The OData entity type.
+     * @param name The name of the key property.
+     */
+    protected static void addKey(final CsdlEntityType entityType, final String name) {
+        final CsdlPropertyRef propertyRef = new CsdlPropertyRef();
+        propertyRef.setName(name);
+
+        entityType.getKey().add(propertyRef);
+    }
+
+    /**
+     * Add a navigation property binding to an OData entity set.
+     *
+     * @param entitySet The OData entity set.
+     * @param path The name of the navigation property.
+     * @param target The name of the target entity set.
+     */
+    protected static void addNavigationPropertyBinding(final CsdlEntitySet entitySet, final String path, final String target) {
+        final CsdlNavigationPropertyBinding binding = new CsdlNavigationPropertyBinding();
+        binding.setPath(path);
+        binding.setTarget(target);
+
+        entitySet.getNavigationPropertyBindings().add(binding);
+    }
+
+    /**
+     * Look up the OData entity type of a related JPA entity.
+     *
+     * @param entityFQNs The Full Qualified Names of all JPA entities.
+     * @param type The related JPA entity.
+     * @return The Full Qualified Name of the OData entity type.
+     * @throws OlingoMetadataFactoryException if the JPA entity has not been added.
+     */
+    protected static FullQualifiedName getEntityType(final Map<Class<?>, FullQualifiedName> entityFQNs, final Class<?> type)
+            throws OlingoMetadataFactoryException {
+        return OlingoMetadataFactory.getEntityType(entityFQNs, type);
+    }
+
+}
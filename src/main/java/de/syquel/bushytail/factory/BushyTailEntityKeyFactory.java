@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.factory;
+
+import de.syquel.bushytail.controller.BushyTailEntityKey;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import de.syquel.bushytail.serializer.plan.OlingoPropertyPlan;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmKeyPropertyRef;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Factory Class to generate canonical {@link BushyTailEntityKey}s of OData entities, e.g. as keys of an entity cache.
+ * <p>
+ * Each key value is normalized to its canonical OData literal, so that the key of an entity is the same whether it has
+ * been determined from the key predicates of a request, e.g. {@code Items(1)} or {@code Items(id=1)}, or from the entity itself.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailEntityKeyFactory {
+
+    /**
+     * Hidden constructor.
+     */
+    private BushyTailEntityKeyFactory() {
+
+    }
+
+    /**
+     * Create the canonical key of an entity from the key predicates of a request.
+     *
+     * @param entityType The OData entity type.
+     * @param keyPredicates The key predicates of the entity.
+     * @return The canonical key or {@code null} if the key predicates are incomplete or contain aliases.
+     */
+    public static BushyTailEntityKey createKey(final EdmEntityType entityType, final List<UriParameter> keyPredicates) {
+        final Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (final EdmKeyPropertyRef keyPropertyRef : entityType.getKeyPropertyRefs()) {
+            UriParameter matchingKeyPredicate = null;
+            for (final UriParameter keyPredicate : keyPredicates) {
+                if (keyPropertyRef.getName().equals(keyPredicate.getName())) {
+                    matchingKeyPredicate = keyPredicate;
+                }
+            }
+            if (matchingKeyPredicate == null || matchingKeyPredicate.getText() == null) {
+                return null;
+            }
+
+            final EdmProperty keyProperty = keyPropertyRef.getProperty();
+            final EdmPrimitiveType keyType = (EdmPrimitiveType) keyProperty.getType();
+            try {
+                final Object value = keyType.valueOfString(keyType.fromUriLiteral(matchingKeyPredicate.getText()), keyProperty.isNullable(),
+                        keyProperty.getMaxLength(), keyProperty.getPrecision(), keyProperty.getScale(), keyProperty.isUnicode(), keyType.getDefaultType());
+                values.put(keyPropertyRef.getName(), toCanonicalLiteral(keyProperty, value));
+            } catch (EdmPrimitiveTypeException e) {
+                return null;
+            }
+        }
+
+        return new BushyTailEntityKey(values);
+    }
+
+    /**
+     * Create the canonical key of an entity from its key properties.
+     *
+     * @param entityType The OData entity type.
+     * @param accessorPlan The accessor plan of the JPA entity class.
+     * @param entity The JPA entity.
+     * @return The canonical key or {@code null} if a key property cannot be read or converted.
+     */
+    public static BushyTailEntityKey createKey(final EdmEntityType entityType, final OlingoEntityAccessorPlan accessorPlan, final Object entity) {
+        final Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (final EdmKeyPropertyRef keyPropertyRef : entityType.getKeyPropertyRefs()) {
+            final OlingoPropertyPlan propertyPlan = accessorPlan.getProperty(keyPropertyRef.getName());
+            if (propertyPlan == null) {
+                return null;
+            }
+
+            try {
+                values.put(keyPropertyRef.getName(), toCanonicalLiteral(keyPropertyRef.getProperty(), propertyPlan.getValue(entity)));
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        return new BushyTailEntityKey(values);
+    }
+
+    /**
+     * Convert a key value into its canonical OData literal.
+     *
+     * @param keyProperty The key property.
+     * @param value The Java value of the key property.
+     * @return The canonical literal.
+     * @throws EdmPrimitiveTypeException if the value cannot be converted.
+     */
+    private static String toCanonicalLiteral(final EdmProperty keyProperty, final Object value) throws EdmPrimitiveTypeException {
+        return ((EdmPrimitiveType) keyProperty.getType()).valueToString(value, keyProperty.isNullable(), keyProperty.getMaxLength(),
+                keyProperty.getPrecision(), keyProperty.getScale(), keyProperty.isUnicode());
+    }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.syquel.bushytail.factory;
+
+import de.syquel.bushytail.controller.query.*;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.UriResourceProperty;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectItem;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Factory Class to generate a backend-neutral {@link BushyTailQuery} out of the system query options of an Olingo {@link UriInfo}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailQueryFactory {
+
+    /**
+     * Hidden constructor.
+     */
+    private BushyTailQueryFactory() {
+
+    }
+
+    /**
+     * Create the query of a collection read.
+     *
+     * @param uriInfo The parsed request URI.
+     * @param entityType The queried entity type.
+     * @param versionPropertyName The name of the version property or {@code null} if the entity type has no ETag.
+     * @param fetchSize The number of entities which should be fetched from the backend at once.
+     * @return The query.
+     * @throws ODataApplicationException if the request contains an expression which cannot be pushed down.
+     */
+    public static BushyTailQuery createQuery(final UriInfo uriInfo, final EdmEntityType entityType, final String versionPropertyName,
+                                             final int fetchSize) throws ODataApplicationException {
+        final IBushyTailExpression filter = createFilter(uriInfo);
+
+        final List<BushyTailSortKey> sortKeys = new ArrayList<BushyTailSortKey>();
+        final OrderByOption orderByOption = uriInfo.getOrderByOption();
+        if (orderByOption != null) {
+            for (final OrderByItem orderByItem : orderByOption.getOrders()) {
+                sortKeys.add(new BushyTailSortKey(convert(orderByItem.getExpression()), orderByItem.isDescending()));
+            }
+        }
+
+        final Integer limit = uriInfo.getTopOption() == null ? null : uriInfo.getTopOption().getValue();
+        final int offset = uriInfo.getSkipOption() == null ? 0 : uriInfo.getSkipOption().getValue();
+
+        return new BushyTailQuery(filter, sortKeys, limit, offset, fetchSize, createProjection(uriInfo.getSelectOption(), entityType, versionPropertyName));
+    }
+
+    /**
+     * Create the filter of a collection read or count.
+     *
+     * @param uriInfo The parsed request URI.
+     * @return The filter or {@code null} if the collection is not filtered.
+     * @throws ODataApplicationException if the filter contains an expression which cannot be pushed down.
+     */
+    public static IBushyTailExpression createFilter(final UriInfo uriInfo) throws ODataApplicationException {
+        if (uriInfo.getFilterOption() == null) {
+            return null;
+        }
+
+        return convert(uriInfo.getFilterOption().getExpression());
+    }
+
+    /**
+     * Determine the structural properties selected by {@code $select}, including the key properties and the version property.
+     * <p>
+     * The version property is always loaded, so the ETag of the entities can be determined even if it has not been selected.
+     * </p>
+     *
+     * @param selectOption The select option or {@code null}.
+     * @param entityType The selected entity type.
+     * @param versionPropertyName The name of the version property or {@code null} if the entity type has no ETag.
+     * @return The names of the selected properties or {@code null} for all properties.
+     */
+    public static List<String> createProjection(final SelectOption selectOption, final EdmEntityType entityType, final String versionPropertyName) {
+        if (selectOption == null) {
+            return null;
+        }
+
+        final Set<String> projection = new LinkedHashSet<String>(entityType.getKeyPredicateNames());
+        if (versionPropertyName != null) {
+            projection.add(versionPropertyName);
+        }
+        for (final SelectItem selectItem : selectOption.getSelectItems()) {
+            if (selectItem.isStar()) {
+                return null;
+            }
+            if (selectItem.getResourcePath() == null) {
+                continue;
+            }
+
+            final List<UriResource> uriResources = selectItem.getResourcePath().getUriResourceParts();
+            if (!uriResources.isEmpty() && uriResources.get(0) instanceof UriResourceProperty) {
+                projection.add(((UriResourceProperty) uriResources.get(0)).getProperty().getName());
+            }
+        }
+
+        return new ArrayList<String>(projection);
+    }
+
+    /**
+     * Determine whether a request restricts or orders the collection, i.e. whether it requires a query.
+     *
+     * @param uriInfo The parsed request URI.
+     * @return Whether $filter, $orderby, $top or $skip are present.
+     */
+    public static boolean hasQueryOptions(final UriInfo uriInfo) {
+        return uriInfo.getFilterOption() != null || uriInfo.getOrderByOption() != null
+                || uriInfo.getTopOption() != null || uriInfo.getSkipOption() != null;
+    }
+
+    /**
+     * Convert an Olingo expression into a backend-neutral expression.
+     *
+     * @param expression The Olingo expression.
+     * @return The backend-neutral expression.
+     * @throws ODataApplicationException if the expression cannot be converted.
+     */
+    private static IBushyTailExpression convert(final Expression expression) throws ODataApplicationException {
+        try {
+            return expression.accept(ExpressionConverter.INSTANCE);
+        } catch (ExpressionVisitException e) {
+            throw new ODataApplicationException("Invalid expression: " + e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH, e);
+        }
+    }
+
+    /**
+     * Create the exception for an expression which cannot be pushed down.
+     *
+     * @param description The description of the expression.
+     * @return The exception.
+     */
+    private static ODataApplicationException unsupported(final String description) {
+        return new ODataApplicationException("Unsupported expression: " + description, HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+    }
+
+    /**
+     * Stateless visitor which converts Olingo expressions into backend-neutral expressions.
+     */
+    private static final class ExpressionConverter implements ExpressionVisitor<IBushyTailExpression> {
+
+        /** The shared instance. */
+        static final ExpressionConverter INSTANCE = new ExpressionConverter();
+
+        @Override
+        public IBushyTailExpression visitBinaryOperator(final BinaryOperatorKind operator, final IBushyTailExpression left, final IBushyTailExpression right) throws ODataApplicationException {
+            final BushyTailBinaryOperator binaryOperator;
+            try {
+                binaryOperator = BushyTailBinaryOperator.valueOf(operator.name());
+            } catch (IllegalArgumentException e) {
+                throw unsupported("operator " + operator);
+            }
+
+            return new BushyTailBinaryExpression(binaryOperator, left, right);
+        }
+
+        /**
+         * Convert the {@code in} operator into a disjunction of equalities.
+         * Not annotated with {@code @Override}, since older Olingo versions do not know this operator.
+         *
+         * @param operator The operator.
+         * @param left The left operand.
+         * @param right The list of right operands.
+         * @return The disjunction.
+         * @throws ODataApplicationException if the operator is not supported.
+         */
+        public IBushyTailExpression visitBinaryOperator(final BinaryOperatorKind operator, final IBushyTailExpression left, final List<IBushyTailExpression> right) throws ODataApplicationException {
+            if (!"IN".equals(operator.name()) || right.isEmpty()) {
+                throw unsupported("operator " + operator);
+            }
+
+            IBushyTailExpression disjunction = null;
+            for (final IBushyTailExpression value : right) {
+                final IBushyTailExpression equality = new BushyTailBinaryExpression(BushyTailBinaryOperator.EQ, left, value);
+                disjunction = disjunction == null ? equality : new BushyTailBinaryExpression(BushyTailBinaryOperator.OR, disjunction, equality);
+            }
+
+            return disjunction;
+        }
+
+        @Override
+        public IBushyTailExpression visitUnaryOperator(final UnaryOperatorKind operator, final IBushyTailExpression operand) throws ODataApplicationException {
+            return new BushyTailUnaryExpression(BushyTailUnaryOperator.valueOf(operator.name()), operand);
+        }
+
+        @Override
+        public IBushyTailExpression visitMethodCall(final MethodKind methodCall, final List<IBushyTailExpression> parameters) throws ODataApplicationException {
+            final BushyTailMethod method;
+            try {
+                method = BushyTailMethod.valueOf(methodCall.name());
+            } catch (IllegalArgumentException e) {
+                throw unsupported("method " + methodCall.name().toLowerCase(Locale.ENGLISH));
+            }
+
+            return new BushyTailMethodExpression(method, parameters);
+        }
+
+        @Override
+        public IBushyTailExpression visitLambdaExpression(final String lambdaFunction, final String lambdaVariable, final Expression expression) throws ODataApplicationException {
+            throw unsupported("lambda " + lambdaFunction);
+        }
+
+        @Override
+        public IBushyTailExpression visitLiteral(final Literal literal) throws ExpressionVisitException {
+            final EdmType type = literal.getType();
+            if (type == null) {
+                // Only the null literal has no type
+                return new BushyTailLiteral(null);
+            }
+            if (!(type instanceof EdmPrimitiveType)) {
+                throw new ExpressionVisitException("Literal '" + literal.getText() + "' is not primitive");
+            }
+
+            final EdmPrimitiveType primitiveType = (EdmPrimitiveType) type;
+            try {
+                final String text = primitiveType.fromUriLiteral(literal.getText());
+                return new BushyTailLiteral(primitiveType.valueOfString(text, true, null, null, null, true, primitiveType.getDefaultType()));
+            } catch (EdmPrimitiveTypeException e) {
+                throw new ExpressionVisitException("Invalid literal '" + literal.getText() + "'", e);
+            }
+        }
+
+        @Override
+        public IBushyTailExpression visitMember(final Member member) throws ODataApplicationException {
+            final List<UriResource> uriResources = member.getResourcePath().getUriResourceParts();
+
+            final List<String> segments = new ArrayList<String>(uriResources.size());
+            for (final UriResource uriResource : uriResources) {
+                if (uriResource instanceof UriResourceProperty) {
+                    segments.add(((UriResourceProperty) uriResource).getProperty().getName());
+                } else if (uriResource instanceof UriResourceNavigation) {
+                    final UriResourceNavigation uriResourceNavigation = (UriResourceNavigation) uriResource;
+                    if (uriResourceNavigation.getProperty().isCollection()) {
+                        throw unsupported("collection navigation " + uriResourceNavigation.getProperty().getName());
+                    }
+
+                    segments.add(uriResourceNavigation.getProperty().getName());
+                } else {
+                    throw unsupported("member " + uriResource);
+                }
+            }
+
+            return new BushyTailPropertyPath(segments);
+        }
+
+        @Override
+        public IBushyTailExpression visitAlias(final String aliasName) throws ODataApplicationException {
+            throw unsupported("alias " + aliasName);
+        }
+
+        @Override
+        public IBushyTailExpression visitTypeLiteral(final EdmType type) throws ODataApplicationException {
+            throw unsupported("type literal " + type.getName());
+        }
+
+        @Override
+        public IBushyTailExpression visitLambdaReference(final String variableName) throws ODataApplicationException {
+            throw unsupported("lambda reference " + variableName);
+        }
+
+        @Override
+        public IBushyTailExpression visitEnum(final EdmEnumType type, final List<String> enumValues) throws ODataApplicationException {
+            if (enumValues.size() != 1) {
+                throw unsupported("combined enumeration flags of " + type.getName());
+            }
+
+            // The member name is coerced into the Java enumeration by the backend
+            return new BushyTailLiteral(enumValues.get(0));
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.factory;
+
+import de.syquel.bushytail.factory.exception.OlingoMetadataFactoryException;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntitySet;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityType;
+
+import java.util.Map;
+
+/**
+ * Pre-derived OData metadata of a JPA {@link javax.persistence.Entity}.
+ * <p>
+ * The {@code bushytail-processor} annotation processor generates implementations at compile time from the same
+ * JPA annotations which {@link OlingoMetadataFactory} otherwise reflects over on startup.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public interface IOlingoEntityMetadata {
+
+    /**
+     * @return The JPA entity class.
+     */
+    Class<?> getEntityClass();
+
+    /**
+     * Creates the OData entity type of the JPA entity.
+     *
+     * @param entityFQNs The Full Qualified Names of all JPA entities, which navigation properties refer to.
+     * @return The OData entity type.
+     * @throws OlingoMetadataFactoryException if a related JPA entity is unknown.
+     * @see OlingoMetadataFactory#getEntityType(Map, Class)
+     */
+    CsdlEntityType createEntityType(Map<Class<?>, FullQualifiedName> entityFQNs) throws OlingoMetadataFactoryException;
+
+    /**
+     * Creates the OData entity set of the JPA entity without annotations.
+     *
+     * @param entityFQN The Full Qualified Name of the OData entity type.
+     * @return The OData entity set.
+     */
+    CsdlEntitySet createEntitySet(FullQualifiedName entityFQN);
+
+    /**
+     * @return The name of the field annotated with {@link javax.persistence.Version} or {@code null} if there is none.
+     */
+    String getVersionFieldName();
+
+}
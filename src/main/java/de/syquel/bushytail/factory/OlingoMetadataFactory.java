@@ -21,6 +21,9 @@ import org.apache.commons.lang3.ClassUtils;
 import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
 import org.apache.olingo.commons.api.edm.FullQualifiedName;
 import org.apache.olingo.commons.api.edm.provider.*;
+import org.apache.olingo.commons.api.edm.provider.annotation.CsdlCollection;
+import org.apache.olingo.commons.api.edm.provider.annotation.CsdlExpression;
+import org.apache.olingo.commons.api.edm.provider.annotation.CsdlPropertyPath;
 
 import javax.persistence.*;
 import java.lang.reflect.Field;
@@ -30,6 +33,10 @@ import java.math.BigInteger;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Factory Class to generate Olingo OData {@link CsdlSchema} out of a collection of {@code JPA} {@link Entity}.
@@ -38,6 +45,20 @@ import java.util.*;
  */
 public class OlingoMetadataFactory {
 
+    /**
+     * The URI of the OData Core vocabulary.
+     */
+    public static final String CORE_VOCABULARY_URI = "http://docs.oasis-open.org/odata/odata/v4.0/os/vocabularies/Org.OData.Core.V1.xml";
+
+    /**
+     * The namespace of the OData Core vocabulary.
+     */
+    public static final String CORE_VOCABULARY_NAMESPACE = "Org.OData.Core.V1";
+
+    /**
+     * The term which lists the properties an entity set computes its ETags from.
+     */
+    public static final String TERM_OPTIMISTIC_CONCURRENCY = CORE_VOCABULARY_NAMESPACE + ".OptimisticConcurrency";
 
     /**
      * Contains the mapping for basic Java types zo basic OData types.
@@ -64,6 +85,21 @@ public class OlingoMetadataFactory {
      */
     private final Map<String, Map<Class<?>, FullQualifiedName>> namespaceEntities = new HashMap<String, Map<Class<?>, FullQualifiedName>>();
 
+    /**
+     * Contains the Full Qualified Names of all JPA {@link Entity} across namespaces.
+     */
+    private final Map<Class<?>, FullQualifiedName> entityFQNs = new HashMap<Class<?>, FullQualifiedName>();
+
+    /**
+     * Contains the explicitly configured version properties of JPA {@link Entity}.
+     */
+    private final Map<Class<?>, String> versionProperties = new HashMap<Class<?>, String>();
+
+    /**
+     * Contains the metadata of JPA {@link Entity} which has been derived at compile time.
+     */
+    private final Map<Class<?>, IOlingoEntityMetadata> entityMetadata = new HashMap<Class<?>, IOlingoEntityMetadata>();
+
 
     /**
      * Constructs {@link OlingoMetadataFactory}.
@@ -157,10 +193,65 @@ public class OlingoMetadataFactory {
         }
 
         entities.put(type, entityFQN);
+        entityFQNs.put(type, entityFQN);
+
+        return this;
+    }
+
+    /**
+     * Sets the property of a JPA {@link Entity} which the ETags of its entities are derived from.
+     * Without an explicit version property, the field annotated with {@link Version} is used, if any.
+     *
+     * @param type A JPA {@link Entity}.
+     * @param propertyName The name of the version property, e.g. a last modification timestamp.
+     * @return this {@link OlingoMetadataFactory} for method chaining.
+     */
+    public OlingoMetadataFactory setVersionProperty(final Class<?> type, final String propertyName) {
+        versionProperties.put(type, propertyName);
+
+        return this;
+    }
+
+    /**
+     * Sets the metadata of a JPA {@link Entity} which has been derived at compile time,
+     * so that the entity is not reflected over when creating the schema.
+     *
+     * @param metadata The metadata generated by the {@code bushytail-processor} annotation processor.
+     * @return this {@link OlingoMetadataFactory} for method chaining.
+     */
+    public OlingoMetadataFactory setEntityMetadata(final IOlingoEntityMetadata metadata) {
+        entityMetadata.put(metadata.getEntityClass(), metadata);
 
         return this;
     }
 
+    /**
+     * Determines the property of a JPA {@link Entity} which the ETags of its entities are derived from.
+     *
+     * @param type A JPA {@link Entity}.
+     * @return The explicitly configured version property, the field annotated with {@link Version}
+     *         or {@code null} if entities have no ETag.
+     */
+    public String getVersionPropertyName(final Class<?> type) {
+        final String versionProperty = versionProperties.get(type);
+        if (versionProperty != null) {
+            return versionProperty;
+        }
+
+        final IOlingoEntityMetadata metadata = entityMetadata.get(type);
+        if (metadata != null) {
+            return metadata.getVersionFieldName();
+        }
+
+        for (final Field typeField : type.getDeclaredFields()) {
+            if (typeField.isAnnotationPresent(Version.class)) {
+                return typeField.getName();
+            }
+        }
+
+        return null;
+    }
+
     /**
      * Creates a list of OData {@link CsdlSchema} out of all queued JPA {@link Entity}.
      *
@@ -173,6 +264,37 @@ public class OlingoMetadataFactory {
      * @throws OlingoMetadataFactoryException if the schema could not be created.
      */
     public List<CsdlSchema> createSchema(final String name) throws OlingoMetadataFactoryException {
+        return createSchema(name, null);
+    }
+
+    /**
+     * Creates a list of OData {@link CsdlSchema} out of all queued JPA {@link Entity}.
+     * <p>
+     * The relationships between the entities are indexed once up front. Afterwards, the entities are independent
+     * of each other and are created concurrently by the executor, if given.
+     * </p>
+     *
+     * @param name The name of the schema.
+     * @param executor The executor which creates the entities concurrently or {@code null} to create them sequentially.
+     * @return The List of OData {@link CsdlSchema} which were generated out of the queued JPA {@link Entity}.
+     *
+     * @throws OlingoMetadataFactoryException if the schema could not be created.
+     */
+    public List<CsdlSchema> createSchema(final String name, final ExecutorService executor) throws OlingoMetadataFactoryException {
+        // Generated metadata already knows the mapping partners, so only index when reflecting over some entity
+        final RelationshipIndex relationshipIndex = new RelationshipIndex(
+                entityMetadata.keySet().containsAll(entityFQNs.keySet()) ? Collections.<Class<?>>emptySet() : entityFQNs.keySet());
+
+        final Map<Class<?>, ODataEntityPair> entityPairs;
+        if (executor == null) {
+            entityPairs = new HashMap<Class<?>, ODataEntityPair>();
+            for (final Map.Entry<Class<?>, FullQualifiedName> entityEntry : entityFQNs.entrySet()) {
+                entityPairs.put(entityEntry.getKey(), createEntity(entityEntry.getKey(), entityEntry.getValue(), relationshipIndex));
+            }
+        } else {
+            entityPairs = createEntities(executor, relationshipIndex);
+        }
+
         final List<CsdlSchema> schemas = new ArrayList<CsdlSchema>(namespaceEntities.size());
 
         // Loop through all Namespaces which were set
@@ -180,14 +302,15 @@ public class OlingoMetadataFactory {
             final String namespace = namespaceEntityEntry.getKey();
             final Map<Class<?>, FullQualifiedName> namespaceEntityMap = namespaceEntityEntry.getValue();
 
-            // Loop through all JPA Entites which were set and create EntityTypes and EntitySets
+            // Collect the EntityTypes and EntitySets of all JPA Entities which were set
             final List<CsdlEntityType> entityTypes = new ArrayList<CsdlEntityType>();
             final List<CsdlEntitySet> entitySets = new ArrayList<CsdlEntitySet>();
-            for (final Map.Entry<Class<?>, FullQualifiedName> entityEntry : namespaceEntityMap.entrySet()){
-                final FullQualifiedName entityFQN = entityEntry.getValue();
-                final Class<?> entity = entityEntry.getKey();
-
-                final ODataEntityPair entityPair = createEntity(entity, entityFQN);
+            for (final Map.Entry<Class<?>, FullQualifiedName> entityEntry : namespaceEntityMap.entrySet()) {
+                ODataEntityPair entityPair = entityPairs.get(entityEntry.getKey());
+                if (!entityEntry.getValue().equals(entityFQNs.get(entityEntry.getKey()))) {
+                    // The entity has been re-added under another name, thus its type differs in this namespace
+                    entityPair = createEntity(entityEntry.getKey(), entityEntry.getValue(), relationshipIndex);
+                }
 
                 entityTypes.add(entityPair.getEntityType());
                 entitySets.add(entityPair.getEntitySet());
@@ -210,15 +333,80 @@ public class OlingoMetadataFactory {
         return schemas;
     }
 
+    /**
+     * Creates the OData {@link CsdlEntityType} and {@link CsdlEntitySet} of all JPA {@link Entity} concurrently.
+     *
+     * @param executor The executor which creates the entities.
+     * @param relationshipIndex The index of the mapping partners.
+     * @return The pairs of generated OData {@link CsdlEntityType} and {@link CsdlEntitySet} by JPA {@link Entity}.
+     * @throws OlingoMetadataFactoryException if an Olingo entity could not be created.
+     */
+    private Map<Class<?>, ODataEntityPair> createEntities(final ExecutorService executor, final RelationshipIndex relationshipIndex)
+            throws OlingoMetadataFactoryException {
+        final Map<Class<?>, Future<ODataEntityPair>> futures = new HashMap<Class<?>, Future<ODataEntityPair>>();
+        for (final Map.Entry<Class<?>, FullQualifiedName> entityEntry : entityFQNs.entrySet()) {
+            final Class<?> type = entityEntry.getKey();
+            final FullQualifiedName entityFQN = entityEntry.getValue();
+
+            futures.put(type, executor.submit(new Callable<ODataEntityPair>() {
+                @Override
+                public ODataEntityPair call() throws OlingoMetadataFactoryException {
+                    return createEntity(type, entityFQN, relationshipIndex);
+                }
+            }));
+        }
+
+        final Map<Class<?>, ODataEntityPair> entityPairs = new HashMap<Class<?>, ODataEntityPair>();
+        try {
+            for (final Map.Entry<Class<?>, Future<ODataEntityPair>> future : futures.entrySet()) {
+                entityPairs.put(future.getKey(), future.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            cancelAll(futures.values());
+            Thread.currentThread().interrupt();
+            throw new OlingoMetadataFactoryException("Interrupted while creating entities", e);
+        } catch (ExecutionException e) {
+            cancelAll(futures.values());
+            if (e.getCause() instanceof OlingoMetadataFactoryException) {
+                throw (OlingoMetadataFactoryException) e.getCause();
+            }
+
+            throw new OlingoMetadataFactoryException("Cannot create entity", e.getCause());
+        }
+
+        return entityPairs;
+    }
+
+    /**
+     * Cancels the creation of entities after one of them has failed.
+     *
+     * @param futures The pending creations.
+     */
+    private static void cancelAll(final Collection<Future<ODataEntityPair>> futures) {
+        for (final Future<ODataEntityPair> future : futures) {
+            future.cancel(true);
+        }
+    }
+
     /**
      * Creates OData {@link CsdlEntityType} and {@link CsdlEntitySet} out of a JPA {@link Entity}.
      *
      * @param type The JPA {@link Entity}.
      * @param entityFQN The Full Qualified Name of the OData {@link CsdlEntitySet}.
+     * @param relationshipIndex The index of the mapping partners.
      * @return The pair of generated OData {@link CsdlEntityType} and {@link CsdlEntitySet}.
      * @throws OlingoMetadataFactoryException if Olingo entity could not be created.
      */
-    private ODataEntityPair createEntity(final Class<?> type, final FullQualifiedName entityFQN) throws OlingoMetadataFactoryException {
+    private ODataEntityPair createEntity(final Class<?> type, final FullQualifiedName entityFQN, final RelationshipIndex relationshipIndex)
+            throws OlingoMetadataFactoryException {
+        final IOlingoEntityMetadata metadata = entityMetadata.get(type);
+        if (metadata != null) {
+            final CsdlEntitySet entitySet = metadata.createEntitySet(entityFQN);
+            addOptimisticConcurrencyAnnotation(type, entitySet);
+
+            return new ODataEntityPair(entitySet, metadata.createEntityType(Collections.unmodifiableMap(entityFQNs)));
+        }
+
         final List<CsdlProperty> properties = new ArrayList<CsdlProperty>();
         final List<CsdlPropertyRef> primaryKeyProperties = new ArrayList<CsdlPropertyRef>();
         final List<CsdlNavigationProperty> navigationProperties = new ArrayList<CsdlNavigationProperty>();
@@ -228,7 +416,7 @@ public class OlingoMetadataFactory {
         final Field[] typeFields = type.getDeclaredFields();
         for (final Field typeField : typeFields) {
             try {
-                processProperty(typeField, properties, primaryKeyProperties, navigationProperties, navigationPropertyBindings);
+                processProperty(typeField, relationshipIndex, properties, primaryKeyProperties, navigationProperties, navigationPropertyBindings);
             } catch (OlingoMetadataFactoryException e) {
                 throw new OlingoMetadataFactoryException("Cannot process property '" + typeField.getName() + "' of class '" + type.getName() + "'", e);
             }
@@ -247,13 +435,44 @@ public class OlingoMetadataFactory {
         entitySet.setType(entityFQN);
         entitySet.setNavigationPropertyBindings(navigationPropertyBindings);
 
+        addOptimisticConcurrencyAnnotation(type, entitySet);
+
         return new ODataEntityPair(entitySet, entityType);
     }
 
+    /**
+     * Announces the ETags of the entities of an entity set, so that clients send conditional requests.
+     *
+     * @param type The JPA {@link Entity}.
+     * @param entitySet The OData {@link CsdlEntitySet} of the JPA {@link Entity}.
+     */
+    private void addOptimisticConcurrencyAnnotation(final Class<?> type, final CsdlEntitySet entitySet) {
+        final String versionPropertyName = getVersionPropertyName(type);
+        if (versionPropertyName != null) {
+            entitySet.setAnnotations(Collections.singletonList(createOptimisticConcurrencyAnnotation(versionPropertyName)));
+        }
+    }
+
+    /**
+     * Creates the annotation which announces the property the ETags of an entity set are computed from.
+     *
+     * @param versionPropertyName The name of the version property.
+     * @return The {@code Core.OptimisticConcurrency} annotation.
+     */
+    static CsdlAnnotation createOptimisticConcurrencyAnnotation(final String versionPropertyName) {
+        final CsdlAnnotation optimisticConcurrency = new CsdlAnnotation();
+        optimisticConcurrency.setTerm(TERM_OPTIMISTIC_CONCURRENCY);
+        optimisticConcurrency.setExpression(new CsdlCollection().setItems(
+                Collections.<CsdlExpression>singletonList(new CsdlPropertyPath().setValue(versionPropertyName))));
+
+        return optimisticConcurrency;
+    }
+
     /**
      * Processes a {@link Field} out of a JPA {@link Entity} and generates the necessary OData objects.
      *
      * @param typeField A field of a JPA {@link Entity}.
+     * @param relationshipIndex The index of the mapping partners.
      * @param properties A collection of OData properties which will be filled by this function
      *                   and can be used in {@link CsdlEntityType#setProperties(List)}.
      * @param primaryKeyProperties A collection of OData primary keys which will be filled by this function
@@ -264,7 +483,7 @@ public class OlingoMetadataFactory {
      *                                   and can be used in {@link CsdlEntitySet#setNavigationPropertyBindings(List)}.
      * @throws OlingoMetadataFactoryException if the JPA entity could not be determined for this field.
      */
-    private void processProperty(final Field typeField, final Collection<CsdlProperty> properties, final Collection<CsdlPropertyRef> primaryKeyProperties,
+    private void processProperty(final Field typeField, final RelationshipIndex relationshipIndex, final Collection<CsdlProperty> properties, final Collection<CsdlPropertyRef> primaryKeyProperties,
                                  final Collection<CsdlNavigationProperty> navigationProperties, final Collection<CsdlNavigationPropertyBinding> navigationPropertyBindings) throws OlingoMetadataFactoryException {
         final String propertyName = typeField.getName();
 
@@ -300,7 +519,7 @@ public class OlingoMetadataFactory {
         final Boolean isNullable = columnAnnotation == null || columnAnnotation.nullable();
 
         // Determine Mapping Partner for Navigation Path
-        final String mappingPartner = getMappingPartner(typeField);
+        final String mappingPartner = getMappingPartner(typeField, relationshipIndex);
         if (mappingPartner == null) {
             // Define property for entity
             CsdlMapping dataTypeMapping = new CsdlMapping();
@@ -329,7 +548,7 @@ public class OlingoMetadataFactory {
             // Define navigation paths between EntitySets
             final CsdlNavigationPropertyBinding navigationPropertyBinding = new CsdlNavigationPropertyBinding();
             navigationPropertyBinding.setTarget(getJPAEntityName(propertyType));
-            navigationPropertyBinding.setPath(mappingPartner);
+            navigationPropertyBinding.setPath(propertyName);
 
             navigationPropertyBindings.add(navigationPropertyBinding);
         }
@@ -360,20 +579,8 @@ public class OlingoMetadataFactory {
         FullQualifiedName odataType = JAVA_TO_ODATA_TYPE_MAP.get(type);
 
         if (odataType == null) {
-            // Loop through all namespaces to lookup if propertyType is an JPA entity
-            for (final Map.Entry<String, Map<Class<?>, FullQualifiedName>> namespaceEntityEntry : namespaceEntities.entrySet()) {
-
-                final Map<Class<?>, FullQualifiedName> namespaceEntityMap = namespaceEntityEntry.getValue();
-                if (namespaceEntityMap != null) {
-                    FullQualifiedName entityFQN = namespaceEntityMap.get(type);
-
-                    if (entityFQN != null) {
-                        odataType = entityFQN;
-
-                        break;
-                    }
-                }
-            }
+            // Lookup if propertyType is an JPA entity of any namespace
+            odataType = entityFQNs.get(type);
 
             if (odataType == null) {
                 throw new OlingoMetadataFactoryException("Could not determine OData type for class '" + type.getName() + "'");
@@ -383,6 +590,24 @@ public class OlingoMetadataFactory {
         return odataType;
     }
 
+    /**
+     * Looks up the OData entity type of a related JPA {@link Entity}, e.g. from generated {@link IOlingoEntityMetadata}.
+     *
+     * @param entityFQNs The Full Qualified Names of all JPA {@link Entity}.
+     * @param type The related JPA {@link Entity}.
+     * @return The Full Qualified Name of the OData entity type.
+     * @throws OlingoMetadataFactoryException if the JPA {@link Entity} has not been added.
+     */
+    public static FullQualifiedName getEntityType(final Map<Class<?>, FullQualifiedName> entityFQNs, final Class<?> type)
+            throws OlingoMetadataFactoryException {
+        final FullQualifiedName entityFQN = entityFQNs.get(type);
+        if (entityFQN == null) {
+            throw new OlingoMetadataFactoryException("Could not determine OData type for class '" + type.getName() + "'");
+        }
+
+        return entityFQN;
+    }
+
     /**
      * Determines the table name of a JPA {@link Entity}.
      *
@@ -403,23 +628,16 @@ public class OlingoMetadataFactory {
      * Determines the name of the partner-property of a mapped property in a JPA {@link Entity}.
      *
      * @param typeField The field of a JPA {@link Entity}.
+     * @param relationshipIndex The index of the mapping partners.
      * @return The determined name of the partner-property.
      * @throws OlingoMetadataFactoryException if Mapping Partner cannot be determined.
      */
-    private static String getMappingPartner(final Field typeField) throws OlingoMetadataFactoryException {
+    private static String getMappingPartner(final Field typeField, final RelationshipIndex relationshipIndex) throws OlingoMetadataFactoryException {
         String mappingPartner = null;
         Boolean hasNavigation = true;
 
         if (typeField.isAnnotationPresent(ManyToOne.class)) {
-            final Field[] mappingFields = typeField.getType().getDeclaredFields();
-            for (final Field mappingField : mappingFields) {
-                final OneToMany mappingAnnotation = mappingField.getAnnotation(OneToMany.class);
-
-                if (mappingAnnotation != null && typeField.getName().equals(mappingAnnotation.mappedBy())) {
-                    mappingPartner = mappingField.getName();
-                    break;
-                }
-            }
+            mappingPartner = relationshipIndex.getOneToManyPartner(typeField.getType(), typeField.getName());
         } else if (typeField.isAnnotationPresent(OneToMany.class)) {
             final OneToMany mapping = typeField.getAnnotation(OneToMany.class);
             mappingPartner = mapping.mappedBy();
@@ -445,15 +663,7 @@ public class OlingoMetadataFactory {
 
                 final Class<?> fieldClass = (Class<?>) actualFieldTypeArguments[0];
 
-                final Field[] mappingFields = fieldClass.getDeclaredFields();
-                for (final Field mappingField : mappingFields) {
-                    final ManyToMany mappingAnnotation = mappingField.getAnnotation(ManyToMany.class);
-
-                    if (mappingAnnotation != null && typeField.getName().equals(mappingAnnotation.mappedBy())) {
-                        mappingPartner = mappingField.getName();
-                        break;
-                    }
-                }
+                mappingPartner = relationshipIndex.getManyToManyPartner(fieldClass, typeField.getName());
             }
 
         } else {
@@ -468,6 +678,105 @@ public class OlingoMetadataFactory {
     }
 
 
+    /**
+     * Index of the inverse sides of the relationships between JPA {@link Entity}, built in a single pass over their fields.
+     * <p>
+     * Maps each class to its {@link OneToMany} and {@link ManyToMany} fields by the {@code mappedBy} name of the owning side.
+     * Instances are immutable and can be shared between threads.
+     * </p>
+     */
+    private static final class RelationshipIndex {
+
+        /** The {@link OneToMany} fields of each class by {@code mappedBy}. */
+        private final Map<Class<?>, Map<String, String>> oneToManyPartners = new HashMap<Class<?>, Map<String, String>>();
+
+        /** The {@link ManyToMany} fields of each class by {@code mappedBy}. */
+        private final Map<Class<?>, Map<String, String>> manyToManyPartners = new HashMap<Class<?>, Map<String, String>>();
+
+        /**
+         * Constructs {@link RelationshipIndex}.
+         *
+         * @param types The JPA {@link Entity} to index.
+         */
+        RelationshipIndex(final Collection<Class<?>> types) {
+            for (final Class<?> type : types) {
+                for (final Field field : type.getDeclaredFields()) {
+                    final OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+                    if (oneToMany != null) {
+                        putPartner(oneToManyPartners, type, oneToMany.mappedBy(), field.getName());
+                    }
+
+                    final ManyToMany manyToMany = field.getAnnotation(ManyToMany.class);
+                    if (manyToMany != null) {
+                        putPartner(manyToManyPartners, type, manyToMany.mappedBy(), field.getName());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Determines the {@link OneToMany} field of a class which is mapped by a {@link ManyToOne} field.
+         *
+         * @param type The class of the {@link ManyToOne} field.
+         * @param mappedBy The name of the {@link ManyToOne} field.
+         * @return The name of the {@link OneToMany} field or {@code null} if there is none.
+         */
+        String getOneToManyPartner(final Class<?> type, final String mappedBy) {
+            return getPartner(oneToManyPartners, type, mappedBy);
+        }
+
+        /**
+         * Determines the {@link ManyToMany} field of a class which is mapped by an owning {@link ManyToMany} field.
+         *
+         * @param type The element class of the owning {@link ManyToMany} field.
+         * @param mappedBy The name of the owning {@link ManyToMany} field.
+         * @return The name of the inverse {@link ManyToMany} field or {@code null} if there is none.
+         */
+        String getManyToManyPartner(final Class<?> type, final String mappedBy) {
+            return getPartner(manyToManyPartners, type, mappedBy);
+        }
+
+        /**
+         * Indexes the inverse side of a relationship, keeping the first declared field as the lookup by field scan did.
+         *
+         * @param partners The index of the relationship kind.
+         * @param type The class declaring the inverse side.
+         * @param mappedBy The {@code mappedBy} name of the inverse side.
+         * @param fieldName The name of the field of the inverse side.
+         */
+        private static void putPartner(final Map<Class<?>, Map<String, String>> partners, final Class<?> type, final String mappedBy,
+                                       final String fieldName) {
+            if (mappedBy.isEmpty()) {
+                return;
+            }
+
+            Map<String, String> typePartners = partners.get(type);
+            if (typePartners == null) {
+                typePartners = new HashMap<String, String>();
+                partners.put(type, typePartners);
+            }
+            if (!typePartners.containsKey(mappedBy)) {
+                typePartners.put(mappedBy, fieldName);
+            }
+        }
+
+        /**
+         * Looks up the inverse side of a relationship.
+         *
+         * @param partners The index of the relationship kind.
+         * @param type The class declaring the inverse side.
+         * @param mappedBy The name of the owning field.
+         * @return The name of the field of the inverse side or {@code null} if there is none.
+         */
+        private static String getPartner(final Map<Class<?>, Map<String, String>> partners, final Class<?> type, final String mappedBy) {
+            final Map<String, String> typePartners = partners.get(type);
+
+            return typePartners == null ? null : typePartners.get(mappedBy);
+        }
+
+    }
+
+
     /**
      * Data Class to hold an EntitySet and EntityType Pair.
      */
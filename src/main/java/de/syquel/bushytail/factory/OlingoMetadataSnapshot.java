@@ -0,0 +1,466 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.factory;
+
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Persisted snapshot of the OData {@link CsdlSchema} generated by {@link OlingoMetadataFactory}.
+ * <p>
+ * Loading a snapshot skips the reflection over the JPA entity classes on startup. A snapshot is only valid for the
+ * entity classes it has been created from, which is checked by a fingerprint of their fields and annotations.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class OlingoMetadataSnapshot {
+
+    /** The magic number which identifies snapshot files. */
+    private static final int MAGIC = 0x42545348;
+
+    /** The version of the file format, which is part of the fingerprint. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Orders fields by name, since the order of {@link Class#getDeclaredFields()} is unspecified. */
+    private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>() {
+        @Override
+        public int compare(final Field field1, final Field field2) {
+            return field1.getName().compareTo(field2.getName());
+        }
+    };
+
+    /** The OData schemas. */
+    private final List<CsdlSchema> schemas;
+
+    /** The version properties by the Full Qualified Name of their entity type. */
+    private final Map<FullQualifiedName, String> versionPropertyNames;
+
+    /**
+     * Constructs {@link OlingoMetadataSnapshot}.
+     *
+     * @param schemas The OData schemas.
+     * @param versionPropertyNames The version properties by the Full Qualified Name of their entity type.
+     */
+    public OlingoMetadataSnapshot(final List<CsdlSchema> schemas, final Map<FullQualifiedName, String> versionPropertyNames) {
+        this.schemas = schemas;
+        this.versionPropertyNames = versionPropertyNames;
+    }
+
+    /**
+     * @return The OData schemas.
+     */
+    public List<CsdlSchema> getSchemas() {
+        return schemas;
+    }
+
+    /**
+     * @return The version properties by the Full Qualified Name of their entity type.
+     */
+    public Map<FullQualifiedName, String> getVersionPropertyNames() {
+        return versionPropertyNames;
+    }
+
+    /**
+     * Computes the fingerprint of JPA {@link javax.persistence.Entity} classes.
+     * It changes whenever a change of the classes or their configuration could change the generated schema.
+     *
+     * @param entityTypes The JPA entity classes by the Full Qualified Name of their OData entity type.
+     * @param versionProperties The explicitly configured version properties of the JPA entity classes.
+     * @return The hexadecimal fingerprint.
+     */
+    public static String fingerprint(final Map<FullQualifiedName, Class<?>> entityTypes, final Map<Class<?>, String> versionProperties) {
+        // Sort everything, so that the fingerprint does not depend on hash or reflection order
+        final Map<String, Class<?>> sortedEntityTypes = new TreeMap<String, Class<?>>();
+        for (final Map.Entry<FullQualifiedName, Class<?>> entityType : entityTypes.entrySet()) {
+            sortedEntityTypes.put(entityType.getKey().getFullQualifiedNameAsString(), entityType.getValue());
+        }
+
+        final StringBuilder description = new StringBuilder();
+        description.append(FORMAT_VERSION).append('\n');
+        for (final Map.Entry<String, Class<?>> entityType : sortedEntityTypes.entrySet()) {
+            final Class<?> type = entityType.getValue();
+
+            description.append(entityType.getKey()).append('=').append(type.getName()).append('\n');
+            description.append("version=").append(versionProperties.get(type)).append('\n');
+            appendAnnotations(description, type.getDeclaredAnnotations());
+
+            final Field[] fields = type.getDeclaredFields();
+            Arrays.sort(fields, FIELD_ORDER);
+            for (final Field field : fields) {
+                description.append(field.getName()).append(':').append(field.getGenericType()).append('\n');
+                appendAnnotations(description, field.getDeclaredAnnotations());
+            }
+        }
+
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(description.toString().getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+
+        final StringBuilder fingerprint = new StringBuilder(digest.length * 2);
+        for (final byte b : digest) {
+            fingerprint.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return fingerprint.toString();
+    }
+
+    /**
+     * Loads a snapshot, if it matches a fingerprint.
+     *
+     * @param file The snapshot file.
+     * @param fingerprint The fingerprint of the current JPA entity classes.
+     * @param entityTypes The JPA entity classes by the Full Qualified Name of their OData entity type,
+     *                    whose class loaders resolve the mapped Java classes of their properties.
+     * @return The snapshot or {@code null} if the file does not exist or has been created from other JPA entity classes.
+     * @throws IOException if the file cannot be read or is corrupt.
+     */
+    public static OlingoMetadataSnapshot load(final File file, final String fingerprint, final Map<FullQualifiedName, Class<?>> entityTypes) throws IOException {
+        final DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a metadata snapshot: " + file);
+            }
+            if (!fingerprint.equals(in.readUTF())) {
+                return null;
+            }
+
+            return readSnapshot(in, entityTypes);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in metadata snapshot: " + e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the snapshot, replacing the file only once it has been written completely.
+     *
+     * @param file The snapshot file.
+     * @param fingerprint The fingerprint of the JPA entity classes the schemas have been created from.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(final File file, final String fingerprint) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(fingerprint);
+            writeSnapshot(out);
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            // Some platforms do not replace existing files on rename
+            if (!file.delete() || !tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Cannot replace metadata snapshot: " + file);
+            }
+        }
+    }
+
+    /**
+     * Writes the schemas.
+     *
+     * @param out The output.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    private void writeSnapshot(final DataOutputStream out) throws IOException {
+        out.writeInt(schemas.size());
+        for (final CsdlSchema schema : schemas) {
+            out.writeUTF(schema.getNamespace());
+
+            final List<CsdlEntityType> entityTypes = schema.getEntityTypes();
+            out.writeInt(entityTypes.size());
+            for (final CsdlEntityType entityType : entityTypes) {
+                writeEntityType(out, entityType);
+            }
+
+            final CsdlEntityContainer entityContainer = schema.getEntityContainer();
+            out.writeUTF(entityContainer.getName());
+
+            final List<CsdlEntitySet> entitySets = entityContainer.getEntitySets();
+            out.writeInt(entitySets.size());
+            for (final CsdlEntitySet entitySet : entitySets) {
+                writeEntitySet(out, entitySet);
+            }
+        }
+    }
+
+    /**
+     * Writes an entity type.
+     *
+     * @param out The output.
+     * @param entityType The entity type.
+     * @throws IOException if the entity type cannot be written.
+     */
+    private static void writeEntityType(final DataOutputStream out, final CsdlEntityType entityType) throws IOException {
+        out.writeUTF(entityType.getName());
+
+        final List<CsdlProperty> properties = entityType.getProperties();
+        out.writeInt(properties.size());
+        for (final CsdlProperty property : properties) {
+            out.writeUTF(property.getName());
+            out.writeUTF(property.getType());
+            out.writeBoolean(property.isCollection());
+            out.writeBoolean(property.isNullable());
+            out.writeUTF(property.getMapping().getMappedJavaClass().getName());
+        }
+
+        final List<CsdlPropertyRef> keys = entityType.getKey();
+        out.writeInt(keys.size());
+        for (final CsdlPropertyRef key : keys) {
+            out.writeUTF(key.getName());
+        }
+
+        final List<CsdlNavigationProperty> navigationProperties = entityType.getNavigationProperties();
+        out.writeInt(navigationProperties.size());
+        for (final CsdlNavigationProperty navigationProperty : navigationProperties) {
+            out.writeUTF(navigationProperty.getName());
+            out.writeUTF(navigationProperty.getType());
+            out.writeBoolean(navigationProperty.isCollection());
+            out.writeBoolean(navigationProperty.isNullable() == null || navigationProperty.isNullable());
+            out.writeUTF(navigationProperty.getPartner());
+        }
+    }
+
+    /**
+     * Writes an entity set.
+     *
+     * @param out The output.
+     * @param entitySet The entity set.
+     * @throws IOException if the entity set cannot be written.
+     */
+    private void writeEntitySet(final DataOutputStream out, final CsdlEntitySet entitySet) throws IOException {
+        out.writeUTF(entitySet.getName());
+        out.writeUTF(entitySet.getType());
+
+        final List<CsdlNavigationPropertyBinding> bindings = entitySet.getNavigationPropertyBindings();
+        out.writeInt(bindings.size());
+        for (final CsdlNavigationPropertyBinding binding : bindings) {
+            out.writeUTF(binding.getPath());
+            out.writeUTF(binding.getTarget());
+        }
+
+        final String versionPropertyName = versionPropertyNames.get(entitySet.getTypeFQN());
+        out.writeBoolean(versionPropertyName != null);
+        if (versionPropertyName != null) {
+            out.writeUTF(versionPropertyName);
+        }
+    }
+
+    /**
+     * Reads the schemas.
+     *
+     * @param in The input.
+     * @param entityTypes The JPA entity classes by the Full Qualified Name of their OData entity type.
+     * @return The snapshot.
+     * @throws IOException if the snapshot cannot be read.
+     * @throws ClassNotFoundException if an entity type or a mapped Java class does not exist.
+     */
+    private static OlingoMetadataSnapshot readSnapshot(final DataInputStream in, final Map<FullQualifiedName, Class<?>> entityTypes) throws IOException, ClassNotFoundException {
+        final Map<FullQualifiedName, String> versionPropertyNames = new HashMap<FullQualifiedName, String>();
+
+        final int schemaCount = in.readInt();
+        final List<CsdlSchema> schemas = new ArrayList<CsdlSchema>(schemaCount);
+        for (int i = 0; i < schemaCount; i++) {
+            final CsdlSchema schema = new CsdlSchema();
+            schema.setNamespace(in.readUTF());
+
+            final int entityTypeCount = in.readInt();
+            final List<CsdlEntityType> schemaEntityTypes = new ArrayList<CsdlEntityType>(entityTypeCount);
+            for (int j = 0; j < entityTypeCount; j++) {
+                schemaEntityTypes.add(readEntityType(in, schema.getNamespace(), entityTypes));
+            }
+            schema.setEntityTypes(schemaEntityTypes);
+
+            final CsdlEntityContainer entityContainer = new CsdlEntityContainer();
+            entityContainer.setName(in.readUTF());
+
+            final int entitySetCount = in.readInt();
+            final List<CsdlEntitySet> entitySets = new ArrayList<CsdlEntitySet>(entitySetCount);
+            for (int j = 0; j < entitySetCount; j++) {
+                entitySets.add(readEntitySet(in, versionPropertyNames));
+            }
+            entityContainer.setEntitySets(entitySets);
+            schema.setEntityContainer(entityContainer);
+
+            schemas.add(schema);
+        }
+
+        return new OlingoMetadataSnapshot(schemas, versionPropertyNames);
+    }
+
+    /**
+     * Reads an entity type.
+     *
+     * @param in The input.
+     * @param namespace The namespace of the schema containing the entity type.
+     * @param entityTypes The JPA entity classes by the Full Qualified Name of their OData entity type.
+     * @return The entity type.
+     * @throws IOException if the entity type cannot be read.
+     * @throws ClassNotFoundException if the entity type or a mapped Java class does not exist.
+     */
+    private static CsdlEntityType readEntityType(final DataInputStream in, final String namespace, final Map<FullQualifiedName, Class<?>> entityTypes)
+            throws IOException, ClassNotFoundException {
+        final CsdlEntityType entityType = new CsdlEntityType();
+        entityType.setName(in.readUTF());
+
+        // The mapped Java classes are resolved like the JPA entity class resolves its field types, not from this library's class loader
+        final FullQualifiedName entityTypeFQN = new FullQualifiedName(namespace, entityType.getName());
+        final Class<?> entityClass = entityTypes.get(entityTypeFQN);
+        if (entityClass == null) {
+            throw new ClassNotFoundException(entityTypeFQN.getFullQualifiedNameAsString());
+        }
+
+        final int propertyCount = in.readInt();
+        final List<CsdlProperty> properties = new ArrayList<CsdlProperty>(propertyCount);
+        for (int i = 0; i < propertyCount; i++) {
+            final CsdlProperty property = new CsdlProperty();
+            property.setName(in.readUTF());
+            property.setType(in.readUTF());
+            property.setCollection(in.readBoolean());
+            property.setNullable(in.readBoolean());
+
+            final Class<?> mappedJavaClass = Class.forName(in.readUTF(), false, entityClass.getClassLoader());
+            final CsdlMapping mapping = new CsdlMapping();
+            mapping.setInternalName(mappedJavaClass.getName());
+            mapping.setMappedJavaClass(mappedJavaClass);
+            property.setMapping(mapping);
+
+            properties.add(property);
+        }
+        entityType.setProperties(properties);
+
+        final int keyCount = in.readInt();
+        final List<CsdlPropertyRef> keys = new ArrayList<CsdlPropertyRef>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            final CsdlPropertyRef key = new CsdlPropertyRef();
+            key.setName(in.readUTF());
+
+            keys.add(key);
+        }
+        entityType.setKey(keys);
+
+        final int navigationPropertyCount = in.readInt();
+        final List<CsdlNavigationProperty> navigationProperties = new ArrayList<CsdlNavigationProperty>(navigationPropertyCount);
+        for (int i = 0; i < navigationPropertyCount; i++) {
+            final CsdlNavigationProperty navigationProperty = new CsdlNavigationProperty();
+            navigationProperty.setName(in.readUTF());
+            navigationProperty.setType(in.readUTF());
+            navigationProperty.setCollection(in.readBoolean());
+            navigationProperty.setNullable(in.readBoolean());
+            navigationProperty.setPartner(in.readUTF());
+
+            navigationProperties.add(navigationProperty);
+        }
+        entityType.setNavigationProperties(navigationProperties);
+
+        return entityType;
+    }
+
+    /**
+     * Reads an entity set.
+     *
+     * @param in The input.
+     * @param versionPropertyNames The version properties by entity type, which will be filled by this function.
+     * @return The entity set.
+     * @throws IOException if the entity set cannot be read.
+     */
+    private static CsdlEntitySet readEntitySet(final DataInputStream in, final Map<FullQualifiedName, String> versionPropertyNames) throws IOException {
+        final CsdlEntitySet entitySet = new CsdlEntitySet();
+        entitySet.setName(in.readUTF());
+
+        final FullQualifiedName entityTypeFQN = new FullQualifiedName(in.readUTF());
+        entitySet.setType(entityTypeFQN);
+
+        final int bindingCount = in.readInt();
+        final List<CsdlNavigationPropertyBinding> bindings = new ArrayList<CsdlNavigationPropertyBinding>(bindingCount);
+        for (int i = 0; i < bindingCount; i++) {
+            final CsdlNavigationPropertyBinding binding = new CsdlNavigationPropertyBinding();
+            binding.setPath(in.readUTF());
+            binding.setTarget(in.readUTF());
+
+            bindings.add(binding);
+        }
+        entitySet.setNavigationPropertyBindings(bindings);
+
+        if (in.readBoolean()) {
+            final String versionPropertyName = in.readUTF();
+            entitySet.setAnnotations(Collections.singletonList(OlingoMetadataFactory.createOptimisticConcurrencyAnnotation(versionPropertyName)));
+
+            versionPropertyNames.put(entityTypeFQN, versionPropertyName);
+        }
+
+        return entitySet;
+    }
+
+    /**
+     * Appends the annotations of a class or field to a description, ordered by annotation type.
+     *
+     * @param description The description.
+     * @param annotations The annotations.
+     */
+    private static void appendAnnotations(final StringBuilder description, final Annotation[] annotations) {
+        final List<String> annotationDescriptions = new ArrayList<String>(annotations.length);
+        for (final Annotation annotation : annotations) {
+            annotationDescriptions.add(annotation.toString());
+        }
+        Collections.sort(annotationDescriptions);
+
+        for (final String annotationDescription : annotationDescriptions) {
+            description.append('@').append(annotationDescription).append('\n');
+        }
+    }
+
+}
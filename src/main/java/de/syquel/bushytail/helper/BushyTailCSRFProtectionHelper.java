@@ -16,13 +16,12 @@
 
 package de.syquel.bushytail.helper;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.olingo.commons.api.http.HttpMethod;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
-import java.security.SecureRandom;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Helper class for protection against CSRF attacks.
@@ -34,21 +33,32 @@ public class BushyTailCSRFProtectionHelper {
     /** The HTTP header attribute. */
     private static final String CSRF_TOKEN_HEADER_ATTRIBUTE = "X-CSRF-TOKEN";
 
-    /** CSRF attribute name. */
-    private static final String BUSHYTAIL_CSRFTOKEN_ATTRIBUTENAME = "BushyTailCsrfToken";
+    /** The charset of compared tokens. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
-    /** Secure RNG generator. */
-    private final SecureRandom secureRandom = new SecureRandom();
+    /** The strategy which issues and verifies the CSRF tokens. */
+    private final IBushyTailCSRFTokenStrategy tokenStrategy;
 
-    /** The count of random bytes to use for the CSRF token.  */
-    private final Integer randomByteCount;
+    /** The number of issued CSRF tokens. */
+    private final AtomicLong issueCount = new AtomicLong();
+
+    /** The number of requests which have been rejected because of a missing or invalid CSRF token. */
+    private final AtomicLong verificationFailureCount = new AtomicLong();
 
     /**
-     * Initialize a new BushyTailCSRFProtectionHelper with a new {@link SecureRandom} Random Number Generator.
+     * Initialize a new BushyTailCSRFProtectionHelper which stores the CSRF tokens in the HTTP session.
      * @param randomByteCount The count of random bytes to use for the CSRF token
      */
     public BushyTailCSRFProtectionHelper(final Integer randomByteCount) {
-        this.randomByteCount = randomByteCount;
+        this(new BushyTailSessionCSRFTokenStrategy(randomByteCount));
+    }
+
+    /**
+     * Initialize a new BushyTailCSRFProtectionHelper.
+     * @param tokenStrategy The strategy which issues and verifies the CSRF tokens
+     */
+    public BushyTailCSRFProtectionHelper(final IBushyTailCSRFTokenStrategy tokenStrategy) {
+        this.tokenStrategy = tokenStrategy;
     }
 
     /**
@@ -70,6 +80,28 @@ public class BushyTailCSRFProtectionHelper {
         }
     }
 
+    /**
+     * @return The number of issued CSRF tokens.
+     */
+    public long getIssueCount() {
+        return issueCount.get();
+    }
+
+    /**
+     * @return The number of requests which have been rejected because of a missing or invalid CSRF token.
+     */
+    public long getVerificationFailureCount() {
+        return verificationFailureCount.get();
+    }
+
+    /**
+     * Reset the issue and verification failure counts.
+     */
+    public void resetStatistics() {
+        issueCount.set(0);
+        verificationFailureCount.set(0);
+    }
+
     /**
      * Generate a new CSRF token and add it to the HTTP response.
      *
@@ -83,17 +115,11 @@ public class BushyTailCSRFProtectionHelper {
             return;
         }
 
-        // Get random bytes and encode in BASE64 format for CSRF token
-        byte[] randomBytes = new byte[randomByteCount];
-        secureRandom.nextBytes(randomBytes);
-        String csrfToken = Base64.encodeBase64String(randomBytes);
-
-        // Save new CSRF token in HTTP session for verification
-        HttpSession session = request.getSession();
-        session.setAttribute(BUSHYTAIL_CSRFTOKEN_ATTRIBUTENAME, csrfToken);
+        String csrfToken = tokenStrategy.createToken(request, response);
 
         // Add new CSRF token to HTTP response
         response.addHeader(CSRF_TOKEN_HEADER_ATTRIBUTE, csrfToken);
+        issueCount.incrementAndGet();
     }
 
     /**
@@ -105,17 +131,46 @@ public class BushyTailCSRFProtectionHelper {
     private void verifyToken(HttpServletRequest request) throws BushyTailCSRFProtectionException {
         String csrfToken = request.getHeader(CSRF_TOKEN_HEADER_ATTRIBUTE);
 
-        // Retrieve the valid CSRF token from the HTTP session
-        HttpSession session = request.getSession();
-        String cachedCsrfToken = (String) session.getAttribute(BUSHYTAIL_CSRFTOKEN_ATTRIBUTENAME);
-
-        // Check if the valid CSRF token matches the one of the client
-        Boolean isValidToken = (cachedCsrfToken != null && cachedCsrfToken.equals(csrfToken));
+        // Check if the CSRF token of the client has been issued to it
+        boolean isValidToken = csrfToken != null && tokenStrategy.verifyToken(request, csrfToken);
         if (!isValidToken) {
+            verificationFailureCount.incrementAndGet();
             throw new BushyTailCSRFProtectionException(CSRF_TOKEN_HEADER_ATTRIBUTE);
         }
     }
 
+    /**
+     * Compare two tokens in constant time, so that the time of a failed verification does not reveal
+     * how many leading characters of a guessed token are correct.
+     *
+     * @param expected The expected token.
+     * @param actual The token sent by the client.
+     * @return Whether the tokens are equal.
+     */
+    static boolean constantTimeEquals(final String expected, final String actual) {
+        return constantTimeEquals(expected.getBytes(UTF8), actual.getBytes(UTF8));
+    }
+
+    /**
+     * Compare two byte arrays in constant time; {@link java.security.MessageDigest#isEqual} only does so since Java 6 update 17.
+     *
+     * @param expected The expected bytes.
+     * @param actual The bytes sent by the client.
+     * @return Whether the byte arrays are equal.
+     */
+    static boolean constantTimeEquals(final byte[] expected, final byte[] actual) {
+        if (expected.length != actual.length) {
+            return false;
+        }
+
+        int difference = 0;
+        for (int i = 0; i < expected.length; i++) {
+            difference |= expected[i] ^ actual[i];
+        }
+
+        return difference == 0;
+    }
+
 
     /**
      * Exception class for verification errors of the CSRF token.
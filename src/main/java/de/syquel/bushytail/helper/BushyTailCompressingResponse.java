@@ -0,0 +1,476 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.helper;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Response which compresses its content while it is written, if it is large enough and of a compressible content type.
+ * <p>
+ * The first bytes are held back up to the minimum size. If the content exceeds it, the {@code Content-Encoding} is set
+ * and the content is deflated chunk by chunk into the wrapped response; otherwise the held back bytes are written as is
+ * with their {@code Content-Length}. Content which has already been encoded by the application is never compressed again.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailCompressingResponse extends HttpServletResponseWrapper {
+
+    /** The name of the Content-Length header. */
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    /** The name of the Content-Type header. */
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    /** The name of the Content-Encoding header. */
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+
+    /** The wrapped response. */
+    private final HttpServletResponse response;
+
+    /** The negotiated content coding, i.e. {@code gzip} or {@code deflate}. */
+    private final String encoding;
+
+    /** The pool of deflaters for the content coding. */
+    private final BushyTailDeflaterPool deflaterPool;
+
+    /** The minimum number of bytes of compressed content. */
+    private final int minSize;
+
+    /** The content type set by the application or {@code null}. */
+    private String contentType;
+
+    /** Whether the application has encoded the content itself. */
+    private boolean encoded;
+
+    /** The content length set by the application or {@code -1}. */
+    private long contentLength = -1;
+
+    /** The compressing stream or {@code null} if the content has not been written yet. */
+    private CompressingOutputStream outputStream;
+
+    /** The writer on top of the compressing stream or {@code null} if it has not been requested. */
+    private PrintWriter writer;
+
+    /**
+     * Constructs {@link BushyTailCompressingResponse}.
+     *
+     * @param response The wrapped response.
+     * @param encoding The negotiated content coding, i.e. {@code gzip} or {@code deflate}.
+     * @param deflaterPool The pool of deflaters for the content coding.
+     * @param minSize The minimum number of bytes of compressed content.
+     */
+    BushyTailCompressingResponse(final HttpServletResponse response, final String encoding, final BushyTailDeflaterPool deflaterPool, final int minSize) {
+        super(response);
+        this.response = response;
+        this.encoding = encoding;
+        this.deflaterPool = deflaterPool;
+        this.minSize = minSize;
+    }
+
+    @Override
+    public void setHeader(final String name, final String value) {
+        if (interceptHeader(name, value)) {
+            return;
+        }
+
+        response.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(final String name, final String value) {
+        if (interceptHeader(name, value)) {
+            return;
+        }
+
+        response.addHeader(name, value);
+    }
+
+    @Override
+    public void setIntHeader(final String name, final int value) {
+        if (interceptHeader(name, String.valueOf(value))) {
+            return;
+        }
+
+        response.setIntHeader(name, value);
+    }
+
+    @Override
+    public void addIntHeader(final String name, final int value) {
+        if (interceptHeader(name, String.valueOf(value))) {
+            return;
+        }
+
+        response.addIntHeader(name, value);
+    }
+
+    @Override
+    public void setContentLength(final int length) {
+        contentLength = length;
+    }
+
+    @Override
+    public void setContentType(final String type) {
+        contentType = type;
+        response.setContentType(type);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new CompressingOutputStream();
+        }
+
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), "UTF-8"));
+        }
+
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (outputStream != null) {
+            outputStream.flush();
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (outputStream != null) {
+            outputStream.discard();
+            outputStream = null;
+        }
+        writer = null;
+        contentType = null;
+        encoded = false;
+        contentLength = -1;
+
+        response.reset();
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (outputStream != null) {
+            outputStream.discard();
+            outputStream = null;
+        }
+        writer = null;
+
+        response.resetBuffer();
+    }
+
+    /**
+     * Write the remaining content and release the deflater.
+     *
+     * @throws IOException if the content cannot be written.
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (outputStream != null) {
+            outputStream.finish();
+        }
+    }
+
+    /**
+     * Keep track of the headers which determine whether and how the content is compressed.
+     *
+     * @param name The name of the header.
+     * @param value The value of the header.
+     * @return Whether the header must not be passed to the wrapped response yet.
+     */
+    private boolean interceptHeader(final String name, final String value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            // The length is only known once it is decided whether the content is compressed
+            contentLength = Long.parseLong(value.trim());
+            return true;
+        }
+        if (CONTENT_TYPE.equalsIgnoreCase(name)) {
+            contentType = value;
+        } else if (CONTENT_ENCODING.equalsIgnoreCase(name)) {
+            encoded = !"identity".equalsIgnoreCase(value.trim());
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Whether the content type is textual and thus worth compressing.
+     */
+    private boolean isCompressible() {
+        if (contentType == null || encoded) {
+            return false;
+        }
+
+        final String type = contentType.toLowerCase(Locale.ENGLISH);
+        return type.startsWith("text/") || type.contains("json") || type.contains("xml") || type.startsWith("multipart/mixed")
+                || type.startsWith("application/http");
+    }
+
+
+    /**
+     * Stream which holds back the content up to the minimum size and then either compresses it or passes it through.
+     */
+    private final class CompressingOutputStream extends ServletOutputStream {
+
+        /** The size of the buffer of compressed output. */
+        private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+        /** The held back content. */
+        private byte[] buffer;
+
+        /** The number of held back bytes. */
+        private int count;
+
+        /** Whether the content is compressed or {@code null} if it has not been decided yet. */
+        private Boolean compressing;
+
+        /** Whether the content has been completely written. */
+        private boolean finished;
+
+        /** The deflater or {@code null} if the content is not compressed or has been finished. */
+        private Deflater deflater;
+
+        /** The checksum of the uncompressed content for the gzip trailer. */
+        private CRC32 crc;
+
+        /** The buffer of compressed output. */
+        private byte[] outputBuffer;
+
+        /** The stream of the wrapped response. */
+        private ServletOutputStream out;
+
+        /**
+         * Constructs {@link CompressingOutputStream}.
+         */
+        CompressingOutputStream() {
+            buffer = new byte[Math.max(minSize, 1)];
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (finished) {
+                throw new IOException("Response has already been finished");
+            }
+
+            if (compressing == null) {
+                if (count + len <= minSize) {
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+
+                start(isCompressible());
+            }
+
+            if (compressing) {
+                deflate(b, off, len);
+            } else {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Held back content is not flushed, since that would decide against compression prematurely
+            if (compressing != null && !finished) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        /**
+         * Write the remaining content and release the deflater.
+         *
+         * @throws IOException if the content cannot be written.
+         */
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+
+            try {
+                if (compressing == null) {
+                    // The content is too small to be worth compressing
+                    start(false);
+                } else if (compressing) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        drain();
+                    }
+                    if ("gzip".equals(encoding)) {
+                        writeGzipTrailer();
+                    }
+                }
+                out.flush();
+            } finally {
+                releaseDeflater();
+            }
+        }
+
+        /**
+         * Drop the content after the response has been reset.
+         */
+        void discard() {
+            finished = true;
+            releaseDeflater();
+        }
+
+        /**
+         * Decide whether the content is compressed and write the held back content.
+         *
+         * @param compress Whether the content is compressed.
+         * @throws IOException if the content cannot be written.
+         */
+        private void start(final boolean compress) throws IOException {
+            compressing = compress;
+            if (compress) {
+                response.setHeader(CONTENT_ENCODING, encoding);
+                out = response.getOutputStream();
+
+                deflater = deflaterPool.borrow();
+                outputBuffer = new byte[OUTPUT_BUFFER_SIZE];
+                if ("gzip".equals(encoding)) {
+                    crc = new CRC32();
+                    writeGzipHeader();
+                }
+                deflate(buffer, 0, count);
+            } else {
+                if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+                    response.setContentLength((int) contentLength);
+                } else if (contentLength >= 0) {
+                    response.setHeader(CONTENT_LENGTH, String.valueOf(contentLength));
+                } else if (finished) {
+                    response.setContentLength(count);
+                }
+                out = response.getOutputStream();
+
+                out.write(buffer, 0, count);
+            }
+            buffer = null;
+        }
+
+        /**
+         * Compress content into the wrapped response.
+         *
+         * @param b The content.
+         * @param off The offset of the content.
+         * @param len The length of the content.
+         * @throws IOException if the compressed content cannot be written.
+         */
+        private void deflate(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+
+            if (crc != null) {
+                crc.update(b, off, len);
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+
+        /**
+         * Write the available compressed output into the wrapped response.
+         *
+         * @throws IOException if the compressed content cannot be written.
+         */
+        private void drain() throws IOException {
+            final int length = deflater.deflate(outputBuffer, 0, outputBuffer.length);
+            if (length > 0) {
+                out.write(outputBuffer, 0, length);
+            }
+        }
+
+        /**
+         * Write the gzip member header without file name, modification time or extra fields.
+         *
+         * @throws IOException if the header cannot be written.
+         */
+        private void writeGzipHeader() throws IOException {
+            out.write(new byte[] {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+        }
+
+        /**
+         * Write the gzip member trailer with the checksum and the size of the uncompressed content.
+         *
+         * @throws IOException if the trailer cannot be written.
+         */
+        private void writeGzipTrailer() throws IOException {
+            final byte[] trailer = new byte[8];
+            writeIntLittleEndian(trailer, 0, (int) crc.getValue());
+            writeIntLittleEndian(trailer, 4, deflater.getTotalIn());
+            out.write(trailer);
+        }
+
+        /**
+         * Return the deflater to its pool.
+         */
+        private void releaseDeflater() {
+            if (deflater != null) {
+                deflaterPool.release(deflater);
+                deflater = null;
+            }
+        }
+
+    }
+
+    /**
+     * Write an integer in little endian byte order.
+     *
+     * @param target The target array.
+     * @param offset The offset in the target array.
+     * @param value The integer.
+     */
+    private static void writeIntLittleEndian(final byte[] target, final int offset, final int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >> 8);
+        target[offset + 2] = (byte) (value >> 16);
+        target[offset + 3] = (byte) (value >> 24);
+    }
+
+}
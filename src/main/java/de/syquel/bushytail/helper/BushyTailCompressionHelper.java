@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.helper;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Helper which compresses responses with the content coding negotiated by the {@code Accept-Encoding} header.
+ * <p>
+ * Responses are compressed while they are written, so that large collections never exist uncompressed in memory.
+ * Deflaters are pooled and shared between all requests.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailCompressionHelper {
+
+    /** The gzip content coding. */
+    public static final String GZIP = "gzip";
+
+    /** The deflate (zlib) content coding. */
+    public static final String DEFLATE = "deflate";
+
+    /** The minimum number of bytes of compressed content. */
+    private final int minSize;
+
+    /** The pool of raw deflaters for gzip, whose header and trailer are written separately. */
+    private final BushyTailDeflaterPool gzipPool;
+
+    /** The pool of zlib deflaters for deflate. */
+    private final BushyTailDeflaterPool deflatePool;
+
+    /**
+     * Constructs {@link BushyTailCompressionHelper}.
+     *
+     * @param level The compression level between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}.
+     * @param minSize The minimum number of bytes of compressed content, smaller responses are sent as is.
+     * @param maxPooledDeflaters The maximum number of idle deflaters kept per content coding.
+     */
+    public BushyTailCompressionHelper(final int level, final int minSize, final int maxPooledDeflaters) {
+        this.minSize = minSize;
+
+        gzipPool = new BushyTailDeflaterPool(level, true, maxPooledDeflaters);
+        deflatePool = new BushyTailDeflaterPool(level, false, maxPooledDeflaters);
+    }
+
+    /**
+     * Wrap a response, so that its content is compressed with the content coding accepted by the client.
+     *
+     * @param req The HTTP request.
+     * @param resp The HTTP response.
+     * @return The compressing response or the given response if the client does not accept a supported content coding.
+     * @see #finish(HttpServletResponse)
+     */
+    public HttpServletResponse wrap(final HttpServletRequest req, final HttpServletResponse resp) {
+        // Caches must not serve a compressed response to clients which did not ask for it and vice versa
+        resp.addHeader("Vary", "Accept-Encoding");
+
+        final String encoding = negotiateEncoding(req.getHeader("Accept-Encoding"));
+        if (encoding == null) {
+            return resp;
+        }
+
+        return new BushyTailCompressingResponse(resp, encoding, GZIP.equals(encoding) ? gzipPool : deflatePool, minSize);
+    }
+
+    /**
+     * Write the remaining compressed content of a wrapped response and release its deflater.
+     *
+     * @param resp The response returned by {@link #wrap(HttpServletRequest, HttpServletResponse)}.
+     * @throws IOException if the content cannot be written.
+     */
+    public void finish(final HttpServletResponse resp) throws IOException {
+        if (resp instanceof BushyTailCompressingResponse) {
+            ((BushyTailCompressingResponse) resp).finish();
+        }
+    }
+
+    /**
+     * Determine the preferred supported content coding of an {@code Accept-Encoding} header.
+     *
+     * @param acceptEncoding The value of the {@code Accept-Encoding} header or {@code null}.
+     * @return {@link #GZIP}, {@link #DEFLATE} or {@code null} if the client accepts neither.
+     */
+    public static String negotiateEncoding(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        float gzipQuality = -1;
+        float deflateQuality = -1;
+        float wildcardQuality = -1;
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parameters = coding.trim().toLowerCase(Locale.ENGLISH).split(";");
+            final float quality = parseQuality(parameters);
+            final String name = parameters[0].trim();
+
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzipQuality = Math.max(gzipQuality, quality);
+            } else if (DEFLATE.equals(name)) {
+                deflateQuality = quality;
+            } else if ("*".equals(name)) {
+                wildcardQuality = quality;
+            }
+        }
+
+        // Codings which are not listed explicitly are covered by the wildcard
+        if (gzipQuality < 0) {
+            gzipQuality = wildcardQuality;
+        }
+        if (deflateQuality < 0) {
+            deflateQuality = wildcardQuality;
+        }
+
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return GZIP;
+        }
+        if (deflateQuality > 0) {
+            return DEFLATE;
+        }
+
+        return null;
+    }
+
+    /**
+     * Parse the quality value of a content coding.
+     *
+     * @param parameters The content coding followed by its parameters.
+     * @return The quality value, which is {@code 1} if absent and {@code 0} if malformed.
+     */
+    private static float parseQuality(final String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            final String parameter = parameters[i].replace(" ", "");
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return 1;
+    }
+
+}
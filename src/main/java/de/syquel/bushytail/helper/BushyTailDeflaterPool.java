@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.helper;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of {@link Deflater}s with the same compression level and format, which are reused across responses.
+ * <p>
+ * Each {@link Deflater} holds native memory until it is ended, so reusing them avoids allocating and freeing
+ * native memory per response. Deflaters beyond the maximum number of idle instances are ended immediately.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailDeflaterPool {
+
+    /** The idle deflaters. */
+    private final Queue<Deflater> idleDeflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    /** The number of idle deflaters. */
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /** The compression level of the deflaters. */
+    private final int level;
+
+    /** Whether the deflaters write raw deflate data without the zlib header, e.g. for the gzip format. */
+    private final boolean nowrap;
+
+    /** The maximum number of idle deflaters. */
+    private final int maxIdle;
+
+    /**
+     * Constructs {@link BushyTailDeflaterPool}.
+     *
+     * @param level The compression level of the deflaters.
+     * @param nowrap Whether the deflaters write raw deflate data without the zlib header.
+     * @param maxIdle The maximum number of idle deflaters.
+     */
+    BushyTailDeflaterPool(final int level, final boolean nowrap, final int maxIdle) {
+        this.level = level;
+        this.nowrap = nowrap;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Take an idle deflater or create a new one.
+     *
+     * @return The deflater, which must be returned by {@link #release(Deflater)}.
+     */
+    Deflater borrow() {
+        final Deflater deflater = idleDeflaters.poll();
+        if (deflater == null) {
+            return new Deflater(level, nowrap);
+        }
+
+        idleCount.decrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * Return a deflater to the pool.
+     *
+     * @param deflater The deflater, which must not be used by the caller anymore.
+     */
+    void release(final Deflater deflater) {
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            deflater.end();
+            return;
+        }
+
+        deflater.reset();
+        idleDeflaters.offer(deflater);
+    }
+
+}
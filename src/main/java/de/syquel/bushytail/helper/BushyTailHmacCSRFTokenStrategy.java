@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.helper;
+
+import org.apache.commons.codec.binary.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.Principal;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stateless {@link IBushyTailCSRFTokenStrategy} which issues time-limited tokens signed with HMAC-SHA256.
+ * <p>
+ * A token consists of its expiry time and the signature of the expiry time and the client it has been issued to.
+ * The client is identified by its authenticated user principal or, for anonymous clients, by a random value in an
+ * {@code HttpOnly} cookie which is set along with the first token. Tokens are verified by recomputing the signature,
+ * so neither the HTTP session nor any other server-side state is accessed. All nodes of a cluster which share
+ * the secret accept the tokens of each other.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailHmacCSRFTokenStrategy implements IBushyTailCSRFTokenStrategy {
+
+    /** The minimum length of the secret in bytes, which matches the output length of SHA-256. */
+    public static final int MIN_SECRET_LENGTH = 32;
+
+    /** The name of the cookie which binds tokens to anonymous clients. */
+    private static final String BINDING_COOKIE_NAME = "BushyTailCsrfBinding";
+
+    /** The MAC algorithm. */
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /** The length of the signature in bytes. */
+    private static final int SIGNATURE_LENGTH = 32;
+
+    /** The length of a decoded token in bytes, i.e. the expiry time followed by the signature. */
+    private static final int TOKEN_LENGTH = 8 + SIGNATURE_LENGTH;
+
+    /** The count of random bytes of the binding cookie. */
+    private static final int BINDING_BYTE_COUNT = 16;
+
+    /** The charset of the signed client identity. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Secure RNG generator. */
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /** The secret key. */
+    private final SecretKeySpec key;
+
+    /** The initialized MAC which is cloned for each signature, since MACs are not thread-safe. */
+    private final Mac macPrototype;
+
+    /** The validity of issued tokens in milliseconds. */
+    private final long timeToLive;
+
+    /**
+     * Constructs {@link BushyTailHmacCSRFTokenStrategy}.
+     *
+     * @param secret The secret key, which must be at least {@value #MIN_SECRET_LENGTH} bytes long and shared by all nodes of a cluster.
+     * @param timeToLive The validity of issued tokens.
+     * @param unit The unit of the validity.
+     * @throws IllegalArgumentException if the secret is too short or the validity is not positive.
+     * @throws IllegalStateException if the JVM does not support HMAC-SHA256.
+     */
+    public BushyTailHmacCSRFTokenStrategy(final byte[] secret, final long timeToLive, final TimeUnit unit) {
+        if (secret.length < MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException("Secret must be at least " + MIN_SECRET_LENGTH + " bytes long");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+
+        this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.macPrototype = createMac();
+        this.timeToLive = unit.toMillis(timeToLive);
+    }
+
+    @Override
+    public String createToken(final HttpServletRequest request, final HttpServletResponse response) {
+        String binding = getBinding(request);
+        if (binding == null) {
+            binding = createBindingCookie(request, response);
+        }
+
+        final long expiryTime = System.currentTimeMillis() + timeToLive;
+        final ByteBuffer token = ByteBuffer.allocate(TOKEN_LENGTH);
+        token.putLong(expiryTime);
+        token.put(sign(binding, expiryTime));
+
+        return Base64.encodeBase64URLSafeString(token.array());
+    }
+
+    @Override
+    public boolean verifyToken(final HttpServletRequest request, final String csrfToken) {
+        final String binding = getBinding(request);
+        final byte[] decodedToken = Base64.decodeBase64(csrfToken);
+        if (binding == null || decodedToken == null || decodedToken.length != TOKEN_LENGTH) {
+            return false;
+        }
+
+        final ByteBuffer token = ByteBuffer.wrap(decodedToken);
+        final long expiryTime = token.getLong();
+        if (expiryTime < System.currentTimeMillis()) {
+            return false;
+        }
+
+        final byte[] signature = new byte[SIGNATURE_LENGTH];
+        token.get(signature);
+
+        return BushyTailCSRFProtectionHelper.constantTimeEquals(sign(binding, expiryTime), signature);
+    }
+
+    /**
+     * Determine the identity of the client a token is bound to.
+     *
+     * @param request The HTTP request.
+     * @return The identity or {@code null} if the client is neither authenticated nor has a binding cookie.
+     */
+    private static String getBinding(final HttpServletRequest request) {
+        final Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return "principal:" + principal.getName();
+        }
+
+        final Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (final Cookie cookie : cookies) {
+                if (BINDING_COOKIE_NAME.equals(cookie.getName()) && cookie.getValue() != null && cookie.getValue().length() > 0) {
+                    return "cookie:" + cookie.getValue();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Bind an anonymous client with a random cookie.
+     * <p>
+     * The header is written directly, because the Servlet 2.5 {@link Cookie} does not support {@code HttpOnly}.
+     * </p>
+     *
+     * @param request The HTTP request.
+     * @param response The HTTP response to add the cookie to.
+     * @return The identity of the client.
+     */
+    private String createBindingCookie(final HttpServletRequest request, final HttpServletResponse response) {
+        final byte[] randomBytes = new byte[BINDING_BYTE_COUNT];
+        secureRandom.nextBytes(randomBytes);
+        final String value = Base64.encodeBase64URLSafeString(randomBytes);
+
+        final String path = request.getContextPath() == null || request.getContextPath().length() == 0 ? "/" : request.getContextPath();
+        response.addHeader("Set-Cookie", BINDING_COOKIE_NAME + "=" + value + "; Path=" + path + "; HttpOnly" + (request.isSecure() ? "; Secure" : ""));
+
+        return "cookie:" + value;
+    }
+
+    /**
+     * Sign the identity of a client together with the expiry time of a token.
+     *
+     * @param binding The identity of the client.
+     * @param expiryTime The expiry time of the token in epoch milliseconds.
+     * @return The signature.
+     */
+    private byte[] sign(final String binding, final long expiryTime) {
+        final Mac mac = newMac();
+        mac.update(binding.getBytes(UTF8));
+        mac.update(ByteBuffer.allocate(8).putLong(expiryTime).array());
+
+        return mac.doFinal();
+    }
+
+    /**
+     * @return A MAC initialized with the secret, which is exclusive to the caller.
+     */
+    private Mac newMac() {
+        try {
+            return (Mac) macPrototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // Cloning is cheaper than looking up the provider, but not every provider supports it
+            return createMac();
+        }
+    }
+
+    /**
+     * Create a new MAC initialized with the secret.
+     *
+     * @return The MAC.
+     * @throws IllegalStateException if the JVM does not support HMAC-SHA256.
+     */
+    private Mac createMac() {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + MAC_ALGORITHM, e);
+        }
+    }
+
+}
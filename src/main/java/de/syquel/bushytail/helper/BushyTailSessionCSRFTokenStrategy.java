@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.helper;
+
+import org.apache.commons.codec.binary.Base64;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.security.SecureRandom;
+
+/**
+ * {@link IBushyTailCSRFTokenStrategy} which stores a random token in the HTTP session.
+ * <p>
+ * Fetching a token creates a session, so this strategy is only suitable for clients which hold a session anyway.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailSessionCSRFTokenStrategy implements IBushyTailCSRFTokenStrategy {
+
+    /** CSRF attribute name. */
+    private static final String BUSHYTAIL_CSRFTOKEN_ATTRIBUTENAME = "BushyTailCsrfToken";
+
+    /** Secure RNG generator. */
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /** The count of random bytes to use for the CSRF token.  */
+    private final int randomByteCount;
+
+    /**
+     * Constructs {@link BushyTailSessionCSRFTokenStrategy}.
+     *
+     * @param randomByteCount The count of random bytes to use for the CSRF token.
+     */
+    public BushyTailSessionCSRFTokenStrategy(final int randomByteCount) {
+        this.randomByteCount = randomByteCount;
+    }
+
+    @Override
+    public String createToken(final HttpServletRequest request, final HttpServletResponse response) {
+        // Get random bytes and encode in BASE64 format for CSRF token
+        final byte[] randomBytes = new byte[randomByteCount];
+        secureRandom.nextBytes(randomBytes);
+        final String csrfToken = Base64.encodeBase64String(randomBytes);
+
+        // Save new CSRF token in HTTP session for verification
+        request.getSession().setAttribute(BUSHYTAIL_CSRFTOKEN_ATTRIBUTENAME, csrfToken);
+
+        return csrfToken;
+    }
+
+    @Override
+    public boolean verifyToken(final HttpServletRequest request, final String csrfToken) {
+        // A request without session cannot carry a valid token, so no session is created for it
+        final HttpSession session = request.getSession(false);
+        if (session == null) {
+            return false;
+        }
+
+        final String cachedCsrfToken = (String) session.getAttribute(BUSHYTAIL_CSRFTOKEN_ATTRIBUTENAME);
+        return cachedCsrfToken != null && BushyTailCSRFProtectionHelper.constantTimeEquals(cachedCsrfToken, csrfToken);
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.helper;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Strategy which issues and verifies the CSRF tokens of {@link BushyTailCSRFProtectionHelper}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ * @see BushyTailSessionCSRFTokenStrategy
+ * @see BushyTailHmacCSRFTokenStrategy
+ */
+public interface IBushyTailCSRFTokenStrategy {
+
+    /**
+     * Issue a new CSRF token for the client of a request.
+     *
+     * @param request The HTTP request which fetches the token.
+     * @param response The HTTP response, which may be modified to bind the token to the client.
+     * @return The new CSRF token.
+     */
+    String createToken(HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * Verify the CSRF token sent with a request.
+     *
+     * @param request The HTTP request.
+     * @param csrfToken The CSRF token sent by the client, never {@code null}.
+     * @return Whether the token has been issued to the client of the request and is still valid.
+     */
+    boolean verifyToken(HttpServletRequest request, String csrfToken);
+
+}
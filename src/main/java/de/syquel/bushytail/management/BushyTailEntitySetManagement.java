@@ -0,0 +1,258 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.management;
+
+import de.syquel.bushytail.cache.BushyTailCacheStatistics;
+import de.syquel.bushytail.cache.BushyTailEntityCache;
+import de.syquel.bushytail.metric.BushyTailLatencySnapshot;
+import de.syquel.bushytail.metric.BushyTailMetricsCollector;
+import de.syquel.bushytail.metric.BushyTailOperation;
+import de.syquel.bushytail.metric.BushyTailOperationMetrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link IBushyTailEntitySetMXBean} which reads the lock-free statistics of the metrics collector and the entity cache.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailEntitySetManagement implements IBushyTailEntitySetMXBean {
+
+    /** The name of the entity set. */
+    private final String name;
+
+    /** The JPA entity class. */
+    private final Class<?> entityClass;
+
+    /** The cache of the entity set or {@code null} if its entities are not cached. */
+    private final BushyTailEntityCache entityCache;
+
+    /** The collector of the request metrics or {@code null} if no metrics are recorded. */
+    private final BushyTailMetricsCollector metricsCollector;
+
+    /**
+     * Constructs {@link BushyTailEntitySetManagement}.
+     *
+     * @param name The name of the entity set.
+     * @param entityClass The JPA entity class.
+     * @param entityCache The cache of the entity set or {@code null} if its entities are not cached.
+     * @param metricsCollector The collector of the request metrics or {@code null} if no metrics are recorded.
+     */
+    BushyTailEntitySetManagement(final String name, final Class<?> entityClass, final BushyTailEntityCache entityCache,
+                                 final BushyTailMetricsCollector metricsCollector) {
+        this.name = name;
+        this.entityClass = entityClass;
+        this.entityCache = entityCache;
+        this.metricsCollector = metricsCollector;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getEntityClassName() {
+        return entityClass.getName();
+    }
+
+    @Override
+    public long getRequestCount() {
+        long requestCount = 0;
+        for (final BushyTailOperationMetrics operationMetrics : getOperationMetrics()) {
+            requestCount += operationMetrics.getRequestCount();
+        }
+
+        return requestCount;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCountByOperation() {
+        final Map<String, Long> requestCounts = new TreeMap<String, Long>();
+        for (final BushyTailOperationMetrics operationMetrics : getOperationMetrics()) {
+            requestCounts.put(operationMetrics.getOperation().name(), operationMetrics.getRequestCount());
+        }
+
+        return requestCounts;
+    }
+
+    @Override
+    public long getClientErrorCount() {
+        return getStatusCount(4);
+    }
+
+    @Override
+    public long getServerErrorCount() {
+        return getStatusCount(5);
+    }
+
+    @Override
+    public double getLatencyMean() {
+        return BushyTailManagement.toMillis(getLatencies().getMean());
+    }
+
+    @Override
+    public double getLatency50thPercentile() {
+        return BushyTailManagement.toMillis(getLatencies().getPercentile(50));
+    }
+
+    @Override
+    public double getLatency95thPercentile() {
+        return BushyTailManagement.toMillis(getLatencies().getPercentile(95));
+    }
+
+    @Override
+    public double getLatency99thPercentile() {
+        return BushyTailManagement.toMillis(getLatencies().getPercentile(99));
+    }
+
+    @Override
+    public double getLatency999thPercentile() {
+        return BushyTailManagement.toMillis(getLatencies().getPercentile(99.9));
+    }
+
+    @Override
+    public double getLatencyMax() {
+        return BushyTailManagement.toMillis(getLatencies().getMax());
+    }
+
+    @Override
+    public Map<String, Double> getLatency99thPercentileByOperation() {
+        final Map<String, Double> latencies = new TreeMap<String, Double>();
+        for (final BushyTailOperationMetrics operationMetrics : getOperationMetrics()) {
+            latencies.put(operationMetrics.getOperation().name(), BushyTailManagement.toMillis(operationMetrics.getLatencies().getPercentile(99)));
+        }
+
+        return latencies;
+    }
+
+    @Override
+    public double computeLatencyPercentile(final String operation, final double percentile) {
+        final BushyTailOperation parsedOperation;
+        try {
+            parsedOperation = BushyTailOperation.valueOf(operation.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown operation '" + operation + "'", e);
+        }
+
+        final BushyTailOperationMetrics operationMetrics = metricsCollector == null ? null
+                : metricsCollector.getOperationMetrics(name, parsedOperation);
+        if (operationMetrics == null) {
+            return 0;
+        }
+
+        return BushyTailManagement.toMillis(operationMetrics.getLatencies().getPercentile(percentile));
+    }
+
+    @Override
+    public boolean isCached() {
+        return entityCache != null;
+    }
+
+    @Override
+    public long getCacheSize() {
+        return entityCache == null ? 0 : entityCache.size();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return entityCache == null ? 0 : getCacheStatistics().getHitCount();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return entityCache == null ? 0 : getCacheStatistics().getMissCount();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        return entityCache == null ? 0 : getCacheStatistics().getHitRate();
+    }
+
+    @Override
+    public long getCacheEvictionCount() {
+        return entityCache == null ? 0 : getCacheStatistics().getEvictionCount();
+    }
+
+    @Override
+    public void clearCache() {
+        if (entityCache != null) {
+            entityCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        if (metricsCollector != null) {
+            metricsCollector.reset(name);
+        }
+        if (entityCache != null) {
+            entityCache.resetStatistics();
+        }
+    }
+
+    /**
+     * @return The metrics of the operations on the entity set.
+     */
+    private Collection<BushyTailOperationMetrics> getOperationMetrics() {
+        if (metricsCollector == null) {
+            return Collections.emptyList();
+        }
+
+        return metricsCollector.getOperationMetrics(name);
+    }
+
+    /**
+     * @return The latencies of all operations on the entity set.
+     */
+    private BushyTailLatencySnapshot getLatencies() {
+        BushyTailLatencySnapshot latencies = BushyTailLatencySnapshot.EMPTY;
+        for (final BushyTailOperationMetrics operationMetrics : getOperationMetrics()) {
+            latencies = latencies.merge(operationMetrics.getLatencies());
+        }
+
+        return latencies;
+    }
+
+    /**
+     * Sum up the requests of all operations on the entity set which completed with a class of HTTP status codes.
+     *
+     * @param statusClass The status class, e.g. {@code 5} for 5xx.
+     * @return The number of requests.
+     */
+    private long getStatusCount(final int statusClass) {
+        long statusCount = 0;
+        for (final BushyTailOperationMetrics operationMetrics : getOperationMetrics()) {
+            statusCount += operationMetrics.getStatusCount(statusClass);
+        }
+
+        return statusCount;
+    }
+
+    /**
+     * @return The statistics of the entity cache, which must not be {@code null}.
+     */
+    private BushyTailCacheStatistics getCacheStatistics() {
+        return entityCache.getStatistics();
+    }
+
+}
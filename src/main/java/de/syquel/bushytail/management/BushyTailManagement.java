@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.management;
+
+import de.syquel.bushytail.helper.BushyTailCSRFProtectionHelper;
+import de.syquel.bushytail.metric.BushyTailMetricsCollector;
+import de.syquel.bushytail.service.BushyTailServiceContext;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registers the MBeans of a {@link de.syquel.bushytail.BushyTail} instance with the platform MBean server.
+ * <p>
+ * The instance is registered as {@code de.syquel.bushytail:type=Service,name=<name>}, each of its entity sets as
+ * {@code de.syquel.bushytail:type=EntitySet,service=<name>,name=<entity set>}. The MBeans only read the atomic
+ * counters of the request path, so polling them does not contend with requests.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ * @see IBushyTailServiceMXBean
+ * @see IBushyTailEntitySetMXBean
+ */
+public final class BushyTailManagement {
+
+    /** The JMX domain of all MBeans. */
+    public static final String DOMAIN = "de.syquel.bushytail";
+
+    /** The logger. */
+    private static final Logger logger = LoggerFactory.getLogger(BushyTailManagement.class);
+
+    /** The number of nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** The MBean server. */
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    /** The MBeans by name in order of registration. */
+    private final Map<ObjectName, StandardMBean> mBeans = new LinkedHashMap<ObjectName, StandardMBean>();
+
+    /**
+     * Constructs {@link BushyTailManagement}.
+     *
+     * @param name The name of the instance, which must be unique within the JVM.
+     * @param serviceContext The service context of the instance.
+     * @param csrfProtectionHelper The helper for CSRF protection of the instance.
+     * @param metricsCollector The collector of the request metrics or {@code null} if no metrics are recorded.
+     * @param buildTime The time it took to build the instance in nanoseconds.
+     * @param metadataBuildTime The time it took to generate or load the OData metadata in nanoseconds.
+     * @throws JMException if the name is not valid within a JMX object name or an MBean is not compliant.
+     */
+    public BushyTailManagement(final String name, final BushyTailServiceContext serviceContext, final BushyTailCSRFProtectionHelper csrfProtectionHelper,
+                               final BushyTailMetricsCollector metricsCollector, final long buildTime, final long metadataBuildTime) throws JMException {
+        final List<String> entitySetNames = new ArrayList<String>();
+        for (final EdmEntitySet edmEntitySet : serviceContext.getEdm().getEntityContainer().getEntitySets()) {
+            final Class<?> entityClass = serviceContext.getEntityClass(edmEntitySet.getEntityType().getFullQualifiedName());
+            final BushyTailEntitySetManagement entitySetManagement = new BushyTailEntitySetManagement(edmEntitySet.getName(), entityClass,
+                    serviceContext.getEntityCache(entityClass), metricsCollector);
+
+            mBeans.put(createEntitySetName(name, edmEntitySet.getName()),
+                    new StandardMBean(entitySetManagement, IBushyTailEntitySetMXBean.class, true));
+            entitySetNames.add(edmEntitySet.getName());
+        }
+
+        final BushyTailServiceManagement serviceManagement = new BushyTailServiceManagement(name, entitySetNames.toArray(new String[entitySetNames.size()]),
+                serviceContext.getEntityCaches().values(), csrfProtectionHelper, metricsCollector, buildTime, metadataBuildTime);
+        mBeans.put(createServiceName(name), new StandardMBean(serviceManagement, IBushyTailServiceMXBean.class, true));
+    }
+
+    /**
+     * Register all MBeans.
+     *
+     * @throws JMException if an MBean cannot be registered, e.g. because the name is already in use.
+     * The MBeans which have been registered before are unregistered again.
+     */
+    public void register() throws JMException {
+        final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+        try {
+            for (final Map.Entry<ObjectName, StandardMBean> mBean : mBeans.entrySet()) {
+                mBeanServer.registerMBean(mBean.getValue(), mBean.getKey());
+                registeredNames.add(mBean.getKey());
+            }
+        } catch (JMException e) {
+            for (final ObjectName registeredName : registeredNames) {
+                unregister(registeredName);
+            }
+            throw e;
+        }
+
+        logger.debug("Registered MBeans {}", mBeans.keySet());
+    }
+
+    /**
+     * Unregister all MBeans. MBeans which cannot be unregistered are logged and skipped.
+     */
+    public void unregister() {
+        for (final ObjectName objectName : mBeans.keySet()) {
+            unregister(objectName);
+        }
+    }
+
+    /**
+     * Create the object name of the MBean of a {@link de.syquel.bushytail.BushyTail} instance.
+     *
+     * @param name The name of the instance.
+     * @return The object name.
+     * @throws MalformedObjectNameException if the name is not valid within a JMX object name.
+     */
+    public static ObjectName createServiceName(final String name) throws MalformedObjectNameException {
+        return new ObjectName(DOMAIN + ":type=Service,name=" + quoteIfNecessary(name));
+    }
+
+    /**
+     * Create the object name of the MBean of an entity set.
+     *
+     * @param name The name of the instance.
+     * @param entitySetName The name of the entity set.
+     * @return The object name.
+     * @throws MalformedObjectNameException if the name is not valid within a JMX object name.
+     */
+    public static ObjectName createEntitySetName(final String name, final String entitySetName) throws MalformedObjectNameException {
+        return new ObjectName(DOMAIN + ":type=EntitySet,service=" + quoteIfNecessary(name) + ",name=" + quoteIfNecessary(entitySetName));
+    }
+
+    /**
+     * Convert nanoseconds into fractional milliseconds, which are easier to read in JMX consoles.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @return The duration in milliseconds.
+     */
+    static double toMillis(final long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Unregister a single MBean.
+     *
+     * @param objectName The name of the MBean.
+     */
+    private void unregister(final ObjectName objectName) {
+        try {
+            mBeanServer.unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.warn("Cannot unregister MBean '" + objectName + "'", e);
+        }
+    }
+
+    /**
+     * Quote a value of an object name key property, if it contains characters with a special meaning.
+     *
+     * @param value The value.
+     * @return The value or the quoted value.
+     */
+    private static String quoteIfNecessary(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == ',' || c == '=' || c == ':' || c == '"' || c == '*' || c == '?' || c == '\n') {
+                return ObjectName.quote(value);
+            }
+        }
+
+        return value;
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.management;
+
+import de.syquel.bushytail.cache.BushyTailEntityCache;
+import de.syquel.bushytail.helper.BushyTailCSRFProtectionHelper;
+import de.syquel.bushytail.metric.BushyTailMetricsCollector;
+import de.syquel.bushytail.metric.BushyTailOperationMetrics;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * {@link IBushyTailServiceMXBean} which reads the lock-free statistics of the metrics collector, the entity caches
+ * and the CSRF protection.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailServiceManagement implements IBushyTailServiceMXBean {
+
+    /** The name the instance has been registered with. */
+    private final String name;
+
+    /** The names of all entity sets. */
+    private final String[] entitySetNames;
+
+    /** The caches of all cached entity sets. */
+    private final Collection<BushyTailEntityCache> entityCaches;
+
+    /** The helper for CSRF protection. */
+    private final BushyTailCSRFProtectionHelper csrfProtectionHelper;
+
+    /** The collector of the request metrics or {@code null} if no metrics are recorded. */
+    private final BushyTailMetricsCollector metricsCollector;
+
+    /** The time it took to build the instance in nanoseconds. */
+    private final long buildTime;
+
+    /** The time it took to generate or load the OData metadata in nanoseconds. */
+    private final long metadataBuildTime;
+
+    /**
+     * Constructs {@link BushyTailServiceManagement}.
+     *
+     * @param name The name the instance has been registered with.
+     * @param entitySetNames The names of all entity sets.
+     * @param entityCaches The caches of all cached entity sets.
+     * @param csrfProtectionHelper The helper for CSRF protection.
+     * @param metricsCollector The collector of the request metrics or {@code null} if no metrics are recorded.
+     * @param buildTime The time it took to build the instance in nanoseconds.
+     * @param metadataBuildTime The time it took to generate or load the OData metadata in nanoseconds.
+     */
+    BushyTailServiceManagement(final String name, final String[] entitySetNames, final Collection<BushyTailEntityCache> entityCaches,
+                               final BushyTailCSRFProtectionHelper csrfProtectionHelper, final BushyTailMetricsCollector metricsCollector,
+                               final long buildTime, final long metadataBuildTime) {
+        this.name = name;
+        this.entitySetNames = entitySetNames;
+        this.entityCaches = entityCaches;
+        this.csrfProtectionHelper = csrfProtectionHelper;
+        this.metricsCollector = metricsCollector;
+        this.buildTime = buildTime;
+        this.metadataBuildTime = metadataBuildTime;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String[] getEntitySetNames() {
+        return entitySetNames.clone();
+    }
+
+    @Override
+    public long getRequestCount() {
+        long requestCount = 0;
+        for (final BushyTailOperationMetrics operationMetrics : getOperationMetrics()) {
+            requestCount += operationMetrics.getRequestCount();
+        }
+
+        return requestCount;
+    }
+
+    @Override
+    public long getClientErrorCount() {
+        return getStatusCount(4);
+    }
+
+    @Override
+    public long getServerErrorCount() {
+        return getStatusCount(5);
+    }
+
+    @Override
+    public double getBuildTime() {
+        return BushyTailManagement.toMillis(buildTime);
+    }
+
+    @Override
+    public double getMetadataBuildTime() {
+        return BushyTailManagement.toMillis(metadataBuildTime);
+    }
+
+    @Override
+    public long getCsrfTokenIssueCount() {
+        return csrfProtectionHelper.getIssueCount();
+    }
+
+    @Override
+    public long getCsrfVerificationFailureCount() {
+        return csrfProtectionHelper.getVerificationFailureCount();
+    }
+
+    @Override
+    public void clearCaches() {
+        for (final BushyTailEntityCache entityCache : entityCaches) {
+            entityCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        if (metricsCollector != null) {
+            metricsCollector.reset();
+        }
+        for (final BushyTailEntityCache entityCache : entityCaches) {
+            entityCache.resetStatistics();
+        }
+        csrfProtectionHelper.resetStatistics();
+    }
+
+    /**
+     * @return The metrics of all operations on all entity sets.
+     */
+    private Collection<BushyTailOperationMetrics> getOperationMetrics() {
+        if (metricsCollector == null) {
+            return Collections.emptyList();
+        }
+
+        return metricsCollector.getOperationMetrics();
+    }
+
+    /**
+     * Sum up the requests which completed with a class of HTTP status codes.
+     *
+     * @param statusClass The status class, e.g. {@code 5} for 5xx.
+     * @return The number of requests.
+     */
+    private long getStatusCount(final int statusClass) {
+        long statusCount = 0;
+        for (final BushyTailOperationMetrics operationMetrics : getOperationMetrics()) {
+            statusCount += operationMetrics.getStatusCount(statusClass);
+        }
+
+        return statusCount;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.management;
+
+import java.util.Map;
+
+/**
+ * Management interface of an entity set of a {@link de.syquel.bushytail.BushyTail} instance.
+ * <p>
+ * Latencies are given in milliseconds over all operations on the entity set. The request statistics are only available
+ * if the instance records metrics, the cache statistics only if the entities of the entity set are cached.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public interface IBushyTailEntitySetMXBean {
+
+    /**
+     * @return The name of the entity set.
+     */
+    String getName();
+
+    /**
+     * @return The name of the JPA entity class.
+     */
+    String getEntityClassName();
+
+    /**
+     * @return The number of requests on the entity set.
+     */
+    long getRequestCount();
+
+    /**
+     * @return The number of requests by operation, e.g. {@code READ} or {@code COLLECTION}.
+     */
+    Map<String, Long> getRequestCountByOperation();
+
+    /**
+     * @return The number of requests which failed with a client error (4xx).
+     */
+    long getClientErrorCount();
+
+    /**
+     * @return The number of requests which failed with a server error (5xx).
+     */
+    long getServerErrorCount();
+
+    /**
+     * @return The mean latency.
+     */
+    double getLatencyMean();
+
+    /**
+     * @return The median latency.
+     */
+    double getLatency50thPercentile();
+
+    /**
+     * @return The 95th percentile of the latency.
+     */
+    double getLatency95thPercentile();
+
+    /**
+     * @return The 99th percentile of the latency.
+     */
+    double getLatency99thPercentile();
+
+    /**
+     * @return The 99.9th percentile of the latency.
+     */
+    double getLatency999thPercentile();
+
+    /**
+     * @return The maximum latency.
+     */
+    double getLatencyMax();
+
+    /**
+     * @return The 99th percentile of the latency by operation.
+     */
+    Map<String, Double> getLatency99thPercentileByOperation();
+
+    /**
+     * Determine a percentile of the latency of an operation.
+     *
+     * @param operation The name of the operation, e.g. {@code READ}.
+     * @param percentile The percentile between {@code 0} and {@code 100}.
+     * @return The latency or {@code 0} if the operation has not been requested yet.
+     */
+    double computeLatencyPercentile(String operation, double percentile);
+
+    /**
+     * @return Whether the entities of the entity set are cached.
+     */
+    boolean isCached();
+
+    /**
+     * @return The number of cached entities.
+     */
+    long getCacheSize();
+
+    /**
+     * @return The number of reads which have been answered by the cache.
+     */
+    long getCacheHitCount();
+
+    /**
+     * @return The number of reads which have been passed to the controller.
+     */
+    long getCacheMissCount();
+
+    /**
+     * @return The ratio of reads which have been answered by the cache.
+     */
+    double getCacheHitRate();
+
+    /**
+     * @return The number of entities which have been evicted from the cache.
+     */
+    long getCacheEvictionCount();
+
+    /**
+     * Remove all entities from the cache of the entity set.
+     */
+    void clearCache();
+
+    /**
+     * Reset the request and cache statistics of the entity set.
+     */
+    void resetStatistics();
+
+}
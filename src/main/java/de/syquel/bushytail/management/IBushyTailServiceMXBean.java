@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.management;
+
+/**
+ * Management interface of a {@link de.syquel.bushytail.BushyTail} instance.
+ * <p>
+ * Durations are given in milliseconds. The request statistics are only available if the instance records metrics.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public interface IBushyTailServiceMXBean {
+
+    /**
+     * @return The name the instance has been registered with.
+     */
+    String getName();
+
+    /**
+     * @return The names of all entity sets of the service.
+     */
+    String[] getEntitySetNames();
+
+    /**
+     * @return The number of requests on all entity sets, including {@code $batch} and metadata requests.
+     */
+    long getRequestCount();
+
+    /**
+     * @return The number of requests which failed with a client error (4xx).
+     */
+    long getClientErrorCount();
+
+    /**
+     * @return The number of requests which failed with a server error (5xx).
+     */
+    long getServerErrorCount();
+
+    /**
+     * @return The time it took to build the instance.
+     */
+    double getBuildTime();
+
+    /**
+     * @return The time it took to generate or load the OData metadata while building the instance.
+     */
+    double getMetadataBuildTime();
+
+    /**
+     * @return The number of issued CSRF tokens.
+     */
+    long getCsrfTokenIssueCount();
+
+    /**
+     * @return The number of requests which have been rejected because of a missing or invalid CSRF token.
+     */
+    long getCsrfVerificationFailureCount();
+
+    /**
+     * Remove all entities from the caches of all entity sets.
+     */
+    void clearCaches();
+
+    /**
+     * Reset the request, cache and CSRF statistics.
+     */
+    void resetStatistics();
+
+}
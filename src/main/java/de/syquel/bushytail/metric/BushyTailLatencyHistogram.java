@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in the manner of HdrHistogram.
+ * <p>
+ * Latencies are bucketed in microseconds with 32 linear sub-buckets per power of two, which bounds the relative error
+ * of percentiles to about 3% up to roughly 19 hours. Each core records into its own stripe, which is allocated on
+ * first use, thus recording is a single uncontended atomic increment.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailLatencyHistogram {
+
+    /** The number of bits of the linear sub-buckets. */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /** The number of values which are bucketed exactly. */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** The number of sub-buckets per power of two above {@link #SUB_BUCKET_COUNT}. */
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /** The largest recordable value in microseconds, larger values are clamped. */
+    private static final long MAX_VALUE = (1L << 36) - 1;
+
+    /** The number of buckets. */
+    static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+    /** The slot of the sum of all recorded latencies in nanoseconds. */
+    private static final int SUM_SLOT = BUCKETS;
+
+    /** The slot of the maximum recorded latency in nanoseconds. */
+    private static final int MAX_SLOT = BUCKETS + 1;
+
+    /** The number of slots per stripe. */
+    private static final int SLOTS = BUCKETS + 2;
+
+    /** The stripes, which are allocated on first use. */
+    private final AtomicReferenceArray<AtomicLongArray> stripes =
+            new AtomicReferenceArray<AtomicLongArray>(BushyTailStripedCounters.STRIPES);
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        final AtomicLongArray stripe = getStripe(BushyTailStripedCounters.stripe());
+
+        stripe.incrementAndGet(bucketIndex(Math.min(TimeUnit.NANOSECONDS.toMicros(value), MAX_VALUE)));
+        stripe.addAndGet(SUM_SLOT, value);
+
+        long max = stripe.get(MAX_SLOT);
+        while (value > max && !stripe.compareAndSet(MAX_SLOT, max, value)) {
+            max = stripe.get(MAX_SLOT);
+        }
+    }
+
+    /**
+     * Take a snapshot of all recorded latencies.
+     *
+     * @return The snapshot, which is only weakly consistent with concurrent recordings.
+     */
+    public BushyTailLatencySnapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long sum = 0;
+        long max = 0;
+
+        for (int i = 0; i < stripes.length(); i++) {
+            final AtomicLongArray stripe = stripes.get(i);
+            if (stripe == null) {
+                continue;
+            }
+
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] += stripe.get(bucket);
+            }
+            sum += stripe.get(SUM_SLOT);
+            max = Math.max(max, stripe.get(MAX_SLOT));
+        }
+
+        return new BushyTailLatencySnapshot(counts, sum, max);
+    }
+
+    /**
+     * Get a stripe and allocate it if necessary.
+     *
+     * @param index The index of the stripe.
+     * @return The stripe.
+     */
+    private AtomicLongArray getStripe(final int index) {
+        final AtomicLongArray stripe = stripes.get(index);
+        if (stripe != null) {
+            return stripe;
+        }
+
+        stripes.compareAndSet(index, null, new AtomicLongArray(SLOTS));
+        return stripes.get(index);
+    }
+
+    /**
+     * Determine the bucket of a value.
+     *
+     * @param micros The value in microseconds.
+     * @return The index of the bucket.
+     */
+    static int bucketIndex(final long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+
+        final int shift = 63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (int) ((micros >>> shift) - HALF_SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * Determine the highest value which falls into a bucket.
+     *
+     * @param index The index of the bucket.
+     * @return The highest value of the bucket in microseconds.
+     */
+    static long highestValue(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        final int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
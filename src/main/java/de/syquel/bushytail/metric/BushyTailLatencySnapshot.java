@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of a {@link BushyTailLatencyHistogram}.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailLatencySnapshot {
+
+    /** The snapshot without any recorded latencies. */
+    public static final BushyTailLatencySnapshot EMPTY = new BushyTailLatencySnapshot(new long[BushyTailLatencyHistogram.BUCKETS], 0, 0);
+
+    /** The counts per bucket. */
+    private final long[] counts;
+
+    /** The number of recorded latencies. */
+    private final long count;
+
+    /** The sum of all recorded latencies in nanoseconds. */
+    private final long sum;
+
+    /** The maximum recorded latency in nanoseconds. */
+    private final long max;
+
+    /**
+     * Constructs {@link BushyTailLatencySnapshot}.
+     *
+     * @param counts The counts per bucket.
+     * @param sum The sum of all recorded latencies in nanoseconds.
+     * @param max The maximum recorded latency in nanoseconds.
+     */
+    BushyTailLatencySnapshot(final long[] counts, final long sum, final long max) {
+        this.counts = counts;
+        this.sum = sum;
+        this.max = max;
+
+        long count = 0;
+        for (final long bucketCount : counts) {
+            count += bucketCount;
+        }
+        this.count = count;
+    }
+
+    /**
+     * @return The number of recorded latencies.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The mean latency in nanoseconds or {@code 0} if nothing has been recorded.
+     */
+    public long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @return The maximum latency in nanoseconds.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Combine this snapshot with another one, e.g. of a different operation.
+     *
+     * @param other The other snapshot.
+     * @return A snapshot of the latencies of both snapshots.
+     */
+    public BushyTailLatencySnapshot merge(final BushyTailLatencySnapshot other) {
+        final long[] mergedCounts = new long[counts.length];
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            mergedCounts[bucket] = counts[bucket] + other.counts[bucket];
+        }
+
+        return new BushyTailLatencySnapshot(mergedCounts, sum + other.sum, Math.max(max, other.max));
+    }
+
+    /**
+     * Determine a percentile of the recorded latencies.
+     *
+     * @param percentile The percentile between {@code 0} and {@code 100}, e.g. {@code 99.9}.
+     * @return The latency in nanoseconds which is not exceeded by the given percentage of requests, or {@code 0} if
+     * nothing has been recorded.
+     */
+    public long getPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(max, TimeUnit.MICROSECONDS.toNanos(BushyTailLatencyHistogram.highestValue(bucket) + 1) - 1);
+            }
+        }
+
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + getMean() + "ns, p50=" + getPercentile(50) + "ns, p99=" + getPercentile(99)
+                + "ns, max=" + max + "ns";
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Built-in {@link IBushyTailMetricsListener} which aggregates latency histograms and counters
+ * per entity set and operation.
+ * <p>
+ * Recording and reading is lock-free. The metrics of an entity set and operation are allocated on its first request,
+ * so that resetting simply discards them.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailMetricsCollector implements IBushyTailMetricsListener {
+
+    /** The key of operations which do not target a single entity set, since concurrent maps do not permit {@code null}. */
+    private static final String NO_ENTITY_SET = "";
+
+    /** All operations. */
+    private static final BushyTailOperation[] OPERATIONS = BushyTailOperation.values();
+
+    /** The metrics by entity set name and operation ordinal. */
+    private final ConcurrentMap<String, AtomicReferenceArray<BushyTailOperationMetrics>> metrics =
+            new ConcurrentHashMap<String, AtomicReferenceArray<BushyTailOperationMetrics>>();
+
+    @Override
+    public void requestCompleted(final BushyTailRequestMetrics requestMetrics) {
+        final String key = requestMetrics.getEntitySetName() == null ? NO_ENTITY_SET : requestMetrics.getEntitySetName();
+
+        AtomicReferenceArray<BushyTailOperationMetrics> operationMetrics = metrics.get(key);
+        if (operationMetrics == null) {
+            final AtomicReferenceArray<BushyTailOperationMetrics> newOperationMetrics =
+                    new AtomicReferenceArray<BushyTailOperationMetrics>(OPERATIONS.length);
+            operationMetrics = metrics.putIfAbsent(key, newOperationMetrics);
+            if (operationMetrics == null) {
+                operationMetrics = newOperationMetrics;
+            }
+        }
+
+        final int index = requestMetrics.getOperation().ordinal();
+        BushyTailOperationMetrics target = operationMetrics.get(index);
+        if (target == null) {
+            operationMetrics.compareAndSet(index, null,
+                    new BushyTailOperationMetrics(requestMetrics.getEntitySetName(), requestMetrics.getOperation()));
+            target = operationMetrics.get(index);
+        }
+
+        target.record(requestMetrics);
+    }
+
+    /**
+     * Get the metrics of an operation on an entity set.
+     *
+     * @param entitySetName The name of the entity set or {@code null} for operations which do not target a single entity set.
+     * @param operation The operation.
+     * @return The metrics or {@code null} if no such request has completed yet.
+     */
+    public BushyTailOperationMetrics getOperationMetrics(final String entitySetName, final BushyTailOperation operation) {
+        final AtomicReferenceArray<BushyTailOperationMetrics> operationMetrics =
+                metrics.get(entitySetName == null ? NO_ENTITY_SET : entitySetName);
+
+        return operationMetrics == null ? null : operationMetrics.get(operation.ordinal());
+    }
+
+    /**
+     * Get the metrics of all operations on an entity set.
+     *
+     * @param entitySetName The name of the entity set or {@code null} for operations which do not target a single entity set.
+     * @return The metrics of the operations which have completed at least one request.
+     */
+    public Collection<BushyTailOperationMetrics> getOperationMetrics(final String entitySetName) {
+        final List<BushyTailOperationMetrics> result = new ArrayList<BushyTailOperationMetrics>();
+        collect(metrics.get(entitySetName == null ? NO_ENTITY_SET : entitySetName), result);
+
+        return result;
+    }
+
+    /**
+     * @return The metrics of all operations on all entity sets which have completed at least one request.
+     */
+    public Collection<BushyTailOperationMetrics> getOperationMetrics() {
+        final List<BushyTailOperationMetrics> result = new ArrayList<BushyTailOperationMetrics>();
+        for (final AtomicReferenceArray<BushyTailOperationMetrics> operationMetrics : metrics.values()) {
+            collect(operationMetrics, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Discard the metrics of all operations on all entity sets.
+     */
+    public void reset() {
+        metrics.clear();
+    }
+
+    /**
+     * Discard the metrics of all operations on an entity set.
+     *
+     * @param entitySetName The name of the entity set or {@code null} for operations which do not target a single entity set.
+     */
+    public void reset(final String entitySetName) {
+        metrics.remove(entitySetName == null ? NO_ENTITY_SET : entitySetName);
+    }
+
+    /**
+     * Collect the allocated metrics of the operations on an entity set.
+     *
+     * @param operationMetrics The metrics by operation ordinal or {@code null}.
+     * @param result The list to add the metrics to.
+     */
+    private static void collect(final AtomicReferenceArray<BushyTailOperationMetrics> operationMetrics, final List<BushyTailOperationMetrics> result) {
+        if (operationMetrics == null) {
+            return;
+        }
+
+        for (int i = 0; i < operationMetrics.length(); i++) {
+            final BushyTailOperationMetrics target = operationMetrics.get(i);
+            if (target != null) {
+                result.add(target);
+            }
+        }
+    }
+
+}
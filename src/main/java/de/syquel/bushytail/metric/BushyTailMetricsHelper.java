@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records the metrics of requests and hands them to {@link IBushyTailMetricsListener}s.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailMetricsHelper {
+
+    /** The logger. */
+    private static final Logger logger = LoggerFactory.getLogger(BushyTailMetricsHelper.class);
+
+    /** The status code reported for requests which failed with an exception. */
+    private static final int FAILED_STATUS = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+
+    /** Whether the phase durations are reported to the client in a {@code Server-Timing} header. */
+    private final boolean serverTiming;
+
+    /** The listeners which are notified about completed requests. */
+    private final IBushyTailMetricsListener[] listeners;
+
+    /**
+     * Constructs {@link BushyTailMetricsHelper}.
+     *
+     * @param serverTiming Whether the phase durations are reported to the client in a {@code Server-Timing} header.
+     * @param listeners The listeners which are notified about completed requests.
+     */
+    public BushyTailMetricsHelper(final boolean serverTiming, final IBushyTailMetricsListener... listeners) {
+        this.serverTiming = serverTiming;
+        this.listeners = listeners.clone();
+    }
+
+    /**
+     * Start recording the metrics of a request on the current thread.
+     *
+     * @param req The HTTP request.
+     * @param resp The HTTP response.
+     * @return The response which must be used to process the request and passed to {@link #finish}.
+     */
+    public HttpServletResponse begin(final HttpServletRequest req, final HttpServletResponse resp) {
+        final BushyTailRequestMetrics requestMetrics = BushyTailRequestMetrics.begin(req.getMethod(), req.getRequestURI(), req.getQueryString(),
+                req.getContentLength());
+
+        return new BushyTailMetricsResponse(resp, requestMetrics, serverTiming);
+    }
+
+    /**
+     * Complete the metrics of a request and notify the listeners.
+     *
+     * @param resp The response returned by {@link #begin}.
+     * @param failed Whether the request failed with an exception, which is reported as {@value #FAILED_STATUS}.
+     */
+    public void finish(final HttpServletResponse resp, final boolean failed) {
+        final BushyTailMetricsResponse metricsResp = (BushyTailMetricsResponse) resp;
+        final BushyTailRequestMetrics requestMetrics = metricsResp.getRequestMetrics();
+        // Responses without body are committed by the servlet container, after the request has been processed
+        if (!failed) {
+            metricsResp.addServerTiming();
+        }
+        requestMetrics.complete(failed ? FAILED_STATUS : metricsResp.getStatus(), metricsResp.getBodySize());
+
+        for (final IBushyTailMetricsListener listener : listeners) {
+            try {
+                listener.requestCompleted(requestMetrics);
+            } catch (RuntimeException e) {
+                logger.warn("Metrics listener failed on " + requestMetrics, e);
+            }
+        }
+    }
+
+}
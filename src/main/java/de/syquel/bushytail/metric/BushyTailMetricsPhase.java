@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+/**
+ * The phases of a request whose durations are measured separately.
+ * <p>
+ * The phases do not overlap, but they do not cover the complete request either: the remaining time is mostly spent
+ * in Olingo, e.g. copying the response content or rendering streamed collections.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public enum BushyTailMetricsPhase {
+
+    /** The CSRF token is issued or verified. */
+    CSRF,
+    /** Olingo parses and validates the URI and dispatches the request to a processor. */
+    URI,
+    /** Olingo reads the request body into Olingo entities. */
+    PARSE,
+    /** Olingo entities are converted into JPA entities. */
+    DESERIALIZE,
+    /** The controller or the entity cache is called. */
+    CONTROLLER,
+    /** JPA entities are converted into Olingo entities. */
+    SERIALIZE,
+    /** Olingo renders a single entity into the response body; streamed collections are rendered while the response is written. */
+    RENDER,
+    /** The servlet container accepts the response body, which includes waiting for a slow client. */
+    WRITE
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Response which captures the status code, counts the body bytes sent to the client and optionally adds
+ * a {@code Server-Timing} header.
+ * <p>
+ * The Servlet 2.5 API offers no way to read the status of a response, thus it is captured on the way through.
+ * The {@code Server-Timing} header is added right before the response is committed, so it covers all phases
+ * until then, but not the time it takes to write the body.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailMetricsResponse extends HttpServletResponseWrapper {
+
+    /** The name of the header which reports the phase durations to the client. */
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    /** The metrics of the request. */
+    private final BushyTailRequestMetrics requestMetrics;
+
+    /** Whether a {@code Server-Timing} header is still to be added. */
+    private boolean serverTimingPending;
+
+    /** The HTTP status code. */
+    private int status = SC_OK;
+
+    /** The counting stream or {@code null} if the body has not been written yet. */
+    private CountingOutputStream outputStream;
+
+    /** The writer on top of the counting stream or {@code null} if it has not been requested. */
+    private PrintWriter writer;
+
+    /**
+     * Constructs {@link BushyTailMetricsResponse}.
+     *
+     * @param response The response to wrap.
+     * @param requestMetrics The metrics of the request.
+     * @param serverTiming Whether to add a {@code Server-Timing} header.
+     */
+    BushyTailMetricsResponse(final HttpServletResponse response, final BushyTailRequestMetrics requestMetrics, final boolean serverTiming) {
+        super(response);
+        this.requestMetrics = requestMetrics;
+        this.serverTimingPending = serverTiming;
+    }
+
+    /**
+     * @return The metrics of the request.
+     */
+    BushyTailRequestMetrics getRequestMetrics() {
+        return requestMetrics;
+    }
+
+    /**
+     * @return The HTTP status code.
+     */
+    int getStatus() {
+        return status;
+    }
+
+    /**
+     * Add the {@code Server-Timing} header, if it is enabled and has not been added yet.
+     * It is skipped if the wrapped response has already been committed.
+     */
+    void addServerTiming() {
+        if (!serverTimingPending) {
+            return;
+        }
+
+        serverTimingPending = false;
+        if (!isCommitted()) {
+            super.addHeader(SERVER_TIMING_HEADER, requestMetrics.toServerTiming());
+        }
+    }
+
+    /**
+     * Flush the writer, if any, and determine the number of body bytes.
+     *
+     * @return The number of body bytes written to the wrapped response.
+     */
+    long getBodySize() {
+        if (writer != null) {
+            writer.flush();
+        }
+
+        return outputStream == null ? 0 : outputStream.count;
+    }
+
+    @Override
+    public void setStatus(final int sc) {
+        status = sc;
+        super.setStatus(sc);
+    }
+
+    @Override
+    @Deprecated
+    public void setStatus(final int sc, final String sm) {
+        status = sc;
+        super.setStatus(sc, sm);
+    }
+
+    @Override
+    public void sendError(final int sc) throws IOException {
+        status = sc;
+        addServerTiming();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) throws IOException {
+        status = sc;
+        addServerTiming();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(final String location) throws IOException {
+        status = SC_FOUND;
+        addServerTiming();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            addServerTiming();
+            outputStream = new CountingOutputStream(super.getOutputStream(), requestMetrics);
+        }
+
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+        }
+
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        addServerTiming();
+        if (writer != null) {
+            writer.flush();
+        }
+
+        super.flushBuffer();
+    }
+
+
+    /**
+     * {@link ServletOutputStream} which counts the bytes written to the wrapped stream and measures the time
+     * spent in writing chunks, which is recorded as {@link BushyTailMetricsPhase#WRITE}.
+     * Single bytes are only counted, because measuring them would cost more than writing them.
+     */
+    private static final class CountingOutputStream extends ServletOutputStream {
+
+        /** The wrapped stream. */
+        private final ServletOutputStream stream;
+
+        /** The metrics of the request. */
+        private final BushyTailRequestMetrics requestMetrics;
+
+        /** The number of written bytes. */
+        private long count;
+
+        /**
+         * Constructs {@link CountingOutputStream}.
+         *
+         * @param stream The wrapped stream.
+         * @param requestMetrics The metrics of the request.
+         */
+        CountingOutputStream(final ServletOutputStream stream, final BushyTailRequestMetrics requestMetrics) {
+            this.stream = stream;
+            this.requestMetrics = requestMetrics;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            stream.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final long writeStartTime = requestMetrics.startPhase();
+            stream.write(b, off, len);
+            requestMetrics.endPhase(BushyTailMetricsPhase.WRITE, writeStartTime);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            final long writeStartTime = requestMetrics.startPhase();
+            stream.flush();
+            requestMetrics.endPhase(BushyTailMetricsPhase.WRITE, writeStartTime);
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+/**
+ * The kinds of operations a request performs on an entity set.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public enum BushyTailOperation {
+
+    /** Read a single entity. */
+    READ,
+    /** Create an entity. */
+    CREATE,
+    /** Update an entity with {@code PUT} or {@code PATCH}. */
+    UPDATE,
+    /** Delete an entity. */
+    DELETE,
+    /** Read an entity collection. */
+    COLLECTION,
+    /** Count an entity collection with {@code $count}. */
+    COUNT,
+    /** Process a {@code $batch} request, which is not related to a single entity set. */
+    BATCH,
+    /** Any other request, e.g. for the metadata document or one which has been rejected before reaching an entity set. */
+    OTHER
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+/**
+ * Aggregated metrics of an operation on an entity set.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailOperationMetrics {
+
+    /** The number of HTTP status classes, from informational (1xx) to server error (5xx), plus one for unknown. */
+    private static final int STATUS_CLASSES = 6;
+
+    /** The counter slot of the number of requests. */
+    private static final int REQUESTS_SLOT = 0;
+
+    /** The first counter slot of the status classes. */
+    private static final int STATUS_SLOT = REQUESTS_SLOT + 1;
+
+    /** The counter slot of the request payload bytes. */
+    private static final int REQUEST_SIZE_SLOT = STATUS_SLOT + STATUS_CLASSES;
+
+    /** The counter slot of the response payload bytes. */
+    private static final int RESPONSE_SIZE_SLOT = REQUEST_SIZE_SLOT + 1;
+
+    /** The first counter slot of the phase durations. */
+    private static final int PHASE_SLOT = RESPONSE_SIZE_SLOT + 1;
+
+    /** All phases of a request. */
+    private static final BushyTailMetricsPhase[] PHASES = BushyTailMetricsPhase.values();
+
+    /** The name of the entity set or {@code null} if the operation does not target a single entity set. */
+    private final String entitySetName;
+
+    /** The operation. */
+    private final BushyTailOperation operation;
+
+    /** The latencies of the requests. */
+    private final BushyTailLatencyHistogram latencies = new BushyTailLatencyHistogram();
+
+    /** The counters. */
+    private final BushyTailStripedCounters counters = new BushyTailStripedCounters(PHASE_SLOT + PHASES.length);
+
+    /**
+     * Constructs {@link BushyTailOperationMetrics}.
+     *
+     * @param entitySetName The name of the entity set or {@code null} if the operation does not target a single entity set.
+     * @param operation The operation.
+     */
+    BushyTailOperationMetrics(final String entitySetName, final BushyTailOperation operation) {
+        this.entitySetName = entitySetName;
+        this.operation = operation;
+    }
+
+    /**
+     * Record the metrics of a completed request.
+     *
+     * @param requestMetrics The metrics of the request.
+     */
+    void record(final BushyTailRequestMetrics requestMetrics) {
+        latencies.record(requestMetrics.getDuration());
+
+        counters.add(REQUESTS_SLOT, 1);
+        counters.add(STATUS_SLOT + statusClass(requestMetrics.getStatus()), 1);
+        if (requestMetrics.getRequestSize() > 0) {
+            counters.add(REQUEST_SIZE_SLOT, requestMetrics.getRequestSize());
+        }
+        counters.add(RESPONSE_SIZE_SLOT, requestMetrics.getResponseSize());
+
+        for (final BushyTailMetricsPhase phase : PHASES) {
+            final long phaseDuration = requestMetrics.getPhaseDuration(phase);
+            if (phaseDuration > 0) {
+                counters.add(PHASE_SLOT + phase.ordinal(), phaseDuration);
+            }
+        }
+    }
+
+    /**
+     * @return The name of the entity set or {@code null} if the operation does not target a single entity set.
+     */
+    public String getEntitySetName() {
+        return entitySetName;
+    }
+
+    /**
+     * @return The operation.
+     */
+    public BushyTailOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return A snapshot of the request latencies.
+     */
+    public BushyTailLatencySnapshot getLatencies() {
+        return latencies.snapshot();
+    }
+
+    /**
+     * @return The number of requests.
+     */
+    public long getRequestCount() {
+        return counters.get(REQUESTS_SLOT);
+    }
+
+    /**
+     * Get the number of requests which completed with a class of HTTP status codes.
+     *
+     * @param statusClass The status class, e.g. {@code 2} for 2xx or {@code 5} for 5xx.
+     * @return The number of requests.
+     */
+    public long getStatusCount(final int statusClass) {
+        if (statusClass < 1 || statusClass >= STATUS_CLASSES) {
+            throw new IllegalArgumentException("Unknown HTTP status class: " + statusClass);
+        }
+
+        return counters.get(STATUS_SLOT + statusClass);
+    }
+
+    /**
+     * @return The total number of request payload bytes, as far as announced by the clients.
+     */
+    public long getRequestBytes() {
+        return counters.get(REQUEST_SIZE_SLOT);
+    }
+
+    /**
+     * @return The total number of response payload bytes.
+     */
+    public long getResponseBytes() {
+        return counters.get(RESPONSE_SIZE_SLOT);
+    }
+
+    /**
+     * Get the total time spent in a phase.
+     *
+     * @param phase The phase.
+     * @return The total time in nanoseconds.
+     */
+    public long getPhaseTime(final BushyTailMetricsPhase phase) {
+        return counters.get(PHASE_SLOT + phase.ordinal());
+    }
+
+    /**
+     * Map an HTTP status code onto its class.
+     *
+     * @param status The HTTP status code.
+     * @return The status class or {@code 0} if the status code is invalid.
+     */
+    private static int statusClass(final int status) {
+        final int statusClass = status / 100;
+        return statusClass > 0 && statusClass < STATUS_CLASSES ? statusClass : 0;
+    }
+
+    @Override
+    public String toString() {
+        return (entitySetName == null ? "" : entitySetName + " ") + operation + ": " + latencies.snapshot();
+    }
+
+}
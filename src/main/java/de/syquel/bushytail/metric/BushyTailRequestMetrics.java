@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import java.util.Locale;
+
+/**
+ * Metrics of a single request, which are recorded while the request is processed.
+ * <p>
+ * Olingo processors are shared between requests and the serializers are static, thus the metrics of the current request
+ * are bound to the request thread and looked up with {@link #current()}. If no metrics are recorded or
+ * the code does not run on a request thread, e.g. for the parallel reads of a batch request, a disabled instance is
+ * returned which ignores all calls, so that callers never need to check whether metrics are recorded.
+ * </p>
+ * <p>
+ * Once the request has completed, the instance is handed to the {@link IBushyTailMetricsListener} and no longer modified.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailRequestMetrics {
+
+    /** The phases by ordinal, which must be initialized before {@link #DISABLED}. */
+    private static final BushyTailMetricsPhase[] PHASES = BushyTailMetricsPhase.values();
+
+    /** The instance which ignores all calls. */
+    private static final BushyTailRequestMetrics DISABLED = new BushyTailRequestMetrics(false, 0, null, null, null, -1);
+
+    /** The number of nanoseconds per microsecond. */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /** The number of microseconds per millisecond. */
+    private static final long MICROS_PER_MILLI = 1000;
+
+    /** The metrics of the request processed by the current thread. */
+    private static final ThreadLocal<BushyTailRequestMetrics> CURRENT = new ThreadLocal<BushyTailRequestMetrics>();
+
+    /** Whether the metrics are recorded. */
+    private final boolean enabled;
+
+    /** The value of {@link System#nanoTime()} when the request has started. */
+    private final long startTime;
+
+    /** The HTTP method. */
+    private final String method;
+
+    /** The request URI without the query string. */
+    private final String requestUri;
+
+    /** The query string or {@code null} if the request has none. */
+    private final String queryString;
+
+    /** The size of the request body in bytes or {@code -1} if it is unknown. */
+    private final long requestSize;
+
+    /** The durations of the phases in nanoseconds by ordinal. */
+    private final long[] phaseDurations = new long[PHASES.length];
+
+    /** The name of the entity set or {@code null} if the request does not address a single entity set. */
+    private String entitySetName;
+
+    /** The operation or {@code null} if it has not been determined yet. */
+    private BushyTailOperation operation;
+
+    /** The value of {@link System#nanoTime()} when the request has been passed to Olingo or {@code 0}. */
+    private long dispatchStartTime;
+
+    /** The HTTP status code of the response. */
+    private int status;
+
+    /** The number of response body bytes sent to the client. */
+    private long responseSize;
+
+    /** The duration of the complete request in nanoseconds. */
+    private long duration;
+
+    /**
+     * Constructs {@link BushyTailRequestMetrics}.
+     *
+     * @param enabled Whether the metrics are recorded.
+     * @param startTime The value of {@link System#nanoTime()} when the request has started.
+     * @param method The HTTP method.
+     * @param requestUri The request URI without the query string.
+     * @param queryString The query string or {@code null} if the request has none.
+     * @param requestSize The size of the request body in bytes or {@code -1} if it is unknown.
+     */
+    private BushyTailRequestMetrics(final boolean enabled, final long startTime, final String method, final String requestUri,
+                                    final String queryString, final long requestSize) {
+        this.enabled = enabled;
+        this.startTime = startTime;
+        this.method = method;
+        this.requestUri = requestUri;
+        this.queryString = queryString;
+        this.requestSize = requestSize;
+    }
+
+    /**
+     * Start recording the metrics of a request on the current thread.
+     *
+     * @param method The HTTP method.
+     * @param requestUri The request URI without the query string.
+     * @param queryString The query string or {@code null} if the request has none.
+     * @param requestSize The size of the request body in bytes or {@code -1} if it is unknown.
+     * @return The metrics of the request.
+     */
+    static BushyTailRequestMetrics begin(final String method, final String requestUri, final String queryString, final long requestSize) {
+        final BushyTailRequestMetrics requestMetrics = new BushyTailRequestMetrics(true, System.nanoTime(), method, requestUri, queryString, requestSize);
+        CURRENT.set(requestMetrics);
+
+        return requestMetrics;
+    }
+
+    /**
+     * Complete the metrics of the request and stop recording on the current thread.
+     *
+     * @param status The HTTP status code of the response.
+     * @param responseSize The number of response body bytes sent to the client.
+     */
+    void complete(final int status, final long responseSize) {
+        CURRENT.remove();
+
+        this.duration = System.nanoTime() - startTime;
+        this.status = status;
+        this.responseSize = responseSize;
+        if (operation == null) {
+            operation = BushyTailOperation.OTHER;
+        }
+    }
+
+    /**
+     * Get the metrics of the request processed by the current thread.
+     *
+     * @return The metrics or a disabled instance, if no metrics are recorded.
+     */
+    public static BushyTailRequestMetrics current() {
+        final BushyTailRequestMetrics requestMetrics = CURRENT.get();
+        return requestMetrics == null ? DISABLED : requestMetrics;
+    }
+
+    /**
+     * Mark that the request is passed to Olingo. The time until the processor sets the {@link #setTarget target}
+     * is recorded as {@link BushyTailMetricsPhase#URI}.
+     */
+    public void startDispatch() {
+        if (enabled) {
+            dispatchStartTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Set the entity set and the operation of the request.
+     * <p>
+     * Only the first call has an effect, so that the operations performed within a batch request
+     * do not replace the batch operation itself. It also ends the {@link BushyTailMetricsPhase#URI} phase.
+     * </p>
+     *
+     * @param entitySetName The name of the entity set or {@code null} if the request does not address a single entity set.
+     * @param operation The operation.
+     */
+    public void setTarget(final String entitySetName, final BushyTailOperation operation) {
+        if (!enabled || this.operation != null) {
+            return;
+        }
+
+        this.entitySetName = entitySetName;
+        this.operation = operation;
+        if (dispatchStartTime != 0) {
+            phaseDurations[BushyTailMetricsPhase.URI.ordinal()] += System.nanoTime() - dispatchStartTime;
+            dispatchStartTime = 0;
+        }
+    }
+
+    /**
+     * Start measuring a phase.
+     *
+     * @return The start time to pass to {@link #endPhase}.
+     */
+    public long startPhase() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Add the duration of a phase, which may be measured several times per request.
+     *
+     * @param phase The phase.
+     * @param phaseStartTime The start time returned by {@link #startPhase()}.
+     */
+    public void endPhase(final BushyTailMetricsPhase phase, final long phaseStartTime) {
+        if (enabled) {
+            phaseDurations[phase.ordinal()] += System.nanoTime() - phaseStartTime;
+        }
+    }
+
+    /**
+     * @return The HTTP method.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return The request URI including the query string.
+     */
+    public String getRequestUri() {
+        return queryString == null ? requestUri : requestUri + '?' + queryString;
+    }
+
+    /**
+     * @return The name of the entity set or {@code null} if the request does not address a single entity set.
+     */
+    public String getEntitySetName() {
+        return entitySetName;
+    }
+
+    /**
+     * @return The operation.
+     */
+    public BushyTailOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return The HTTP status code of the response.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The size of the request body in bytes or {@code -1} if it is unknown.
+     */
+    public long getRequestSize() {
+        return requestSize;
+    }
+
+    /**
+     * @return The number of response body bytes sent to the client, i.e. after compression.
+     */
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * @return The duration of the complete request in nanoseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param phase The phase.
+     * @return The total duration of the phase in nanoseconds.
+     */
+    public long getPhaseDuration(final BushyTailMetricsPhase phase) {
+        return phaseDurations[phase.ordinal()];
+    }
+
+    /**
+     * Format the phases measured so far as the value of a {@code Server-Timing} header.
+     *
+     * @return The phases which took any time and the time elapsed since the start of the request as {@code total}.
+     */
+    String toServerTiming() {
+        final StringBuilder builder = new StringBuilder();
+        for (final BushyTailMetricsPhase phase : PHASES) {
+            final long phaseDuration = phaseDurations[phase.ordinal()];
+            if (phaseDuration > 0) {
+                appendMillis(builder.append(phase.name().toLowerCase(Locale.ENGLISH)).append(";dur="), phaseDuration).append(", ");
+            }
+        }
+
+        return appendMillis(builder.append("total;dur="), System.nanoTime() - startTime).toString();
+    }
+
+    /**
+     * Append a duration as milliseconds with three decimal places, without the overhead of a {@link java.util.Formatter}.
+     *
+     * @param builder The builder to append to.
+     * @param nanos The duration in nanoseconds.
+     * @return The builder.
+     */
+    static StringBuilder appendMillis(final StringBuilder builder, final long nanos) {
+        final long micros = Math.max(0, nanos) / NANOS_PER_MICRO;
+        final long fraction = micros % MICROS_PER_MILLI;
+
+        builder.append(micros / MICROS_PER_MILLI).append('.');
+        if (fraction < 100) {
+            builder.append('0');
+        }
+        if (fraction < 10) {
+            builder.append('0');
+        }
+
+        return builder.append(fraction);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("BushyTailRequestMetrics{method=").append(method)
+                .append(", uri=").append(getRequestUri())
+                .append(", entitySet=").append(entitySetName)
+                .append(", operation=").append(operation)
+                .append(", status=").append(status)
+                .append(", requestSize=").append(requestSize)
+                .append(", responseSize=").append(responseSize)
+                .append(", duration=").append(duration);
+        for (final BushyTailMetricsPhase phase : PHASES) {
+            builder.append(", ").append(phase.name().toLowerCase(Locale.ENGLISH)).append('=').append(phaseDurations[phase.ordinal()]);
+        }
+
+        return builder.append('}').toString();
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IBushyTailMetricsListener} which logs requests exceeding a latency threshold with the duration of each phase.
+ * <p>
+ * To bound the log volume during an overload, only every n-th slow request is logged. Requests below the threshold
+ * cost a single comparison.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailSlowRequestLog implements IBushyTailMetricsListener {
+
+    /** The logger, which can be configured separately from the rest of BushyTail. */
+    private static final Logger logger = LoggerFactory.getLogger(BushyTailSlowRequestLog.class);
+
+    /** All phases of a request. */
+    private static final BushyTailMetricsPhase[] PHASES = BushyTailMetricsPhase.values();
+
+    /** The minimum duration of logged requests in nanoseconds. */
+    private final long threshold;
+
+    /** Every how many slow requests one is logged. */
+    private final int sampleInterval;
+
+    /** The number of slow requests. */
+    private final AtomicLong slowRequestCount = new AtomicLong();
+
+    /**
+     * Constructs {@link BushyTailSlowRequestLog}.
+     *
+     * @param threshold The minimum duration of logged requests.
+     * @param unit The unit of the threshold.
+     * @param sampleInterval Every how many slow requests one is logged, {@code 1} to log all of them.
+     */
+    public BushyTailSlowRequestLog(final long threshold, final TimeUnit unit, final int sampleInterval) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Sample interval must be positive");
+        }
+
+        this.threshold = unit.toNanos(threshold);
+        this.sampleInterval = sampleInterval;
+    }
+
+    @Override
+    public void requestCompleted(final BushyTailRequestMetrics requestMetrics) {
+        if (requestMetrics.getDuration() < threshold || !logger.isWarnEnabled()) {
+            return;
+        }
+        if (slowRequestCount.getAndIncrement() % sampleInterval != 0) {
+            return;
+        }
+
+        logger.warn(format(requestMetrics));
+    }
+
+    /**
+     * @return The number of requests which exceeded the threshold, including the ones which have not been logged.
+     */
+    public long getSlowRequestCount() {
+        return slowRequestCount.get();
+    }
+
+    /**
+     * Format the log message of a slow request.
+     *
+     * @param requestMetrics The metrics of the request.
+     * @return The log message.
+     */
+    private static String format(final BushyTailRequestMetrics requestMetrics) {
+        final StringBuilder builder = new StringBuilder("Slow request ").append(requestMetrics.getMethod())
+                .append(' ').append(requestMetrics.getRequestUri()).append(" took ");
+        BushyTailRequestMetrics.appendMillis(builder, requestMetrics.getDuration()).append(" ms (");
+        if (requestMetrics.getEntitySetName() != null) {
+            builder.append("entity set ").append(requestMetrics.getEntitySetName()).append(", ");
+        }
+        builder.append("operation ").append(requestMetrics.getOperation())
+                .append(", status ").append(requestMetrics.getStatus())
+                .append(", request ").append(requestMetrics.getRequestSize()).append(" bytes")
+                .append(", response ").append(requestMetrics.getResponseSize()).append(" bytes)");
+
+        String separator = ": ";
+        for (final BushyTailMetricsPhase phase : PHASES) {
+            final long phaseDuration = requestMetrics.getPhaseDuration(phase);
+            if (phaseDuration > 0) {
+                builder.append(separator).append(phase.name().toLowerCase(Locale.ENGLISH)).append(' ');
+                BushyTailRequestMetrics.appendMillis(builder, phaseDuration).append(" ms");
+                separator = ", ";
+            }
+        }
+
+        return builder.toString();
+    }
+
+}
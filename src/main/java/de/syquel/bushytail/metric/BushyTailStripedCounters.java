@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed set of counters which are striped per core to keep concurrent updates cheap.
+ * <p>
+ * Every stripe occupies its own cache lines, so threads running on different cores do not contend.
+ * Reading a counter sums up all stripes and is thus only weakly consistent with concurrent updates.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailStripedCounters {
+
+    /** The number of slots reserved per stripe, which spans at least two cache lines. */
+    private static final int STRIPE_WIDTH = 16;
+
+    /** The number of stripes, which is a power of two. */
+    static final int STRIPES = stripeCount();
+
+    /** The mask to map a thread onto a stripe. */
+    private static final int STRIPE_MASK = STRIPES - 1;
+
+    /** The counters of all stripes. */
+    private final AtomicLongArray counters;
+
+    /** The number of slots per stripe in use. */
+    private final int slots;
+
+    /**
+     * Constructs {@link BushyTailStripedCounters}.
+     *
+     * @param slots The number of counters.
+     */
+    BushyTailStripedCounters(final int slots) {
+        this.slots = slots;
+        this.counters = new AtomicLongArray(STRIPES * stripeWidth(slots));
+    }
+
+    /**
+     * Add to a counter.
+     *
+     * @param slot The index of the counter.
+     * @param delta The value to add.
+     */
+    void add(final int slot, final long delta) {
+        counters.getAndAdd(stripe() * stripeWidth(slots) + slot, delta);
+    }
+
+    /**
+     * Read a counter.
+     *
+     * @param slot The index of the counter.
+     * @return The sum of the counter over all stripes.
+     */
+    long get(final int slot) {
+        final int width = stripeWidth(slots);
+
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += counters.get(i * width + slot);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Determine the stripe of the current thread.
+     *
+     * @return The index of the stripe.
+     */
+    static int stripe() {
+        return (int) Thread.currentThread().getId() & STRIPE_MASK;
+    }
+
+    /**
+     * Determine the number of slots reserved per stripe.
+     *
+     * @param slots The number of counters.
+     * @return The number of counters rounded up to whole stripe widths.
+     */
+    private static int stripeWidth(final int slots) {
+        return (slots + STRIPE_WIDTH - 1) / STRIPE_WIDTH * STRIPE_WIDTH;
+    }
+
+    /**
+     * Determine the number of stripes from the available processors.
+     *
+     * @return The smallest power of two which is not less than the number of available processors.
+     */
+    private static int stripeCount() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        return processors <= 1 ? 1 : Integer.highestOneBit(processors - 1) << 1;
+    }
+
+}
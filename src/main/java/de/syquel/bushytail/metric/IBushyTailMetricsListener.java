@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+/**
+ * Listener which is notified about every completed request of a {@link de.syquel.bushytail.BushyTail} service.
+ * <p>
+ * The listener is called on the request thread after the response has been written, thus it must be thread-safe
+ * and should return quickly. Exceptions thrown by the listener are logged and do not affect the response.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ * @see de.syquel.bushytail.BushyTailBuilder#setMetricsListener(IBushyTailMetricsListener)
+ * @see BushyTailMetricsCollector
+ */
+public interface IBushyTailMetricsListener {
+
+    /**
+     * Notify about a completed request.
+     *
+     * @param requestMetrics The immutable metrics of the request.
+     */
+    void requestCompleted(BushyTailRequestMetrics requestMetrics);
+
+}
@@ -16,14 +16,20 @@
 
 package de.syquel.bushytail.serializer;
 
+import de.syquel.bushytail.metric.BushyTailMetricsPhase;
+import de.syquel.bushytail.metric.BushyTailRequestMetrics;
 import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
-import org.apache.commons.beanutils.PropertyUtils;
+import de.syquel.bushytail.serializer.plan.OlingoEntityBinder;
 import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.Property;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Converts Olingo entities to Java objects.
@@ -46,6 +52,9 @@ public final class OlingoDeserializer {
 
     /**
      * Convert an {@link Entity Olingo entity} to a JPA entity.
+     * <p>
+     * This resolves the binding plan on every call; use {@link #deserialize(OlingoEntityBinder, Entity)} with a cached binder instead.
+     * </p>
      * @param entityClass the class of the object
      * @param olingoEntity the olingo entity to convert
      * @param <T> the type of the object
@@ -53,26 +62,114 @@ public final class OlingoDeserializer {
      * @throws OlingoDeserializerException if the class cannot be instantiated or a property cannot be set
      */
     public static <T> T deserialize(Class<T> entityClass, Entity olingoEntity) throws OlingoDeserializerException {
-        T entity;
+        final List<String> propertyNames = new ArrayList<String>(olingoEntity.getProperties().size());
+        for (Property property : olingoEntity.getProperties()) {
+            propertyNames.add(property.getName());
+        }
+
+        return deserialize(OlingoEntityBinder.create(entityClass, propertyNames, Collections.<String>emptySet()), olingoEntity);
+    }
+
+    /**
+     * Convert an {@link Entity Olingo entity} to a new JPA entity using a pre-resolved binder.
+     * @param binder the binder of the entity class
+     * @param olingoEntity the olingo entity to convert
+     * @param <T> the type of the object
+     * @return the object
+     * @throws OlingoDeserializerException if the class cannot be instantiated or a property cannot be set
+     */
+    public static <T> T deserialize(OlingoEntityBinder<T> binder, Entity olingoEntity) throws OlingoDeserializerException {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long deserializeStartTime = metrics.startPhase();
+
+        final T entity;
         try {
-            entity = entityClass.newInstance();
+            entity = binder.newInstance();
         } catch (Exception e) {
-            logger.error("Cannot instantiate entity for class '" + entityClass.getName() + "'", e);
-            throw new OlingoDeserializerException("Cannot instantiate entity for class '" + entityClass.getName() + "'", e);
+            final String message = "Cannot instantiate entity for class '" + binder.getEntityClass().getName() + "'";
+            logger.error(message, e);
+            throw new OlingoDeserializerException(message, e);
         }
 
-        for (Property property : olingoEntity.getProperties()) {
-            try {
-                final Method propertyAccessor = PropertyUtils.getPropertyDescriptor(entity, property.getName()).getWriteMethod();
+        bindProperties(binder, entity, olingoEntity, false);
+
+        metrics.endPhase(BushyTailMetricsPhase.DESERIALIZE, deserializeStartTime);
+        return entity;
+    }
+
+    /**
+     * Apply the properties of an {@link Entity Olingo entity} to an existing JPA entity using a pre-resolved binder.
+     * @param binder the binder of the entity class
+     * @param entity the JPA entity to update
+     * @param olingoEntity the olingo entity which contains the new property values
+     * @param replace whether bindable non-key properties which are missing in the olingo entity shall be reset to {@code null}
+     * @param <T> the type of the object
+     * @throws OlingoDeserializerException if a property cannot be set
+     */
+    public static <T> void bind(OlingoEntityBinder<T> binder, T entity, Entity olingoEntity, boolean replace) throws OlingoDeserializerException {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long deserializeStartTime = metrics.startPhase();
+
+        bindProperties(binder, entity, olingoEntity, replace);
 
-                propertyAccessor.invoke(entity, property.getValue());
-            } catch (Exception e) {
-                logger.error("Cannot set property '" + property.getName() + "' of class '" + entityClass.getName() + "'", e);
-                throw new OlingoDeserializerException("Cannot set property '" + property.getName() + "' of class '" + entityClass.getName() + "'", e);
+        metrics.endPhase(BushyTailMetricsPhase.DESERIALIZE, deserializeStartTime);
+    }
+
+    /**
+     * Apply the properties of an {@link Entity Olingo entity} to a JPA entity.
+     * @param binder the binder of the entity class
+     * @param entity the JPA entity to update
+     * @param olingoEntity the olingo entity which contains the new property values
+     * @param replace whether bindable non-key properties which are missing in the olingo entity shall be reset to {@code null}
+     * @param <T> the type of the object
+     * @throws OlingoDeserializerException if a property cannot be set
+     */
+    private static <T> void bindProperties(OlingoEntityBinder<T> binder, T entity, Entity olingoEntity, boolean replace) throws OlingoDeserializerException {
+        final List<Property> properties = olingoEntity.getProperties();
+        final Set<String> missingPropertyNames = replace ? new HashSet<String>(binder.getPropertyNames()) : null;
+
+        for (int i = 0; i < properties.size(); i++) {
+            final Property property = properties.get(i);
+            setProperty(binder, entity, property.getName(), property.getValue());
+
+            if (missingPropertyNames != null) {
+                missingPropertyNames.remove(property.getName());
             }
         }
 
-        return entity;
+        if (missingPropertyNames != null) {
+            for (String propertyName : missingPropertyNames) {
+                if (!binder.isKeyProperty(propertyName)) {
+                    setProperty(binder, entity, propertyName, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set a single property of a JPA entity.
+     * @param binder the binder of the entity class
+     * @param entity the JPA entity
+     * @param propertyName the name of the property
+     * @param value the value created by Olingo
+     * @param <T> the type of the object
+     * @throws OlingoDeserializerException if the property cannot be set
+     */
+    private static <T> void setProperty(OlingoEntityBinder<T> binder, T entity, String propertyName, Object value) throws OlingoDeserializerException {
+        final OlingoEntityBinder.PropertyBinder propertyBinder = binder.getPropertyBinder(propertyName);
+        if (propertyBinder == null) {
+            final String message = "Property '" + propertyName + "' of class '" + binder.getEntityClass().getName() + "' is not writable";
+            logger.debug(message);
+            throw new OlingoDeserializerException(message);
+        }
+
+        try {
+            propertyBinder.bind(entity, value);
+        } catch (Exception e) {
+            final String message = "Cannot set property '" + propertyName + "' of class '" + binder.getEntityClass().getName() + "'";
+            logger.debug(message, e);
+            throw new OlingoDeserializerException(message, e);
+        }
     }
 
 }
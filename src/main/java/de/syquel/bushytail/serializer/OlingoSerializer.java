@@ -16,17 +16,17 @@
 
 package de.syquel.bushytail.serializer;
 
+import de.syquel.bushytail.metric.BushyTailMetricsPhase;
+import de.syquel.bushytail.metric.BushyTailRequestMetrics;
 import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
-import org.apache.commons.beanutils.PropertyUtils;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import de.syquel.bushytail.serializer.plan.OlingoPropertyPlan;
 import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.Property;
-import org.apache.olingo.commons.api.data.ValueType;
 import org.apache.olingo.commons.api.edm.EdmEntityType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
-
 /**
  * Converts Java objects to Olingo entities.
  *
@@ -48,6 +48,9 @@ public final class OlingoSerializer {
 
     /**
      * Convert a JPA entity to an {@link Entity Olingo entity}.
+     * <p>
+     * This resolves the accessor plan on every call; use {@link #serialize(OlingoEntityAccessorPlan, Object)} with a cached plan instead.
+     * </p>
      * @param entityType the type of the entity
      * @param entityObject the object to convert
      * @param <T> the type of the entity
@@ -55,21 +58,69 @@ public final class OlingoSerializer {
      * @throws OlingoSerializerException if the method cannot access a property
      */
     public static <T> Entity serialize(EdmEntityType entityType, T entityObject) throws OlingoSerializerException {
+        return serialize(OlingoEntityAccessorPlan.create(entityType, entityObject.getClass()), entityObject);
+    }
+
+    /**
+     * Convert a JPA entity to an {@link Entity Olingo entity} using a pre-resolved accessor plan.
+     * @param accessorPlan the accessor plan of the entity class
+     * @param entityObject the object to convert
+     * @param <T> the type of the entity
+     * @return an Olingo entity
+     * @throws OlingoSerializerException if the method cannot access a property
+     */
+    public static <T> Entity serialize(OlingoEntityAccessorPlan accessorPlan, T entityObject) throws OlingoSerializerException {
+        return serialize(accessorPlan, entityObject, null);
+    }
+
+    /**
+     * Convert the selected properties of a JPA entity to an {@link Entity Olingo entity} using a pre-resolved accessor plan.
+     * Properties which are not selected are neither read nor added to the Olingo entity.
+     * @param accessorPlan the accessor plan of the entity class
+     * @param entityObject the object to convert
+     * @param selection the selection mask of the accessor plan or {@code null} for all properties
+     * @param <T> the type of the entity
+     * @return an Olingo entity
+     * @throws OlingoSerializerException if the method cannot access a property
+     * @see OlingoEntityAccessorPlan#getSelection(java.util.Collection)
+     */
+    public static <T> Entity serialize(OlingoEntityAccessorPlan accessorPlan, T entityObject, boolean[] selection) throws OlingoSerializerException {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long serializeStartTime = metrics.startPhase();
+
         final Entity olingoEntity = new Entity();
-        olingoEntity.setType(entityType.getFullQualifiedName().getFullQualifiedNameAsString());
+        olingoEntity.setType(accessorPlan.getEntityTypeName());
 
-        for (String propertyName : entityType.getPropertyNames()) {
-            try {
-                final Method propertyAccessor = PropertyUtils.getPropertyDescriptor(entityObject, propertyName).getReadMethod();
-                final Object value = propertyAccessor.invoke(entityObject);
+        final int propertyCount = accessorPlan.getPropertyCount();
+        for (int i = 0; i < propertyCount; i++) {
+            if (selection != null && !selection[i]) {
+                continue;
+            }
+
+            final OlingoPropertyPlan propertyPlan = accessorPlan.getProperty(i);
 
-                olingoEntity.addProperty(new Property(null, propertyName, ValueType.PRIMITIVE, value));
+            final Object value;
+            try {
+                value = propertyPlan.getValue(entityObject);
             } catch (Exception e) {
-                logger.error("Cannot access property '" + propertyName + "' of class '" + entityObject.getClass() + "'", e);
-                throw new OlingoSerializerException("Cannot access property '" + propertyName + "' of class '" + entityObject.getClass() + "'", e);
+                final String message = "Cannot access property '" + propertyPlan.getName() + "' of class '" + entityObject.getClass() + "'";
+                logger.error(message, e);
+                throw new OlingoSerializerException(message, e);
             }
+
+            olingoEntity.addProperty(new Property(propertyPlan.getTypeName(), propertyPlan.getName(), propertyPlan.getValueType(), value));
+        }
+
+        // The ETag is derived from the version property, which is loaded and read even if it has not been selected
+        try {
+            olingoEntity.setETag(accessorPlan.getETag(entityObject));
+        } catch (Exception e) {
+            final String message = "Cannot access version property '" + accessorPlan.getVersionPropertyName() + "' of class '" + entityObject.getClass() + "'";
+            logger.error(message, e);
+            throw new OlingoSerializerException(message, e);
         }
 
+        metrics.endPhase(BushyTailMetricsPhase.SERIALIZE, serializeStartTime);
         return olingoEntity;
     }
 
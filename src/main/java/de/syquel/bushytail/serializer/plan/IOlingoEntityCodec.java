@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import java.util.Map;
+
+/**
+ * Creates JPA entities of a class and provides access to their properties.
+ * <p>
+ * By default, entity classes are accessed through reflection by {@link ReflectiveEntityCodec}.
+ * The {@code bushytail-processor} annotation processor generates implementations which call the constructor,
+ * getters and setters directly instead; these are picked up by {@link de.syquel.bushytail.BushyTailBuilder}.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> The JPA entity class.
+ */
+public interface IOlingoEntityCodec<T> {
+
+    /**
+     * @return The JPA entity class.
+     */
+    Class<T> getEntityClass();
+
+    /**
+     * Create a new, empty JPA entity.
+     *
+     * @return The new JPA entity.
+     * @throws Exception if the JPA entity cannot be instantiated.
+     */
+    T newInstance() throws Exception;
+
+    /**
+     * @return Whether {@link #newInstance()} can create JPA entities.
+     */
+    boolean isInstantiable();
+
+    /**
+     * @return The JavaBeans properties of the JPA entity class by name.
+     */
+    Map<String, OlingoCodecProperty> getProperties();
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+/**
+ * Accessor for a single property of a JPA entity which has been resolved in advance.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public interface IPropertyAccessor {
+
+    /**
+     * Read the property value.
+     *
+     * @param entity The JPA entity to read the property from.
+     * @return The raw Java value of the property.
+     * @throws Exception if the property cannot be read.
+     */
+    Object get(Object entity) throws Exception;
+
+    /**
+     * Write the property value.
+     *
+     * @param entity The JPA entity to write the property to.
+     * @param value The raw Java value of the property.
+     * @throws Exception if the property cannot be written.
+     */
+    void set(Object entity, Object value) throws Exception;
+
+}
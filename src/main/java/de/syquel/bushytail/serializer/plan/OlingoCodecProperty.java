@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+/**
+ * A JavaBeans property of a JPA entity class together with the accessor which reads and writes it.
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class OlingoCodecProperty {
+
+    /** The name of the property. */
+    private final String name;
+
+    /** The declared Java type of the property. */
+    private final Class<?> type;
+
+    /** The accessor of the property. */
+    private final IPropertyAccessor accessor;
+
+    /** Whether the property has a getter. */
+    private final boolean readable;
+
+    /** Whether the property has a setter. */
+    private final boolean writable;
+
+    /**
+     * Constructs {@link OlingoCodecProperty}.
+     *
+     * @param name The name of the property.
+     * @param type The declared Java type of the property.
+     * @param accessor The accessor of the property.
+     * @param readable Whether the property has a getter.
+     * @param writable Whether the property has a setter.
+     */
+    public OlingoCodecProperty(final String name, final Class<?> type, final IPropertyAccessor accessor, final boolean readable, final boolean writable) {
+        this.name = name;
+        this.type = type;
+        this.accessor = accessor;
+        this.readable = readable;
+        this.writable = writable;
+    }
+
+    /**
+     * @return The name of the property.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The declared Java type of the property.
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return The accessor of the property.
+     */
+    public IPropertyAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * @return Whether the property has a getter.
+     */
+    public boolean isReadable() {
+        return readable;
+    }
+
+    /**
+     * @return Whether the property has a setter.
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+
+}
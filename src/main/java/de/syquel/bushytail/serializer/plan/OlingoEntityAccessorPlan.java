@@ -0,0 +1,341 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.constants.EdmTypeKind;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-resolved serialization plan of a JPA entity class for an OData {@link EdmEntityType}.
+ * <p>
+ * All bean introspection happens once on creation, so that serializing an entity is a plain loop over the
+ * {@link OlingoPropertyPlan}s. Instances are immutable and can be shared between threads.
+ * </p>
+ * <p>
+ * If the entity class has a version property, the plan also derives the weak ETag of an entity from its version.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class OlingoEntityAccessorPlan {
+
+    /** The full qualified name of the OData entity type. */
+    private final String entityTypeName;
+
+    /** The JPA entity class. */
+    private final Class<?> entityClass;
+
+    /** The plans of all structural properties in the order of the OData entity type. */
+    private final OlingoPropertyPlan[] properties;
+
+    /** The plans of all structural properties by property name. */
+    private final Map<String, OlingoPropertyPlan> propertiesByName;
+
+    /** The plan of the version property or {@code null} if entities have no ETag. */
+    private final OlingoPropertyPlan versionProperty;
+
+    /**
+     * Constructs {@link OlingoEntityAccessorPlan}.
+     *
+     * @param entityTypeName The full qualified name of the OData entity type.
+     * @param entityClass The JPA entity class.
+     * @param properties The plans of all structural properties.
+     * @param versionPropertyName The name of the version property or {@code null} if entities have no ETag.
+     * @throws OlingoSerializerException if the version property is not a structural property.
+     */
+    private OlingoEntityAccessorPlan(final String entityTypeName, final Class<?> entityClass, final OlingoPropertyPlan[] properties,
+                                     final String versionPropertyName) throws OlingoSerializerException {
+        this.entityTypeName = entityTypeName;
+        this.entityClass = entityClass;
+        this.properties = properties;
+
+        final Map<String, OlingoPropertyPlan> propertiesByName = new HashMap<String, OlingoPropertyPlan>(properties.length * 2);
+        for (final OlingoPropertyPlan property : properties) {
+            propertiesByName.put(property.getName(), property);
+        }
+        this.propertiesByName = propertiesByName;
+
+        versionProperty = versionPropertyName == null ? null : propertiesByName.get(versionPropertyName);
+        if (versionPropertyName != null && versionProperty == null) {
+            throw new OlingoSerializerException("Unknown version property '" + versionPropertyName + "' of class '" + entityClass.getName() + "'");
+        }
+    }
+
+    /**
+     * Resolve the serialization plan of a JPA entity class.
+     *
+     * @param entityType The OData entity type.
+     * @param entityClass The JPA entity class.
+     * @return The serialization plan.
+     * @throws OlingoSerializerException if a property of the OData entity type cannot be read from the JPA entity class.
+     */
+    public static OlingoEntityAccessorPlan create(final EdmEntityType entityType, final Class<?> entityClass) throws OlingoSerializerException {
+        return create(entityType, entityClass, null);
+    }
+
+    /**
+     * Resolve the serialization plan of a JPA entity class whose entities have an ETag.
+     *
+     * @param entityType The OData entity type.
+     * @param entityClass The JPA entity class.
+     * @param versionPropertyName The name of the property the ETag is derived from or {@code null} if entities have no ETag.
+     * @return The serialization plan.
+     * @throws OlingoSerializerException if a property of the OData entity type cannot be read from the JPA entity class.
+     */
+    public static OlingoEntityAccessorPlan create(final EdmEntityType entityType, final Class<?> entityClass, final String versionPropertyName)
+            throws OlingoSerializerException {
+        return create(entityType, ReflectiveEntityCodec.create(entityClass), versionPropertyName);
+    }
+
+    /**
+     * Resolve the serialization plan of a JPA entity class from the properties provided by a codec.
+     *
+     * @param entityType The OData entity type.
+     * @param codec The codec of the JPA entity class.
+     * @param versionPropertyName The name of the property the ETag is derived from or {@code null} if entities have no ETag.
+     * @return The serialization plan.
+     * @throws OlingoSerializerException if a property of the OData entity type cannot be read from the JPA entity class.
+     */
+    public static OlingoEntityAccessorPlan create(final EdmEntityType entityType, final IOlingoEntityCodec<?> codec, final String versionPropertyName)
+            throws OlingoSerializerException {
+        final Class<?> entityClass = codec.getEntityClass();
+        final Map<String, OlingoCodecProperty> codecProperties = codec.getProperties();
+
+        final List<String> propertyNames = entityType.getPropertyNames();
+        final OlingoPropertyPlan[] properties = new OlingoPropertyPlan[propertyNames.size()];
+        for (int i = 0; i < properties.length; i++) {
+            final String propertyName = propertyNames.get(i);
+
+            final OlingoCodecProperty codecProperty = codecProperties.get(propertyName);
+            if (codecProperty == null || !codecProperty.isReadable()) {
+                throw new OlingoSerializerException("No getter for property '" + propertyName + "' of class '" + entityClass.getName() + "'");
+            }
+
+            final EdmProperty edmProperty = entityType.getStructuralProperty(propertyName);
+            final FullQualifiedName edmTypeName = edmProperty.getType().getFullQualifiedName();
+
+            properties[i] = new OlingoPropertyPlan(
+                    propertyName,
+                    edmTypeName.getFullQualifiedNameAsString(),
+                    getValueType(edmProperty),
+                    codecProperty.getAccessor(),
+                    getValueConversion(edmProperty, codecProperty.getType())
+            );
+        }
+
+        return new OlingoEntityAccessorPlan(entityType.getFullQualifiedName().getFullQualifiedNameAsString(), entityClass, properties, versionPropertyName);
+    }
+
+    /**
+     * Format the weak ETag of a version.
+     * <p>
+     * Numeric versions, e.g. of a JPA {@link javax.persistence.Version} field, are used as is.
+     * Other versions, e.g. timestamps, are hashed, so that the ETag only contains characters which are valid in a quoted string.
+     * Temporal versions are hashed by their instant, so that a {@link Date}, a {@link Timestamp} and a {@link Calendar}
+     * of the same instant have the same ETag regardless of the default time zone.
+     * </p>
+     *
+     * @param version The version of an entity.
+     * @return The weak ETag or {@code null} if the version is {@code null}.
+     */
+    public static String formatETag(final Object version) {
+        if (version == null) {
+            return null;
+        }
+        if (version instanceof Number) {
+            return "W/\"" + version + '"';
+        }
+
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(toCanonicalString(version).getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+
+        final StringBuilder eTag = new StringBuilder(digest.length * 2 + 4).append("W/\"");
+        for (final byte b : digest) {
+            eTag.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return eTag.append('"').toString();
+    }
+
+    /**
+     * Convert a non-numeric version into a representation which only depends on its value.
+     *
+     * @param version The version of an entity.
+     * @return The epoch seconds and nanoseconds of a temporal version or the string representation of any other version.
+     */
+    private static String toCanonicalString(final Object version) {
+        final long millis;
+        if (version instanceof Date) {
+            millis = ((Date) version).getTime();
+        } else if (version instanceof Calendar) {
+            millis = ((Calendar) version).getTimeInMillis();
+        } else {
+            return version.toString();
+        }
+
+        // The nanoseconds of a timestamp already include its milliseconds
+        final long seconds = millis / 1000 - (millis % 1000 < 0 ? 1 : 0);
+        final int nanos = version instanceof Timestamp ? ((Timestamp) version).getNanos() : (int) (millis - seconds * 1000) * 1000000;
+
+        return seconds + "." + nanos;
+    }
+
+    /**
+     * Determine the Olingo value type of an OData property.
+     *
+     * @param edmProperty The OData property.
+     * @return The Olingo value type.
+     */
+    private static ValueType getValueType(final EdmProperty edmProperty) {
+        final boolean isEnum = edmProperty.getType().getKind() == EdmTypeKind.ENUM;
+
+        if (edmProperty.isCollection()) {
+            return isEnum ? ValueType.COLLECTION_ENUM : ValueType.COLLECTION_PRIMITIVE;
+        }
+
+        return isEnum ? ValueType.ENUM : ValueType.PRIMITIVE;
+    }
+
+    /**
+     * Determine the conversion of a Java property value into the value expected by Olingo.
+     *
+     * @param edmProperty The OData property.
+     * @param javaType The Java type of the property.
+     * @return The value conversion.
+     */
+    private static OlingoPropertyPlan.ValueConversion getValueConversion(final EdmProperty edmProperty, final Class<?> javaType) {
+        if (Collection.class.isAssignableFrom(javaType)) {
+            return OlingoPropertyPlan.ValueConversion.COLLECTION;
+        }
+
+        if (javaType.isEnum()) {
+            final FullQualifiedName edmTypeName = edmProperty.getType().getFullQualifiedName();
+            if (EdmPrimitiveTypeKind.Int32.getFullQualifiedName().equals(edmTypeName)) {
+                return OlingoPropertyPlan.ValueConversion.ENUM_ORDINAL;
+            }
+
+            return OlingoPropertyPlan.ValueConversion.ENUM_NAME;
+        }
+
+        return OlingoPropertyPlan.ValueConversion.NONE;
+    }
+
+    /**
+     * @return The full qualified name of the OData entity type.
+     */
+    public String getEntityTypeName() {
+        return entityTypeName;
+    }
+
+    /**
+     * @return The JPA entity class.
+     */
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return Whether entities have an ETag.
+     */
+    public boolean hasETag() {
+        return versionProperty != null;
+    }
+
+    /**
+     * @return The name of the version property or {@code null} if entities have no ETag.
+     */
+    public String getVersionPropertyName() {
+        return versionProperty == null ? null : versionProperty.getName();
+    }
+
+    /**
+     * Determine the ETag of an entity from its version property.
+     *
+     * @param entity The JPA entity.
+     * @return The weak ETag or {@code null} if entities have no ETag or the version is {@code null}.
+     * @throws Exception if the version property cannot be read.
+     */
+    public String getETag(final Object entity) throws Exception {
+        return versionProperty == null ? null : formatETag(versionProperty.getValue(entity));
+    }
+
+    /**
+     * @return The count of structural properties.
+     */
+    public int getPropertyCount() {
+        return properties.length;
+    }
+
+    /**
+     * @param index The index of the property in the order of the OData entity type.
+     * @return The plan of the structural property.
+     */
+    public OlingoPropertyPlan getProperty(final int index) {
+        return properties[index];
+    }
+
+    /**
+     * @param name The name of the property.
+     * @return The plan of the structural property or {@code null} if there is none.
+     */
+    public OlingoPropertyPlan getProperty(final String name) {
+        return propertiesByName.get(name);
+    }
+
+    /**
+     * Create the selection mask of a set of properties, which is indexed like {@link #getProperty(int)}.
+     *
+     * @param propertyNames The names of the selected properties or {@code null} for all properties.
+     * @return The selection mask or {@code null} if all properties are selected.
+     */
+    public boolean[] getSelection(final Collection<String> propertyNames) {
+        if (propertyNames == null) {
+            return null;
+        }
+
+        final boolean[] selection = new boolean[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            selection[i] = propertyNames.contains(properties[i].getName());
+        }
+
+        return selection;
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pre-resolved binding plan which creates and populates JPA entities of a class.
+ * <p>
+ * The no-argument constructor, the setters keyed by property name and the coercion of each property are
+ * resolved once on creation, so that binding an Olingo entity does not perform any reflection lookups.
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> The JPA entity class.
+ */
+public final class OlingoEntityBinder<T> {
+
+    /** The codec which creates entities of the JPA entity class. */
+    private final IOlingoEntityCodec<T> codec;
+
+    /** The property binders keyed by property name. */
+    private final Map<String, PropertyBinder> propertyBinders;
+
+    /** The names of the key properties which must not be reset on replacement. */
+    private final Set<String> keyPropertyNames;
+
+    /**
+     * Constructs {@link OlingoEntityBinder}.
+     *
+     * @param codec The codec which creates entities of the JPA entity class.
+     * @param propertyBinders The property binders keyed by property name.
+     * @param keyPropertyNames The names of the key properties.
+     */
+    private OlingoEntityBinder(final IOlingoEntityCodec<T> codec, final Map<String, PropertyBinder> propertyBinders, final Set<String> keyPropertyNames) {
+        this.codec = codec;
+        this.propertyBinders = propertyBinders;
+        this.keyPropertyNames = keyPropertyNames;
+    }
+
+    /**
+     * Resolve the binding plan of a JPA entity class.
+     *
+     * @param <T> The JPA entity class.
+     * @param entityClass The JPA entity class.
+     * @param propertyNames The names of the OData properties which can be bound.
+     * @param keyPropertyNames The names of the OData key properties.
+     * @return The binding plan.
+     * @throws OlingoDeserializerException if the JPA entity class has no accessible no-argument constructor.
+     */
+    public static <T> OlingoEntityBinder<T> create(final Class<T> entityClass, final Collection<String> propertyNames,
+                                                   final Collection<String> keyPropertyNames) throws OlingoDeserializerException {
+        return create(ReflectiveEntityCodec.create(entityClass), propertyNames, keyPropertyNames);
+    }
+
+    /**
+     * Resolve the binding plan of a JPA entity class from the properties provided by a codec.
+     *
+     * @param <T> The JPA entity class.
+     * @param codec The codec of the JPA entity class.
+     * @param propertyNames The names of the OData properties which can be bound.
+     * @param keyPropertyNames The names of the OData key properties.
+     * @return The binding plan.
+     * @throws OlingoDeserializerException if the JPA entity class cannot be instantiated.
+     */
+    public static <T> OlingoEntityBinder<T> create(final IOlingoEntityCodec<T> codec, final Collection<String> propertyNames,
+                                                   final Collection<String> keyPropertyNames) throws OlingoDeserializerException {
+        if (!codec.isInstantiable()) {
+            throw new OlingoDeserializerException("No accessible no-argument constructor for class '" + codec.getEntityClass().getName() + "'");
+        }
+
+        final Map<String, PropertyBinder> propertyBinders = new HashMap<String, PropertyBinder>();
+        for (final String propertyName : new HashSet<String>(propertyNames)) {
+            final OlingoCodecProperty codecProperty = codec.getProperties().get(propertyName);
+            if (codecProperty == null || !codecProperty.isWritable()) {
+                continue;
+            }
+
+            propertyBinders.put(propertyName, new PropertyBinder(codecProperty.getAccessor(), OlingoValueCoercion.forType(codecProperty.getType())));
+        }
+
+        return new OlingoEntityBinder<T>(codec, Collections.unmodifiableMap(propertyBinders),
+                Collections.unmodifiableSet(new HashSet<String>(keyPropertyNames)));
+    }
+
+    /**
+     * @return The JPA entity class.
+     */
+    public Class<T> getEntityClass() {
+        return codec.getEntityClass();
+    }
+
+    /**
+     * Create a new, empty JPA entity.
+     *
+     * @return The new JPA entity.
+     * @throws Exception if the JPA entity cannot be instantiated.
+     */
+    public T newInstance() throws Exception {
+        return codec.newInstance();
+    }
+
+    /**
+     * Get the binder of a property.
+     *
+     * @param propertyName The name of the property.
+     * @return The binder or {@code null} if the property cannot be bound.
+     */
+    public PropertyBinder getPropertyBinder(final String propertyName) {
+        return propertyBinders.get(propertyName);
+    }
+
+    /**
+     * @return The names of all bindable properties.
+     */
+    public Set<String> getPropertyNames() {
+        return propertyBinders.keySet();
+    }
+
+    /**
+     * @param propertyName The name of a property.
+     * @return Whether the property is part of the key.
+     */
+    public boolean isKeyProperty(final String propertyName) {
+        return keyPropertyNames.contains(propertyName);
+    }
+
+
+    /**
+     * Binder of a single property which coerces and writes values.
+     */
+    public static final class PropertyBinder {
+
+        /** The accessor of the property. */
+        private final IPropertyAccessor accessor;
+
+        /** The coercion into the property type. */
+        private final OlingoValueCoercion coercion;
+
+        /**
+         * Constructs {@link PropertyBinder}.
+         *
+         * @param accessor The accessor of the property.
+         * @param coercion The coercion into the property type.
+         */
+        PropertyBinder(final IPropertyAccessor accessor, final OlingoValueCoercion coercion) {
+            this.accessor = accessor;
+            this.coercion = coercion;
+        }
+
+        /**
+         * Coerce a value created by Olingo and write it to the JPA entity.
+         *
+         * @param entity The JPA entity.
+         * @param value The value created by Olingo.
+         * @throws Exception if the value cannot be coerced or written.
+         */
+        public void bind(final Object entity, final Object value) throws Exception {
+            accessor.set(entity, coercion.coerce(value));
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import org.apache.olingo.commons.api.data.ValueType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Pre-resolved serialization information of a single OData property.
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class OlingoPropertyPlan {
+
+    /**
+     * Conversion of the raw Java value into the value expected by Olingo.
+     */
+    enum ValueConversion {
+        /** The Java value is passed to Olingo as is. */
+        NONE,
+        /** A Java enumeration is mapped to its ordinal. */
+        ENUM_ORDINAL,
+        /** A Java enumeration is mapped to its name. */
+        ENUM_NAME,
+        /** A Java collection is mapped to a list. */
+        COLLECTION
+    }
+
+    /** The name of the OData property. */
+    private final String name;
+
+    /** The full qualified name of the OData property type. */
+    private final String typeName;
+
+    /** The Olingo value type of the property. */
+    private final ValueType valueType;
+
+    /** The accessor of the JPA entity property. */
+    private final IPropertyAccessor accessor;
+
+    /** The conversion of the raw Java value. */
+    private final ValueConversion valueConversion;
+
+    /**
+     * Constructs {@link OlingoPropertyPlan}.
+     *
+     * @param name The name of the OData property.
+     * @param typeName The full qualified name of the OData property type.
+     * @param valueType The Olingo value type of the property.
+     * @param accessor The accessor of the JPA entity property.
+     * @param valueConversion The conversion of the raw Java value.
+     */
+    OlingoPropertyPlan(final String name, final String typeName, final ValueType valueType, final IPropertyAccessor accessor,
+                       final ValueConversion valueConversion) {
+        this.name = name;
+        this.typeName = typeName;
+        this.valueType = valueType;
+        this.accessor = accessor;
+        this.valueConversion = valueConversion;
+    }
+
+    /**
+     * @return The name of the OData property.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The full qualified name of the OData property type.
+     */
+    public String getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * @return The Olingo value type of the property.
+     */
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    /**
+     * @return The accessor of the JPA entity property.
+     */
+    public IPropertyAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * Read the property of a JPA entity and convert it into the value expected by Olingo.
+     *
+     * @param entity The JPA entity.
+     * @return The Olingo value of the property.
+     * @throws Exception if the property cannot be read.
+     */
+    public Object getValue(final Object entity) throws Exception {
+        final Object value = accessor.get(entity);
+        if (value == null) {
+            return null;
+        }
+
+        switch (valueConversion) {
+            case ENUM_ORDINAL:
+                return ((Enum<?>) value).ordinal();
+            case ENUM_NAME:
+                return ((Enum<?>) value).name();
+            case COLLECTION:
+                if (value instanceof List) {
+                    return value;
+                }
+
+                return new ArrayList<Object>((Collection<?>) value);
+            default:
+                return value;
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Pre-computed coercion of a value created by Olingo into the Java type of a JPA entity property.
+ * <p>
+ * Olingo creates the default Java type of each primitive type, e.g. {@link Calendar} for {@code Edm.Date}
+ * or {@link Long} for {@code Edm.Int64}. The coercion to the declared property type is determined once per property.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class OlingoValueCoercion {
+
+    /**
+     * The kinds of supported coercions.
+     */
+    private enum Kind {
+        /** The value is passed as is. */
+        NONE,
+        /** Coerce to {@link Short}. */
+        SHORT,
+        /** Coerce to {@link Integer}. */
+        INTEGER,
+        /** Coerce to {@link Long}. */
+        LONG,
+        /** Coerce to {@link Double}. */
+        DOUBLE,
+        /** Coerce to {@link BigInteger}. */
+        BIG_INTEGER,
+        /** Coerce to {@link Date}. */
+        DATE,
+        /** Coerce to {@link Timestamp}. */
+        TIMESTAMP,
+        /** Coerce to {@link Time}. */
+        TIME,
+        /** Coerce to {@link Calendar}. */
+        CALENDAR,
+        /** Coerce to {@link UUID}. */
+        UUID,
+        /** Coerce an ordinal or name to an enumeration constant. */
+        ENUM,
+        /** Coerce a list to a set. */
+        SET
+    }
+
+    /** The coercion which passes values as is. */
+    private static final OlingoValueCoercion NO_COERCION = new OlingoValueCoercion(Kind.NONE, null);
+
+    /** The kind of coercion. */
+    private final Kind kind;
+
+    /** The enumeration type if {@link #kind} is {@link Kind#ENUM}. */
+    @SuppressWarnings("rawtypes")
+    private final Class<? extends Enum> enumType;
+
+    /** The enumeration constants by ordinal if {@link #kind} is {@link Kind#ENUM}. */
+    private final Object[] enumConstants;
+
+    /**
+     * Constructs {@link OlingoValueCoercion}.
+     *
+     * @param kind The kind of coercion.
+     * @param enumType The enumeration type if the kind is {@link Kind#ENUM}.
+     */
+    @SuppressWarnings("rawtypes")
+    private OlingoValueCoercion(final Kind kind, final Class<? extends Enum> enumType) {
+        this.kind = kind;
+        this.enumType = enumType;
+        this.enumConstants = enumType == null ? null : enumType.getEnumConstants();
+    }
+
+    /**
+     * Determine the coercion into a Java property type.
+     *
+     * @param targetType The declared Java type of the property.
+     * @return The coercion.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static OlingoValueCoercion forType(final Class<?> targetType) {
+        if (targetType.isEnum()) {
+            return new OlingoValueCoercion(Kind.ENUM, (Class<? extends Enum>) targetType);
+        }
+
+        final Kind kind;
+        if (Short.class.equals(targetType)) {
+            kind = Kind.SHORT;
+        } else if (Integer.class.equals(targetType)) {
+            kind = Kind.INTEGER;
+        } else if (Long.class.equals(targetType)) {
+            kind = Kind.LONG;
+        } else if (Double.class.equals(targetType)) {
+            kind = Kind.DOUBLE;
+        } else if (BigInteger.class.equals(targetType)) {
+            kind = Kind.BIG_INTEGER;
+        } else if (Timestamp.class.equals(targetType)) {
+            kind = Kind.TIMESTAMP;
+        } else if (Time.class.equals(targetType)) {
+            kind = Kind.TIME;
+        } else if (Date.class.equals(targetType)) {
+            kind = Kind.DATE;
+        } else if (Calendar.class.equals(targetType)) {
+            kind = Kind.CALENDAR;
+        } else if (UUID.class.equals(targetType)) {
+            kind = Kind.UUID;
+        } else if (Set.class.isAssignableFrom(targetType)) {
+            kind = Kind.SET;
+        } else {
+            return NO_COERCION;
+        }
+
+        return new OlingoValueCoercion(kind, null);
+    }
+
+    /**
+     * Coerce a value created by Olingo into the Java property type.
+     *
+     * @param value The value created by Olingo.
+     * @return The coerced value.
+     * @throws IllegalArgumentException if the value cannot be coerced.
+     */
+    @SuppressWarnings("unchecked")
+    public Object coerce(final Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        switch (kind) {
+            case SHORT:
+                return ((Number) value).shortValue();
+            case INTEGER:
+                return ((Number) value).intValue();
+            case LONG:
+                return ((Number) value).longValue();
+            case DOUBLE:
+                return ((Number) value).doubleValue();
+            case BIG_INTEGER:
+                return value instanceof BigInteger ? value : BigInteger.valueOf(((Number) value).longValue());
+            case TIMESTAMP:
+                return value instanceof Timestamp ? value : new Timestamp(toMillis(value));
+            case TIME:
+                return value instanceof Time ? value : new Time(toMillis(value));
+            case DATE:
+                return value instanceof Date ? value : new Date(toMillis(value));
+            case CALENDAR:
+                if (value instanceof Calendar) {
+                    return value;
+                }
+
+                final Calendar calendar = Calendar.getInstance();
+                calendar.setTimeInMillis(toMillis(value));
+                return calendar;
+            case UUID:
+                return value instanceof UUID ? value : java.util.UUID.fromString(value.toString());
+            case ENUM:
+                if (value instanceof Number) {
+                    final int ordinal = ((Number) value).intValue();
+                    if (ordinal < 0 || ordinal >= enumConstants.length) {
+                        throw new IllegalArgumentException("Ordinal " + value + " is out of range for enum '" + enumType.getName() + "'");
+                    }
+
+                    return enumConstants[ordinal];
+                }
+
+                return Enum.valueOf(enumType, value.toString());
+            case SET:
+                return value instanceof Set ? value : new LinkedHashSet<Object>((Collection<?>) value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Determine the epoch milliseconds of a temporal value.
+     *
+     * @param value A {@link Calendar} or {@link Date}.
+     * @return The epoch milliseconds.
+     */
+    private static long toMillis(final Object value) {
+        if (value instanceof Calendar) {
+            return ((Calendar) value).getTimeInMillis();
+        }
+
+        return ((Date) value).getTime();
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import org.apache.commons.beanutils.PropertyUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link IOlingoEntityCodec} based on the bean introspection of a JPA entity class.
+ * <p>
+ * The constructor and property methods are looked up once on creation and accessed through {@link ReflectivePropertyAccessor}s.
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ *
+ * @param <T> The JPA entity class.
+ */
+public final class ReflectiveEntityCodec<T> implements IOlingoEntityCodec<T> {
+
+    /** The JPA entity class. */
+    private final Class<T> entityClass;
+
+    /** The no-argument constructor of the JPA entity class or {@code null} if it has no accessible one. */
+    private final Constructor<T> constructor;
+
+    /** The JavaBeans properties by name. */
+    private final Map<String, OlingoCodecProperty> properties;
+
+    /**
+     * Constructs {@link ReflectiveEntityCodec}.
+     *
+     * @param entityClass The JPA entity class.
+     * @param constructor The no-argument constructor or {@code null}.
+     * @param properties The JavaBeans properties by name.
+     */
+    private ReflectiveEntityCodec(final Class<T> entityClass, final Constructor<T> constructor, final Map<String, OlingoCodecProperty> properties) {
+        this.entityClass = entityClass;
+        this.constructor = constructor;
+        this.properties = properties;
+    }
+
+    /**
+     * Introspect a JPA entity class.
+     *
+     * @param <T> The JPA entity class.
+     * @param entityClass The JPA entity class.
+     * @return The codec.
+     */
+    public static <T> ReflectiveEntityCodec<T> create(final Class<T> entityClass) {
+        Constructor<T> constructor;
+        try {
+            constructor = entityClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (Exception e) {
+            // Entities can still be serialized, only not created
+            constructor = null;
+        }
+
+        final Map<String, OlingoCodecProperty> properties = new HashMap<String, OlingoCodecProperty>();
+        for (final PropertyDescriptor propertyDescriptor : PropertyUtils.getPropertyDescriptors(entityClass)) {
+            final Method readMethod = propertyDescriptor.getReadMethod();
+            final Method writeMethod = propertyDescriptor.getWriteMethod();
+            if (readMethod == null && writeMethod == null) {
+                continue;
+            }
+
+            properties.put(propertyDescriptor.getName(), new OlingoCodecProperty(
+                    propertyDescriptor.getName(),
+                    propertyDescriptor.getPropertyType(),
+                    new ReflectivePropertyAccessor(readMethod, writeMethod),
+                    readMethod != null,
+                    writeMethod != null
+            ));
+        }
+
+        return new ReflectiveEntityCodec<T>(entityClass, constructor, Collections.unmodifiableMap(properties));
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    @Override
+    public T newInstance() throws Exception {
+        if (constructor == null) {
+            throw new InstantiationException("No accessible no-argument constructor for class '" + entityClass.getName() + "'");
+        }
+
+        return constructor.newInstance();
+    }
+
+    @Override
+    public boolean isInstantiable() {
+        return constructor != null;
+    }
+
+    @Override
+    public Map<String, OlingoCodecProperty> getProperties() {
+        return properties;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import java.lang.reflect.Method;
+
+/**
+ * {@link IPropertyAccessor} based on getter and setter methods which have been looked up once.
+ * <p>
+ * Access checks are suppressed in advance, so that the JVM can inflate the invocation
+ * into a generated accessor after a few calls.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class ReflectivePropertyAccessor implements IPropertyAccessor {
+
+    /** The getter of the property or {@code null} if the property is write-only. */
+    private final Method readMethod;
+
+    /** The setter of the property or {@code null} if the property is read-only. */
+    private final Method writeMethod;
+
+    /**
+     * Constructs {@link ReflectivePropertyAccessor}.
+     *
+     * @param readMethod The getter of the property or {@code null} if the property is write-only.
+     * @param writeMethod The setter of the property or {@code null} if the property is read-only.
+     */
+    public ReflectivePropertyAccessor(final Method readMethod, final Method writeMethod) {
+        this.readMethod = readMethod;
+        this.writeMethod = writeMethod;
+
+        suppressAccessChecks(readMethod);
+        suppressAccessChecks(writeMethod);
+    }
+
+    @Override
+    public Object get(final Object entity) throws Exception {
+        if (readMethod == null) {
+            throw new UnsupportedOperationException("Property is write-only");
+        }
+
+        return readMethod.invoke(entity);
+    }
+
+    @Override
+    public void set(final Object entity, final Object value) throws Exception {
+        if (writeMethod == null) {
+            throw new UnsupportedOperationException("Property is read-only");
+        }
+
+        writeMethod.invoke(entity, value);
+    }
+
+    /**
+     * Suppress the Java access checks of a method.
+     *
+     * @param method The method or {@code null}.
+     */
+    private static void suppressAccessChecks(final Method method) {
+        if (method == null) {
+            return;
+        }
+
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException e) {
+            // Public accessors are still invocable, only slower
+        }
+    }
+
+}
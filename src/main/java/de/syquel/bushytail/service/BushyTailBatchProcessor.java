@@ -0,0 +1,836 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.controller.IBushyTailBulkController;
+import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.metric.BushyTailMetricsPhase;
+import de.syquel.bushytail.metric.BushyTailOperation;
+import de.syquel.bushytail.metric.BushyTailRequestMetrics;
+import de.syquel.bushytail.serializer.OlingoDeserializer;
+import de.syquel.bushytail.serializer.OlingoSerializer;
+import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.transaction.IBushyTailTransactionManager;
+import de.syquel.bushytail.transaction.exception.BushyTailTransactionException;
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.*;
+import org.apache.olingo.server.api.batch.BatchFacade;
+import org.apache.olingo.server.api.deserializer.batch.BatchOptions;
+import org.apache.olingo.server.api.deserializer.batch.BatchRequestPart;
+import org.apache.olingo.server.api.deserializer.batch.ODataResponsePart;
+import org.apache.olingo.server.api.processor.BatchProcessor;
+import org.apache.olingo.server.api.serializer.EntitySerializerOptions;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Processes {@code $batch} requests.
+ * <p>
+ * All operations of a change set run in one transaction of the {@link IBushyTailTransactionManager}, if one is configured.
+ * Consecutive creations, updates or deletions of the same entity set within a change set are handed to
+ * the {@link IBushyTailBulkController} in one call. Consecutive read requests outside of change sets do not depend
+ * on each other, so they are processed concurrently by the read executor, if one is configured, each with its own
+ * Olingo handler. One instance is shared by all requests of a {@link de.syquel.bushytail.BushyTail} instance.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailBatchProcessor implements BatchProcessor {
+
+    /** The logger. */
+    private static final Logger logger = LoggerFactory.getLogger(BushyTailBatchProcessor.class);
+
+    /** The preference which continues a batch after a failed request. */
+    private static final String PREFERENCE_CONTINUE_ON_ERROR = "odata.continue-on-error";
+
+    /** The shared service context. */
+    private final BushyTailServiceContext serviceContext;
+
+    /** The entity processor for concurrently processed read requests. */
+    private final BushyTailEntityProcessor entityProcessor;
+
+    /** The entity collection processor for concurrently processed read requests. */
+    private final BushyTailEntityCollectionProcessor entityCollectionProcessor;
+
+    /** The transaction manager of change sets or {@code null} if change sets are not transactional. */
+    private final IBushyTailTransactionManager transactionManager;
+
+    /** The executor of concurrent read requests or {@code null} if all requests are processed sequentially. */
+    private final ExecutorService readExecutor;
+
+    /**
+     * Constructs {@link BushyTailBatchProcessor}.
+     *
+     * @param serviceContext The shared service context.
+     * @param entityProcessor The entity processor for concurrently processed read requests.
+     * @param entityCollectionProcessor The entity collection processor for concurrently processed read requests.
+     * @param transactionManager The transaction manager of change sets or {@code null} if change sets are not transactional.
+     * @param readExecutor The executor of concurrent read requests or {@code null} if all requests are processed sequentially.
+     */
+    public BushyTailBatchProcessor(final BushyTailServiceContext serviceContext, final BushyTailEntityProcessor entityProcessor,
+                                   final BushyTailEntityCollectionProcessor entityCollectionProcessor,
+                                   final IBushyTailTransactionManager transactionManager, final ExecutorService readExecutor) {
+        this.serviceContext = serviceContext;
+        this.entityProcessor = entityProcessor;
+        this.entityCollectionProcessor = entityCollectionProcessor;
+        this.transactionManager = transactionManager;
+        this.readExecutor = readExecutor;
+    }
+
+    @Override
+    public void init(OData oData, ServiceMetadata serviceMetadata) {
+        // Olingo calls this for every request; the shared instances are taken from the service context instead.
+    }
+
+    @Override
+    public void processBatch(BatchFacade batchFacade, ODataRequest oDataRequest, ODataResponse oDataResponse) throws ODataApplicationException, ODataLibraryException {
+        // The operations of the batch are processed as part of this request, so they do not claim it for their entity set
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        metrics.setTarget(null, BushyTailOperation.BATCH);
+
+        final String boundary = batchFacade.extractBoundaryFromContentType(oDataRequest.getHeader(HttpHeader.CONTENT_TYPE));
+        final BatchOptions batchOptions = BatchOptions.with()
+                .rawBaseUri(oDataRequest.getRawBaseUri())
+                .rawServiceResolutionUri(oDataRequest.getRawServiceResolutionUri())
+                .build();
+        final long parseStartTime = metrics.startPhase();
+        final List<BatchRequestPart> requestParts = serviceContext.getOData().createFixedFormatDeserializer()
+                .parseBatchRequest(oDataRequest.getBody(), boundary, batchOptions);
+        metrics.endPhase(BushyTailMetricsPhase.PARSE, parseStartTime);
+
+        final boolean continueOnError = isContinueOnError(oDataRequest);
+        final List<ODataResponsePart> responseParts = new ArrayList<ODataResponsePart>(requestParts.size());
+        int index = 0;
+        while (index < requestParts.size()) {
+            int end = index;
+            while (readExecutor != null && end < requestParts.size() && isConcurrentRead(requestParts.get(end))) {
+                end++;
+            }
+
+            final List<ODataResponsePart> stepResponseParts;
+            if (end - index > 1) {
+                stepResponseParts = processReadsConcurrently(requestParts.subList(index, end));
+            } else {
+                end = index + 1;
+                stepResponseParts = Collections.singletonList(processPart(batchFacade, requestParts.get(index)));
+            }
+
+            boolean failed = false;
+            for (final ODataResponsePart responsePart : stepResponseParts) {
+                responseParts.add(responsePart);
+                if (!continueOnError && isFailed(responsePart.getResponses())) {
+                    failed = true;
+                    break;
+                }
+            }
+            if (failed) {
+                break;
+            }
+
+            index = end;
+        }
+
+        final String responseBoundary = "batch_" + UUID.randomUUID();
+        oDataResponse.setContent(serviceContext.getOData().createFixedFormatSerializer().batchResponse(responseParts, responseBoundary));
+        oDataResponse.setStatusCode(HttpStatusCode.ACCEPTED.getStatusCode());
+        oDataResponse.setHeader(HttpHeader.CONTENT_TYPE, ContentType.MULTIPART_MIXED.toContentTypeString() + ";boundary=" + responseBoundary);
+        if (continueOnError) {
+            oDataResponse.setHeader(HttpHeader.PREFERENCE_APPLIED, PREFERENCE_CONTINUE_ON_ERROR);
+        }
+    }
+
+    @Override
+    public ODataResponsePart processChangeSet(BatchFacade batchFacade, List<ODataRequest> requests) throws ODataApplicationException, ODataLibraryException {
+        // Requests which refer to the result of a previous request by its Content-ID must be rewritten by Olingo one by one
+        final boolean bulk = !hasContentIdReferences(requests);
+
+        beginTransaction();
+        ODataRequest currentRequest = null;
+        try {
+            final List<ODataResponse> responses = new ArrayList<ODataResponse>(requests.size());
+            int index = 0;
+            while (index < requests.size()) {
+                currentRequest = requests.get(index);
+                final List<BulkOperation> operations = new ArrayList<BulkOperation>();
+                final BulkOperation operation = bulk ? getBulkOperation(requests.get(index)) : null;
+                int end = index + 1;
+                if (operation != null) {
+                    operations.add(operation);
+                    while (end < requests.size()) {
+                        final BulkOperation nextOperation = getBulkOperation(requests.get(end));
+                        if (!operation.isCombinableWith(nextOperation)) {
+                            break;
+                        }
+
+                        operations.add(nextOperation);
+                        end++;
+                    }
+                }
+
+                final List<ODataResponse> stepResponses;
+                if (operations.size() > 1) {
+                    stepResponses = processBulk(operations, requests.subList(index, end));
+                } else {
+                    stepResponses = Collections.singletonList(batchFacade.handleODataRequest(requests.get(index)));
+                }
+
+                // A change set fails as a whole with the response of the failed request
+                for (final ODataResponse response : stepResponses) {
+                    if (isFailed(Collections.singletonList(response))) {
+                        rollbackTransaction();
+                        return new ODataResponsePart(response, false);
+                    }
+                }
+
+                responses.addAll(stepResponses);
+                index = end;
+            }
+
+            currentRequest = null;
+            commitTransaction();
+            return new ODataResponsePart(responses, true);
+        } catch (ODataApplicationException e) {
+            rollbackTransaction();
+            return new ODataResponsePart(createErrorResponse(currentRequest, e), false);
+        } catch (ODataLibraryException e) {
+            rollbackTransaction();
+            throw e;
+        } catch (RuntimeException e) {
+            rollbackTransaction();
+            throw e;
+        }
+    }
+
+    /**
+     * Process a single part of a batch by Olingo and buffer its streamed content.
+     *
+     * @param batchFacade The batch facade of Olingo.
+     * @param requestPart The part of the batch.
+     * @return The responses of the part.
+     * @throws ODataApplicationException if the part cannot be processed.
+     * @throws ODataLibraryException if the part cannot be processed.
+     */
+    private ODataResponsePart processPart(final BatchFacade batchFacade, final BatchRequestPart requestPart) throws ODataApplicationException, ODataLibraryException {
+        final ODataResponsePart responsePart = batchFacade.handleBatchRequest(requestPart);
+        for (final ODataResponse response : responsePart.getResponses()) {
+            bufferContent(response);
+        }
+
+        return responsePart;
+    }
+
+    /**
+     * Process independent read requests concurrently, each with its own Olingo handler.
+     *
+     * @param requestParts The parts of the batch which consist of a single read request each.
+     * @return The responses of the parts in the same order.
+     * @throws ODataApplicationException if the processing is interrupted or fails unexpectedly.
+     */
+    private List<ODataResponsePart> processReadsConcurrently(final List<BatchRequestPart> requestParts) throws ODataApplicationException {
+        final List<Future<ODataResponsePart>> futures = new ArrayList<Future<ODataResponsePart>>(requestParts.size());
+        for (final BatchRequestPart requestPart : requestParts) {
+            final ODataRequest request = requestPart.getRequests().get(0);
+            futures.add(readExecutor.submit(new Callable<ODataResponsePart>() {
+                @Override
+                public ODataResponsePart call() {
+                    final ODataHandler handler = serviceContext.getOData().createRawHandler(serviceContext.getServiceMetadata());
+                    handler.register(entityProcessor);
+                    handler.register(entityCollectionProcessor);
+
+                    // The content is written within the task, so cursors are read and closed by the thread which opened them
+                    final ODataResponse response = handler.process(request);
+                    bufferContent(response);
+                    return new ODataResponsePart(response, false);
+                }
+            }));
+        }
+
+        final List<ODataResponsePart> responseParts = new ArrayList<ODataResponsePart>(futures.size());
+        try {
+            for (final Future<ODataResponsePart> future : futures) {
+                responseParts.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new ODataApplicationException("Batch has been interrupted", HttpStatusCode.SERVICE_UNAVAILABLE.getStatusCode(), Locale.ENGLISH, e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            throw new ODataApplicationException("Cannot process batch request", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e.getCause());
+        }
+
+        return responseParts;
+    }
+
+    /**
+     * Process consecutive, combinable requests of a change set with a single controller call.
+     *
+     * @param <T> The class type of the JPA entities.
+     * @param operations The bulk operations of the requests, which all have the same kind and entity set.
+     * @param requests The requests.
+     * @return The responses of the requests in the same order or the error response of the failed request.
+     * @throws ODataApplicationException if the change set cannot be processed.
+     * @throws ODataLibraryException if the request or response content type is not supported.
+     */
+    private <T> List<ODataResponse> processBulk(final List<BulkOperation> operations, final List<ODataRequest> requests) throws ODataApplicationException, ODataLibraryException {
+        final EdmEntitySet edmEntitySet = operations.get(0).getEntitySet();
+        @SuppressWarnings("unchecked")
+        final Class<T> entityClass = (Class<T>) serviceContext.getEntityClass(edmEntitySet.getEntityType().getFullQualifiedName());
+        final IBushyTailController<T> controller = serviceContext.getController(entityClass);
+
+        switch (operations.get(0).getKind()) {
+            case UPDATE:
+                return updateAll(controller, entityClass, operations, requests);
+            case DELETE:
+                return deleteAll(controller, operations, requests);
+            default:
+                return createAll(controller, entityClass, edmEntitySet, requests);
+        }
+    }
+
+    /**
+     * Create the entities of consecutive requests of a change set with a single controller call.
+     *
+     * @param <T> The class type of the JPA entities.
+     * @param controller The controller of the entity set.
+     * @param entityClass The JPA entity class.
+     * @param edmEntitySet The entity set of all requests.
+     * @param requests The creation requests.
+     * @return The responses of the requests in the same order or the error response of the request whose entity cannot be deserialized or serialized.
+     * @throws ODataLibraryException if the request or response content type is not supported.
+     */
+    private <T> List<ODataResponse> createAll(final IBushyTailController<T> controller, final Class<T> entityClass, final EdmEntitySet edmEntitySet,
+                                              final List<ODataRequest> requests) throws ODataLibraryException {
+        final List<T> entities = new ArrayList<T>(requests.size());
+        for (final ODataRequest request : requests) {
+            final Entity olingoEntity = serviceContext.getDeserializer(ContentType.parse(request.getHeader(HttpHeader.CONTENT_TYPE)))
+                    .entity(request.getBody(), edmEntitySet.getEntityType()).getEntity();
+            try {
+                entities.add(OlingoDeserializer.deserialize(serviceContext.getEntityBinder(entityClass), olingoEntity));
+            } catch (OlingoDeserializerException e) {
+                return Collections.singletonList(createErrorResponse(request, new ODataApplicationException("Cannot deserialize Olingo entity '" + olingoEntity.getType() + "'",
+                        HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH, e)));
+            }
+        }
+
+        final List<T> createdEntities;
+        if (controller instanceof IBushyTailBulkController) {
+            createdEntities = ((IBushyTailBulkController<T>) controller).createAll(entities);
+        } else {
+            createdEntities = new ArrayList<T>(entities.size());
+            for (final T entity : entities) {
+                final T createdEntity = controller.create(entity);
+                createdEntities.add(createdEntity == null ? entity : createdEntity);
+            }
+        }
+
+        for (final T createdEntity : createdEntities) {
+            serviceContext.invalidateCachedEntity(edmEntitySet.getEntityType(), createdEntity);
+        }
+
+        final ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).suffix(ContextURL.Suffix.ENTITY).build();
+        final EntitySerializerOptions serializerOptions = EntitySerializerOptions.with().contextURL(contextUrl).build();
+        final List<ODataResponse> responses = new ArrayList<ODataResponse>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final ODataRequest request = requests.get(i);
+            final ContentType responseContentType = getResponseContentType(request);
+
+            final Entity createdOlingoEntity;
+            try {
+                createdOlingoEntity = OlingoSerializer.serialize(serviceContext.getAccessorPlan(entityClass), createdEntities.get(i));
+            } catch (OlingoSerializerException e) {
+                return Collections.singletonList(createErrorResponse(request, new ODataApplicationException("Cannot serialize Olingo entity '" + edmEntitySet.getEntityType().getName() + "'",
+                        HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e)));
+            }
+
+            final ODataResponse response = new ODataResponse();
+            response.setContent(serviceContext.getSerializer(responseContentType)
+                    .entity(serviceContext.getServiceMetadata(), edmEntitySet.getEntityType(), createdOlingoEntity, serializerOptions).getContent());
+            response.setStatusCode(HttpStatusCode.CREATED.getStatusCode());
+            response.setHeader(HttpHeader.CONTENT_TYPE, responseContentType.toContentTypeString());
+            if (createdOlingoEntity.getETag() != null) {
+                response.setHeader(HttpHeader.ETAG, createdOlingoEntity.getETag());
+            }
+            copyContentId(request, response);
+
+            responses.add(response);
+        }
+
+        return responses;
+    }
+
+    /**
+     * Update the entities of consecutive requests of a change set with a single controller call.
+     *
+     * @param <T> The class type of the JPA entities.
+     * @param controller The controller of the entity set.
+     * @param entityClass The JPA entity class.
+     * @param operations The update operations of the requests.
+     * @param requests The update requests.
+     * @return The responses of the requests in the same order or the error response of the request whose entity cannot be found or deserialized.
+     * @throws ODataLibraryException if the request content type is not supported.
+     */
+    private <T> List<ODataResponse> updateAll(final IBushyTailController<T> controller, final Class<T> entityClass, final List<BulkOperation> operations,
+                                              final List<ODataRequest> requests) throws ODataLibraryException {
+        final List<T> entities = new ArrayList<T>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final ODataRequest request = requests.get(i);
+            final BulkOperation operation = operations.get(i);
+
+            final T entity = controller.read(operation.getKeyPredicates());
+            if (entity == null) {
+                return Collections.singletonList(createErrorResponse(request,
+                        new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH)));
+            }
+
+            final Entity olingoEntity = serviceContext.getDeserializer(ContentType.parse(request.getHeader(HttpHeader.CONTENT_TYPE)))
+                    .entity(request.getBody(), operation.getEntitySet().getEntityType()).getEntity();
+            try {
+                // PUT replaces the whole entity, whereas PATCH only merges the transmitted properties
+                OlingoDeserializer.bind(serviceContext.getEntityBinder(entityClass), entity, olingoEntity, request.getMethod() == HttpMethod.PUT);
+            } catch (OlingoDeserializerException e) {
+                return Collections.singletonList(createErrorResponse(request, new ODataApplicationException("Cannot deserialize Olingo entity '" + olingoEntity.getType() + "'",
+                        HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH, e)));
+            }
+
+            entities.add(entity);
+        }
+
+        if (controller instanceof IBushyTailBulkController) {
+            ((IBushyTailBulkController<T>) controller).updateAll(entities);
+        } else {
+            for (final T entity : entities) {
+                controller.update(entity);
+            }
+        }
+        for (final BulkOperation operation : operations) {
+            serviceContext.invalidateCachedEntity(operation.getEntitySet().getEntityType(), operation.getKeyPredicates());
+        }
+
+        return createNoContentResponses(requests);
+    }
+
+    /**
+     * Delete the entities of consecutive requests of a change set with a single controller call.
+     *
+     * @param <T> The class type of the JPA entities.
+     * @param controller The controller of the entity set.
+     * @param operations The delete operations of the requests.
+     * @param requests The delete requests.
+     * @return The responses of the requests in the same order or the error response of the request whose entity cannot be found.
+     * @throws ODataLibraryException if the error cannot be serialized.
+     */
+    private <T> List<ODataResponse> deleteAll(final IBushyTailController<T> controller, final List<BulkOperation> operations,
+                                              final List<ODataRequest> requests) throws ODataLibraryException {
+        final List<List<UriParameter>> keyPredicates = new ArrayList<List<UriParameter>>(operations.size());
+        for (final BulkOperation operation : operations) {
+            keyPredicates.add(operation.getKeyPredicates());
+        }
+
+        final List<Boolean> deleted;
+        if (controller instanceof IBushyTailBulkController) {
+            deleted = ((IBushyTailBulkController<T>) controller).deleteByKeys(keyPredicates);
+        } else {
+            deleted = new ArrayList<Boolean>(keyPredicates.size());
+            for (final List<UriParameter> keyPredicate : keyPredicates) {
+                final T entity = controller.read(keyPredicate);
+                deleted.add(entity != null && controller.delete(entity));
+            }
+        }
+
+        for (final BulkOperation operation : operations) {
+            serviceContext.invalidateCachedEntity(operation.getEntitySet().getEntityType(), operation.getKeyPredicates());
+        }
+
+        if (deleted.contains(Boolean.FALSE)) {
+            return Collections.singletonList(createErrorResponse(requests.get(deleted.indexOf(Boolean.FALSE)),
+                    new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH)));
+        }
+
+        return createNoContentResponses(requests);
+    }
+
+    /**
+     * Create the empty responses of successfully processed requests.
+     *
+     * @param requests The requests.
+     * @return The responses of the requests in the same order.
+     */
+    private static List<ODataResponse> createNoContentResponses(final List<ODataRequest> requests) {
+        final List<ODataResponse> responses = new ArrayList<ODataResponse>(requests.size());
+        for (final ODataRequest request : requests) {
+            final ODataResponse response = new ODataResponse();
+            response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
+            copyContentId(request, response);
+
+            responses.add(response);
+        }
+
+        return responses;
+    }
+
+    /**
+     * Create the response of a failed request of a change set with the serialized OData error, as Olingo does.
+     *
+     * @param request The failed request or {@code null} if the failure cannot be attributed to a single request.
+     * @param exception The failure.
+     * @return The error response.
+     * @throws ODataLibraryException if the error cannot be serialized.
+     */
+    private ODataResponse createErrorResponse(final ODataRequest request, final ODataApplicationException exception) throws ODataLibraryException {
+        final ODataServerError serverError = new ODataServerError()
+                .setException(exception)
+                .setStatusCode(exception.getStatusCode())
+                .setLocale(exception.getLocale())
+                .setMessage(exception.getMessage())
+                .setCode(exception.getODataErrorCode());
+
+        final ContentType acceptedContentType = request == null ? null : getResponseContentType(request);
+        final ContentType responseContentType = acceptedContentType == null ? ContentType.JSON : acceptedContentType;
+        final ODataResponse response = new ODataResponse();
+        response.setContent(serviceContext.getSerializer(responseContentType).error(serverError).getContent());
+        response.setStatusCode(exception.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, responseContentType.toContentTypeString());
+        if (request != null) {
+            copyContentId(request, response);
+        }
+
+        return response;
+    }
+
+    /**
+     * Copy the Content-ID of a request of a change set to its response.
+     *
+     * @param request The request.
+     * @param response The response.
+     */
+    private static void copyContentId(final ODataRequest request, final ODataResponse response) {
+        if (request.getHeader(HttpHeader.CONTENT_ID) != null) {
+            response.setHeader(HttpHeader.CONTENT_ID, request.getHeader(HttpHeader.CONTENT_ID));
+        }
+    }
+
+    /**
+     * Determine the bulk operation of a request of a change set, if it can be combined with other requests.
+     * Only plain JSON creations, updates and deletions of entities of an entity set without query options,
+     * preferences or preconditions qualify.
+     *
+     * @param request The request of the change set.
+     * @return The bulk operation or {@code null} if the request has to be processed by Olingo on its own.
+     */
+    private BulkOperation getBulkOperation(final ODataRequest request) {
+        if ((request.getRawQueryPath() != null && !request.getRawQueryPath().isEmpty()) || request.getHeader(HttpHeader.PREFER) != null
+                || request.getHeader(HttpHeader.IF_MATCH) != null || request.getHeader(HttpHeader.IF_NONE_MATCH) != null) {
+            return null;
+        }
+
+        final BulkOperation.Kind kind;
+        if (request.getMethod() == HttpMethod.POST) {
+            kind = BulkOperation.Kind.CREATE;
+        } else if (request.getMethod() == HttpMethod.PUT || request.getMethod() == HttpMethod.PATCH) {
+            kind = BulkOperation.Kind.UPDATE;
+        } else if (request.getMethod() == HttpMethod.DELETE) {
+            kind = BulkOperation.Kind.DELETE;
+        } else {
+            return null;
+        }
+
+        if (kind != BulkOperation.Kind.DELETE) {
+            final ContentType requestContentType = ContentType.parse(request.getHeader(HttpHeader.CONTENT_TYPE));
+            if (requestContentType == null || !requestContentType.isCompatible(ContentType.APPLICATION_JSON) || getResponseContentType(request) == null) {
+                return null;
+            }
+        }
+
+        String path = request.getRawODataPath();
+        if (path == null) {
+            return null;
+        }
+        path = path.startsWith("/") ? path.substring(1) : path;
+        if (path.isEmpty() || path.indexOf('/') >= 0 || path.indexOf('$') >= 0) {
+            return null;
+        }
+
+        final int keyStart = path.indexOf('(');
+        if ((kind == BulkOperation.Kind.CREATE) == (keyStart >= 0)) {
+            return null;
+        }
+
+        final EdmEntitySet edmEntitySet = serviceContext.getEdm().getEntityContainer().getEntitySet(keyStart < 0 ? path : path.substring(0, keyStart));
+        if (edmEntitySet == null || serviceContext.getEntityClass(edmEntitySet.getEntityType().getFullQualifiedName()) == null) {
+            return null;
+        }
+
+        if (kind == BulkOperation.Kind.CREATE) {
+            return new BulkOperation(kind, edmEntitySet, null);
+        }
+
+        final List<UriParameter> keyPredicates = BushyTailKeyPredicate.parse(edmEntitySet.getEntityType(), path);
+        return keyPredicates == null ? null : new BulkOperation(kind, edmEntitySet, keyPredicates);
+    }
+
+    /**
+     * Determine the JSON content type of the response to a request of a change set.
+     *
+     * @param request The request.
+     * @return The content type or {@code null} if the client accepts a content type other than JSON.
+     */
+    private static ContentType getResponseContentType(final ODataRequest request) {
+        final String accept = request.getHeader(HttpHeader.ACCEPT);
+        if (accept == null) {
+            return ContentType.JSON;
+        }
+
+        final ContentType acceptedContentType = ContentType.parse(accept);
+        return acceptedContentType != null && acceptedContentType.isCompatible(ContentType.APPLICATION_JSON) ? acceptedContentType : null;
+    }
+
+    /**
+     * Determine whether any request of a change set refers to another request by its Content-ID, e.g. {@code $1/Items}.
+     *
+     * @param requests The requests of the change set.
+     * @return Whether there is any reference.
+     */
+    private static boolean hasContentIdReferences(final List<ODataRequest> requests) {
+        for (final ODataRequest request : requests) {
+            final String path = request.getRawODataPath();
+            if (path != null && (path.startsWith("$") || path.startsWith("/$"))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param requestPart A part of a batch.
+     * @return Whether the part is a single read request outside of a change set.
+     */
+    private static boolean isConcurrentRead(final BatchRequestPart requestPart) {
+        return !requestPart.isChangeSet() && requestPart.getRequests().size() == 1
+                && requestPart.getRequests().get(0).getMethod() == HttpMethod.GET;
+    }
+
+    /**
+     * @param responses The responses of a part of a batch.
+     * @return Whether any of the responses reports an error.
+     */
+    private static boolean isFailed(final List<ODataResponse> responses) {
+        for (final ODataResponse response : responses) {
+            if (response.getStatusCode() >= HttpStatusCode.BAD_REQUEST.getStatusCode()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param oDataRequest The batch request.
+     * @return Whether the client prefers to continue the batch after a failed request.
+     */
+    private static boolean isContinueOnError(final ODataRequest oDataRequest) {
+        final List<String> preferences = oDataRequest.getHeaders(HttpHeader.PREFER);
+        if (preferences == null) {
+            return false;
+        }
+
+        for (final String preference : preferences) {
+            if (preference.toLowerCase(Locale.ENGLISH).contains(PREFERENCE_CONTINUE_ON_ERROR)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Write streamed content into memory, since the batch response is serialized only after all parts have been processed.
+     *
+     * @param response The response of a part.
+     */
+    private static void bufferContent(final ODataResponse response) {
+        final ODataContent content = response.getODataContent();
+        if (content == null) {
+            return;
+        }
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        content.write(buffer);
+        response.setODataContent(null);
+        response.setContent(new ByteArrayInputStream(buffer.toByteArray()));
+    }
+
+    /**
+     * Cancel the processing of concurrent read requests after one has failed.
+     *
+     * @param futures The pending read requests.
+     */
+    private static void cancel(final List<Future<ODataResponsePart>> futures) {
+        for (final Future<ODataResponsePart> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Begin the transaction of a change set, if a transaction manager is configured, and record its cache invalidations.
+     *
+     * @throws ODataApplicationException if the transaction cannot be begun.
+     */
+    private void beginTransaction() throws ODataApplicationException {
+        if (transactionManager == null) {
+            return;
+        }
+
+        try {
+            transactionManager.begin();
+        } catch (BushyTailTransactionException e) {
+            throw new ODataApplicationException("Cannot begin change set", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e);
+        }
+        serviceContext.beginDeferredInvalidation();
+    }
+
+    /**
+     * Commit the transaction of a change set, if a transaction manager is configured, and repeat its cache invalidations.
+     *
+     * @throws ODataApplicationException if the transaction cannot be committed.
+     */
+    private void commitTransaction() throws ODataApplicationException {
+        if (transactionManager == null) {
+            return;
+        }
+
+        try {
+            transactionManager.commit();
+        } catch (BushyTailTransactionException e) {
+            throw new ODataApplicationException("Cannot commit change set", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e);
+        }
+        // Entities which have been read and cached between their invalidation and the commit are stale now
+        serviceContext.endDeferredInvalidation(true);
+    }
+
+    /**
+     * Roll back the transaction of a change set, if a transaction manager is configured.
+     * A failed rollback is only logged, since the error which caused it is reported to the client.
+     */
+    private void rollbackTransaction() {
+        if (transactionManager == null) {
+            return;
+        }
+
+        try {
+            transactionManager.rollback();
+        } catch (BushyTailTransactionException e) {
+            logger.error("Cannot roll back change set", e);
+        } finally {
+            serviceContext.endDeferredInvalidation(false);
+        }
+    }
+
+
+    /**
+     * A request of a change set which can be combined with other requests of the same kind and entity set.
+     */
+    private static final class BulkOperation {
+
+        /**
+         * The kinds of bulk operations.
+         */
+        enum Kind {
+            /** Create an entity. */
+            CREATE,
+            /** Update an entity. */
+            UPDATE,
+            /** Delete an entity. */
+            DELETE
+        }
+
+        /** The kind of operation. */
+        private final Kind kind;
+
+        /** The addressed entity set. */
+        private final EdmEntitySet entitySet;
+
+        /** The key of the addressed entity or {@code null} for creations. */
+        private final List<UriParameter> keyPredicates;
+
+        /**
+         * Constructs {@link BulkOperation}.
+         *
+         * @param kind The kind of operation.
+         * @param entitySet The addressed entity set.
+         * @param keyPredicates The key of the addressed entity or {@code null} for creations.
+         */
+        BulkOperation(final Kind kind, final EdmEntitySet entitySet, final List<UriParameter> keyPredicates) {
+            this.kind = kind;
+            this.entitySet = entitySet;
+            this.keyPredicates = keyPredicates;
+        }
+
+        /**
+         * @return The kind of operation.
+         */
+        Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The addressed entity set.
+         */
+        EdmEntitySet getEntitySet() {
+            return entitySet;
+        }
+
+        /**
+         * @return The key of the addressed entity or {@code null} for creations.
+         */
+        List<UriParameter> getKeyPredicates() {
+            return keyPredicates;
+        }
+
+        /**
+         * @param other Another operation or {@code null}.
+         * @return Whether both operations can be processed with a single controller call.
+         */
+        boolean isCombinableWith(final BulkOperation other) {
+            return other != null && kind == other.kind && entitySet.getName().equals(other.entitySet.getName());
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable, pre-rendered representation of a document which does not change during the lifetime of a service,
+ * e.g. the metadata document.
+ * <p>
+ * The document is kept as plain and gzip-compressed bytes, each with its own strong ETag.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public final class BushyTailDocument {
+
+    /** The size of the buffer which reads the rendered document. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The content type of the document. */
+    private final String contentType;
+
+    /** The plain content. */
+    private final byte[] content;
+
+    /** The gzip-compressed content. */
+    private final byte[] gzippedContent;
+
+    /** The strong ETag of the plain content. */
+    private final String eTag;
+
+    /** The strong ETag of the gzip-compressed content. */
+    private final String gzippedETag;
+
+    /**
+     * Constructs {@link BushyTailDocument}.
+     *
+     * @param contentType The content type of the document.
+     * @param content The plain content.
+     */
+    private BushyTailDocument(final String contentType, final byte[] content) {
+        this.contentType = contentType;
+        this.content = content;
+
+        gzippedContent = gzip(content);
+
+        // The representations differ in their content coding, thus they need different strong ETags
+        final String digest = md5Hex(content);
+        eTag = "\"" + digest + '"';
+        gzippedETag = "\"" + digest + "-gzip\"";
+    }
+
+    /**
+     * Read a rendered document completely.
+     *
+     * @param contentType The content type of the document.
+     * @param content The rendered content, which is closed afterwards.
+     * @return The pre-rendered document.
+     */
+    public static BushyTailDocument create(final String contentType, final InputStream content) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            try {
+                final byte[] chunk = new byte[BUFFER_SIZE];
+                int length;
+                while ((length = content.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, length);
+                }
+            } finally {
+                content.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read rendered document", e);
+        }
+
+        return new BushyTailDocument(contentType, buffer.toByteArray());
+    }
+
+    /**
+     * @return The content type of the document.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @param gzipped Whether the gzip-compressed content is requested.
+     * @return The content. The array must not be modified.
+     */
+    public byte[] getContent(final boolean gzipped) {
+        return gzipped ? gzippedContent : content;
+    }
+
+    /**
+     * @param gzipped Whether the ETag of the gzip-compressed content is requested.
+     * @return The strong ETag of the content.
+     */
+    public String getETag(final boolean gzipped) {
+        return gzipped ? gzippedETag : eTag;
+    }
+
+    /**
+     * Compress content with gzip.
+     *
+     * @param content The plain content.
+     * @return The compressed content.
+     */
+    private static byte[] gzip(final byte[] content) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 4 + 64);
+        try {
+            final GZIPOutputStream gzipStream = new GZIPOutputStream(buffer);
+            gzipStream.write(content);
+            gzipStream.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot compress document", e);
+        }
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Compute the hexadecimal MD5 digest of content.
+     *
+     * @param content The content.
+     * @return The hexadecimal digest.
+     */
+    private static String md5Hex(final byte[] content) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported", e);
+        }
+
+        final StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (final byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+}
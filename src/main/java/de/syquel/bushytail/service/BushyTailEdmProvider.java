@@ -21,12 +21,17 @@ import org.apache.olingo.commons.api.edm.provider.*;
 import org.apache.olingo.commons.api.ex.ODataException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Provides the service metadata, including Entity Data Model (EDM), the entities and their relationships.
+ * <p>
+ * All schema elements are indexed by their qualified name on construction, so that lookups are constant-time
+ * hash lookups which do not allocate. The schemas must not be modified afterwards.
+ * </p>
  *
  * @author Clemens Bartz
  * @author Frederik Boster
@@ -34,150 +39,316 @@ import java.util.Map;
  */
 public class BushyTailEdmProvider extends CsdlAbstractEdmProvider {
 
-    private final Map<String, CsdlSchema> odataSchemas;
+    /** The schemas in their original order. */
+    private final List<CsdlSchema> schemas;
 
+    /** The alias infos of all schemas which declare an alias. */
+    private final List<CsdlAliasInfo> aliasInfos;
+
+    /** The enumeration types by qualified name. */
+    private final Map<FullQualifiedName, CsdlEnumType> enumTypes = new HashMap<FullQualifiedName, CsdlEnumType>();
+
+    /** The type definitions by qualified name. */
+    private final Map<FullQualifiedName, CsdlTypeDefinition> typeDefinitions = new HashMap<FullQualifiedName, CsdlTypeDefinition>();
+
+    /** The entity types by qualified name. */
+    private final Map<FullQualifiedName, CsdlEntityType> entityTypes = new HashMap<FullQualifiedName, CsdlEntityType>();
+
+    /** The complex types by qualified name. */
+    private final Map<FullQualifiedName, CsdlComplexType> complexTypes = new HashMap<FullQualifiedName, CsdlComplexType>();
+
+    /** The overloads of each action by qualified name. */
+    private final Map<FullQualifiedName, List<CsdlAction>> actions = new HashMap<FullQualifiedName, List<CsdlAction>>();
+
+    /** The overloads of each function by qualified name. */
+    private final Map<FullQualifiedName, List<CsdlFunction>> functions = new HashMap<FullQualifiedName, List<CsdlFunction>>();
+
+    /** The terms by qualified name. */
+    private final Map<FullQualifiedName, CsdlTerm> terms = new HashMap<FullQualifiedName, CsdlTerm>();
+
+    /** The annotation groups by target, qualified with the namespace of their schema, and qualifier. */
+    private final Map<FullQualifiedName, Map<String, CsdlAnnotations>> annotationGroups = new HashMap<FullQualifiedName, Map<String, CsdlAnnotations>>();
+
+    /** The entity containers by qualified name. */
+    private final Map<FullQualifiedName, ContainerIndex> containers = new HashMap<FullQualifiedName, ContainerIndex>();
+
+    /** The default entity container or {@code null} if no schema defines one. */
+    private final ContainerIndex defaultContainer;
+
+    /**
+     * Constructs {@link BushyTailEdmProvider} and indexes the schemas.
+     *
+     * @param odataSchemas The Olingo schemas of the service.
+     */
     public BushyTailEdmProvider(final List<CsdlSchema> odataSchemas) {
-        this.odataSchemas = new HashMap<String, CsdlSchema>();
+        this.schemas = Collections.unmodifiableList(new ArrayList<CsdlSchema>(odataSchemas));
 
-        for (CsdlSchema odataSchema : odataSchemas) {
-            this.odataSchemas.put(odataSchema.getNamespace(), odataSchema);
+        final List<CsdlAliasInfo> aliasInfos = new ArrayList<CsdlAliasInfo>();
+        ContainerIndex defaultContainer = null;
+        for (final CsdlSchema schema : odataSchemas) {
+            final String namespace = schema.getNamespace();
+
+            if (schema.getAlias() != null) {
+                aliasInfos.add(new CsdlAliasInfo().setNamespace(namespace).setAlias(schema.getAlias()));
+            }
+
+            for (final CsdlEnumType enumType : nullToEmpty(schema.getEnumTypes())) {
+                putFirst(enumTypes, new FullQualifiedName(namespace, enumType.getName()), enumType);
+            }
+            for (final CsdlTypeDefinition typeDefinition : nullToEmpty(schema.getTypeDefinitions())) {
+                putFirst(typeDefinitions, new FullQualifiedName(namespace, typeDefinition.getName()), typeDefinition);
+            }
+            for (final CsdlEntityType entityType : nullToEmpty(schema.getEntityTypes())) {
+                putFirst(entityTypes, new FullQualifiedName(namespace, entityType.getName()), entityType);
+            }
+            for (final CsdlComplexType complexType : nullToEmpty(schema.getComplexTypes())) {
+                putFirst(complexTypes, new FullQualifiedName(namespace, complexType.getName()), complexType);
+            }
+            for (final CsdlAction action : nullToEmpty(schema.getActions())) {
+                addOverload(actions, new FullQualifiedName(namespace, action.getName()), action);
+            }
+            for (final CsdlFunction function : nullToEmpty(schema.getFunctions())) {
+                addOverload(functions, new FullQualifiedName(namespace, function.getName()), function);
+            }
+            for (final CsdlTerm term : nullToEmpty(schema.getTerms())) {
+                putFirst(terms, new FullQualifiedName(namespace, term.getName()), term);
+            }
+            for (final CsdlAnnotations annotations : nullToEmpty(schema.getAnnotationGroups())) {
+                final FullQualifiedName target = new FullQualifiedName(namespace, annotations.getTarget());
+
+                Map<String, CsdlAnnotations> qualifiedAnnotations = annotationGroups.get(target);
+                if (qualifiedAnnotations == null) {
+                    qualifiedAnnotations = new HashMap<String, CsdlAnnotations>();
+                    annotationGroups.put(target, qualifiedAnnotations);
+                }
+                putFirst(qualifiedAnnotations, annotations.getQualifier(), annotations);
+            }
+
+            final CsdlEntityContainer entityContainer = schema.getEntityContainer();
+            if (entityContainer != null) {
+                final ContainerIndex containerIndex = new ContainerIndex(namespace, entityContainer);
+                containers.put(containerIndex.info.getContainerName(), containerIndex);
+
+                // The container of the default namespace takes precedence, otherwise the first one is the default
+                if (defaultContainer == null || "".equals(namespace)) {
+                    defaultContainer = containerIndex;
+                }
+            }
         }
+
+        for (final Map.Entry<FullQualifiedName, List<CsdlAction>> entry : actions.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        for (final Map.Entry<FullQualifiedName, List<CsdlFunction>> entry : functions.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        this.aliasInfos = Collections.unmodifiableList(aliasInfos);
+        this.defaultContainer = defaultContainer;
     }
 
     @Override
     public CsdlEnumType getEnumType(FullQualifiedName enumTypeName) throws ODataException {
-        final CsdlSchema schema = getSchema(enumTypeName.getNamespace());
-
-        return schema.getEnumType(enumTypeName.getName());
+        return enumTypes.get(enumTypeName);
     }
 
     @Override
     public CsdlTypeDefinition getTypeDefinition(FullQualifiedName typeDefinitionName) throws ODataException {
-        final CsdlSchema schema = getSchema(typeDefinitionName.getNamespace());
-
-        return schema.getTypeDefinition(typeDefinitionName.getName());
+        return typeDefinitions.get(typeDefinitionName);
     }
 
     @Override
     public CsdlEntityType getEntityType(FullQualifiedName entityTypeName) throws ODataException {
-        final CsdlSchema schema = getSchema(entityTypeName.getNamespace());
-
-        return schema.getEntityType(entityTypeName.getName());
+        return entityTypes.get(entityTypeName);
     }
 
     @Override
     public CsdlComplexType getComplexType(FullQualifiedName complexTypeName) throws ODataException {
-        final CsdlSchema schema = getSchema(complexTypeName.getNamespace());
-
-        return schema.getComplexType(complexTypeName.getName());
+        return complexTypes.get(complexTypeName);
     }
 
     @Override
     public List<CsdlAction> getActions(FullQualifiedName actionName) throws ODataException {
-        final CsdlSchema schema = getSchema(actionName.getNamespace());
-
-        return schema.getActions(actionName.getName());
+        return actions.get(actionName);
     }
 
     @Override
     public List<CsdlFunction> getFunctions(FullQualifiedName functionName) throws ODataException {
-        final CsdlSchema schema = getSchema(functionName.getNamespace());
-
-        return schema.getFunctions(functionName.getName());
+        return functions.get(functionName);
     }
 
     @Override
     public CsdlTerm getTerm(FullQualifiedName termName) throws ODataException {
-        final CsdlSchema schema = getSchema(termName.getNamespace());
-
-        return schema.getTerm(termName.getName());
+        return terms.get(termName);
     }
 
     @Override
     public CsdlEntitySet getEntitySet(FullQualifiedName entityContainer, String entitySetName) throws ODataException {
-        final CsdlSchema schema = getSchema(entityContainer.getNamespace());
+        final ContainerIndex containerIndex = getContainer(entityContainer);
 
-        return schema.getEntityContainer().getEntitySet(entitySetName);
+        return containerIndex == null ? null : containerIndex.entitySets.get(entitySetName);
     }
 
     @Override
     public CsdlSingleton getSingleton(FullQualifiedName entityContainer, String singletonName) throws ODataException {
-        final CsdlSchema schema = getSchema(entityContainer.getNamespace());
+        final ContainerIndex containerIndex = getContainer(entityContainer);
 
-        return schema.getEntityContainer().getSingleton(singletonName);
+        return containerIndex == null ? null : containerIndex.singletons.get(singletonName);
     }
 
     @Override
     public CsdlActionImport getActionImport(FullQualifiedName entityContainer, String actionImportName) throws ODataException {
-        final CsdlSchema schema = getSchema(entityContainer.getNamespace());
+        final ContainerIndex containerIndex = getContainer(entityContainer);
 
-        return schema.getEntityContainer().getActionImport(actionImportName);
+        return containerIndex == null ? null : containerIndex.actionImports.get(actionImportName);
     }
 
     @Override
     public CsdlFunctionImport getFunctionImport(FullQualifiedName entityContainer, String functionImportName) throws ODataException {
-        final CsdlSchema schema = getSchema(entityContainer.getNamespace());
+        final ContainerIndex containerIndex = getContainer(entityContainer);
 
-        return schema.getEntityContainer().getFunctionImport(functionImportName);
+        return containerIndex == null ? null : containerIndex.functionImports.get(functionImportName);
     }
 
     @Override
     public CsdlEntityContainerInfo getEntityContainerInfo(FullQualifiedName entityContainerName) throws ODataException {
-        final CsdlSchema schema = getSchema(entityContainerName.getNamespace());
-        CsdlEntityContainer entityContainer = schema.getEntityContainer();
+        final ContainerIndex containerIndex = getContainer(entityContainerName);
 
-        if (!entityContainer.getName().equals(entityContainerName.getName())) {
-            return null;
-        }
-
-        final CsdlEntityContainerInfo entityContainerInfo = new CsdlEntityContainerInfo();
-        entityContainerInfo.setContainerName(new FullQualifiedName(schema.getNamespace(), entityContainer.getName()));
-        entityContainerInfo.setExtendsContainer(entityContainer.getExtendsContainerFQN());
-
-        return entityContainerInfo;
+        return containerIndex == null ? null : containerIndex.info;
     }
 
     @Override
     public List<CsdlAliasInfo> getAliasInfos() throws ODataException {
-        final List<CsdlAliasInfo> aliasInfos = new ArrayList<CsdlAliasInfo>();
-
-        for (CsdlSchema schema : odataSchemas.values()) {
-            final CsdlAliasInfo aliasInfo = new CsdlAliasInfo();
-            aliasInfo.setAlias(schema.getAlias());
-            aliasInfo.setNamespace(schema.getNamespace());
-
-            aliasInfos.add(aliasInfo);
-        }
-
         return aliasInfos;
     }
 
     @Override
     public List<CsdlSchema> getSchemas() throws ODataException {
-        return new ArrayList<CsdlSchema>(odataSchemas.values());
+        return schemas;
     }
 
     @Override
     public CsdlEntityContainer getEntityContainer() throws ODataException {
-        final CsdlSchema schema = getSchema("");
-
-        return schema.getEntityContainer();
+        return defaultContainer == null ? null : defaultContainer.container;
     }
 
     @Override
     public CsdlAnnotations getAnnotationsGroup(FullQualifiedName targetName, String qualifier) throws ODataException {
-        final CsdlSchema schema = getSchema(targetName.getNamespace());
+        final Map<String, CsdlAnnotations> qualifiedAnnotations = annotationGroups.get(targetName);
 
-        return schema.getAnnotationGroup(targetName.getName(), qualifier);
+        return qualifiedAnnotations == null ? null : qualifiedAnnotations.get(qualifier);
     }
 
-    private CsdlSchema getSchema(String namespace) throws ODataException {
-        final CsdlSchema schema = odataSchemas.get(namespace);
-        if (schema == null) {
-            throw new ODataException("No Olingo schema for namespace '" + namespace + "' defined");
+    /**
+     * Get the index of an entity container.
+     *
+     * @param entityContainerName The qualified name of the entity container or {@code null} for the default entity container.
+     * @return The index or {@code null} if there is no such entity container.
+     */
+    private ContainerIndex getContainer(final FullQualifiedName entityContainerName) {
+        if (entityContainerName == null) {
+            return defaultContainer;
+        }
+
+        return containers.get(entityContainerName);
+    }
+
+    /**
+     * Index a schema element unless an element of the same name has been indexed before,
+     * so that the first declaration wins as with the lookups of {@link CsdlSchema}.
+     *
+     * @param <K> The type of the key.
+     * @param <V> The type of the schema element.
+     * @param index The index.
+     * @param key The key of the schema element.
+     * @param value The schema element.
+     */
+    private static <K, V> void putFirst(final Map<K, V> index, final K key, final V value) {
+        if (!index.containsKey(key)) {
+            index.put(key, value);
+        }
+    }
+
+    /**
+     * Index an overload of an action or function.
+     *
+     * @param <V> The type of the action or function.
+     * @param index The index of the overloads.
+     * @param name The qualified name of the action or function.
+     * @param overload The overload.
+     */
+    private static <V> void addOverload(final Map<FullQualifiedName, List<V>> index, final FullQualifiedName name, final V overload) {
+        List<V> overloads = index.get(name);
+        if (overloads == null) {
+            overloads = new ArrayList<V>(1);
+            index.put(name, overloads);
+        }
+
+        overloads.add(overload);
+    }
+
+    /**
+     * Replace a missing list of schema elements with an empty one.
+     *
+     * @param <V> The type of the schema elements.
+     * @param elements The schema elements or {@code null}.
+     * @return The schema elements.
+     */
+    private static <V> List<V> nullToEmpty(final List<V> elements) {
+        return elements == null ? Collections.<V>emptyList() : elements;
+    }
+
+
+    /**
+     * The indexed members of an entity container.
+     */
+    private static final class ContainerIndex {
+
+        /** The entity container. */
+        private final CsdlEntityContainer container;
+
+        /** The pre-built container info. */
+        private final CsdlEntityContainerInfo info;
+
+        /** The entity sets by name. */
+        private final Map<String, CsdlEntitySet> entitySets = new HashMap<String, CsdlEntitySet>();
+
+        /** The singletons by name. */
+        private final Map<String, CsdlSingleton> singletons = new HashMap<String, CsdlSingleton>();
+
+        /** The action imports by name. */
+        private final Map<String, CsdlActionImport> actionImports = new HashMap<String, CsdlActionImport>();
+
+        /** The function imports by name. */
+        private final Map<String, CsdlFunctionImport> functionImports = new HashMap<String, CsdlFunctionImport>();
+
+        /**
+         * Constructs {@link ContainerIndex}.
+         *
+         * @param namespace The namespace of the schema of the entity container.
+         * @param container The entity container.
+         */
+        ContainerIndex(final String namespace, final CsdlEntityContainer container) {
+            this.container = container;
+
+            info = new CsdlEntityContainerInfo();
+            info.setContainerName(new FullQualifiedName(namespace, container.getName()));
+            info.setExtendsContainer(container.getExtendsContainerFQN());
+
+            for (final CsdlEntitySet entitySet : nullToEmpty(container.getEntitySets())) {
+                putFirst(entitySets, entitySet.getName(), entitySet);
+            }
+            for (final CsdlSingleton singleton : nullToEmpty(container.getSingletons())) {
+                putFirst(singletons, singleton.getName(), singleton);
+            }
+            for (final CsdlActionImport actionImport : nullToEmpty(container.getActionImports())) {
+                putFirst(actionImports, actionImport.getName(), actionImport);
+            }
+            for (final CsdlFunctionImport functionImport : nullToEmpty(container.getFunctionImports())) {
+                putFirst(functionImports, functionImport.getName(), functionImport);
+            }
         }
 
-        return schema;
     }
 
 }
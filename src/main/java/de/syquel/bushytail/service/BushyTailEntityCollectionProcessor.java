@@ -13,29 +13,396 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package de.syquel.bushytail.service;
 
+import de.syquel.bushytail.controller.IBushyTailCollectionController;
+import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.controller.IBushyTailCursor;
+import de.syquel.bushytail.controller.query.BushyTailQuery;
+import de.syquel.bushytail.controller.query.IBushyTailExpression;
+import de.syquel.bushytail.controller.query.IBushyTailQueryController;
+import de.syquel.bushytail.controller.query.exception.BushyTailInvalidQueryException;
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+import de.syquel.bushytail.factory.BushyTailQueryFactory;
+import de.syquel.bushytail.metric.BushyTailMetricsPhase;
+import de.syquel.bushytail.metric.BushyTailOperation;
+import de.syquel.bushytail.metric.BushyTailRequestMetrics;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.edm.EdmNavigationProperty;
 import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
 import org.apache.olingo.server.api.*;
-import org.apache.olingo.server.api.processor.EntityCollectionProcessor;
+import org.apache.olingo.server.api.processor.CountEntityCollectionProcessor;
+import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
+import org.apache.olingo.server.api.serializer.SerializerStreamResult;
 import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+import org.apache.olingo.server.api.uri.UriResourceKind;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Processes entity collections.
+ * <p>
+ * Entities are pulled from the cursor of an {@link IBushyTailCollectionController}, or of an {@link IBushyTailQueryController}
+ * which evaluates the system query options in its backend, and serialized one at a time
+ * directly into the response, so the memory consumption does not depend on the size of the collection.
+ * Entity sets with a maximum page size are paged by the server with a {@code $skiptoken} in the next link.
+ * Expanded navigation properties are read in batches by {@link BushyTailExpander}.
+ * Counts are always evaluated by {@link IBushyTailQueryController#count}, never by reading the entities.
+ * One instance is shared by all requests of a {@link de.syquel.bushytail.BushyTail} instance.
+ * </p>
  *
  * @author Clemens Bartz
+ * @author Frederik Boster
  * @since 1.0
  */
-public class BushyTailEntityCollectionProcessor implements EntityCollectionProcessor {
+public class BushyTailEntityCollectionProcessor implements CountEntityCollectionProcessor {
+
+    /** The shared service context. */
+    private final BushyTailServiceContext serviceContext;
+
+    public BushyTailEntityCollectionProcessor(final BushyTailServiceContext serviceContext) {
+        this.serviceContext = serviceContext;
+    }
+
+    @Override
+    public void readEntityCollection(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType responseContentType) throws ODataApplicationException, ODataLibraryException {
+        readEntityCollectionInternal(oDataRequest, oDataResponse, uriInfo, responseContentType);
+    }
+
+    public <T> void readEntityCollectionInternal(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType responseContentType) throws ODataApplicationException, ODataLibraryException {
+        final List<UriResource> uriResources = uriInfo.getUriResourceParts();
+        if (uriResources.isEmpty() || uriResources.size() > 2 || uriResources.get(0).getKind() != UriResourceKind.entitySet
+                || (uriResources.size() == 2 && uriResources.get(1).getKind() != UriResourceKind.navigationProperty)) {
+            throw new ODataApplicationException("Only entity sets and their navigation properties can be read as collection", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+
+        final UriResourceEntitySet uriEntitySet = (UriResourceEntitySet) uriResources.get(0);
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        metrics.setTarget(uriEntitySet.getEntitySet().getName(), BushyTailOperation.COLLECTION);
+        if (uriResources.size() == 2) {
+            readNavigationCollection(oDataRequest, oDataResponse, uriInfo, uriEntitySet, (UriResourceNavigation) uriResources.get(1), responseContentType);
+            return;
+        }
+
+        final EdmEntitySet edmEntitySet = uriEntitySet.getEntitySet();
+        @SuppressWarnings("unchecked")
+        final Class<T> entityClass = (Class<T>) serviceContext.getEntityClass(uriEntitySet.getEntityType().getFullQualifiedName());
+
+        final IBushyTailController<T> controller = serviceContext.getController(entityClass);
+        final OlingoEntityAccessorPlan accessorPlan = serviceContext.getAccessorPlan(entityClass);
+
+        final int maxPageSize = serviceContext.getMaxPageSize(entityClass);
+        BushyTailSkipToken skipToken = null;
+        if (uriInfo.getSkipTokenOption() != null) {
+            if (maxPageSize == 0) {
+                throw new ODataApplicationException("Entity set '" + edmEntitySet.getName() + "' is not paged", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+            }
+
+            skipToken = BushyTailSkipToken.decode(uriInfo.getSkipTokenOption().getValue());
+        }
+
+        final IBushyTailCursor<T> cursor;
+        BushyTailPagination pagination = null;
+        Integer count = null;
+        if (controller instanceof IBushyTailQueryController) {
+            BushyTailQuery query = BushyTailQueryFactory.createQuery(uriInfo, edmEntitySet.getEntityType(), accessorPlan.getVersionPropertyName(),
+                    serviceContext.getFetchSize());
+            if (isCountRequested(uriInfo)) {
+                count = count((IBushyTailQueryController<T>) controller, query.getFilter(), edmEntitySet);
+            }
+            if (maxPageSize > 0) {
+                pagination = BushyTailPagination.forQuery(oDataRequest, query, skipToken, maxPageSize, accessorPlan, edmEntitySet.getEntityType());
+                query = pagination.getQuery();
+            }
+
+            final long controllerStartTime = metrics.startPhase();
+            try {
+                cursor = ((IBushyTailQueryController<T>) controller).query(query);
+                metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+            } catch (BushyTailQueryException e) {
+                throw new ODataApplicationException("Cannot query entity set '" + edmEntitySet.getName() + "'", getQueryErrorStatusCode(e), Locale.ENGLISH, e);
+            }
+        } else if (controller instanceof IBushyTailCollectionController) {
+            if (BushyTailQueryFactory.hasQueryOptions(uriInfo) || isCountRequested(uriInfo)) {
+                throw new ODataApplicationException("Entity set '" + edmEntitySet.getName() + "' cannot be queried", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+            }
+            if (maxPageSize > 0) {
+                pagination = BushyTailPagination.forCursor(oDataRequest, skipToken, maxPageSize);
+            }
+
+            final long controllerStartTime = metrics.startPhase();
+            cursor = ((IBushyTailCollectionController<T>) controller).readAll(serviceContext.getFetchSize());
+            metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+        } else {
+            throw new ODataApplicationException("Entity set '" + edmEntitySet.getName() + "' cannot be read as collection", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+
+        writeEntityCollection(oDataRequest, oDataResponse, uriInfo, edmEntitySet, cursor, accessorPlan, pagination, count, responseContentType);
+    }
 
     @Override
-    public void readEntityCollection(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType contentType) throws ODataApplicationException, ODataLibraryException {
+    public void countEntityCollection(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo) throws ODataApplicationException, ODataLibraryException {
+        final List<UriResource> uriResources = uriInfo.getUriResourceParts();
+        if (uriResources.size() != 2 || uriResources.get(0).getKind() != UriResourceKind.entitySet) {
+            throw new ODataApplicationException("Only entity sets can be counted", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+
+        final UriResourceEntitySet uriEntitySet = (UriResourceEntitySet) uriResources.get(0);
+        final EdmEntitySet edmEntitySet = uriEntitySet.getEntitySet();
+        BushyTailRequestMetrics.current().setTarget(edmEntitySet.getName(), BushyTailOperation.COUNT);
+        final IBushyTailController<?> controller = serviceContext.getController(serviceContext.getEntityClass(uriEntitySet.getEntityType().getFullQualifiedName()));
+        if (!(controller instanceof IBushyTailQueryController)) {
+            throw new ODataApplicationException("Entity set '" + edmEntitySet.getName() + "' cannot be counted", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+
+        // The entities are counted by the backend, they are never read
+        final int count = count((IBushyTailQueryController<?>) controller, BushyTailQueryFactory.createFilter(uriInfo), edmEntitySet);
+
+        oDataResponse.setContent(serviceContext.getOData().createFixedFormatSerializer().count(count));
+        oDataResponse.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        oDataResponse.setHeader(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toContentTypeString());
+    }
+
+    /**
+     * Determine whether the request asks for the total number of entities with {@code $count=true}.
+     *
+     * @param uriInfo The URI of the request.
+     * @return Whether the count is requested.
+     */
+    private static boolean isCountRequested(final UriInfo uriInfo) {
+        return uriInfo.getCountOption() != null && uriInfo.getCountOption().getValue();
+    }
+
+    /**
+     * Count the entities of an entity set which match a filter in the backend.
+     *
+     * @param controller The controller of the entity set.
+     * @param filter The filter or {@code null} to count all entities.
+     * @param edmEntitySet The entity set.
+     * @return The number of matching entities, capped at {@link Integer#MAX_VALUE} which is the limit of Olingo.
+     * @throws ODataApplicationException if the filter cannot be evaluated by the backend.
+     */
+    private static int count(final IBushyTailQueryController<?> controller, final IBushyTailExpression filter, final EdmEntitySet edmEntitySet)
+            throws ODataApplicationException {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long controllerStartTime = metrics.startPhase();
+        try {
+            final long count = controller.count(filter);
+            metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        } catch (BushyTailQueryException e) {
+            throw new ODataApplicationException("Cannot count entity set '" + edmEntitySet.getName() + "'", getQueryErrorStatusCode(e), Locale.ENGLISH, e);
+        }
+    }
+
+    /**
+     * Determine the HTTP status code of a query which the backend has rejected.
+     *
+     * @param e The exception of the backend.
+     * @return {@code 400} if the query is invalid, e.g. a literal does not match the type of a property,
+     *         or {@code 501} if the backend cannot express the query.
+     */
+    private static int getQueryErrorStatusCode(final BushyTailQueryException e) {
+        return e instanceof BushyTailInvalidQueryException ? HttpStatusCode.BAD_REQUEST.getStatusCode() : HttpStatusCode.NOT_IMPLEMENTED.getStatusCode();
+    }
+
+    /**
+     * Read the related entities of a single entity through a collection-valued navigation property.
+     * The related entities are read with one controller call and are not paged.
+     *
+     * @param oDataRequest The OData request.
+     * @param oDataResponse The OData response.
+     * @param uriInfo The URI of the request.
+     * @param uriEntitySet The URI segment of the entity set including the key of the entity.
+     * @param uriNavigation The URI segment of the navigation property.
+     * @param responseContentType The response content type.
+     * @throws ODataApplicationException if the navigation property cannot be read.
+     * @throws ODataLibraryException if the entities cannot be serialized.
+     */
+    private void readNavigationCollection(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, UriResourceEntitySet uriEntitySet,
+                                          UriResourceNavigation uriNavigation, ContentType responseContentType) throws ODataApplicationException, ODataLibraryException {
+        final EdmNavigationProperty navigationProperty = uriNavigation.getProperty();
+        if (!navigationProperty.isCollection() || !uriNavigation.getKeyPredicates().isEmpty() || BushyTailQueryFactory.hasQueryOptions(uriInfo)
+                || uriInfo.getSkipTokenOption() != null) {
+            throw new ODataApplicationException("Navigation property '" + navigationProperty.getName() + "' cannot be read as collection", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+
+        final Class<?> entityClass = serviceContext.getEntityClass(uriEntitySet.getEntityType().getFullQualifiedName());
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long controllerStartTime = metrics.startPhase();
+        final Object entity = serviceContext.getController(entityClass).read(uriEntitySet.getKeyPredicates());
+        metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+        if (entity == null) {
+            throw new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH);
+        }
+
+        final List<Object> relatedEntities = BushyTailExpander.readRelated(serviceContext, uriEntitySet.getEntityType(),
+                Collections.singletonList(entity), navigationProperty).get(0);
+
+        final EdmEntitySet targetEntitySet = (EdmEntitySet) uriEntitySet.getEntitySet().getRelatedBindingTarget(navigationProperty.getName());
+        final Class<?> targetClass = serviceContext.getEntityClass(navigationProperty.getType().getFullQualifiedName());
+
+        // The related entities have been read completely for the response anyway
+        final Integer count = isCountRequested(uriInfo) ? relatedEntities.size() : null;
+
+        writeEntityCollection(oDataRequest, oDataResponse, uriInfo, targetEntitySet, new ListCursor<Object>(relatedEntities),
+                serviceContext.getAccessorPlan(targetClass), null, count, responseContentType);
+    }
+
+    /**
+     * Stream the entities of a cursor into the response.
+     *
+     * @param oDataRequest The OData request.
+     * @param oDataResponse The OData response.
+     * @param uriInfo The URI of the request.
+     * @param edmEntitySet The entity set of the entities.
+     * @param cursor The cursor over the JPA entities, which is closed after the response has been written.
+     * @param accessorPlan The accessor plan of the JPA entity class.
+     * @param pagination The server-driven paging of the response or {@code null} if it is not paged.
+     * @param count The total number of entities for {@code $count=true} or {@code null} if it has not been requested.
+     * @param responseContentType The response content type.
+     * @throws ODataLibraryException if the entities cannot be serialized.
+     */
+    private void writeEntityCollection(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, EdmEntitySet edmEntitySet,
+                                       IBushyTailCursor<?> cursor, OlingoEntityAccessorPlan accessorPlan, BushyTailPagination pagination,
+                                       Integer count, ContentType responseContentType) throws ODataLibraryException {
+        // Only the selected properties are read from the entities and serialized
+        final SelectOption selectOption = uriInfo.getSelectOption();
+        final boolean[] selection = accessorPlan.getSelection(BushyTailQueryFactory.createProjection(selectOption, edmEntitySet.getEntityType(),
+                accessorPlan.getVersionPropertyName()));
+        final ExpandOption expandOption = uriInfo.getExpandOption();
+        final BushyTailExpander expander = expandOption == null ? null : new BushyTailExpander(serviceContext, edmEntitySet.getEntityType(), expandOption);
+        final BushyTailEntityIterator entityIterator = new BushyTailEntityIterator(cursor, accessorPlan, selection, pagination, expander, count);
+
+        final SerializerStreamResult serializerResult;
+        try {
+            final String selectList = selectOption == null && expandOption == null ? null
+                    : serviceContext.getOData().createUriHelper().buildContextURLSelectList(edmEntitySet.getEntityType(), expandOption, selectOption);
+            final ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).selectList(selectList).build();
+            final EntityCollectionSerializerOptions serializerOptions = EntityCollectionSerializerOptions.with()
+                    .contextURL(contextUrl)
+                    .select(selectOption)
+                    .expand(expandOption)
+                    .count(uriInfo.getCountOption())
+                    .id(oDataRequest.getRawBaseUri() + "/" + edmEntitySet.getName())
+                    .build();
+
+            serializerResult = serviceContext.getSerializer(responseContentType)
+                    .entityCollectionStreamed(serviceContext.getServiceMetadata(), edmEntitySet.getEntityType(), entityIterator, serializerOptions);
+        } catch (ODataLibraryException e) {
+            entityIterator.close();
+            throw e;
+        } catch (RuntimeException e) {
+            entityIterator.close();
+            throw e;
+        }
 
+        // The entities are serialized while Olingo writes the content, i.e. after this method has returned
+        oDataResponse.setODataContent(new CursorClosingContent(serializerResult.getODataContent(), entityIterator));
+        oDataResponse.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        oDataResponse.setHeader(HttpHeader.CONTENT_TYPE, responseContentType.toContentTypeString());
     }
 
     @Override
     public void init(OData oData, ServiceMetadata serviceMetadata) {
+        // Olingo calls this for every request; the shared instances are taken from the service context instead.
+    }
+
+    /**
+     * {@link IBushyTailCursor} over JPA entities which have already been read.
+     *
+     * @param <T> The class type of the JPA entities.
+     */
+    private static final class ListCursor<T> implements IBushyTailCursor<T> {
+
+        /** The iterator over the JPA entities. */
+        private final Iterator<T> iterator;
+
+        /**
+         * Constructs {@link ListCursor}.
+         *
+         * @param entities The JPA entities.
+         */
+        ListCursor(final List<T> entities) {
+            iterator = entities.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+
+    }
+
+    /**
+     * {@link ODataContent} which closes the cursor of the written entities even if writing fails.
+     */
+    private static final class CursorClosingContent implements ODataContent {
+
+        /** The streamed content. */
+        private final ODataContent content;
+
+        /** The iterator over the written entities. */
+        private final BushyTailEntityIterator entityIterator;
+
+        /**
+         * Constructs {@link CursorClosingContent}.
+         *
+         * @param content The streamed content.
+         * @param entityIterator The iterator over the written entities.
+         */
+        CursorClosingContent(final ODataContent content, final BushyTailEntityIterator entityIterator) {
+            this.content = content;
+            this.entityIterator = entityIterator;
+        }
+
+        @Override
+        public void write(final WritableByteChannel channel) {
+            try {
+                content.write(channel);
+            } finally {
+                entityIterator.close();
+            }
+        }
+
+        @Override
+        public void write(final OutputStream stream) {
+            try {
+                content.write(stream);
+            } finally {
+                entityIterator.close();
+            }
+        }
 
     }
+
 }
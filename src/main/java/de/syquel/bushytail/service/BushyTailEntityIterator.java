@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.controller.IBushyTailCursor;
+import de.syquel.bushytail.serializer.OlingoSerializer;
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.EntityIterator;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * {@link EntityIterator} which converts the JPA entities of a {@link IBushyTailCursor} lazily into Olingo entities.
+ * <p>
+ * Only the entity which is currently written is held in memory, or the current batch of entities if navigation properties
+ * are expanded, so that the related entities of the whole batch are read at once. The cursor is closed as soon as it is
+ * exhausted or fails, and in any case by {@link #close()}. If the response is paged, the iteration stops after the page
+ * and looks ahead one entity to decide whether a next link is written.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+class BushyTailEntityIterator extends EntityIterator {
+
+    /** The logger. */
+    private static final Logger logger = LoggerFactory.getLogger(BushyTailEntityIterator.class);
+
+    /** The cursor over the JPA entities. */
+    private final IBushyTailCursor<?> cursor;
+
+    /** The accessor plan of the JPA entity class. */
+    private final OlingoEntityAccessorPlan accessorPlan;
+
+    /** The selection mask of the accessor plan or {@code null} for all properties. */
+    private final boolean[] selection;
+
+    /** The server-driven paging of the response or {@code null} if it is not paged. */
+    private final BushyTailPagination pagination;
+
+    /** The expander of the entities or {@code null} if nothing is expanded. */
+    private final BushyTailExpander expander;
+
+    /** The total number of entities for {@code $count=true} or {@code null} if it has not been requested. */
+    private final Integer count;
+
+    /** The converted entities of the current batch which have not been delivered yet. */
+    private final Queue<Entity> buffer = new LinkedList<Entity>();
+
+    /** The number of entities which still have to be skipped in the cursor. */
+    private int remainingSkip;
+
+    /** The number of entities read from the cursor for the page so far. */
+    private int delivered;
+
+    /** The last JPA entity read from the cursor. */
+    private Object lastEntity;
+
+    /** Whether the cursor holds further entities after the page. */
+    private boolean hasNextPage;
+
+    /** Whether the cursor has already been closed. */
+    private boolean closed;
+
+    /**
+     * Constructs {@link BushyTailEntityIterator}.
+     *
+     * @param cursor The cursor over the JPA entities.
+     * @param accessorPlan The accessor plan of the JPA entity class.
+     * @param selection The selection mask of the accessor plan or {@code null} for all properties.
+     * @param pagination The server-driven paging of the response or {@code null} if it is not paged.
+     * @param expander The expander of the entities or {@code null} if nothing is expanded.
+     * @param count The total number of entities for {@code $count=true} or {@code null} if it has not been requested.
+     */
+    BushyTailEntityIterator(final IBushyTailCursor<?> cursor, final OlingoEntityAccessorPlan accessorPlan, final boolean[] selection,
+                            final BushyTailPagination pagination, final BushyTailExpander expander, final Integer count) {
+        this.cursor = cursor;
+        this.accessorPlan = accessorPlan;
+        this.selection = selection;
+        this.pagination = pagination;
+        this.expander = expander;
+        this.count = count;
+
+        remainingSkip = pagination == null ? 0 : pagination.getSkip();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (buffer.isEmpty() && !closed) {
+            fillBuffer();
+        }
+
+        return !buffer.isEmpty();
+    }
+
+    @Override
+    public Entity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return buffer.poll();
+    }
+
+    /**
+     * Convert the next batch of JPA entities and resolve their expansions at once.
+     * Without expansions, a batch consists of a single entity.
+     */
+    private void fillBuffer() {
+        final int batchSize = expander == null ? 1 : expander.getBatchSize();
+        final List<Object> entities = new ArrayList<Object>(batchSize);
+        final List<Entity> olingoEntities = new ArrayList<Entity>(batchSize);
+        try {
+            for (; remainingSkip > 0 && cursor.hasNext(); remainingSkip--) {
+                cursor.next();
+            }
+
+            while (entities.size() < batchSize) {
+                if (pagination != null && delivered >= pagination.getPageSize()) {
+                    hasNextPage = cursor.hasNext();
+                    close();
+                    break;
+                }
+                if (!cursor.hasNext()) {
+                    close();
+                    break;
+                }
+
+                lastEntity = cursor.next();
+                delivered++;
+
+                entities.add(lastEntity);
+                olingoEntities.add(OlingoSerializer.serialize(accessorPlan, lastEntity, selection));
+            }
+
+            if (expander != null) {
+                expander.expand(entities, olingoEntities);
+            }
+        } catch (OlingoSerializerException e) {
+            close();
+            throw new ODataRuntimeException("Cannot serialize Olingo entity '" + accessorPlan.getEntityTypeName() + "'", e);
+        } catch (ODataApplicationException e) {
+            close();
+            throw new ODataRuntimeException("Cannot expand Olingo entity '" + accessorPlan.getEntityTypeName() + "'", e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        buffer.addAll(olingoEntities);
+    }
+
+    /**
+     * @return The total number of entities, which has been counted by the backend before the iteration started.
+     */
+    @Override
+    public Integer getCount() {
+        return count;
+    }
+
+    /**
+     * Create the link to the next page once all entities of the page have been iterated.
+     *
+     * @return The next link or {@code null} if this is the last page.
+     */
+    @Override
+    public URI getNext() {
+        if (!hasNextPage) {
+            return null;
+        }
+
+        return pagination.createNextLink(lastEntity, delivered);
+    }
+
+    /**
+     * Close the underlying cursor if it is still open.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            cursor.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close cursor of entity type '" + accessorPlan.getEntityTypeName() + "'", e);
+        }
+    }
+
+}
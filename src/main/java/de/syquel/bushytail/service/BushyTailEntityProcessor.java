@@ -17,26 +17,53 @@
 package de.syquel.bushytail.service;
 
 import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.controller.IBushyTailVersionController;
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+import de.syquel.bushytail.metric.BushyTailMetricsPhase;
+import de.syquel.bushytail.metric.BushyTailOperation;
+import de.syquel.bushytail.metric.BushyTailRequestMetrics;
 import de.syquel.bushytail.serializer.OlingoDeserializer;
+import de.syquel.bushytail.serializer.OlingoSerializer;
 import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
 import de.syquel.bushytail.service.subprocessor.BushyTailEntitySetSubProcessor;
+import org.apache.olingo.commons.api.data.ContextURL;
 import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
 import org.apache.olingo.commons.api.edm.EdmEntityType;
-import org.apache.olingo.commons.api.edm.FullQualifiedName;
 import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
 import org.apache.olingo.server.api.*;
 import org.apache.olingo.server.api.deserializer.DeserializerResult;
 import org.apache.olingo.server.api.deserializer.ODataDeserializer;
+import org.apache.olingo.server.api.etag.PreconditionException;
 import org.apache.olingo.server.api.processor.EntityProcessor;
+import org.apache.olingo.server.api.serializer.EntitySerializerOptions;
+import org.apache.olingo.server.api.serializer.SerializerResult;
 import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriResource;
 import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 
 import java.io.InputStream;
 import java.util.Locale;
-import java.util.Map;
 
 /**
  * Processes CRUD operations on a single Olingo entity.
+ * <p>
+ * One instance is shared by all requests of a {@link de.syquel.bushytail.BushyTail} instance,
+ * so it must not hold any request state.
+ * </p>
+ * <p>
+ * Entities with a version property carry an ETag. Conditional reads of unchanged entities are answered with
+ * {@code 304 Not Modified} without serializing the entity, and, if the controller implements
+ * {@link IBushyTailVersionController}, even without reading it.
+ * </p>
  *
  * @author Clemens Bartz
  * @author Frederik Boster
@@ -44,33 +71,48 @@ import java.util.Map;
  */
 public class BushyTailEntityProcessor implements EntityProcessor {
 
-    private final Map<FullQualifiedName, Class<?>> entityTypeMap;
-    private final Map<Class<?>, IBushyTailController<?>> entityProcessorMap;
+    /** The shared service context. */
+    private final BushyTailServiceContext serviceContext;
 
     private final BushyTailEntitySetSubProcessor entitySetSubProcessor;
 
-    /** The odata object. */
-    private OData oData = null;
+    public BushyTailEntityProcessor(final BushyTailServiceContext serviceContext) {
+        this.serviceContext = serviceContext;
 
-    /** The service metadata. */
-    private ServiceMetadata serviceMetadata = null;
-
-    public BushyTailEntityProcessor(final Map<FullQualifiedName, Class<?>> entityTypeMap, final Map<Class<?>, IBushyTailController<?>> entityProcessorMap) {
-        this.entityTypeMap = entityTypeMap;
-        this.entityProcessorMap = entityProcessorMap;
-
-        entitySetSubProcessor = new BushyTailEntitySetSubProcessor(entityTypeMap, entityProcessorMap);
+        entitySetSubProcessor = new BushyTailEntitySetSubProcessor(serviceContext);
     }
 
     @Override
     public void init(OData oData, ServiceMetadata serviceMetadata) {
-        this.oData = oData;
-        this.serviceMetadata = serviceMetadata;
+        // Olingo calls this for every request; the shared instances are taken from the service context instead.
     }
 
     @Override
     public void readEntity(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType responseContentType) throws ODataApplicationException, ODataLibraryException {
-        entitySetSubProcessor.read(uriInfo);
+        BushyTailRequestMetrics.current().setTarget(
+                ((UriResourceEntitySet) uriInfo.getUriResourceParts().get(0)).getEntitySet().getName(), BushyTailOperation.READ);
+
+        if (isNotModified(oDataRequest, oDataResponse, readVersionETag(oDataRequest, uriInfo))) {
+            return;
+        }
+
+        final Entity olingoEntity = entitySetSubProcessor.read(uriInfo);
+        if (olingoEntity == null) {
+            throw new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH);
+        }
+        if (isNotModified(oDataRequest, oDataResponse, olingoEntity.getETag())) {
+            return;
+        }
+
+        // Navigation segments lead to the entity set the navigation property is bound to
+        EdmEntitySet edmEntitySet = ((UriResourceEntitySet) uriInfo.getUriResourceParts().get(0)).getEntitySet();
+        for (final UriResource uriResource : uriInfo.getUriResourceParts()) {
+            if (uriResource instanceof UriResourceNavigation) {
+                edmEntitySet = (EdmEntitySet) edmEntitySet.getRelatedBindingTarget(((UriResourceNavigation) uriResource).getProperty().getName());
+            }
+        }
+
+        writeEntity(oDataResponse, edmEntitySet, olingoEntity, responseContentType, HttpStatusCode.OK, uriInfo.getSelectOption(), uriInfo.getExpandOption());
     }
 
     @Override
@@ -80,33 +122,250 @@ public class BushyTailEntityProcessor implements EntityProcessor {
 
     public <T> void createEntityInternal(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType requestContentType, ContentType responseContentType) throws ODataApplicationException, ODataLibraryException {
         UriResourceEntitySet uriEntitySet = (UriResourceEntitySet) uriInfo.getUriResourceParts().get(0);
-        Class<T> entityClass = (Class<T>) entityTypeMap.get(uriEntitySet.getEntityType().getFullQualifiedName());
-        EdmEntityType edmEntityType = serviceMetadata.getEdm().getEntityType(uriEntitySet.getEntityType().getFullQualifiedName());
+        Class<T> entityClass = (Class<T>) serviceContext.getEntityClass(uriEntitySet.getEntityType().getFullQualifiedName());
+        EdmEntityType edmEntityType = uriEntitySet.getEntityType();
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        metrics.setTarget(uriEntitySet.getEntitySet().getName(), BushyTailOperation.CREATE);
 
         InputStream requestInputStream = oDataRequest.getBody();
-        ODataDeserializer deserializer = this.oData.createDeserializer(requestContentType);
+        ODataDeserializer deserializer = serviceContext.getDeserializer(requestContentType);
+        final long parseStartTime = metrics.startPhase();
         DeserializerResult deserializerResult = deserializer.entity(requestInputStream, edmEntityType);
+        metrics.endPhase(BushyTailMetricsPhase.PARSE, parseStartTime);
         Entity olingoEntity = deserializerResult.getEntity();
 
         T entity = null;
         try {
-            entity = OlingoDeserializer.deserialize(entityClass, olingoEntity);
+            entity = OlingoDeserializer.deserialize(serviceContext.getEntityBinder(entityClass), olingoEntity);
         } catch (OlingoDeserializerException e) {
-            throw new ODataApplicationException("Cannot deserialize Olingo entity '" + olingoEntity.getType() + "'", 500, Locale.ENGLISH, e);
+            throw new ODataApplicationException("Cannot deserialize Olingo entity '" + olingoEntity.getType() + "'", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH, e);
+        }
+
+        IBushyTailController<T> controller = serviceContext.getController(entityClass);
+        final long controllerStartTime = metrics.startPhase();
+        T createdEntity = controller.create(entity);
+        metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+        if (createdEntity == null) {
+            createdEntity = entity;
         }
+        serviceContext.invalidateCachedEntity(edmEntityType, createdEntity);
 
-        IBushyTailController<T> controller = (IBushyTailController<T>) entityProcessorMap.get(entityClass);
-        controller.create(entity);
+        Entity createdOlingoEntity;
+        try {
+            createdOlingoEntity = OlingoSerializer.serialize(serviceContext.getAccessorPlan(entityClass), createdEntity);
+        } catch (OlingoSerializerException e) {
+            throw new ODataApplicationException("Cannot serialize Olingo entity '" + olingoEntity.getType() + "'", 500, Locale.ENGLISH, e);
+        }
+
+        writeEntity(oDataResponse, uriEntitySet.getEntitySet(), createdOlingoEntity, responseContentType, HttpStatusCode.CREATED, null, null);
     }
 
     @Override
     public void updateEntity(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType requestContentType, ContentType responseContentType) throws ODataApplicationException, ODataLibraryException {
+        updateEntityInternal(oDataRequest, oDataResponse, uriInfo, requestContentType);
+    }
 
+    public <T> void updateEntityInternal(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType requestContentType) throws ODataApplicationException, ODataLibraryException {
+        UriResourceEntitySet uriEntitySet = (UriResourceEntitySet) uriInfo.getUriResourceParts().get(0);
+        @SuppressWarnings("unchecked")
+        Class<T> entityClass = (Class<T>) serviceContext.getEntityClass(uriEntitySet.getEntityType().getFullQualifiedName());
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        metrics.setTarget(uriEntitySet.getEntitySet().getName(), BushyTailOperation.UPDATE);
+
+        IBushyTailController<T> controller = serviceContext.getController(entityClass);
+        long controllerStartTime = metrics.startPhase();
+        T entity = controller.read(uriEntitySet.getKeyPredicates());
+        metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+        if (entity == null) {
+            throw new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH);
+        }
+        checkChangePreconditions(oDataRequest, entityClass, entity);
+
+        ODataDeserializer deserializer = serviceContext.getDeserializer(requestContentType);
+        final long parseStartTime = metrics.startPhase();
+        Entity olingoEntity = deserializer.entity(oDataRequest.getBody(), uriEntitySet.getEntityType()).getEntity();
+        metrics.endPhase(BushyTailMetricsPhase.PARSE, parseStartTime);
+
+        // PUT replaces the whole entity, whereas PATCH only merges the transmitted properties
+        boolean replace = HttpMethod.PUT.equals(oDataRequest.getMethod());
+        try {
+            OlingoDeserializer.bind(serviceContext.getEntityBinder(entityClass), entity, olingoEntity, replace);
+        } catch (OlingoDeserializerException e) {
+            throw new ODataApplicationException("Cannot deserialize Olingo entity '" + olingoEntity.getType() + "'", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH, e);
+        }
+
+        controllerStartTime = metrics.startPhase();
+        controller.update(entity);
+        metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+        serviceContext.invalidateCachedEntity(uriEntitySet.getEntityType(), uriEntitySet.getKeyPredicates());
+
+        oDataResponse.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
     }
 
     @Override
     public void deleteEntity(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo) throws ODataApplicationException, ODataLibraryException {
+        deleteEntityInternal(oDataRequest, oDataResponse, uriInfo);
+    }
+
+    public <T> void deleteEntityInternal(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo) throws ODataApplicationException, ODataLibraryException {
+        if (uriInfo.getUriResourceParts().size() != 1) {
+            throw new ODataApplicationException("Only entities of entity sets can be deleted", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+
+        UriResourceEntitySet uriEntitySet = (UriResourceEntitySet) uriInfo.getUriResourceParts().get(0);
+        @SuppressWarnings("unchecked")
+        Class<T> entityClass = (Class<T>) serviceContext.getEntityClass(uriEntitySet.getEntityType().getFullQualifiedName());
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        metrics.setTarget(uriEntitySet.getEntitySet().getName(), BushyTailOperation.DELETE);
 
+        IBushyTailController<T> controller = serviceContext.getController(entityClass);
+        long controllerStartTime = metrics.startPhase();
+        T entity = controller.read(uriEntitySet.getKeyPredicates());
+        metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+        if (entity == null) {
+            throw new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ENGLISH);
+        }
+        checkChangePreconditions(oDataRequest, entityClass, entity);
+
+        controllerStartTime = metrics.startPhase();
+        final boolean deleted = controller.delete(entity);
+        metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+        if (!deleted) {
+            throw new ODataApplicationException("Entity cannot be deleted", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+        }
+        serviceContext.invalidateCachedEntity(uriEntitySet.getEntityType(), uriEntitySet.getKeyPredicates());
+
+        oDataResponse.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
+    }
+
+    /**
+     * Determine the current ETag of an entity addressed by a conditional read with a version lookup of its controller,
+     * without reading the entity itself.
+     *
+     * @param <T> The class type of the JPA entity.
+     * @param oDataRequest The OData request.
+     * @param uriInfo The URI of the entity.
+     * @return The ETag or {@code null} if the request is not conditional or the ETag cannot be determined without reading the entity.
+     * @throws ODataApplicationException if the version cannot be read.
+     */
+    private <T> String readVersionETag(final ODataRequest oDataRequest, final UriInfo uriInfo) throws ODataApplicationException {
+        if (uriInfo.getUriResourceParts().size() != 1 || !isConditional(oDataRequest)) {
+            return null;
+        }
+
+        final UriResourceEntitySet uriEntitySet = (UriResourceEntitySet) uriInfo.getUriResourceParts().get(0);
+        @SuppressWarnings("unchecked")
+        final Class<T> entityClass = (Class<T>) serviceContext.getEntityClass(uriEntitySet.getEntityType().getFullQualifiedName());
+        final OlingoEntityAccessorPlan accessorPlan = serviceContext.getAccessorPlan(entityClass);
+        final IBushyTailController<T> controller = serviceContext.getController(entityClass);
+        // Cached entities are cheaper to compare than a version lookup
+        if (!accessorPlan.hasETag() || !(controller instanceof IBushyTailVersionController) || serviceContext.getEntityCache(entityClass) != null) {
+            return null;
+        }
+
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long controllerStartTime = metrics.startPhase();
+        try {
+            final Object version = ((IBushyTailVersionController<T>) controller).readVersion(accessorPlan.getVersionPropertyName(), uriEntitySet.getKeyPredicates());
+            metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+            return OlingoEntityAccessorPlan.formatETag(version);
+        } catch (BushyTailQueryException e) {
+            throw new ODataApplicationException("Cannot read version of entity '" + uriEntitySet.getEntityType().getName() + "'", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e);
+        }
+    }
+
+    /**
+     * Evaluate the preconditions of a conditional read and answer it with {@code 304 Not Modified}, if the client already has the current version.
+     *
+     * @param oDataRequest The OData request.
+     * @param oDataResponse The OData response.
+     * @param eTag The current ETag of the entity or {@code null} if it has none.
+     * @return Whether the response is complete.
+     * @throws PreconditionException if the ETag does not match {@code If-Match}.
+     */
+    private boolean isNotModified(final ODataRequest oDataRequest, final ODataResponse oDataResponse, final String eTag) throws PreconditionException {
+        if (eTag == null || !isConditional(oDataRequest)) {
+            return false;
+        }
+
+        if (!serviceContext.getETagHelper().checkReadPreconditions(eTag, oDataRequest.getHeaders(HttpHeader.IF_MATCH), oDataRequest.getHeaders(HttpHeader.IF_NONE_MATCH))) {
+            return false;
+        }
+
+        oDataResponse.setStatusCode(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+        oDataResponse.setHeader(HttpHeader.ETAG, eTag);
+        return true;
+    }
+
+    /**
+     * Evaluate the preconditions of a modification, if the entity has an ETag.
+     *
+     * @param <T> The class type of the JPA entity.
+     * @param oDataRequest The OData request.
+     * @param entityClass The JPA entity class.
+     * @param entity The current JPA entity.
+     * @throws PreconditionException if the ETag does not match {@code If-Match} or {@code If-None-Match}.
+     * @throws ODataApplicationException if the version property cannot be read.
+     */
+    private <T> void checkChangePreconditions(final ODataRequest oDataRequest, final Class<T> entityClass, final T entity) throws PreconditionException, ODataApplicationException {
+        final OlingoEntityAccessorPlan accessorPlan = serviceContext.getAccessorPlan(entityClass);
+        if (!accessorPlan.hasETag() || !isConditional(oDataRequest)) {
+            return;
+        }
+
+        final String eTag;
+        try {
+            eTag = accessorPlan.getETag(entity);
+        } catch (Exception e) {
+            throw new ODataApplicationException("Cannot read version of class '" + entityClass.getName() + "'", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e);
+        }
+
+        serviceContext.getETagHelper().checkChangePreconditions(eTag, oDataRequest.getHeaders(HttpHeader.IF_MATCH), oDataRequest.getHeaders(HttpHeader.IF_NONE_MATCH));
+    }
+
+    /**
+     * @param oDataRequest The OData request.
+     * @return Whether the request has an {@code If-Match} or {@code If-None-Match} header.
+     */
+    private static boolean isConditional(final ODataRequest oDataRequest) {
+        return oDataRequest.getHeader(HttpHeader.IF_MATCH) != null || oDataRequest.getHeader(HttpHeader.IF_NONE_MATCH) != null;
+    }
+
+    /**
+     * Serialize an Olingo entity into the response.
+     *
+     * @param oDataResponse The OData response.
+     * @param edmEntitySet The entity set of the entity.
+     * @param olingoEntity The Olingo entity.
+     * @param responseContentType The response content type.
+     * @param statusCode The HTTP status code of the response.
+     * @param selectOption The select option the entity has been serialized with or {@code null}.
+     * @param expandOption The expand option the entity has been expanded with or {@code null}.
+     * @throws ODataLibraryException if the entity cannot be serialized.
+     */
+    private void writeEntity(ODataResponse oDataResponse, EdmEntitySet edmEntitySet, Entity olingoEntity, ContentType responseContentType, HttpStatusCode statusCode,
+                             SelectOption selectOption, ExpandOption expandOption) throws ODataLibraryException {
+        final String selectList = selectOption == null && expandOption == null ? null
+                : serviceContext.getOData().createUriHelper().buildContextURLSelectList(edmEntitySet.getEntityType(), expandOption, selectOption);
+        final ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).selectList(selectList).suffix(ContextURL.Suffix.ENTITY).build();
+        final EntitySerializerOptions serializerOptions = EntitySerializerOptions.with()
+                .contextURL(contextUrl)
+                .select(selectOption)
+                .expand(expandOption)
+                .build();
+
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long renderStartTime = metrics.startPhase();
+        final SerializerResult serializerResult = serviceContext.getSerializer(responseContentType)
+                .entity(serviceContext.getServiceMetadata(), edmEntitySet.getEntityType(), olingoEntity, serializerOptions);
+        metrics.endPhase(BushyTailMetricsPhase.RENDER, renderStartTime);
+
+        oDataResponse.setContent(serializerResult.getContent());
+        oDataResponse.setStatusCode(statusCode.getStatusCode());
+        oDataResponse.setHeader(HttpHeader.CONTENT_TYPE, responseContentType.toContentTypeString());
+        if (olingoEntity.getETag() != null) {
+            oDataResponse.setHeader(HttpHeader.ETAG, olingoEntity.getETag());
+        }
     }
 
 }
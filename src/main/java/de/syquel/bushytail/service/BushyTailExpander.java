@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.controller.BushyTailEntityKey;
+import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.controller.IBushyTailExpandController;
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+import de.syquel.bushytail.factory.BushyTailQueryFactory;
+import de.syquel.bushytail.metric.BushyTailMetricsPhase;
+import de.syquel.bushytail.metric.BushyTailRequestMetrics;
+import de.syquel.bushytail.serializer.OlingoSerializer;
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.EntityCollection;
+import org.apache.olingo.commons.api.data.Link;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmNavigationProperty;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the {@code $expand} system query option of a request for a batch of entities.
+ * <p>
+ * The related entities of all entities of a batch are read with a single {@link IBushyTailExpandController#readByPartner}
+ * call per navigation property, using the partner of the navigation property to group them. Nested expansions are
+ * resolved level by level for all related entities of the level above, so the number of controller calls depends on the
+ * shape of {@code $expand} only, not on the number of entities.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailExpander {
+
+    /** The shared service context. */
+    private final BushyTailServiceContext serviceContext;
+
+    /** The entity type of the expanded entities. */
+    private final EdmEntityType entityType;
+
+    /** The expand option to resolve. */
+    private final ExpandOption expandOption;
+
+    /**
+     * Constructs {@link BushyTailExpander}.
+     *
+     * @param serviceContext The shared service context.
+     * @param entityType The entity type of the expanded entities.
+     * @param expandOption The expand option to resolve.
+     */
+    public BushyTailExpander(final BushyTailServiceContext serviceContext, final EdmEntityType entityType, final ExpandOption expandOption) {
+        this.serviceContext = serviceContext;
+        this.entityType = entityType;
+        this.expandOption = expandOption;
+    }
+
+    /**
+     * @return The number of entities which should be expanded at once.
+     */
+    public int getBatchSize() {
+        return Math.max(1, serviceContext.getFetchSize());
+    }
+
+    /**
+     * Add the expanded navigation properties as inline entities to the Olingo entities of a batch.
+     *
+     * @param entities The JPA entities of the batch.
+     * @param olingoEntities The Olingo entities of the batch in the same order.
+     * @throws ODataApplicationException if the expand option is not supported or the related entities cannot be read.
+     */
+    public void expand(final List<?> entities, final List<Entity> olingoEntities) throws ODataApplicationException {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        for (final ExpandItem expandItem : expandOption.getExpandItems()) {
+            if (expandItem.isRef() || expandItem.getFilterOption() != null || expandItem.getOrderByOption() != null || expandItem.getTopOption() != null
+                    || expandItem.getSkipOption() != null || expandItem.getCountOption() != null || expandItem.getLevelsOption() != null) {
+                throw new ODataApplicationException("Only $select and $expand are supported within $expand", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+            }
+
+            if (expandItem.isStar()) {
+                for (final String navigationPropertyName : entityType.getNavigationPropertyNames()) {
+                    expandNavigation(entities, olingoEntities, entityType.getNavigationProperty(navigationPropertyName), null, null);
+                }
+                continue;
+            }
+
+            final List<UriResource> uriResources = expandItem.getResourcePath().getUriResourceParts();
+            if (uriResources.size() != 1 || !(uriResources.get(0) instanceof UriResourceNavigation)) {
+                throw new ODataApplicationException("Only navigation properties of the entity type can be expanded", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+            }
+
+            final EdmNavigationProperty navigationProperty = ((UriResourceNavigation) uriResources.get(0)).getProperty();
+            expandNavigation(entities, olingoEntities, navigationProperty, expandItem.getSelectOption(), expandItem.getExpandOption());
+        }
+    }
+
+    /**
+     * Read the related entities of all entities of a batch through a navigation property with a single controller call.
+     *
+     * @param serviceContext The shared service context.
+     * @param entityType The entity type of the batch.
+     * @param entities The JPA entities of the batch.
+     * @param navigationProperty The navigation property.
+     * @return The related JPA entities of each entity of the batch in the same order.
+     * @throws ODataApplicationException if the navigation property cannot be resolved or the related entities cannot be read.
+     */
+    public static List<List<Object>> readRelated(final BushyTailServiceContext serviceContext, final EdmEntityType entityType, final List<?> entities,
+                                                 final EdmNavigationProperty navigationProperty) throws ODataApplicationException {
+        final EdmNavigationProperty partner = navigationProperty.getPartner();
+        final Class<?> targetClass = serviceContext.getEntityClass(navigationProperty.getType().getFullQualifiedName());
+        final IBushyTailController<?> targetController = serviceContext.getController(targetClass);
+        if (partner == null || !(targetController instanceof IBushyTailExpandController)) {
+            throw new ODataApplicationException("Navigation property '" + navigationProperty.getName() + "' cannot be resolved", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+
+        final OlingoEntityAccessorPlan accessorPlan = serviceContext.getAccessorPlan(serviceContext.getEntityClass(entityType.getFullQualifiedName()));
+        final List<BushyTailEntityKey> keys = new ArrayList<BushyTailEntityKey>(entities.size());
+        for (final Object entity : entities) {
+            final Map<String, Object> keyValues = new LinkedHashMap<String, Object>();
+            for (final String keyPropertyName : entityType.getKeyPredicateNames()) {
+                try {
+                    keyValues.put(keyPropertyName, accessorPlan.getProperty(keyPropertyName).getAccessor().get(entity));
+                } catch (Exception e) {
+                    throw new ODataApplicationException("Cannot read key of entity type '" + entityType.getName() + "'", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e);
+                }
+            }
+            keys.add(new BushyTailEntityKey(keyValues));
+        }
+
+        // Entities which appear several times in the batch are only requested once
+        final Set<BushyTailEntityKey> distinctKeys = new LinkedHashSet<BushyTailEntityKey>(keys);
+        final Map<BushyTailEntityKey, ? extends List<?>> relatedEntities;
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long controllerStartTime = metrics.startPhase();
+        try {
+            relatedEntities = ((IBushyTailExpandController<?>) targetController).readByPartner(partner.getName(), distinctKeys);
+            metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+        } catch (BushyTailQueryException e) {
+            throw new ODataApplicationException("Navigation property '" + navigationProperty.getName() + "' cannot be resolved", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH, e);
+        }
+
+        final List<List<Object>> result = new ArrayList<List<Object>>(keys.size());
+        for (final BushyTailEntityKey key : keys) {
+            final List<?> related = relatedEntities.get(key);
+            result.add(related == null ? Collections.<Object>emptyList() : new ArrayList<Object>(related));
+        }
+
+        return result;
+    }
+
+    /**
+     * Expand a single navigation property of all entities of a batch and resolve its nested expansions.
+     *
+     * @param entities The JPA entities of the batch.
+     * @param olingoEntities The Olingo entities of the batch in the same order.
+     * @param navigationProperty The navigation property to expand.
+     * @param selectOption The select option of the related entities or {@code null} for all properties.
+     * @param nestedExpandOption The expand option of the related entities or {@code null}.
+     * @throws ODataApplicationException if the related entities cannot be read or serialized.
+     */
+    private void expandNavigation(final List<?> entities, final List<Entity> olingoEntities, final EdmNavigationProperty navigationProperty,
+                                  final SelectOption selectOption, final ExpandOption nestedExpandOption) throws ODataApplicationException {
+        final List<List<Object>> relatedEntities = readRelated(serviceContext, entityType, entities, navigationProperty);
+
+        final EdmEntityType targetType = navigationProperty.getType();
+        final OlingoEntityAccessorPlan targetPlan = serviceContext.getAccessorPlan(serviceContext.getEntityClass(targetType.getFullQualifiedName()));
+        final boolean[] selection = targetPlan.getSelection(BushyTailQueryFactory.createProjection(selectOption, targetType, targetPlan.getVersionPropertyName()));
+
+        final List<Object> targetEntities = new ArrayList<Object>();
+        final List<Entity> targetOlingoEntities = new ArrayList<Entity>();
+        for (int i = 0; i < entities.size(); i++) {
+            final List<Entity> relatedOlingoEntities = new ArrayList<Entity>(relatedEntities.get(i).size());
+            for (final Object relatedEntity : relatedEntities.get(i)) {
+                try {
+                    relatedOlingoEntities.add(OlingoSerializer.serialize(targetPlan, relatedEntity, selection));
+                } catch (OlingoSerializerException e) {
+                    throw new ODataApplicationException("Cannot serialize Olingo entity '" + targetType.getName() + "'", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e);
+                }
+            }
+
+            final Link link = new Link();
+            link.setTitle(navigationProperty.getName());
+            if (navigationProperty.isCollection()) {
+                final EntityCollection inlineEntitySet = new EntityCollection();
+                inlineEntitySet.getEntities().addAll(relatedOlingoEntities);
+                link.setInlineEntitySet(inlineEntitySet);
+            } else {
+                link.setInlineEntity(relatedOlingoEntities.isEmpty() ? null : relatedOlingoEntities.get(0));
+            }
+            olingoEntities.get(i).getNavigationLinks().add(link);
+
+            targetEntities.addAll(relatedEntities.get(i));
+            targetOlingoEntities.addAll(relatedOlingoEntities);
+        }
+
+        // The next level is resolved for the related entities of the whole batch at once
+        if (nestedExpandOption != null) {
+            new BushyTailExpander(serviceContext, targetType, nestedExpandOption).expand(targetEntities, targetOlingoEntities);
+        }
+    }
+
+}
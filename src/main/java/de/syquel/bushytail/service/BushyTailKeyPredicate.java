@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmKeyPropertyRef;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link UriParameter} of a key predicate which has been parsed from the raw path of a {@code $batch} operation.
+ * <p>
+ * Only literal keys are supported, i.e. neither parameter aliases nor referential constraints. Each literal is validated
+ * against the type of its key property like Olingo validates it, so that invalid keys are left to Olingo and answered
+ * with its error response.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailKeyPredicate implements UriParameter {
+
+    /** The name of the key property. */
+    private final String name;
+
+    /** The URI literal of the key value. */
+    private final String text;
+
+    /**
+     * Constructs {@link BushyTailKeyPredicate}.
+     *
+     * @param name The name of the key property.
+     * @param text The URI literal of the key value.
+     */
+    BushyTailKeyPredicate(final String name, final String text) {
+        this.name = name;
+        this.text = text;
+    }
+
+    /**
+     * Parse the key predicates of a raw path segment like {@code Orders(42)} or {@code Items(order=42,position=1)}.
+     *
+     * @param entityType The entity type of the addressed entity set.
+     * @param segment The percent-encoded path segment including the entity set name.
+     * @return The key predicates or {@code null} if the segment has no valid literal key of the entity type.
+     */
+    static List<UriParameter> parse(final EdmEntityType entityType, final String segment) {
+        final int open = segment.indexOf('(');
+        if (open < 0 || !segment.endsWith(")")) {
+            return null;
+        }
+
+        final String keyText;
+        try {
+            keyText = URLDecoder.decode(segment.substring(open + 1, segment.length() - 1).replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        final List<String> parts = splitOutsideQuotes(keyText);
+        final List<String> keyPropertyNames = entityType.getKeyPredicateNames();
+        if (parts == null || parts.size() != keyPropertyNames.size()) {
+            return null;
+        }
+
+        final List<UriParameter> keyPredicates = new ArrayList<UriParameter>(parts.size());
+        final Set<String> names = new HashSet<String>();
+        for (final String part : parts) {
+            final int equals = indexOutsideQuotes(part, '=');
+            final String keyPropertyName = equals < 0 ? keyPropertyNames.get(0) : part.substring(0, equals).trim();
+            final String value = (equals < 0 ? part : part.substring(equals + 1)).trim();
+            if ((equals < 0 && parts.size() > 1) || !keyPropertyNames.contains(keyPropertyName) || !names.add(keyPropertyName)
+                    || value.isEmpty() || value.startsWith("@") || !isValidLiteral(entityType.getKeyPropertyRef(keyPropertyName), value)) {
+                return null;
+            }
+
+            keyPredicates.add(new BushyTailKeyPredicate(keyPropertyName, value));
+        }
+
+        return Collections.unmodifiableList(keyPredicates);
+    }
+
+    @Override
+    public String getAlias() {
+        return null;
+    }
+
+    @Override
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public Expression getExpression() {
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getReferencedProperty() {
+        return null;
+    }
+
+    /**
+     * Validate the URI literal of a key value against the type and facets of its key property.
+     *
+     * @param keyPropertyRef The key property.
+     * @param value The URI literal of the key value.
+     * @return Whether the literal is a valid value of the key property.
+     */
+    private static boolean isValidLiteral(final EdmKeyPropertyRef keyPropertyRef, final String value) {
+        final EdmProperty property = keyPropertyRef.getProperty();
+        if (!(property.getType() instanceof EdmPrimitiveType)) {
+            return false;
+        }
+
+        final EdmPrimitiveType type = (EdmPrimitiveType) property.getType();
+        try {
+            return type.validate(type.fromUriLiteral(value), false, property.getMaxLength(), property.getPrecision(), property.getScale(), property.isUnicode());
+        } catch (EdmPrimitiveTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Split a key predicate at the commas which are not part of a string literal.
+     *
+     * @param keyText The decoded key predicate without parentheses.
+     * @return The parts or {@code null} if a string literal is not terminated.
+     */
+    private static List<String> splitOutsideQuotes(final String keyText) {
+        final List<String> parts = new ArrayList<String>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < keyText.length(); i++) {
+            final char c = keyText.charAt(i);
+            if (c == '\'') {
+                // Escaped quotes ('') toggle twice and thus keep the state
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                parts.add(keyText.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        parts.add(keyText.substring(start));
+
+        return parts;
+    }
+
+    /**
+     * Find a character which is not part of a string literal.
+     *
+     * @param text The text.
+     * @param character The character.
+     * @return The index or {@code -1} if there is none.
+     */
+    private static int indexOutsideQuotes(final String text, final char character) {
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == character && !quoted) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.helper.BushyTailCompressionHelper;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.processor.MetadataProcessor;
+import org.apache.olingo.server.api.processor.ServiceDocumentProcessor;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.apache.olingo.server.api.uri.UriInfo;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serves the metadata document and the service document from pre-rendered representations.
+ * <p>
+ * Both documents only depend on the Edm, so they are rendered once when the service is built instead of on every request.
+ * The common formats are rendered eagerly; other formats which the client negotiates are rendered on first use.
+ * Responses carry a strong ETag and a {@code Cache-Control} header, conditional requests of unchanged documents are answered
+ * with {@code 304 Not Modified}, and clients which accept gzip receive the pre-compressed representation.
+ * The service document refers to the metadata document by a relative context URL, like all other responses,
+ * so that it does not depend on the base URI of the request.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailMetadataProcessor implements MetadataProcessor, ServiceDocumentProcessor {
+
+    /** The maximum number of formats per document which are rendered on first use. */
+    private static final int MAX_LAZY_FORMATS = 16;
+
+    /** The shared service context. */
+    private final BushyTailServiceContext serviceContext;
+
+    /** The value of the {@code Cache-Control} header. */
+    private final String cacheControl;
+
+    /** The pre-rendered metadata documents by content type. */
+    private final ConcurrentMap<String, BushyTailDocument> metadataDocuments = new ConcurrentHashMap<String, BushyTailDocument>();
+
+    /** The pre-rendered service documents by content type. */
+    private final ConcurrentMap<String, BushyTailDocument> serviceDocuments = new ConcurrentHashMap<String, BushyTailDocument>();
+
+    /**
+     * Constructs {@link BushyTailMetadataProcessor} and renders the documents in their common formats.
+     *
+     * @param serviceContext The shared service context.
+     * @param maxAge The number of seconds clients may use the documents without revalidation or {@code 0} if they must always revalidate.
+     * @throws SerializerException if the metadata document cannot be rendered.
+     */
+    public BushyTailMetadataProcessor(final BushyTailServiceContext serviceContext, final int maxAge) throws SerializerException {
+        this.serviceContext = serviceContext;
+        this.cacheControl = maxAge > 0 ? "max-age=" + maxAge : "no-cache";
+
+        metadataDocuments.put(ContentType.APPLICATION_XML.toContentTypeString(), renderMetadataDocument(ContentType.APPLICATION_XML));
+        for (final ContentType contentType : new ContentType[] {ContentType.JSON, ContentType.JSON_FULL_METADATA, ContentType.JSON_NO_METADATA, ContentType.APPLICATION_XML}) {
+            try {
+                serviceDocuments.put(contentType.toContentTypeString(), renderServiceDocument(contentType));
+            } catch (SerializerException e) {
+                // The format is not supported by this Olingo version, so it is never negotiated either
+            }
+        }
+    }
+
+    @Override
+    public void init(OData oData, ServiceMetadata serviceMetadata) {
+        // Olingo calls this for every request; the shared instances are taken from the service context instead.
+    }
+
+    @Override
+    public void readMetadata(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType responseContentType) throws ODataApplicationException, ODataLibraryException {
+        BushyTailDocument document = metadataDocuments.get(responseContentType.toContentTypeString());
+        if (document == null) {
+            document = renderMetadataDocument(responseContentType);
+            if (metadataDocuments.size() < MAX_LAZY_FORMATS) {
+                metadataDocuments.putIfAbsent(responseContentType.toContentTypeString(), document);
+            }
+        }
+
+        writeDocument(oDataRequest, oDataResponse, document);
+    }
+
+    @Override
+    public void readServiceDocument(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType responseContentType) throws ODataApplicationException, ODataLibraryException {
+        BushyTailDocument document = serviceDocuments.get(responseContentType.toContentTypeString());
+        if (document == null) {
+            document = renderServiceDocument(responseContentType);
+            if (serviceDocuments.size() < MAX_LAZY_FORMATS) {
+                serviceDocuments.putIfAbsent(responseContentType.toContentTypeString(), document);
+            }
+        }
+
+        writeDocument(oDataRequest, oDataResponse, document);
+    }
+
+    /**
+     * Render the metadata document.
+     *
+     * @param contentType The content type of the document.
+     * @return The rendered document.
+     * @throws SerializerException if the content type is not supported.
+     */
+    private BushyTailDocument renderMetadataDocument(final ContentType contentType) throws SerializerException {
+        return BushyTailDocument.create(contentType.toContentTypeString(),
+                serviceContext.getSerializer(contentType).metadataDocument(serviceContext.getServiceMetadata()).getContent());
+    }
+
+    /**
+     * Render the service document.
+     *
+     * @param contentType The content type of the document.
+     * @return The rendered document.
+     * @throws SerializerException if the content type is not supported.
+     */
+    private BushyTailDocument renderServiceDocument(final ContentType contentType) throws SerializerException {
+        return BushyTailDocument.create(contentType.toContentTypeString(),
+                serviceContext.getSerializer(contentType).serviceDocument(serviceContext.getServiceMetadata(), null).getContent());
+    }
+
+    /**
+     * Write a pre-rendered document into the response, unless the client already has it.
+     *
+     * @param oDataRequest The OData request.
+     * @param oDataResponse The OData response.
+     * @param document The pre-rendered document.
+     * @throws ODataLibraryException if the ETag does not match {@code If-Match}.
+     */
+    private void writeDocument(final ODataRequest oDataRequest, final ODataResponse oDataResponse, final BushyTailDocument document) throws ODataLibraryException {
+        final boolean gzipped = acceptsGzip(oDataRequest.getHeader(HttpHeader.ACCEPT_ENCODING));
+        final String eTag = document.getETag(gzipped);
+
+        oDataResponse.setHeader(HttpHeader.ETAG, eTag);
+        oDataResponse.setHeader(HttpHeader.CACHE_CONTROL, cacheControl);
+        oDataResponse.setHeader(HttpHeader.VARY, HttpHeader.ACCEPT + ", " + HttpHeader.ACCEPT_ENCODING);
+
+        if (serviceContext.getETagHelper().checkReadPreconditions(eTag, oDataRequest.getHeaders(HttpHeader.IF_MATCH), oDataRequest.getHeaders(HttpHeader.IF_NONE_MATCH))) {
+            oDataResponse.setStatusCode(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+            return;
+        }
+
+        final byte[] content = document.getContent(gzipped);
+        oDataResponse.setContent(new ByteArrayInputStream(content));
+        oDataResponse.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        oDataResponse.setHeader(HttpHeader.CONTENT_TYPE, document.getContentType());
+        oDataResponse.setHeader(HttpHeader.CONTENT_LENGTH, String.valueOf(content.length));
+        if (gzipped) {
+            oDataResponse.setHeader(HttpHeader.CONTENT_ENCODING, "gzip");
+        }
+    }
+
+    /**
+     * Determine whether gzip is the content coding preferred by a client.
+     * Otherwise, the plain document is sent and left to the response compression, if enabled.
+     *
+     * @param acceptEncoding The value of the {@code Accept-Encoding} header or {@code null}.
+     * @return Whether gzip is preferred.
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        return BushyTailCompressionHelper.GZIP.equals(BushyTailCompressionHelper.negotiateEncoding(acceptEncoding));
+    }
+
+}
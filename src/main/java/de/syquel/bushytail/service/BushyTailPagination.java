@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.controller.query.*;
+import de.syquel.bushytail.serializer.plan.IPropertyAccessor;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import de.syquel.bushytail.serializer.plan.OlingoPropertyPlan;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataRequest;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Server-driven paging of a single collection response.
+ * <p>
+ * If the request is ordered by non-nullable structural properties only, the next page is read by keyset: The sort key
+ * values of the last delivered entity, completed by its primary key, are transported in the {@code $skiptoken} and turned
+ * into a predicate, so every page costs the same regardless of its depth. Otherwise the next page is read by offset,
+ * since a comparison with {@code NULL} is never true and entities with {@code NULL} sort keys would never be delivered.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailPagination {
+
+    /** The next link without the value of the {@code $skiptoken}. */
+    private final String nextLinkPrefix;
+
+    /** The number of entities delivered on the previous pages. */
+    private final int position;
+
+    /** The number of entities of this page. */
+    private final int pageSize;
+
+    /** The number of entities to skip in the cursor before the page starts. */
+    private final int skip;
+
+    /** The query of this page or {@code null} if the cursor is not queried. */
+    private final BushyTailQuery query;
+
+    /** The accessors of the sort key values for keyset paging or {@code null} for offset paging. */
+    private final List<IPropertyAccessor> keysetAccessors;
+
+    /**
+     * Constructs {@link BushyTailPagination}.
+     *
+     * @param nextLinkPrefix The next link without the value of the {@code $skiptoken}.
+     * @param position The number of entities delivered on the previous pages.
+     * @param pageSize The number of entities of this page.
+     * @param skip The number of entities to skip in the cursor before the page starts.
+     * @param query The query of this page or {@code null} if the cursor is not queried.
+     * @param keysetAccessors The accessors of the sort key values for keyset paging or {@code null} for offset paging.
+     */
+    private BushyTailPagination(final String nextLinkPrefix, final int position, final int pageSize, final int skip, final BushyTailQuery query,
+                                final List<IPropertyAccessor> keysetAccessors) {
+        this.nextLinkPrefix = nextLinkPrefix;
+        this.position = position;
+        this.pageSize = pageSize;
+        this.skip = skip;
+        this.query = query;
+        this.keysetAccessors = keysetAccessors;
+    }
+
+    /**
+     * Page a query which is evaluated by the controller.
+     *
+     * @param oDataRequest The OData request.
+     * @param query The query of the request.
+     * @param skipToken The token of the requested page or {@code null} for the first page.
+     * @param maxPageSize The maximum number of entities per page.
+     * @param accessorPlan The accessor plan of the JPA entity class.
+     * @param entityType The entity type.
+     * @return The pagination.
+     * @throws ODataApplicationException if the token does not match the query.
+     */
+    static BushyTailPagination forQuery(final ODataRequest oDataRequest, final BushyTailQuery query, final BushyTailSkipToken skipToken,
+                                        final int maxPageSize, final OlingoEntityAccessorPlan accessorPlan, final EdmEntityType entityType)
+            throws ODataApplicationException {
+        final int position = skipToken == null ? 0 : skipToken.getPosition();
+        final List<String> keyPropertyNames = entityType.getKeyPredicateNames();
+
+        // Determine the unique sort order and the accessors of its values, if it consists of non-nullable structural properties only
+        final List<BushyTailSortKey> sortKeys = new ArrayList<BushyTailSortKey>(query.getSortKeys());
+        List<IPropertyAccessor> keysetAccessors = new ArrayList<IPropertyAccessor>(sortKeys.size() + keyPropertyNames.size());
+        final List<BushyTailPropertyPath> sortPaths = new ArrayList<BushyTailPropertyPath>(sortKeys.size());
+        for (final BushyTailSortKey sortKey : sortKeys) {
+            final OlingoPropertyPlan propertyPlan = getSimpleProperty(sortKey.getExpression(), accessorPlan);
+            if (propertyPlan == null || !isNonNullable(entityType, propertyPlan.getName())) {
+                keysetAccessors = null;
+                break;
+            }
+
+            keysetAccessors.add(propertyPlan.getAccessor());
+            sortPaths.add((BushyTailPropertyPath) sortKey.getExpression());
+        }
+        for (final String keyPropertyName : keyPropertyNames) {
+            final BushyTailPropertyPath keyPath = new BushyTailPropertyPath(Collections.singletonList(keyPropertyName));
+            if (sortPaths.contains(keyPath)) {
+                continue;
+            }
+
+            sortKeys.add(new BushyTailSortKey(keyPath, false));
+            if (keysetAccessors != null) {
+                keysetAccessors.add(accessorPlan.getProperty(keyPropertyName).getAccessor());
+            }
+        }
+
+        IBushyTailExpression filter = query.getFilter();
+        int offset = query.getOffset() + position;
+        if (skipToken != null && skipToken.isKeyset()) {
+            if (keysetAccessors == null || skipToken.getKeyValues().size() != sortKeys.size() || skipToken.getKeyValues().contains(null)) {
+                throw new ODataApplicationException("$skiptoken does not match the request", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+            }
+
+            final IBushyTailExpression keysetPredicate = createKeysetPredicate(sortKeys, skipToken.getKeyValues());
+            filter = filter == null ? keysetPredicate : new BushyTailBinaryExpression(BushyTailBinaryOperator.AND, filter, keysetPredicate);
+            offset = 0;
+        }
+
+        // Read one more entity than the page holds to detect whether there is a next page
+        final Integer remaining = query.getLimit() == null ? null : Math.max(query.getLimit() - position, 0);
+        final int pageSize = remaining == null ? maxPageSize : Math.min(maxPageSize, remaining);
+        final int limit = remaining != null && remaining <= maxPageSize ? pageSize : pageSize + 1;
+
+        // The sort key values of the last entity must be loaded even if they are not selected
+        List<String> projection = query.getProjection();
+        if (projection != null && keysetAccessors != null) {
+            final Set<String> extendedProjection = new LinkedHashSet<String>(projection);
+            for (final BushyTailSortKey sortKey : sortKeys) {
+                extendedProjection.add(((BushyTailPropertyPath) sortKey.getExpression()).getSegments().get(0));
+            }
+            projection = new ArrayList<String>(extendedProjection);
+        }
+
+        final BushyTailQuery pageQuery = new BushyTailQuery(filter, sortKeys, limit, offset, Math.min(query.getFetchSize(), limit), projection);
+
+        return new BushyTailPagination(createNextLinkPrefix(oDataRequest), position, pageSize, 0, pageQuery, keysetAccessors);
+    }
+
+    /**
+     * Page a cursor over the whole collection by offset.
+     *
+     * @param oDataRequest The OData request.
+     * @param skipToken The token of the requested page or {@code null} for the first page.
+     * @param maxPageSize The maximum number of entities per page.
+     * @return The pagination.
+     */
+    static BushyTailPagination forCursor(final ODataRequest oDataRequest, final BushyTailSkipToken skipToken, final int maxPageSize) {
+        final int position = skipToken == null ? 0 : skipToken.getPosition();
+
+        return new BushyTailPagination(createNextLinkPrefix(oDataRequest), position, maxPageSize, position, null, null);
+    }
+
+    /**
+     * @return The query of this page or {@code null} if the cursor is not queried.
+     */
+    BushyTailQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * @return The number of entities of this page.
+     */
+    int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return The number of entities to skip in the cursor before the page starts.
+     */
+    int getSkip() {
+        return skip;
+    }
+
+    /**
+     * Create the link to the next page.
+     *
+     * @param lastEntity The last JPA entity of this page.
+     * @param delivered The number of entities of this page.
+     * @return The next link.
+     */
+    URI createNextLink(final Object lastEntity, final int delivered) {
+        List<Object> keyValues = null;
+        if (keysetAccessors != null) {
+            keyValues = new ArrayList<Object>(keysetAccessors.size());
+            for (final IPropertyAccessor keysetAccessor : keysetAccessors) {
+                final Object keyValue;
+                try {
+                    keyValue = keysetAccessor.get(lastEntity);
+                } catch (Exception e) {
+                    throw new ODataRuntimeException("Cannot read sort key of class '" + lastEntity.getClass().getName() + "'", e);
+                }
+
+                // Values of unsupported types cannot be compared, thus the next page falls back to the offset
+                if (!BushyTailSkipToken.isEncodable(keyValue)) {
+                    keyValues = null;
+                    break;
+                }
+                keyValues.add(keyValue);
+            }
+        }
+
+        return URI.create(nextLinkPrefix + new BushyTailSkipToken(position + delivered, keyValues).encode());
+    }
+
+    /**
+     * Determine the structural property a sort key expression refers to.
+     *
+     * @param expression The sort key expression.
+     * @param accessorPlan The accessor plan of the JPA entity class.
+     * @return The property or {@code null} if the expression is no structural property of the entity itself.
+     */
+    private static OlingoPropertyPlan getSimpleProperty(final IBushyTailExpression expression, final OlingoEntityAccessorPlan accessorPlan) {
+        if (!(expression instanceof BushyTailPropertyPath) || !((BushyTailPropertyPath) expression).isSimple()) {
+            return null;
+        }
+
+        return accessorPlan.getProperty(((BushyTailPropertyPath) expression).getSegments().get(0));
+    }
+
+    /**
+     * Determine whether a structural property can never be {@code null}, i.e. it is part of the key or declared as non-nullable.
+     *
+     * @param entityType The entity type.
+     * @param propertyName The name of the structural property.
+     * @return Whether the property is non-nullable.
+     */
+    private static boolean isNonNullable(final EdmEntityType entityType, final String propertyName) {
+        if (entityType.getKeyPredicateNames().contains(propertyName)) {
+            return true;
+        }
+
+        final EdmProperty property = entityType.getStructuralProperty(propertyName);
+        return property != null && Boolean.FALSE.equals(property.isNullable());
+    }
+
+    /**
+     * Create the predicate which selects all entities after the given sort key values, i.e.
+     * {@code k1 > v1 or (k1 = v1 and k2 > v2) or ...} with {@code <} for descending keys.
+     *
+     * @param sortKeys The unique sort keys.
+     * @param keyValues The sort key values of the last delivered entity.
+     * @return The keyset predicate.
+     */
+    private static IBushyTailExpression createKeysetPredicate(final List<BushyTailSortKey> sortKeys, final List<Object> keyValues) {
+        IBushyTailExpression disjunction = null;
+        for (int i = 0; i < sortKeys.size(); i++) {
+            final BushyTailSortKey sortKey = sortKeys.get(i);
+
+            IBushyTailExpression conjunction = new BushyTailBinaryExpression(sortKey.isDescending() ? BushyTailBinaryOperator.LT : BushyTailBinaryOperator.GT,
+                    sortKey.getExpression(), new BushyTailLiteral(keyValues.get(i)));
+            for (int j = i - 1; j >= 0; j--) {
+                final IBushyTailExpression equality = new BushyTailBinaryExpression(BushyTailBinaryOperator.EQ,
+                        sortKeys.get(j).getExpression(), new BushyTailLiteral(keyValues.get(j)));
+                conjunction = new BushyTailBinaryExpression(BushyTailBinaryOperator.AND, equality, conjunction);
+            }
+
+            disjunction = disjunction == null ? conjunction : new BushyTailBinaryExpression(BushyTailBinaryOperator.OR, disjunction, conjunction);
+        }
+
+        return disjunction;
+    }
+
+    /**
+     * Create the next link of a request without the value of the {@code $skiptoken}.
+     * All other query options are kept, since they are evaluated again for the next page.
+     *
+     * @param oDataRequest The OData request.
+     * @return The next link prefix.
+     */
+    private static String createNextLinkPrefix(final ODataRequest oDataRequest) {
+        final StringBuilder nextLink = new StringBuilder(oDataRequest.getRawBaseUri()).append(oDataRequest.getRawODataPath()).append('?');
+
+        final String rawQueryPath = oDataRequest.getRawQueryPath();
+        if (rawQueryPath != null && !rawQueryPath.isEmpty()) {
+            for (final String queryOption : rawQueryPath.split("&")) {
+                final String lowerCaseQueryOption = queryOption.toLowerCase(Locale.ENGLISH);
+                if (queryOption.isEmpty() || lowerCaseQueryOption.startsWith("$skiptoken=") || lowerCaseQueryOption.startsWith("%24skiptoken=")) {
+                    continue;
+                }
+
+                nextLink.append(queryOption).append('&');
+            }
+        }
+
+        return nextLink.append("$skiptoken=").toString();
+    }
+
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.cache.BushyTailEntityCache;
+import de.syquel.bushytail.controller.BushyTailEntityKey;
+import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.factory.BushyTailEntityKeyFactory;
+import de.syquel.bushytail.factory.OlingoMetadataFactory;
+import de.syquel.bushytail.serializer.exception.OlingoDeserializerException;
+import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.serializer.plan.IOlingoEntityCodec;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import de.syquel.bushytail.serializer.plan.OlingoEntityBinder;
+import de.syquel.bushytail.serializer.plan.ReflectiveEntityCodec;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.CsdlSchema;
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.commons.api.edmx.EdmxReferenceInclude;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.deserializer.DeserializerException;
+import org.apache.olingo.server.api.deserializer.ODataDeserializer;
+import org.apache.olingo.server.api.etag.ETagHelper;
+import org.apache.olingo.server.api.serializer.ODataSerializer;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, thread-safe holder of everything a request needs which does not depend on the request itself.
+ * <p>
+ * The Olingo {@link OData} instance, the {@link ServiceMetadata} including its {@link Edm}, the accessor plans
+ * and binders per JPA entity class, the entity caches, the ETag helper as well as the serializers and deserializers
+ * per content type are created once and shared between all requests.
+ * </p>
+ * <p>
+ * Cache invalidations within a transactional change set are recorded per thread and repeated after the commit, since
+ * a concurrent read between the first invalidation and the commit would cache the entity as it was before the change set.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public class BushyTailServiceContext {
+
+    /** The Olingo OData instance. */
+    private final OData oData;
+
+    /** The service metadata including the eagerly loaded Edm. */
+    private final ServiceMetadata serviceMetadata;
+
+    /** The map of FQNs and classes. */
+    private final Map<FullQualifiedName, Class<?>> entityTypeMap;
+
+    /** The map of classes and controllers. */
+    private final Map<Class<?>, IBushyTailController<?>> entityControllerMap;
+
+    /** The pre-resolved accessor plans per JPA entity class. */
+    private final Map<Class<?>, OlingoEntityAccessorPlan> accessorPlans;
+
+    /** The pre-resolved binders per JPA entity class. */
+    private final Map<Class<?>, OlingoEntityBinder<?>> entityBinders;
+
+    /** The maximum number of entities per response page by JPA entity class. */
+    private final Map<Class<?>, Integer> maxPageSizeMap;
+
+    /** The read-through caches by JPA entity class. */
+    private final Map<Class<?>, BushyTailEntityCache> entityCacheMap;
+
+    /** The number of entities which controllers should fetch from the backend at once. */
+    private final int fetchSize;
+
+    /** The stateless helper which evaluates conditional requests. */
+    private final ETagHelper eTagHelper;
+
+    /** The invalidated keys by cache within the change set transaction of the current thread; a {@code null} key invalidates all entities. */
+    private final ThreadLocal<Map<BushyTailEntityCache, Set<BushyTailEntityKey>>> deferredInvalidations = new ThreadLocal<Map<BushyTailEntityCache, Set<BushyTailEntityKey>>>();
+
+    /** The values of the {@code odata.metadata} parameter, which are understood by Olingo. */
+    private static final Set<String> ODATA_METADATA_VALUES = new HashSet<String>(Arrays.asList(
+            ContentType.VALUE_ODATA_METADATA_NONE, ContentType.VALUE_ODATA_METADATA_MINIMAL, ContentType.VALUE_ODATA_METADATA_FULL));
+
+    /** The serializers per {@link #normalizeContentType normalized} response content type. */
+    private final ConcurrentMap<ContentType, ODataSerializer> serializers = new ConcurrentHashMap<ContentType, ODataSerializer>();
+
+    /** The deserializers per {@link #normalizeContentType normalized} request content type. */
+    private final ConcurrentMap<ContentType, ODataDeserializer> deserializers = new ConcurrentHashMap<ContentType, ODataDeserializer>();
+
+    /**
+     * Create the service context and resolve the complete Edm eagerly.
+     *
+     * @param odataSchemas The OData schemas of the service.
+     * @param entityTypeMap The map of FQNs and JPA entity classes.
+     * @param entityControllerMap The map of JPA entity classes and their controllers.
+     * @param maxPageSizeMap The map of JPA entity classes and the maximum number of entities per response page.
+     * @param versionPropertyMap The map of JPA entity classes and the properties their ETags are derived from.
+     * @param entityCacheMap The map of JPA entity classes and the caches of their entities.
+     * @param entityCodecMap The map of JPA entity classes and their generated codecs; other classes are accessed through reflection.
+     * @param fetchSize The number of entities which controllers should fetch from the backend at once.
+     * @throws OlingoSerializerException if the accessor plan of a JPA entity class cannot be resolved.
+     * @throws OlingoDeserializerException if the binder of a JPA entity class cannot be resolved.
+     */
+    public BushyTailServiceContext(final List<CsdlSchema> odataSchemas, final Map<FullQualifiedName, Class<?>> entityTypeMap,
+                                   final Map<Class<?>, IBushyTailController<?>> entityControllerMap,
+                                   final Map<Class<?>, Integer> maxPageSizeMap, final Map<Class<?>, String> versionPropertyMap,
+                                   final Map<Class<?>, BushyTailEntityCache> entityCacheMap, final Map<Class<?>, IOlingoEntityCodec<?>> entityCodecMap,
+                                   final int fetchSize)
+            throws OlingoSerializerException, OlingoDeserializerException {
+        this.entityTypeMap = Collections.unmodifiableMap(new HashMap<FullQualifiedName, Class<?>>(entityTypeMap));
+        this.entityControllerMap = Collections.unmodifiableMap(new HashMap<Class<?>, IBushyTailController<?>>(entityControllerMap));
+        this.maxPageSizeMap = Collections.unmodifiableMap(new HashMap<Class<?>, Integer>(maxPageSizeMap));
+        this.entityCacheMap = Collections.unmodifiableMap(new HashMap<Class<?>, BushyTailEntityCache>(entityCacheMap));
+        this.fetchSize = fetchSize;
+
+        oData = OData.newInstance();
+        eTagHelper = oData.createETagHelper();
+
+        // The entity sets of versioned entities are annotated with terms of the Core vocabulary
+        final EdmxReference coreReference = new EdmxReference(URI.create(OlingoMetadataFactory.CORE_VOCABULARY_URI))
+                .addInclude(new EdmxReferenceInclude(OlingoMetadataFactory.CORE_VOCABULARY_NAMESPACE, "Core"));
+        serviceMetadata = oData.createServiceMetadata(new BushyTailEdmProvider(odataSchemas), Collections.singletonList(coreReference));
+
+        // Resolve all schemas once, so that requests only read the already populated Edm caches
+        serviceMetadata.getEdm().getSchemas();
+
+        final Map<Class<?>, OlingoEntityAccessorPlan> accessorPlans = new HashMap<Class<?>, OlingoEntityAccessorPlan>();
+        final Map<Class<?>, OlingoEntityBinder<?>> entityBinders = new HashMap<Class<?>, OlingoEntityBinder<?>>();
+        for (final Map.Entry<FullQualifiedName, Class<?>> entityTypeEntry : entityTypeMap.entrySet()) {
+            final EdmEntityType entityType = serviceMetadata.getEdm().getEntityType(entityTypeEntry.getKey());
+            final Class<?> entityClass = entityTypeEntry.getValue();
+
+            IOlingoEntityCodec<?> entityCodec = entityCodecMap.get(entityClass);
+            if (entityCodec == null) {
+                entityCodec = ReflectiveEntityCodec.create(entityClass);
+            }
+
+            accessorPlans.put(entityClass, OlingoEntityAccessorPlan.create(entityType, entityCodec, versionPropertyMap.get(entityClass)));
+            entityBinders.put(entityClass, OlingoEntityBinder.create(entityCodec, entityType.getPropertyNames(), entityType.getKeyPredicateNames()));
+        }
+        this.accessorPlans = Collections.unmodifiableMap(accessorPlans);
+        this.entityBinders = Collections.unmodifiableMap(entityBinders);
+    }
+
+    /**
+     * @return The shared Olingo OData instance.
+     */
+    public OData getOData() {
+        return oData;
+    }
+
+    /**
+     * @return The shared service metadata.
+     */
+    public ServiceMetadata getServiceMetadata() {
+        return serviceMetadata;
+    }
+
+    /**
+     * @return The shared Entity Data Model.
+     */
+    public Edm getEdm() {
+        return serviceMetadata.getEdm();
+    }
+
+    /**
+     * Determine the JPA entity class of an OData entity type.
+     *
+     * @param entityTypeName The FQN of the OData entity type.
+     * @return The JPA entity class or {@code null} if the entity type is unknown.
+     */
+    public Class<?> getEntityClass(final FullQualifiedName entityTypeName) {
+        return entityTypeMap.get(entityTypeName);
+    }
+
+    /**
+     * Determine the business controller of a JPA entity class.
+     *
+     * @param <T> The class type of the JPA entity.
+     * @param entityClass The JPA entity class.
+     * @return The business controller or {@code null} if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> IBushyTailController<T> getController(final Class<T> entityClass) {
+        return (IBushyTailController<T>) entityControllerMap.get(entityClass);
+    }
+
+    /**
+     * Get the pre-resolved accessor plan of a JPA entity class.
+     *
+     * @param entityClass The JPA entity class.
+     * @return The accessor plan or {@code null} if the class is not a registered entity.
+     */
+    public OlingoEntityAccessorPlan getAccessorPlan(final Class<?> entityClass) {
+        return accessorPlans.get(entityClass);
+    }
+
+    /**
+     * Get the pre-resolved binder of a JPA entity class.
+     *
+     * @param <T> The class type of the JPA entity.
+     * @param entityClass The JPA entity class.
+     * @return The binder or {@code null} if the class is not a registered entity.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> OlingoEntityBinder<T> getEntityBinder(final Class<T> entityClass) {
+        return (OlingoEntityBinder<T>) entityBinders.get(entityClass);
+    }
+
+    /**
+     * Determine the maximum number of entities per response page of a JPA entity class.
+     *
+     * @param entityClass The JPA entity class.
+     * @return The maximum page size or {@code 0} if responses are not paged.
+     */
+    public int getMaxPageSize(final Class<?> entityClass) {
+        final Integer maxPageSize = maxPageSizeMap.get(entityClass);
+        return maxPageSize == null ? 0 : maxPageSize;
+    }
+
+    /**
+     * Get the read-through cache of a JPA entity class.
+     *
+     * @param entityClass The JPA entity class.
+     * @return The cache or {@code null} if the entities are not cached.
+     */
+    public BushyTailEntityCache getEntityCache(final Class<?> entityClass) {
+        return entityCacheMap.get(entityClass);
+    }
+
+    /**
+     * @return The read-through caches by JPA entity class.
+     */
+    public Map<Class<?>, BushyTailEntityCache> getEntityCaches() {
+        return entityCacheMap;
+    }
+
+    /**
+     * Remove an entity which has been updated or deleted from the cache of its entity set, if any.
+     *
+     * @param entityType The OData entity type.
+     * @param keyPredicates The key predicates of the entity.
+     */
+    public void invalidateCachedEntity(final EdmEntityType entityType, final List<UriParameter> keyPredicates) {
+        final BushyTailEntityCache entityCache = entityCacheMap.get(getEntityClass(entityType.getFullQualifiedName()));
+        if (entityCache == null) {
+            return;
+        }
+
+        invalidate(entityCache, BushyTailEntityKeyFactory.createKey(entityType, keyPredicates));
+    }
+
+    /**
+     * Remove an entity which has been created, updated or deleted from the cache of its entity set, if any.
+     *
+     * @param entityType The OData entity type.
+     * @param entity The JPA entity.
+     */
+    public void invalidateCachedEntity(final EdmEntityType entityType, final Object entity) {
+        final Class<?> entityClass = getEntityClass(entityType.getFullQualifiedName());
+        final BushyTailEntityCache entityCache = entityCacheMap.get(entityClass);
+        if (entityCache == null) {
+            return;
+        }
+
+        invalidate(entityCache, BushyTailEntityKeyFactory.createKey(entityType, getAccessorPlan(entityClass), entity));
+    }
+
+    /**
+     * Start recording the cache invalidations of the current thread, because it has begun the transaction of a change set.
+     */
+    public void beginDeferredInvalidation() {
+        deferredInvalidations.set(new IdentityHashMap<BushyTailEntityCache, Set<BushyTailEntityKey>>());
+    }
+
+    /**
+     * Stop recording the cache invalidations of the current thread and repeat them, if the change set has been committed.
+     *
+     * @param committed Whether the transaction of the change set has been committed.
+     */
+    public void endDeferredInvalidation(final boolean committed) {
+        final Map<BushyTailEntityCache, Set<BushyTailEntityKey>> invalidations = deferredInvalidations.get();
+        deferredInvalidations.remove();
+        if (!committed || invalidations == null) {
+            return;
+        }
+
+        for (final Map.Entry<BushyTailEntityCache, Set<BushyTailEntityKey>> invalidation : invalidations.entrySet()) {
+            if (invalidation.getValue().contains(null)) {
+                invalidation.getKey().invalidateAll();
+                continue;
+            }
+
+            for (final BushyTailEntityKey key : invalidation.getValue()) {
+                invalidation.getKey().invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Remove an entity from a cache and record the invalidation, if the current thread is within a change set transaction.
+     *
+     * @param entityCache The cache of the entity set.
+     * @param key The key of the entity or {@code null} if the entity cannot be identified.
+     */
+    private void invalidate(final BushyTailEntityCache entityCache, final BushyTailEntityKey key) {
+        if (key == null) {
+            // The entity cannot be identified, so no cached entity must be trusted anymore
+            entityCache.invalidateAll();
+        } else {
+            entityCache.invalidate(key);
+        }
+
+        final Map<BushyTailEntityCache, Set<BushyTailEntityKey>> invalidations = deferredInvalidations.get();
+        if (invalidations != null) {
+            Set<BushyTailEntityKey> keys = invalidations.get(entityCache);
+            if (keys == null) {
+                keys = new HashSet<BushyTailEntityKey>();
+                invalidations.put(entityCache, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    /**
+     * @return The number of entities which controllers should fetch from the backend at once.
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @return The shared, stateless helper which evaluates conditional requests.
+     */
+    public ETagHelper getETagHelper() {
+        return eTagHelper;
+    }
+
+    /**
+     * Get the shared serializer for a content type.
+     * Olingo serializers do not hold any request state, so one instance per normalized content type is sufficient.
+     *
+     * @param contentType The response content type.
+     * @return The serializer for the content type.
+     * @throws SerializerException if the content type is not supported.
+     */
+    public ODataSerializer getSerializer(final ContentType contentType) throws SerializerException {
+        final ContentType normalizedContentType = normalizeContentType(contentType);
+        if (normalizedContentType == null) {
+            return oData.createSerializer(contentType);
+        }
+
+        ODataSerializer serializer = serializers.get(normalizedContentType);
+        if (serializer == null) {
+            serializer = oData.createSerializer(normalizedContentType);
+
+            final ODataSerializer existingSerializer = serializers.putIfAbsent(normalizedContentType, serializer);
+            if (existingSerializer != null) {
+                serializer = existingSerializer;
+            }
+        }
+
+        return serializer;
+    }
+
+    /**
+     * Get the shared deserializer for a content type.
+     * Olingo deserializers do not hold any request state, so one instance per normalized content type is sufficient.
+     *
+     * @param contentType The request content type.
+     * @return The deserializer for the content type.
+     * @throws DeserializerException if the content type is not supported.
+     */
+    public ODataDeserializer getDeserializer(final ContentType contentType) throws DeserializerException {
+        final ContentType normalizedContentType = normalizeContentType(contentType);
+        if (normalizedContentType == null) {
+            return oData.createDeserializer(contentType);
+        }
+
+        ODataDeserializer deserializer = deserializers.get(normalizedContentType);
+        if (deserializer == null) {
+            deserializer = oData.createDeserializer(normalizedContentType);
+
+            final ODataDeserializer existingDeserializer = deserializers.putIfAbsent(normalizedContentType, deserializer);
+            if (existingDeserializer != null) {
+                deserializer = existingDeserializer;
+            }
+        }
+
+        return deserializer;
+    }
+
+    /**
+     * Reduce a content type to the parts which Olingo's serializers and deserializers actually read.
+     * <p>
+     * Content types are client-controlled, thus caching by the full content type would add an entry for every distinct
+     * parameter sent by a client. Only the media type and the known values of the {@code odata.metadata} and
+     * {@code IEEE754Compatible} parameters are kept, which bounds the caches to a few entries.
+     * </p>
+     *
+     * @param contentType The content type of a request or response.
+     * @return The normalized content type or {@code null} if a parameter has an unknown value and the content type must not be cached.
+     */
+    static ContentType normalizeContentType(final ContentType contentType) {
+        ContentType normalizedContentType = ContentType.create(
+                (contentType.getType() + '/' + contentType.getSubtype()).toLowerCase(Locale.ENGLISH));
+
+        final String odataMetadata = contentType.getParameter(ContentType.PARAMETER_ODATA_METADATA);
+        if (odataMetadata != null) {
+            final String normalizedOdataMetadata = odataMetadata.toLowerCase(Locale.ENGLISH);
+            if (!ODATA_METADATA_VALUES.contains(normalizedOdataMetadata)) {
+                return null;
+            }
+
+            normalizedContentType = ContentType.create(normalizedContentType, ContentType.PARAMETER_ODATA_METADATA, normalizedOdataMetadata);
+        }
+
+        final String ieee754Compatible = contentType.getParameter(ContentType.PARAMETER_IEEE754_COMPATIBLE);
+        if (ieee754Compatible != null) {
+            final String normalizedIeee754Compatible = ieee754Compatible.toLowerCase(Locale.ENGLISH);
+            if (!"true".equals(normalizedIeee754Compatible) && !"false".equals(normalizedIeee754Compatible)) {
+                return null;
+            }
+
+            normalizedContentType = ContentType.create(normalizedContentType, ContentType.PARAMETER_IEEE754_COMPATIBLE, normalizedIeee754Compatible);
+        }
+
+        return normalizedContentType;
+    }
+
+}
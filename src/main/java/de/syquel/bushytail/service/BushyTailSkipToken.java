@@ -0,0 +1,271 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.syquel.bushytail.service;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Opaque continuation token of server-driven paging, transported as {@code $skiptoken}.
+ * <p>
+ * The token contains the number of entities delivered on the previous pages and, for keyset paging,
+ * the sort key values of the last delivered entity including its primary key. Without sort key values
+ * the next page is read by offset.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+final class BushyTailSkipToken {
+
+    /** The version of the token format. */
+    private static final byte VERSION = 1;
+
+    /** The type tags of encoded values. */
+    private static final char TAG_NULL = 'n';
+    private static final char TAG_STRING = 's';
+    private static final char TAG_BYTE = 'b';
+    private static final char TAG_SHORT = 'h';
+    private static final char TAG_INTEGER = 'i';
+    private static final char TAG_LONG = 'l';
+    private static final char TAG_FLOAT = 'f';
+    private static final char TAG_DOUBLE = 'd';
+    private static final char TAG_BIG_INTEGER = 'I';
+    private static final char TAG_BIG_DECIMAL = 'D';
+    private static final char TAG_TIMESTAMP = 't';
+
+    /** The number of entities delivered on the previous pages. */
+    private final int position;
+
+    /** The sort key values of the last delivered entity or {@code null} for offset paging. */
+    private final List<Object> keyValues;
+
+    /**
+     * Constructs {@link BushyTailSkipToken}.
+     *
+     * @param position The number of entities delivered on the previous pages.
+     * @param keyValues The sort key values of the last delivered entity or {@code null} for offset paging.
+     */
+    BushyTailSkipToken(final int position, final List<Object> keyValues) {
+        this.position = position;
+        this.keyValues = keyValues == null ? null : Collections.unmodifiableList(new ArrayList<Object>(keyValues));
+    }
+
+    /**
+     * @return The number of entities delivered on the previous pages.
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The sort key values of the last delivered entity or {@code null} for offset paging.
+     */
+    List<Object> getKeyValues() {
+        return keyValues;
+    }
+
+    /**
+     * @return Whether the next page is read by keyset rather than by offset.
+     */
+    boolean isKeyset() {
+        return keyValues != null;
+    }
+
+    /**
+     * Determine whether a sort key value can be encoded into a token.
+     * Only values which JPQL can compare with {@code <} and {@code >} are supported, i.e. strings, numbers and temporal values.
+     *
+     * @param value The value.
+     * @return Whether the value is non-null and of a supported type.
+     */
+    static boolean isEncodable(final Object value) {
+        return value instanceof String || value instanceof Byte || value instanceof Short || value instanceof Integer
+                || value instanceof Long || value instanceof Float || value instanceof Double || value instanceof BigInteger
+                || value instanceof BigDecimal || value instanceof Date || value instanceof Calendar;
+    }
+
+    /**
+     * Encode the token into its URL-safe representation.
+     *
+     * @return The encoded token.
+     */
+    String encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeInt(position);
+            out.writeShort(keyValues == null ? -1 : keyValues.size());
+            if (keyValues != null) {
+                for (final Object keyValue : keyValues) {
+                    writeValue(out, keyValue);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode skip token", e);
+        }
+
+        return Base64.encodeBase64URLSafeString(bytes.toByteArray());
+    }
+
+    /**
+     * Decode a token from its URL-safe representation.
+     *
+     * @param token The encoded token.
+     * @return The token.
+     * @throws ODataApplicationException if the token is malformed.
+     */
+    static BushyTailSkipToken decode(final String token) throws ODataApplicationException {
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.decodeBase64(token)));
+            if (in.readByte() != VERSION) {
+                throw new IOException("Unknown version");
+            }
+
+            final int position = in.readInt();
+            final int keyValueCount = in.readShort();
+            if (position < 0 || keyValueCount < -1) {
+                throw new IOException("Negative position or size");
+            }
+
+            List<Object> keyValues = null;
+            if (keyValueCount >= 0) {
+                keyValues = new ArrayList<Object>(keyValueCount);
+                for (int i = 0; i < keyValueCount; i++) {
+                    keyValues.add(readValue(in));
+                }
+            }
+
+            return new BushyTailSkipToken(position, keyValues);
+        } catch (IOException e) {
+            throw new ODataApplicationException("Invalid $skiptoken", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH, e);
+        } catch (RuntimeException e) {
+            throw new ODataApplicationException("Invalid $skiptoken", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH, e);
+        }
+    }
+
+    /**
+     * Write a sort key value with its type tag.
+     * Temporal values lose their type and are restored as {@link Timestamp}, which the controller coerces into the property type.
+     *
+     * @param out The output.
+     * @param value The sort key value.
+     * @throws IOException if the value cannot be written.
+     */
+    private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(TAG_SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(TAG_BIG_INTEGER);
+            out.writeUTF(value.toString());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(TAG_BIG_DECIMAL);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Date) {
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeLong(((Date) value).getTime());
+            out.writeInt(value instanceof Timestamp ? ((Timestamp) value).getNanos() : -1);
+        } else if (value instanceof Calendar) {
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeLong(((Calendar) value).getTimeInMillis());
+            out.writeInt(-1);
+        } else {
+            throw new IOException("Unsupported sort key type '" + value.getClass().getName() + "'");
+        }
+    }
+
+    /**
+     * Read a sort key value with its type tag.
+     *
+     * @param in The input.
+     * @return The sort key value.
+     * @throws IOException if the value cannot be read.
+     */
+    private static Object readValue(final DataInputStream in) throws IOException {
+        final char tag = (char) in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return in.readUTF();
+            case TAG_BYTE:
+                return in.readByte();
+            case TAG_SHORT:
+                return in.readShort();
+            case TAG_INTEGER:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_BIG_INTEGER:
+                return new BigInteger(in.readUTF());
+            case TAG_BIG_DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case TAG_TIMESTAMP:
+                final Timestamp timestamp = new Timestamp(in.readLong());
+                final int nanos = in.readInt();
+                if (nanos >= 0) {
+                    timestamp.setNanos(nanos);
+                }
+                return timestamp;
+            default:
+                throw new IOException("Unknown type tag '" + tag + "'");
+        }
+    }
+
+}
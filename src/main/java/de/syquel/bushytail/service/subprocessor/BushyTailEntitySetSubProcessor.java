@@ -16,17 +16,28 @@
 
 package de.syquel.bushytail.service.subprocessor;
 
+import de.syquel.bushytail.cache.BushyTailEntityCache;
+import de.syquel.bushytail.controller.BushyTailEntityKey;
 import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.factory.BushyTailEntityKeyFactory;
+import de.syquel.bushytail.factory.BushyTailQueryFactory;
+import de.syquel.bushytail.metric.BushyTailMetricsPhase;
+import de.syquel.bushytail.metric.BushyTailRequestMetrics;
 import de.syquel.bushytail.serializer.OlingoSerializer;
 import de.syquel.bushytail.serializer.exception.OlingoSerializerException;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import de.syquel.bushytail.service.BushyTailExpander;
+import de.syquel.bushytail.service.BushyTailServiceContext;
 import org.apache.olingo.commons.api.data.Entity;
-import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmNavigationProperty;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
 import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.uri.*;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 /**
  * Processes CRUD operations on a single Olingo entity.
@@ -37,91 +48,50 @@ import java.util.Map;
  */
 public class BushyTailEntitySetSubProcessor {
 
-    private final Map<FullQualifiedName, Class<?>> entityTypeMap;
-    private final Map<Class<?>, IBushyTailController<?>> entityProcessorMap;
+    /** The shared service context. */
+    private final BushyTailServiceContext serviceContext;
 
-    public BushyTailEntitySetSubProcessor(final Map<FullQualifiedName, Class<?>> entityTypeMap, final Map<Class<?>, IBushyTailController<?>> entityProcessorMap) {
-        this.entityTypeMap = entityTypeMap;
-        this.entityProcessorMap = entityProcessorMap;
+    public BushyTailEntitySetSubProcessor(final BushyTailServiceContext serviceContext) {
+        this.serviceContext = serviceContext;
     }
 
-    public Object read(UriInfo uriInfo) throws ODataApplicationException {
-        // TODO consider UriInfo Options: Apply, Count, Expand, Filter, Id, Search, Select, Skip, Top, OrderBy, SkipToken
+    public Entity read(UriInfo uriInfo) throws ODataApplicationException {
+        // TODO consider UriInfo Options: Apply, Id, Search
         List<UriResource> uriResources = uriInfo.getUriResourceParts();
+        Object entity = null;
+        EdmEntityType entityType = null;
 
         for (UriResource uriResource : uriResources) {
             switch (uriResource.getKind()) {
                 case entitySet: {
                     UriResourceEntitySet resourceEntitySet = (UriResourceEntitySet) uriResource;
 
-                    Class<?> entityClass = entityTypeMap.get(resourceEntitySet.getEntityType().getFullQualifiedName());
-                    IBushyTailController<?> entityController = entityProcessorMap.get(entityClass);
+                    Class<?> entityClass = serviceContext.getEntityClass(resourceEntitySet.getEntityType().getFullQualifiedName());
+                    IBushyTailController<?> entityController = serviceContext.getController(entityClass);
 
                     List<UriParameter> keyPredicates = resourceEntitySet.getKeyPredicates();
-                    Object entity = entityController.read(keyPredicates);
-
-                    try {
-                        Entity olingoEntity = OlingoSerializer.serialize(resourceEntitySet.getEntityType(), entity);
-                    } catch (OlingoSerializerException e) {
-                        throw new ODataApplicationException("Cannot serialize Olingo entity '" + resourceEntitySet.getType().getName() + "'", 500, Locale.ENGLISH, e);
+                    entity = readThroughCache(entityClass, resourceEntitySet.getEntityType(), entityController, keyPredicates);
+                    entityType = resourceEntitySet.getEntityType();
+                    if (entity == null) {
+                        return null;
                     }
 
                     break;
                 }
                 case navigationProperty: {
                     UriResourceNavigation resourceNavigation = (UriResourceNavigation) uriResource;
-                    break;
-                }
-                case primitiveProperty: {
-                    UriResourcePrimitiveProperty resourcePrimitiveProperty = (UriResourcePrimitiveProperty) uriResource;
-                    break;
-                }
-                case complexProperty: {
-                    UriResourceComplexProperty resourceComplexProperty = (UriResourceComplexProperty) uriResource;
-                    break;
-                }
-                case value: {
-                    UriResourceValue resourceValue = (UriResourceValue) uriResource;
-                    break;
-                }
-                case count: {
-                    UriResourceCount resourceCount = (UriResourceCount) uriResource;
-                    break;
-                }
-                case action: {
-                    UriResourceAction resourceAction = (UriResourceAction) uriResource;
-                    break;
-                }
-                case function: {
-                    UriResourceFunction resourceFunction = (UriResourceFunction) uriResource;
-                    break;
-                }
-                case ref: {
-                    UriResourceRef resourceRef = (UriResourceRef) uriResource;
-                    break;
-                }
-                case it: {
-                    UriResourceIt resourceIt = (UriResourceIt) uriResource;
-                    break;
-                }
-                case root: {
-                    UriResourceRoot resourceRoot = (UriResourceRoot) uriResource;
-                    break;
-                }
-                case singleton: {
-                    UriResourceSingleton resourceSingleton = (UriResourceSingleton) uriResource;
-                    break;
-                }
-                case lambdaAll: {
-                    UriResourceLambdaAll resourceLambdaAll = (UriResourceLambdaAll) uriResource;
-                    break;
-                }
-                case lambdaAny: {
-                    UriResourceLambdaAny resourceLambdaAny = (UriResourceLambdaAny) uriResource;
-                    break;
-                }
-                case lambdaVariable: {
-                    UriResourceLambdaVariable resourceLambdaVariable = (UriResourceLambdaVariable) uriResource;
+                    EdmNavigationProperty navigationProperty = resourceNavigation.getProperty();
+                    if (entity == null || navigationProperty.isCollection() || !resourceNavigation.getKeyPredicates().isEmpty()) {
+                        throw new ODataApplicationException("Navigation property '" + navigationProperty.getName() + "' cannot be read as entity", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+                    }
+
+                    List<Object> relatedEntities = BushyTailExpander.readRelated(serviceContext, entityType, Collections.singletonList(entity), navigationProperty).get(0);
+                    entity = relatedEntities.isEmpty() ? null : relatedEntities.get(0);
+                    entityType = navigationProperty.getType();
+                    if (entity == null) {
+                        return null;
+                    }
+
                     break;
                 }
                 default:
@@ -129,8 +99,73 @@ public class BushyTailEntitySetSubProcessor {
             }
         }
 
-        // TODO
-        return null;
+        if (entity == null) {
+            return null;
+        }
+
+        // Only the selected properties are serialized, and the expanded navigation properties are added inline
+        final OlingoEntityAccessorPlan accessorPlan = serviceContext.getAccessorPlan(serviceContext.getEntityClass(entityType.getFullQualifiedName()));
+        final boolean[] selection = accessorPlan.getSelection(BushyTailQueryFactory.createProjection(uriInfo.getSelectOption(), entityType,
+                accessorPlan.getVersionPropertyName()));
+        final Entity result;
+        try {
+            result = OlingoSerializer.serialize(accessorPlan, entity, selection);
+        } catch (OlingoSerializerException e) {
+            throw new ODataApplicationException("Cannot serialize Olingo entity '" + entityType.getName() + "'", 500, Locale.ENGLISH, e);
+        }
+
+        if (uriInfo.getExpandOption() != null) {
+            new BushyTailExpander(serviceContext, entityType, uriInfo.getExpandOption())
+                    .expand(Collections.singletonList(entity), Collections.singletonList(result));
+        }
+
+        return result;
+    }
+
+    /**
+     * Read an entity from the cache of its entity set or, if it is not cached, from its controller.
+     *
+     * @param entityClass The JPA entity class.
+     * @param entityType The OData entity type.
+     * @param entityController The controller of the entity set.
+     * @param keyPredicates The key predicates of the entity.
+     * @return The entity or {@code null} if it does not exist.
+     */
+    private Object readThroughCache(final Class<?> entityClass, final EdmEntityType entityType, final IBushyTailController<?> entityController,
+                                    final List<UriParameter> keyPredicates) {
+        final BushyTailEntityCache entityCache = serviceContext.getEntityCache(entityClass);
+        final BushyTailEntityKey cacheKey = entityCache == null ? null : BushyTailEntityKeyFactory.createKey(entityType, keyPredicates);
+        if (cacheKey == null) {
+            return readFromController(entityController, keyPredicates);
+        }
+
+        // The stamp is taken before the read, so an entity which is invalidated meanwhile is not cached
+        final long stamp = entityCache.stamp(cacheKey);
+        Object entity = entityCache.get(cacheKey);
+        if (entity == null) {
+            entity = readFromController(entityController, keyPredicates);
+            if (entity != null) {
+                entityCache.put(cacheKey, entity, stamp);
+            }
+        }
+
+        return entity;
+    }
+
+    /**
+     * Read an entity from its controller and record the time spent in the controller.
+     *
+     * @param entityController The controller of the entity set.
+     * @param keyPredicates The key predicates of the entity.
+     * @return The entity or {@code null} if it does not exist.
+     */
+    private static Object readFromController(final IBushyTailController<?> entityController, final List<UriParameter> keyPredicates) {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+        final long controllerStartTime = metrics.startPhase();
+        final Object entity = entityController.read(keyPredicates);
+        metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, controllerStartTime);
+
+        return entity;
     }
 
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.transaction;
+
+import de.syquel.bushytail.transaction.exception.BushyTailTransactionException;
+
+/**
+ * Demarcates the transactions which span several controller calls, e.g. all operations of a {@code $batch} change set.
+ * <p>
+ * Implementations must bind the transaction to the current thread, so that the controllers called in between take part in it.
+ * </p>
+ *
+ * @author Frederik Boster
+ * @since 1.0
+ */
+public interface IBushyTailTransactionManager {
+
+    /**
+     * Begin a new transaction.
+     * @throws BushyTailTransactionException if the transaction cannot be begun
+     */
+    void begin() throws BushyTailTransactionException;
+
+    /**
+     * Commit the current transaction.
+     * @throws BushyTailTransactionException if the transaction cannot be committed
+     */
+    void commit() throws BushyTailTransactionException;
+
+    /**
+     * Roll back the current transaction.
+     * @throws BushyTailTransactionException if the transaction cannot be rolled back
+     */
+    void rollback() throws BushyTailTransactionException;
+
+}
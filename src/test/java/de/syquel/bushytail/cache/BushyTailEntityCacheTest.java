@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.cache;
+
+import de.syquel.bushytail.controller.BushyTailEntityKey;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BushyTailEntityCache}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailEntityCacheTest {
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() {
+        final BushyTailEntityCache cache = new BushyTailEntityCache(2, 0, TimeUnit.SECONDS, BushyTailEvictionPolicy.LRU);
+        put(cache, "a");
+        put(cache, "b");
+        assertEquals("a", cache.get(key("a")));
+
+        put(cache, "c");
+
+        assertNull(cache.get(key("b")));
+        assertEquals("a", cache.get(key("a")));
+        assertEquals("c", cache.get(key("c")));
+
+        final BushyTailCacheStatistics statistics = cache.getStatistics();
+        assertEquals(3, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getEvictionCount());
+        assertEquals(2, statistics.getSize());
+    }
+
+    @Test
+    public void testTinyLfuAdmitsFrequentEntity() {
+        final BushyTailEntityCache cache = new BushyTailEntityCache(2, 0, TimeUnit.SECONDS, BushyTailEvictionPolicy.W_TINY_LFU);
+        put(cache, "a");
+        put(cache, "b");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("b", cache.get(key("b")));
+        }
+
+        // "b" leaves the window and replaces the less frequently requested "a"
+        put(cache, "c");
+
+        assertNull(cache.get(key("a")));
+        assertEquals("b", cache.get(key("b")));
+        assertEquals("c", cache.get(key("c")));
+    }
+
+    @Test
+    public void testTinyLfuRejectsInfrequentEntity() {
+        final BushyTailEntityCache cache = new BushyTailEntityCache(2, 0, TimeUnit.SECONDS, BushyTailEvictionPolicy.W_TINY_LFU);
+        put(cache, "a");
+        put(cache, "b");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("a", cache.get(key("a")));
+        }
+
+        // "b" leaves the window, but is requested less frequently than "a"
+        put(cache, "c");
+
+        assertNull(cache.get(key("b")));
+        assertEquals("a", cache.get(key("a")));
+        assertEquals("c", cache.get(key("c")));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testTimeToLive() throws InterruptedException {
+        final BushyTailEntityCache expiringCache = new BushyTailEntityCache(10, 1, TimeUnit.MILLISECONDS, BushyTailEvictionPolicy.LRU);
+        final BushyTailEntityCache eternalCache = new BushyTailEntityCache(10, 0, TimeUnit.MILLISECONDS, BushyTailEvictionPolicy.LRU);
+        put(expiringCache, "a");
+        put(eternalCache, "a");
+
+        Thread.sleep(10);
+
+        assertNull(expiringCache.get(key("a")));
+        assertEquals(0, expiringCache.size());
+        assertEquals(1, expiringCache.getStatistics().getEvictionCount());
+        assertEquals("a", eternalCache.get(key("a")));
+    }
+
+    @Test
+    public void testPutAfterInvalidationIsDiscarded() {
+        final BushyTailEntityCache cache = new BushyTailEntityCache(10, 0, TimeUnit.SECONDS, BushyTailEvictionPolicy.LRU);
+
+        final long stamp = cache.stamp(key("a"));
+        cache.invalidate(key("a"));
+        assertFalse(cache.put(key("a"), "stale", stamp));
+        assertNull(cache.get(key("a")));
+
+        assertTrue(cache.put(key("a"), "a", cache.stamp(key("a"))));
+        assertEquals("a", cache.get(key("a")));
+    }
+
+    @Test
+    public void testPutAfterInvalidateAllIsDiscarded() {
+        final BushyTailEntityCache cache = new BushyTailEntityCache(10, 0, TimeUnit.SECONDS, BushyTailEvictionPolicy.LRU);
+        put(cache, "a");
+
+        final long stamp = cache.stamp(key("b"));
+        cache.invalidateAll();
+
+        assertFalse(cache.put(key("b"), "stale", stamp));
+        assertNull(cache.get(key("a")));
+        assertEquals(0, cache.size());
+    }
+
+    private static void put(final BushyTailEntityCache cache, final String id) {
+        assertTrue(cache.put(key(id), id, cache.stamp(key(id))));
+    }
+
+    private static BushyTailEntityKey key(final String id) {
+        return new BushyTailEntityKey(Collections.<String, Object>singletonMap("id", id));
+    }
+
+}
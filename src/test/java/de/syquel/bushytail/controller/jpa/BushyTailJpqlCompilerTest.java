@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.controller.jpa;
+
+import de.syquel.bushytail.controller.query.BushyTailBinaryExpression;
+import de.syquel.bushytail.controller.query.BushyTailBinaryOperator;
+import de.syquel.bushytail.controller.query.BushyTailLiteral;
+import de.syquel.bushytail.controller.query.BushyTailMethod;
+import de.syquel.bushytail.controller.query.BushyTailMethodExpression;
+import de.syquel.bushytail.controller.query.BushyTailPropertyPath;
+import de.syquel.bushytail.controller.query.BushyTailQuery;
+import de.syquel.bushytail.controller.query.BushyTailSortKey;
+import de.syquel.bushytail.controller.query.IBushyTailExpression;
+import de.syquel.bushytail.controller.query.exception.BushyTailInvalidQueryException;
+import de.syquel.bushytail.controller.query.exception.BushyTailQueryException;
+import org.junit.Test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BushyTailJpqlCompiler}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailJpqlCompilerTest {
+
+    private final BushyTailJpqlCompiler compiler = new BushyTailJpqlCompiler(Product.class);
+
+    @Test
+    public void testCompileFilterAndSort() throws BushyTailQueryException {
+        final BushyTailJpqlQuery query = compiler.compile(new BushyTailQuery(
+                new BushyTailBinaryExpression(BushyTailBinaryOperator.GT, property("price"), new BushyTailLiteral(10L)),
+                Collections.singletonList(new BushyTailSortKey(property("name"), true)), 20, 40, 100));
+
+        assertEquals("SELECT e FROM Product e WHERE e.price > ?1 ORDER BY e.name DESC, e.id ASC", query.getJpql());
+        assertEquals(1, query.getParameters().size());
+        assertEquals(10, query.getParameters().get(0).getValue());
+        assertEquals(40, query.getFirstResult());
+        assertEquals(Integer.valueOf(20), query.getMaxResults());
+        assertEquals(100, query.getFetchSize());
+    }
+
+    @Test
+    public void testCompileKeyset() throws BushyTailQueryException {
+        final BushyTailJpqlQuery query = compiler.compile(new BushyTailQuery(
+                new BushyTailBinaryExpression(BushyTailBinaryOperator.GT, property("price"), new BushyTailLiteral(10)),
+                Collections.singletonList(new BushyTailSortKey(property("name"), true)), null, 0, 100));
+
+        assertNotNull(query.getKeyset());
+        assertEquals("SELECT e FROM Product e WHERE (e.price > ?1) AND ((e.name < ?2) OR (e.name = ?2 AND e.id > ?3)) ORDER BY e.name DESC, e.id ASC",
+                query.getKeyset().getJpql());
+        assertEquals(2, query.getKeyset().getFields().size());
+    }
+
+    @Test
+    public void testCompileKeysetByPrimaryKeyOnly() throws BushyTailQueryException {
+        final BushyTailJpqlQuery query = compiler.compile(new BushyTailQuery(null, Collections.<BushyTailSortKey>emptyList(), null, 0, 100));
+
+        assertEquals("SELECT e FROM Product e ORDER BY e.id ASC", query.getJpql());
+        assertEquals("SELECT e FROM Product e WHERE ((e.id > ?1)) ORDER BY e.id ASC", query.getKeyset().getJpql());
+    }
+
+    @Test
+    public void testCompileWithoutKeysetForNullableSortProperty() throws BushyTailQueryException {
+        final BushyTailJpqlQuery query = compiler.compile(new BushyTailQuery(null,
+                Collections.singletonList(new BushyTailSortKey(property("price"), false)), null, 0, 100));
+
+        assertEquals("SELECT e FROM Product e ORDER BY e.price ASC, e.id ASC", query.getJpql());
+        assertNull(query.getKeyset());
+    }
+
+    @Test
+    public void testCompileProjection() throws BushyTailQueryException {
+        final List<BushyTailSortKey> sortKeys = Collections.singletonList(new BushyTailSortKey(property("stock"), false));
+
+        final BushyTailJpqlQuery query = compiler.compile(new BushyTailQuery(null, sortKeys, null, 0, 100, Arrays.asList("id", "stock")));
+        assertEquals("SELECT e.id, e.stock FROM Product e ORDER BY e.stock ASC, e.id ASC", query.getJpql());
+        assertEquals(Arrays.asList("id", "stock"), query.getSelection());
+        assertNotNull(query.getKeyset());
+
+        // The sort values of the last row cannot be read if a sort property is not selected
+        assertNull(compiler.compile(new BushyTailQuery(null, sortKeys, null, 0, 100, Collections.singletonList("id"))).getKeyset());
+    }
+
+    @Test
+    public void testCompileNavigationAndNull() throws BushyTailQueryException {
+        final IBushyTailExpression filter = new BushyTailBinaryExpression(BushyTailBinaryOperator.OR,
+                new BushyTailBinaryExpression(BushyTailBinaryOperator.EQ, property("category", "name"), new BushyTailLiteral("Tools")),
+                new BushyTailBinaryExpression(BushyTailBinaryOperator.EQ, property("category"), new BushyTailLiteral(null)));
+
+        final BushyTailJpqlQuery query = compiler.compile(new BushyTailQuery(filter, Collections.<BushyTailSortKey>emptyList(), null, 0, 100));
+
+        assertEquals("SELECT e FROM Product e LEFT JOIN e.category j1 WHERE (j1.name = ?1 OR e.category IS NULL) ORDER BY e.id ASC", query.getJpql());
+        assertEquals("Tools", query.getParameters().get(0).getValue());
+    }
+
+    @Test
+    public void testCompileContainsEscapesWildcards() throws BushyTailQueryException {
+        final IBushyTailExpression filter = new BushyTailMethodExpression(BushyTailMethod.CONTAINS,
+                Arrays.<IBushyTailExpression>asList(property("name"), new BushyTailLiteral("10%_off")));
+
+        final BushyTailJpqlQuery query = compiler.compileCount(filter);
+
+        assertEquals("SELECT COUNT(e) FROM Product e WHERE e.name LIKE ?1 ESCAPE '\\'", query.getJpql());
+        assertEquals("%10\\%\\_off%", query.getParameters().get(0).getValue());
+    }
+
+    @Test
+    public void testCompileInconvertibleLiteral() throws BushyTailQueryException {
+        try {
+            compiler.compile(new BushyTailQuery(
+                    new BushyTailBinaryExpression(BushyTailBinaryOperator.EQ, property("price"), new BushyTailLiteral("cheap")),
+                    Collections.<BushyTailSortKey>emptyList(), null, 0, 100));
+            fail("Expected BushyTailInvalidQueryException");
+        } catch (BushyTailInvalidQueryException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCompileUnsupportedSortKey() {
+        try {
+            compiler.compile(new BushyTailQuery(null, Collections.singletonList(new BushyTailSortKey(new BushyTailLiteral(1), false)), null, 0, 100));
+            fail("Expected BushyTailQueryException");
+        } catch (BushyTailQueryException e) {
+            assertFalse(e instanceof BushyTailInvalidQueryException);
+        }
+    }
+
+    @Test(expected = BushyTailQueryException.class)
+    public void testCompileUnknownProperty() throws BushyTailQueryException {
+        compiler.compileCount(new BushyTailBinaryExpression(BushyTailBinaryOperator.EQ, property("color"), new BushyTailLiteral("red")));
+    }
+
+    private static BushyTailPropertyPath property(final String... segments) {
+        return new BushyTailPropertyPath(Arrays.asList(segments));
+    }
+
+
+    @Entity
+    static class Product {
+
+        @Id
+        private Long id;
+
+        @Column(nullable = false)
+        private String name;
+
+        private Integer price;
+
+        private int stock;
+
+        @ManyToOne
+        private Category category;
+
+    }
+
+
+    @Entity
+    static class Category {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+    }
+
+}
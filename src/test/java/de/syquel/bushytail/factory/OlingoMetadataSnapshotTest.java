@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.factory;
+
+import de.syquel.bushytail.service.BushyTailEdmProvider;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityType;
+import org.apache.olingo.commons.api.edm.provider.CsdlProperty;
+import org.apache.olingo.commons.api.edm.provider.CsdlSchema;
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.server.api.OData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Version;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link OlingoMetadataSnapshot}.
+ *
+ * @author Frederik Boster
+ */
+public class OlingoMetadataSnapshotTest {
+
+    private static final FullQualifiedName ORDER_TYPE = new FullQualifiedName("Test", "Order");
+
+    private static final FullQualifiedName CUSTOMER_TYPE = new FullQualifiedName("Test", "Customer");
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Map<FullQualifiedName, Class<?>> entityTypes = createEntityTypes();
+        final OlingoMetadataFactory metadataFactory = new OlingoMetadataFactory()
+                .addEntity(Order.class, ORDER_TYPE)
+                .addEntity(Customer.class, CUSTOMER_TYPE);
+        final OlingoMetadataSnapshot generatedSnapshot = new OlingoMetadataSnapshot(metadataFactory.createSchema("Test"),
+                Collections.singletonMap(ORDER_TYPE, metadataFactory.getVersionPropertyName(Order.class)));
+
+        final File file = new File(temporaryFolder.getRoot(), "metadata.snapshot");
+        final String fingerprint = OlingoMetadataSnapshot.fingerprint(entityTypes, Collections.<Class<?>, String>emptyMap());
+        generatedSnapshot.save(file, fingerprint);
+
+        final OlingoMetadataSnapshot loadedSnapshot = OlingoMetadataSnapshot.load(file, fingerprint, entityTypes);
+        assertNotNull(loadedSnapshot);
+
+        assertEquals(createMetadataDocument(generatedSnapshot.getSchemas()), createMetadataDocument(loadedSnapshot.getSchemas()));
+        assertEquals(getMappedJavaClasses(generatedSnapshot.getSchemas()), getMappedJavaClasses(loadedSnapshot.getSchemas()));
+        assertEquals(generatedSnapshot.getVersionPropertyNames(), loadedSnapshot.getVersionPropertyNames());
+        assertEquals("version", loadedSnapshot.getVersionPropertyNames().get(ORDER_TYPE));
+    }
+
+    @Test
+    public void testOtherFingerprint() throws Exception {
+        final Map<FullQualifiedName, Class<?>> entityTypes = createEntityTypes();
+        final OlingoMetadataFactory metadataFactory = new OlingoMetadataFactory()
+                .addEntity(Order.class, ORDER_TYPE)
+                .addEntity(Customer.class, CUSTOMER_TYPE);
+
+        final File file = new File(temporaryFolder.getRoot(), "metadata.snapshot");
+        new OlingoMetadataSnapshot(metadataFactory.createSchema("Test"), Collections.<FullQualifiedName, String>emptyMap()).save(file, "0123");
+
+        assertNull(OlingoMetadataSnapshot.load(file, "4567", entityTypes));
+        assertNull(OlingoMetadataSnapshot.load(new File(temporaryFolder.getRoot(), "missing.snapshot"), "0123", entityTypes));
+    }
+
+    private static Map<FullQualifiedName, Class<?>> createEntityTypes() {
+        final Map<FullQualifiedName, Class<?>> entityTypes = new HashMap<FullQualifiedName, Class<?>>();
+        entityTypes.put(ORDER_TYPE, Order.class);
+        entityTypes.put(CUSTOMER_TYPE, Customer.class);
+
+        return entityTypes;
+    }
+
+    private static String createMetadataDocument(final List<CsdlSchema> schemas) throws Exception {
+        final OData odata = OData.newInstance();
+
+        final InputStream content = odata.createSerializer(ContentType.APPLICATION_XML)
+                .metadataDocument(odata.createServiceMetadata(new BushyTailEdmProvider(schemas), Collections.<EdmxReference>emptyList()))
+                .getContent();
+
+        return new String(readFully(content), "UTF-8");
+    }
+
+    private static Map<String, Class<?>> getMappedJavaClasses(final List<CsdlSchema> schemas) {
+        final Map<String, Class<?>> mappedJavaClasses = new TreeMap<String, Class<?>>();
+        for (final CsdlSchema schema : schemas) {
+            for (final CsdlEntityType entityType : schema.getEntityTypes()) {
+                for (final CsdlProperty property : entityType.getProperties()) {
+                    mappedJavaClasses.put(entityType.getName() + "." + property.getName(), property.getMapping().getMappedJavaClass());
+                }
+            }
+        }
+
+        return mappedJavaClasses;
+    }
+
+    private static byte[] readFully(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            result.write(buffer, 0, length);
+        }
+        inputStream.close();
+
+        return result.toByteArray();
+    }
+
+
+    public enum Status {
+        OPEN, SHIPPED
+    }
+
+    @Entity
+    @Table(name = "Orders")
+    public static class Order {
+
+        @Id
+        private Long id;
+
+        @Version
+        private Long version;
+
+        @Enumerated(EnumType.STRING)
+        private Status status;
+
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date created;
+
+        @ManyToOne
+        private Customer customer;
+
+    }
+
+    @Entity
+    @Table(name = "Customers")
+    public static class Customer {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        @OneToMany(mappedBy = "customer")
+        private List<Order> orders;
+
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.helper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BushyTailCompressingResponse}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailCompressingResponseTest {
+
+    private static final int MIN_SIZE = 256;
+
+    private final Map<String, String> headers = new HashMap<String, String>();
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private HttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        final ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public void write(final int b) {
+                body.write(b);
+            }
+        };
+
+        response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        final String name = method.getName();
+                        if ("setHeader".equals(name)) {
+                            headers.put((String) args[0], (String) args[1]);
+                        } else if ("setContentType".equals(name)) {
+                            headers.put("Content-Type", (String) args[0]);
+                        } else if ("setContentLength".equals(name)) {
+                            headers.put("Content-Length", String.valueOf(args[0]));
+                        } else if ("getOutputStream".equals(name)) {
+                            return outputStream;
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testGzipRoundTrip() throws IOException {
+        final byte[] content = createContent(100000);
+
+        write("gzip", new BushyTailDeflaterPool(6, true, 1), "application/json", content);
+
+        assertEquals("gzip", headers.get("Content-Encoding"));
+        assertFalse(headers.containsKey("Content-Length"));
+        assertTrue(body.size() < content.length);
+        assertArrayEquals(content, readFully(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))));
+    }
+
+    @Test
+    public void testDeflateRoundTrip() throws IOException {
+        final byte[] content = createContent(100000);
+
+        write("deflate", new BushyTailDeflaterPool(6, false, 1), "application/json", content);
+
+        assertEquals("deflate", headers.get("Content-Encoding"));
+        assertTrue(body.size() < content.length);
+        assertArrayEquals(content, readFully(new InflaterInputStream(new ByteArrayInputStream(body.toByteArray()))));
+    }
+
+    @Test
+    public void testWriterRoundTrip() throws IOException {
+        final BushyTailCompressingResponse compressingResponse = new BushyTailCompressingResponse(response, "gzip", new BushyTailDeflaterPool(6, true, 1), MIN_SIZE);
+        compressingResponse.setContentType("text/plain");
+        final String content = new String(createContent(1000), "UTF-8") + "äöü";
+        compressingResponse.getWriter().write(content);
+        compressingResponse.finish();
+
+        assertEquals("gzip", headers.get("Content-Encoding"));
+        assertEquals(content, new String(readFully(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))), "UTF-8"));
+    }
+
+    @Test
+    public void testSmallContentIsNotCompressed() throws IOException {
+        final byte[] content = createContent(MIN_SIZE);
+
+        write("gzip", new BushyTailDeflaterPool(6, true, 1), "application/json", content);
+
+        assertNull(headers.get("Content-Encoding"));
+        assertEquals(String.valueOf(MIN_SIZE), headers.get("Content-Length"));
+        assertArrayEquals(content, body.toByteArray());
+    }
+
+    @Test
+    public void testIncompressibleContentIsNotCompressed() throws IOException {
+        final byte[] content = createContent(10000);
+
+        write("gzip", new BushyTailDeflaterPool(6, true, 1), "image/png", content);
+
+        assertNull(headers.get("Content-Encoding"));
+        assertArrayEquals(content, body.toByteArray());
+    }
+
+    @Test
+    public void testEncodedContentIsNotCompressedAgain() throws IOException {
+        final byte[] content = createContent(10000);
+        final BushyTailCompressingResponse compressingResponse = new BushyTailCompressingResponse(response, "gzip", new BushyTailDeflaterPool(6, true, 1), MIN_SIZE);
+        compressingResponse.setHeader("Content-Encoding", "br");
+        compressingResponse.setContentType("application/json");
+        compressingResponse.getOutputStream().write(content);
+        compressingResponse.finish();
+
+        assertEquals("br", headers.get("Content-Encoding"));
+        assertArrayEquals(content, body.toByteArray());
+    }
+
+    private void write(final String encoding, final BushyTailDeflaterPool deflaterPool, final String contentType, final byte[] content) throws IOException {
+        final BushyTailCompressingResponse compressingResponse = new BushyTailCompressingResponse(response, encoding, deflaterPool, MIN_SIZE);
+        compressingResponse.setContentType(contentType);
+
+        // Written in uneven chunks, so that the held back content is followed by further writes
+        final ServletOutputStream outputStream = compressingResponse.getOutputStream();
+        int offset = 0;
+        while (offset < content.length) {
+            final int length = Math.min(content.length - offset, 1 + offset % 5000);
+            outputStream.write(content, offset, length);
+            offset += length;
+        }
+        compressingResponse.finish();
+    }
+
+    private static byte[] createContent(final int length) throws IOException {
+        final byte[] content = new byte[length];
+        final byte[] pattern = "{\"Name\":\"BushyTail\",\"Id\":".getBytes("UTF-8");
+        for (int i = 0; i < length; i++) {
+            content[i] = i % 97 == 0 ? (byte) ('0' + i % 10) : pattern[i % pattern.length];
+        }
+
+        return content;
+    }
+
+    private static byte[] readFully(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            result.write(buffer, 0, length);
+        }
+        inputStream.close();
+
+        return result.toByteArray();
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.helper;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BushyTailHmacCSRFTokenStrategy}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailHmacCSRFTokenStrategyTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+
+    private static final Pattern BINDING_COOKIE = Pattern.compile("BushyTailCsrfBinding=([A-Za-z0-9_-]+); Path=/odata; HttpOnly; Secure");
+
+    private final BushyTailHmacCSRFTokenStrategy strategy = new BushyTailHmacCSRFTokenStrategy(SECRET, 1, TimeUnit.HOURS);
+
+    private final List<String> setCookieHeaders = new ArrayList<String>();
+
+    @Test
+    public void testPrincipalBinding() {
+        final String token = strategy.createToken(request("alice", null), response());
+
+        assertTrue(setCookieHeaders.isEmpty());
+        assertTrue(strategy.verifyToken(request("alice", null), token));
+        assertFalse(strategy.verifyToken(request("bob", null), token));
+        assertFalse(strategy.verifyToken(request(null, null), token));
+    }
+
+    @Test
+    public void testCookieBinding() {
+        final String token = strategy.createToken(request(null, null), response());
+
+        assertEquals(1, setCookieHeaders.size());
+        final Matcher matcher = BINDING_COOKIE.matcher(setCookieHeaders.get(0));
+        assertTrue(setCookieHeaders.get(0), matcher.matches());
+        final String binding = matcher.group(1);
+
+        assertTrue(strategy.verifyToken(request(null, binding), token));
+        assertFalse(strategy.verifyToken(request(null, binding + "x"), token));
+        assertFalse(strategy.verifyToken(request(null, null), token));
+
+        // An existing binding cookie is reused
+        assertTrue(strategy.verifyToken(request(null, binding), strategy.createToken(request(null, binding), response())));
+        assertEquals(1, setCookieHeaders.size());
+    }
+
+    @Test
+    public void testOtherSecret() {
+        final byte[] otherSecret = SECRET.clone();
+        otherSecret[0] ^= 1;
+        final BushyTailHmacCSRFTokenStrategy otherStrategy = new BushyTailHmacCSRFTokenStrategy(otherSecret, 1, TimeUnit.HOURS);
+
+        final String token = strategy.createToken(request("alice", null), response());
+
+        assertTrue(new BushyTailHmacCSRFTokenStrategy(SECRET, 1, TimeUnit.HOURS).verifyToken(request("alice", null), token));
+        assertFalse(otherStrategy.verifyToken(request("alice", null), token));
+    }
+
+    @Test
+    public void testExpiredToken() throws Exception {
+        final long now = System.currentTimeMillis();
+
+        assertTrue(strategy.verifyToken(request("alice", null), createSignedToken("principal:alice", now + 60000)));
+        assertFalse(strategy.verifyToken(request("alice", null), createSignedToken("principal:alice", now - 1)));
+    }
+
+    @Test
+    public void testTamperedToken() throws Exception {
+        final String token = strategy.createToken(request("alice", null), response());
+        final byte[] decodedToken = Base64.decodeBase64(token);
+
+        // Extending the expiry time invalidates the signature
+        final byte[] extendedToken = decodedToken.clone();
+        ByteBuffer.wrap(extendedToken).putLong(ByteBuffer.wrap(decodedToken).getLong() + 1);
+        assertFalse(strategy.verifyToken(request("alice", null), Base64.encodeBase64URLSafeString(extendedToken)));
+
+        final byte[] flippedSignature = decodedToken.clone();
+        flippedSignature[flippedSignature.length - 1] ^= 1;
+        assertFalse(strategy.verifyToken(request("alice", null), Base64.encodeBase64URLSafeString(flippedSignature)));
+
+        assertFalse(strategy.verifyToken(request("alice", null), Base64.encodeBase64URLSafeString(Arrays.copyOf(decodedToken, decodedToken.length - 1))));
+        assertFalse(strategy.verifyToken(request("alice", null), ""));
+        assertFalse(strategy.verifyToken(request("alice", null), "not a token"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortSecret() {
+        new BushyTailHmacCSRFTokenStrategy(new byte[BushyTailHmacCSRFTokenStrategy.MIN_SECRET_LENGTH - 1], 1, TimeUnit.HOURS);
+    }
+
+    private static String createSignedToken(final String binding, final long expiryTime) throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+        mac.update(binding.getBytes("UTF-8"));
+        mac.update(ByteBuffer.allocate(8).putLong(expiryTime).array());
+
+        return Base64.encodeBase64URLSafeString(ByteBuffer.allocate(40).putLong(expiryTime).put(mac.doFinal()).array());
+    }
+
+    private static HttpServletRequest request(final String userName, final String bindingCookie) {
+        return (HttpServletRequest) Proxy.newProxyInstance(BushyTailHmacCSRFTokenStrategyTest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        final String name = method.getName();
+                        if ("getUserPrincipal".equals(name)) {
+                            return userName == null ? null : new Principal() {
+                                @Override
+                                public String getName() {
+                                    return userName;
+                                }
+                            };
+                        } else if ("getCookies".equals(name)) {
+                            return bindingCookie == null ? null : new Cookie[] {new Cookie("BushyTailCsrfBinding", bindingCookie)};
+                        } else if ("getContextPath".equals(name)) {
+                            return "/odata";
+                        } else if ("isSecure".equals(name)) {
+                            return true;
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private HttpServletResponse response() {
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if ("addHeader".equals(method.getName()) && "Set-Cookie".equals(args[0])) {
+                            setCookieHeaders.add((String) args[1]);
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+}
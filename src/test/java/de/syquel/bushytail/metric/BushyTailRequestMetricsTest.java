@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.metric;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BushyTailRequestMetrics}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailRequestMetricsTest {
+
+    @Test
+    public void testCurrentWithoutRequestIsDisabled() {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.current();
+
+        assertSame(metrics, BushyTailRequestMetrics.current());
+
+        final long phaseStartTime = metrics.startPhase();
+        metrics.endPhase(BushyTailMetricsPhase.CONTROLLER, phaseStartTime);
+        metrics.setTarget("Products", BushyTailOperation.READ);
+
+        assertEquals(0, metrics.getPhaseDuration(BushyTailMetricsPhase.CONTROLLER));
+        assertNull(metrics.getEntitySetName());
+    }
+
+    @Test
+    public void testBeginBindsMetricsToThread() {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.begin("GET", "/odata/Products", "$top=1", -1);
+
+        assertSame(metrics, BushyTailRequestMetrics.current());
+        assertEquals("/odata/Products?$top=1", metrics.getRequestUri());
+
+        metrics.setTarget("Products", BushyTailOperation.COLLECTION);
+        metrics.setTarget("Orders", BushyTailOperation.READ);
+        metrics.complete(200, 42);
+
+        assertEquals("Products", metrics.getEntitySetName());
+        assertEquals(BushyTailOperation.COLLECTION, metrics.getOperation());
+        assertEquals(42, metrics.getResponseSize());
+        assertNotSame(metrics, BushyTailRequestMetrics.current());
+    }
+
+    @Test
+    public void testEndPhaseAccumulatesDurations() throws InterruptedException {
+        final BushyTailRequestMetrics metrics = BushyTailRequestMetrics.begin("GET", "/odata/Products", null, -1);
+
+        final long phaseStartTime = metrics.startPhase();
+        Thread.sleep(1);
+        metrics.endPhase(BushyTailMetricsPhase.SERIALIZE, phaseStartTime);
+
+        assertTrue(metrics.getPhaseDuration(BushyTailMetricsPhase.SERIALIZE) > 0);
+        assertEquals(0, metrics.getPhaseDuration(BushyTailMetricsPhase.WRITE));
+        assertTrue(metrics.toServerTiming().startsWith("serialize;dur="));
+
+        metrics.complete(200, 0);
+    }
+
+    @Test
+    public void testAppendMillis() {
+        assertEquals("1.005", BushyTailRequestMetrics.appendMillis(new StringBuilder(), 1005000).toString());
+        assertEquals("0.000", BushyTailRequestMetrics.appendMillis(new StringBuilder(), -1).toString());
+        assertEquals("12.340", BushyTailRequestMetrics.appendMillis(new StringBuilder(), 12340999).toString());
+    }
+
+}
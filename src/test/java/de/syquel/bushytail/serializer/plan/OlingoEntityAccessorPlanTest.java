@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import de.syquel.bushytail.factory.OlingoMetadataFactory;
+import de.syquel.bushytail.service.BushyTailEdmProvider;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.server.api.OData;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Version;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link OlingoEntityAccessorPlan}.
+ *
+ * @author Frederik Boster
+ */
+public class OlingoEntityAccessorPlanTest {
+
+    private static final FullQualifiedName DOCUMENT_TYPE = new FullQualifiedName("Test", "Document");
+
+    @Test
+    public void testNumericETag() {
+        assertEquals("W/\"42\"", OlingoEntityAccessorPlan.formatETag(42L));
+        assertNull(OlingoEntityAccessorPlan.formatETag(null));
+    }
+
+    @Test
+    public void testDateVersionETag() throws Exception {
+        final OlingoEntityAccessorPlan accessorPlan = createAccessorPlan();
+        assertEquals("lastModified", accessorPlan.getVersionPropertyName());
+
+        final long millis = 1476655200123L;
+        final String eTag = accessorPlan.getETag(new Document(1L, new Date(millis)));
+        assertTrue(eTag, eTag.matches("W/\"[0-9a-f]{32}\""));
+
+        // A created entity carries the Date set by the application, whereas JPA reads it as Timestamp
+        assertEquals(eTag, accessorPlan.getETag(new Document(1L, new Timestamp(millis))));
+
+        // Updates within the same second have different ETags
+        assertFalse(eTag.equals(accessorPlan.getETag(new Document(1L, new Date(millis + 1)))));
+
+        final Timestamp timestamp = new Timestamp(millis);
+        timestamp.setNanos(timestamp.getNanos() + 1);
+        assertFalse(eTag.equals(accessorPlan.getETag(new Document(1L, timestamp))));
+    }
+
+    @Test
+    public void testTemporalETagIsCanonical() {
+        final long millis = -1476655200123L;
+
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Asia/Tokyo"));
+        calendar.setTimeInMillis(millis);
+        calendar.setMinimalDaysInFirstWeek(4);
+
+        final String eTag = OlingoEntityAccessorPlan.formatETag(new Date(millis));
+        assertEquals(eTag, OlingoEntityAccessorPlan.formatETag(new Timestamp(millis)));
+        assertEquals(eTag, OlingoEntityAccessorPlan.formatETag(calendar));
+
+        final TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone(defaultTimeZone.getRawOffset() == 0 ? "America/New_York" : "UTC"));
+            assertEquals(eTag, OlingoEntityAccessorPlan.formatETag(new Date(millis)));
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    private static OlingoEntityAccessorPlan createAccessorPlan() throws Exception {
+        final OlingoMetadataFactory metadataFactory = new OlingoMetadataFactory().addEntity(Document.class, DOCUMENT_TYPE);
+        final EdmEntityType entityType = OData.newInstance().createServiceMetadata(new BushyTailEdmProvider(metadataFactory.createSchema("Test")),
+                Collections.<EdmxReference>emptyList()).getEdm().getEntityType(DOCUMENT_TYPE);
+
+        return OlingoEntityAccessorPlan.create(entityType, Document.class, metadataFactory.getVersionPropertyName(Document.class));
+    }
+
+
+    @Entity
+    @Table(name = "Documents")
+    public static class Document {
+
+        @Id
+        private Long id;
+
+        @Version
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date lastModified;
+
+        public Document() {
+        }
+
+        Document(final Long id, final Date lastModified) {
+            this.id = id;
+            this.lastModified = lastModified;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public Date getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(final Date lastModified) {
+            this.lastModified = lastModified;
+        }
+
+    }
+
+}
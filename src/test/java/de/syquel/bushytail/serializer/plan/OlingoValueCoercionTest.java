@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.serializer.plan;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link OlingoValueCoercion}.
+ *
+ * @author Frederik Boster
+ */
+public class OlingoValueCoercionTest {
+
+    @Test
+    public void testCoerceEnum() {
+        final OlingoValueCoercion coercion = OlingoValueCoercion.forType(TimeUnit.class);
+
+        assertEquals(TimeUnit.SECONDS, coercion.coerce(TimeUnit.SECONDS.ordinal()));
+        assertEquals(TimeUnit.SECONDS, coercion.coerce("SECONDS"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCoerceEnumOrdinalOutOfRange() {
+        OlingoValueCoercion.forType(TimeUnit.class).coerce(TimeUnit.values().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCoerceNegativeEnumOrdinal() {
+        OlingoValueCoercion.forType(TimeUnit.class).coerce(-1);
+    }
+
+}
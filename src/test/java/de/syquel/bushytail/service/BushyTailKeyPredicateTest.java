@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.factory.OlingoMetadataFactory;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link BushyTailKeyPredicate}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailKeyPredicateTest {
+
+    private static final FullQualifiedName ITEM_TYPE = new FullQualifiedName("Test", "Item");
+
+    private static final FullQualifiedName POSITION_TYPE = new FullQualifiedName("Test", "Position");
+
+    private static EdmEntityType itemType;
+
+    private static EdmEntityType positionType;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        final OlingoMetadataFactory metadataFactory = new OlingoMetadataFactory()
+                .addEntity(Item.class, ITEM_TYPE)
+                .addEntity(Position.class, POSITION_TYPE);
+        final Edm edm = OData.newInstance().createServiceMetadata(new BushyTailEdmProvider(metadataFactory.createSchema("Test")),
+                Collections.<EdmxReference>emptyList()).getEdm();
+
+        itemType = edm.getEntityType(ITEM_TYPE);
+        positionType = edm.getEntityType(POSITION_TYPE);
+    }
+
+    @Test
+    public void testSingleKey() {
+        assertKey(BushyTailKeyPredicate.parse(itemType, "Items(42)"), "id", "42");
+        assertKey(BushyTailKeyPredicate.parse(itemType, "Items(id=42)"), "id", "42");
+        assertKey(BushyTailKeyPredicate.parse(itemType, "Items(%2042%20)"), "id", "42");
+    }
+
+    @Test
+    public void testCompositeKey() {
+        final List<UriParameter> keyPredicates = BushyTailKeyPredicate.parse(positionType, "Positions(position=1,code='a%2Cb=''c''')");
+
+        assertEquals(2, keyPredicates.size());
+        assertKey(keyPredicates.subList(0, 1), "position", "1");
+        assertKey(keyPredicates.subList(1, 2), "code", "'a,b=''c'''");
+    }
+
+    @Test
+    public void testInvalidLiteral() {
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items(abc)"));
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items(1.5)"));
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items(99999999999999999999)"));
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items('42')"));
+        assertNull(BushyTailKeyPredicate.parse(positionType, "Positions(position=1,code=abc)"));
+        assertNull(BushyTailKeyPredicate.parse(positionType, "Positions(position=1,code='abc)"));
+        assertNull(BushyTailKeyPredicate.parse(positionType, "Positions(position='1',code='abc')"));
+    }
+
+    @Test
+    public void testInvalidKey() {
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items"));
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items()"));
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items(42"));
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items(name=42)"));
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items(id=@key)"));
+        assertNull(BushyTailKeyPredicate.parse(itemType, "Items(%ZZ)"));
+        assertNull(BushyTailKeyPredicate.parse(positionType, "Positions(1)"));
+        assertNull(BushyTailKeyPredicate.parse(positionType, "Positions(1,'abc')"));
+        assertNull(BushyTailKeyPredicate.parse(positionType, "Positions(position=1,position=2)"));
+        assertNull(BushyTailKeyPredicate.parse(positionType, "Positions(position=1,code='a',code='b')"));
+    }
+
+    private static void assertKey(final List<UriParameter> keyPredicates, final String name, final String text) {
+        assertEquals(1, keyPredicates.size());
+        assertEquals(name, keyPredicates.get(0).getName());
+        assertEquals(text, keyPredicates.get(0).getText());
+    }
+
+
+    @Entity
+    @Table(name = "Items")
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+    }
+
+
+    @Entity
+    @Table(name = "Positions")
+    public static class Position {
+
+        @Id
+        private Integer position;
+
+        @Id
+        private String code;
+
+        public Integer getPosition() {
+            return position;
+        }
+
+        public void setPosition(final Integer position) {
+            this.position = position;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(final String code) {
+            this.code = code;
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.controller.query.BushyTailBinaryExpression;
+import de.syquel.bushytail.controller.query.BushyTailBinaryOperator;
+import de.syquel.bushytail.controller.query.BushyTailLiteral;
+import de.syquel.bushytail.controller.query.BushyTailPropertyPath;
+import de.syquel.bushytail.controller.query.BushyTailQuery;
+import de.syquel.bushytail.controller.query.BushyTailSortKey;
+import de.syquel.bushytail.factory.OlingoMetadataFactory;
+import de.syquel.bushytail.serializer.plan.OlingoEntityAccessorPlan;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BushyTailPagination}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailPaginationTest {
+
+    private static final FullQualifiedName PRODUCT_TYPE = new FullQualifiedName("Test", "Product");
+
+    private EdmEntityType entityType;
+
+    private OlingoEntityAccessorPlan accessorPlan;
+
+    private ODataRequest request;
+
+    @Before
+    public void setUp() throws Exception {
+        final OlingoMetadataFactory metadataFactory = new OlingoMetadataFactory().addEntity(Product.class, PRODUCT_TYPE);
+        entityType = OData.newInstance().createServiceMetadata(new BushyTailEdmProvider(metadataFactory.createSchema("Test")),
+                Collections.<EdmxReference>emptyList()).getEdm().getEntityType(PRODUCT_TYPE);
+        accessorPlan = OlingoEntityAccessorPlan.create(entityType, Product.class);
+
+        request = new ODataRequest();
+        request.setRawBaseUri("http://localhost/odata");
+        request.setRawODataPath("/Products");
+        request.setRawQueryPath("$orderby=name%20desc&$skiptoken=old&$top=100");
+    }
+
+    @Test
+    public void testFirstPageByKeyset() throws ODataApplicationException {
+        final BushyTailPagination pagination = BushyTailPagination.forQuery(request, query(sortKey("name", true)), null, 10, accessorPlan, entityType);
+
+        final BushyTailQuery pageQuery = pagination.getQuery();
+        assertNull(pageQuery.getFilter());
+        assertEquals(2, pageQuery.getSortKeys().size());
+        assertSortKey(pageQuery.getSortKeys().get(0), "name", true);
+        assertSortKey(pageQuery.getSortKeys().get(1), "id", false);
+        assertEquals(Integer.valueOf(11), pageQuery.getLimit());
+        assertEquals(0, pageQuery.getOffset());
+        assertEquals(10, pagination.getPageSize());
+
+        final URI nextLink = pagination.createNextLink(new Product(5L, "Nut", null), 10);
+        final String prefix = "http://localhost/odata/Products?$orderby=name%20desc&$top=100&$skiptoken=";
+        assertTrue(nextLink.toString(), nextLink.toString().startsWith(prefix));
+
+        final BushyTailSkipToken token = BushyTailSkipToken.decode(nextLink.toString().substring(prefix.length()));
+        assertEquals(10, token.getPosition());
+        assertEquals(Arrays.<Object>asList("Nut", 5L), token.getKeyValues());
+    }
+
+    @Test
+    public void testNextPageByKeyset() throws ODataApplicationException {
+        final BushyTailSkipToken token = new BushyTailSkipToken(10, Arrays.<Object>asList("Nut", 5L));
+
+        final BushyTailQuery pageQuery = BushyTailPagination.forQuery(request, query(sortKey("name", true)), token, 10, accessorPlan, entityType).getQuery();
+
+        // name < 'Nut' or (name = 'Nut' and id > 5)
+        final BushyTailBinaryExpression keysetPredicate = (BushyTailBinaryExpression) pageQuery.getFilter();
+        assertEquals(BushyTailBinaryOperator.OR, keysetPredicate.getOperator());
+        assertComparison(keysetPredicate.getLeft(), BushyTailBinaryOperator.LT, "name", "Nut");
+
+        final BushyTailBinaryExpression conjunction = (BushyTailBinaryExpression) keysetPredicate.getRight();
+        assertEquals(BushyTailBinaryOperator.AND, conjunction.getOperator());
+        assertComparison(conjunction.getLeft(), BushyTailBinaryOperator.EQ, "name", "Nut");
+        assertComparison(conjunction.getRight(), BushyTailBinaryOperator.GT, "id", 5L);
+
+        assertEquals(0, pageQuery.getOffset());
+    }
+
+    @Test
+    public void testNullableSortKeyPagesByOffset() throws ODataApplicationException {
+        final BushyTailQuery query = query(sortKey("price", false));
+
+        final BushyTailPagination pagination = BushyTailPagination.forQuery(request, query, null, 10, accessorPlan, entityType);
+        final URI nextLink = pagination.createNextLink(new Product(5L, "Nut", 3), 10);
+        final BushyTailSkipToken token = BushyTailSkipToken.decode(nextLink.toString().substring(nextLink.toString().indexOf("$skiptoken=") + 11));
+        assertFalse(token.isKeyset());
+        assertEquals(10, token.getPosition());
+
+        final BushyTailQuery pageQuery = BushyTailPagination.forQuery(request, query, token, 10, accessorPlan, entityType).getQuery();
+        assertNull(pageQuery.getFilter());
+        assertEquals(10, pageQuery.getOffset());
+    }
+
+    @Test
+    public void testKeysetTokenMustMatchQuery() {
+        assertBadRequest(query(sortKey("price", false)), new BushyTailSkipToken(10, Arrays.<Object>asList(3, 5L)));
+        assertBadRequest(query(sortKey("name", false)), new BushyTailSkipToken(10, Arrays.<Object>asList(5L)));
+        assertBadRequest(query(sortKey("name", false)), new BushyTailSkipToken(10, Arrays.<Object>asList(null, 5L)));
+    }
+
+    @Test
+    public void testLimitShortensLastPage() throws ODataApplicationException {
+        final BushyTailQuery query = new BushyTailQuery(null, Collections.<BushyTailSortKey>emptyList(), 15, 0, 100);
+
+        final BushyTailPagination pagination = BushyTailPagination.forQuery(request, query, new BushyTailSkipToken(10, null), 10, accessorPlan, entityType);
+
+        assertEquals(5, pagination.getPageSize());
+        assertEquals(Integer.valueOf(5), pagination.getQuery().getLimit());
+        assertEquals(10, pagination.getQuery().getOffset());
+    }
+
+    private void assertBadRequest(final BushyTailQuery query, final BushyTailSkipToken token) {
+        try {
+            BushyTailPagination.forQuery(request, query, token, 10, accessorPlan, entityType);
+            fail("Expected ODataApplicationException");
+        } catch (ODataApplicationException e) {
+            assertEquals(HttpStatusCode.BAD_REQUEST.getStatusCode(), e.getStatusCode());
+        }
+    }
+
+    private static void assertSortKey(final BushyTailSortKey sortKey, final String propertyName, final boolean descending) {
+        assertEquals(new BushyTailPropertyPath(Collections.singletonList(propertyName)), sortKey.getExpression());
+        assertEquals(descending, sortKey.isDescending());
+    }
+
+    private static void assertComparison(final Object expression, final BushyTailBinaryOperator operator, final String propertyName, final Object value) {
+        final BushyTailBinaryExpression comparison = (BushyTailBinaryExpression) expression;
+        assertEquals(operator, comparison.getOperator());
+        assertEquals(new BushyTailPropertyPath(Collections.singletonList(propertyName)), comparison.getLeft());
+        assertEquals(value, ((BushyTailLiteral) comparison.getRight()).getValue());
+    }
+
+    private static BushyTailQuery query(final BushyTailSortKey sortKey) {
+        return new BushyTailQuery(null, Collections.singletonList(sortKey), null, 0, 100);
+    }
+
+    private static BushyTailSortKey sortKey(final String propertyName, final boolean descending) {
+        return new BushyTailSortKey(new BushyTailPropertyPath(Collections.singletonList(propertyName)), descending);
+    }
+
+
+    @Entity
+    @Table(name = "Products")
+    public static class Product {
+
+        @Id
+        private Long id;
+
+        @Column(nullable = false)
+        private String name;
+
+        private Integer price;
+
+        public Product() {
+        }
+
+        Product(final Long id, final String name, final Integer price) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public Integer getPrice() {
+            return price;
+        }
+
+        public void setPrice(final Integer price) {
+            this.price = price;
+        }
+
+    }
+
+}
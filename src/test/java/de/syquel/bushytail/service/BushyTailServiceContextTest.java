@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import de.syquel.bushytail.cache.BushyTailEntityCache;
+import de.syquel.bushytail.cache.BushyTailEvictionPolicy;
+import de.syquel.bushytail.controller.BushyTailEntityKey;
+import de.syquel.bushytail.controller.IBushyTailController;
+import de.syquel.bushytail.factory.BushyTailEntityKeyFactory;
+import de.syquel.bushytail.factory.OlingoMetadataFactory;
+import de.syquel.bushytail.serializer.plan.IOlingoEntityCodec;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BushyTailServiceContext}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailServiceContextTest {
+
+    private static final FullQualifiedName ITEM_TYPE = new FullQualifiedName("Test", "Item");
+
+    @Test
+    public void testNormalizeContentTypeDropsUnknownParameters() {
+        final ContentType normalizedContentType = BushyTailServiceContext.normalizeContentType(
+                ContentType.parse("application/json;x=4711;charset=utf-8"));
+
+        assertEquals(ContentType.APPLICATION_JSON, normalizedContentType);
+        assertEquals(normalizedContentType, BushyTailServiceContext.normalizeContentType(ContentType.parse("Application/JSON;x=4712")));
+    }
+
+    @Test
+    public void testNormalizeContentTypeKeepsKnownParameters() {
+        final ContentType normalizedContentType = BushyTailServiceContext.normalizeContentType(
+                ContentType.parse("application/json;odata.metadata=FULL;IEEE754Compatible=TRUE;x=1"));
+
+        assertEquals("full", normalizedContentType.getParameter(ContentType.PARAMETER_ODATA_METADATA));
+        assertEquals("true", normalizedContentType.getParameter(ContentType.PARAMETER_IEEE754_COMPATIBLE));
+        assertEquals(2, normalizedContentType.getParameters().size());
+    }
+
+    @Test
+    public void testNormalizeContentTypeRejectsUnknownValues() {
+        assertNull(BushyTailServiceContext.normalizeContentType(ContentType.parse("application/json;odata.metadata=4711")));
+        assertNull(BushyTailServiceContext.normalizeContentType(ContentType.parse("application/json;IEEE754Compatible=4711")));
+    }
+
+    @Test
+    public void testInvalidationIsRepeatedAfterCommit() throws Exception {
+        final BushyTailEntityCache entityCache = new BushyTailEntityCache(10, 0, TimeUnit.SECONDS, BushyTailEvictionPolicy.LRU);
+        final BushyTailServiceContext serviceContext = createServiceContext(entityCache);
+        final EdmEntityType entityType = serviceContext.getEdm().getEntityType(ITEM_TYPE);
+        final List<UriParameter> keyPredicates = BushyTailKeyPredicate.parse(entityType, "Items(42)");
+        final BushyTailEntityKey key = BushyTailEntityKeyFactory.createKey(entityType, keyPredicates);
+
+        serviceContext.beginDeferredInvalidation();
+        serviceContext.invalidateCachedEntity(entityType, keyPredicates);
+
+        // A concurrent reader caches the entity as it was before the change set
+        assertTrue(entityCache.put(key, "stale", entityCache.stamp(key)));
+
+        serviceContext.endDeferredInvalidation(true);
+        assertNull(entityCache.get(key));
+    }
+
+    @Test
+    public void testInvalidationIsNotRepeatedAfterRollback() throws Exception {
+        final BushyTailEntityCache entityCache = new BushyTailEntityCache(10, 0, TimeUnit.SECONDS, BushyTailEvictionPolicy.LRU);
+        final BushyTailServiceContext serviceContext = createServiceContext(entityCache);
+        final EdmEntityType entityType = serviceContext.getEdm().getEntityType(ITEM_TYPE);
+        final List<UriParameter> keyPredicates = BushyTailKeyPredicate.parse(entityType, "Items(42)");
+        final BushyTailEntityKey key = BushyTailEntityKeyFactory.createKey(entityType, keyPredicates);
+
+        serviceContext.beginDeferredInvalidation();
+        serviceContext.invalidateCachedEntity(entityType, keyPredicates);
+        assertTrue(entityCache.put(key, "current", entityCache.stamp(key)));
+
+        serviceContext.endDeferredInvalidation(false);
+        assertEquals("current", entityCache.get(key));
+
+        // Invalidations after the change set are not recorded anymore
+        serviceContext.endDeferredInvalidation(true);
+        assertEquals("current", entityCache.get(key));
+    }
+
+    private static BushyTailServiceContext createServiceContext(final BushyTailEntityCache entityCache) throws Exception {
+        final OlingoMetadataFactory metadataFactory = new OlingoMetadataFactory().addEntity(Item.class, ITEM_TYPE);
+
+        return new BushyTailServiceContext(metadataFactory.createSchema("Test"),
+                Collections.<FullQualifiedName, Class<?>>singletonMap(ITEM_TYPE, Item.class),
+                Collections.<Class<?>, IBushyTailController<?>>emptyMap(), Collections.<Class<?>, Integer>emptyMap(),
+                Collections.<Class<?>, String>emptyMap(), Collections.<Class<?>, BushyTailEntityCache>singletonMap(Item.class, entityCache),
+                Collections.<Class<?>, IOlingoEntityCodec<?>>emptyMap(), 100);
+    }
+
+
+    @Entity
+    @Table(name = "Items")
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+    }
+
+}
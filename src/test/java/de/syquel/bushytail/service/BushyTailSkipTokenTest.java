@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016, Frederik Boster
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.syquel.bushytail.service;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BushyTailSkipToken}.
+ *
+ * @author Frederik Boster
+ */
+public class BushyTailSkipTokenTest {
+
+    @Test
+    public void testEncodeDecodeOffset() throws ODataApplicationException {
+        final BushyTailSkipToken token = BushyTailSkipToken.decode(new BushyTailSkipToken(42, null).encode());
+
+        assertEquals(42, token.getPosition());
+        assertFalse(token.isKeyset());
+        assertNull(token.getKeyValues());
+    }
+
+    @Test
+    public void testEncodeDecodeKeyset() throws ODataApplicationException {
+        final Timestamp timestamp = new Timestamp(1476655200123L);
+        timestamp.setNanos(123456789);
+        final List<Object> keyValues = Arrays.<Object>asList("Bushy/Tail?&=", (byte) 1, (short) 2, 3, 4L, 5.5f, 6.5d,
+                new BigInteger("123456789012345678901234567890"), new BigDecimal("-0.000000000000000001"), timestamp);
+
+        final String encoded = new BushyTailSkipToken(7, keyValues).encode();
+        final BushyTailSkipToken token = BushyTailSkipToken.decode(encoded);
+
+        assertTrue("Token must be URL-safe: " + encoded, encoded.matches("[A-Za-z0-9_-]+"));
+        assertEquals(7, token.getPosition());
+        assertTrue(token.isKeyset());
+        assertEquals(keyValues, token.getKeyValues());
+    }
+
+    @Test
+    public void testEncodeDecodeCalendarAsTimestamp() throws ODataApplicationException {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(1476655200123L);
+
+        final BushyTailSkipToken token = BushyTailSkipToken.decode(new BushyTailSkipToken(0, Arrays.<Object>asList(calendar)).encode());
+
+        assertEquals(new Timestamp(1476655200123L), token.getKeyValues().get(0));
+    }
+
+    @Test
+    public void testIsEncodable() {
+        assertTrue(BushyTailSkipToken.isEncodable("a"));
+        assertTrue(BushyTailSkipToken.isEncodable(1L));
+        assertTrue(BushyTailSkipToken.isEncodable(new java.util.Date()));
+        assertFalse(BushyTailSkipToken.isEncodable(null));
+        assertFalse(BushyTailSkipToken.isEncodable(Boolean.TRUE));
+        assertFalse(BushyTailSkipToken.isEncodable(new Object()));
+    }
+
+    @Test
+    public void testDecodeMalformed() {
+        final String valid = new BushyTailSkipToken(3, Arrays.<Object>asList("abc", 4L)).encode();
+        final byte[] validBytes = Base64.decodeBase64(valid);
+
+        assertInvalid("");
+        assertInvalid("not a token!");
+        assertInvalid(valid.substring(0, valid.length() - 4));
+        assertInvalid(Base64.encodeBase64URLSafeString(new byte[] {2, 0, 0, 0, 0, -1, -1}));
+        assertInvalid(Base64.encodeBase64URLSafeString(new byte[] {1, -1, -1, -1, -1, -1, -1}));
+        assertInvalid(Base64.encodeBase64URLSafeString(new byte[] {1, 0, 0, 0, 0, -1, -2}));
+        assertInvalid(Base64.encodeBase64URLSafeString(new byte[] {1, 0, 0, 0, 0, 0, 1, 'x'}));
+
+        final byte[] unknownTag = validBytes.clone();
+        unknownTag[7] = 'x';
+        assertInvalid(Base64.encodeBase64URLSafeString(unknownTag));
+    }
+
+    private static void assertInvalid(final String token) {
+        try {
+            BushyTailSkipToken.decode(token);
+            fail("Expected ODataApplicationException for token '" + token + "'");
+        } catch (ODataApplicationException e) {
+            assertEquals(HttpStatusCode.BAD_REQUEST.getStatusCode(), e.getStatusCode());
+        }
+    }
+
+}